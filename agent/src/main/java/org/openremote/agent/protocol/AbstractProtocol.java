@@ -119,6 +119,7 @@ public abstract class AbstractProtocol implements Protocol {
     protected ProtocolExecutorService executorService;
     protected ProtocolAssetService assetService;
     protected ProtocolPredictedAssetService predictedAssetService;
+    protected SensorUpdateCoalescer sensorUpdateCoalescer;
 
     @Override
     public int getPriority() {
@@ -133,6 +134,7 @@ public abstract class AbstractProtocol implements Protocol {
         assetService = container.getService(ProtocolAssetService.class);
         predictedAssetService = container.getService(ProtocolPredictedAssetService.class);
         messageBrokerContext = container.getService(MessageBrokerService.class).getContext();
+        sensorUpdateCoalescer = new SensorUpdateCoalescer(executorService, timerService, this::sendSensorEvent);
 
         withLock(getProtocolName() + "::start", () -> {
             try {
@@ -168,6 +170,8 @@ public abstract class AbstractProtocol implements Protocol {
     final public void stop(Container container) {
         withLock(getProtocolName() + "::stop", () -> {
             linkedAttributes.clear();
+            sensorUpdateCoalescer.clear();
+            LOG.fine("Sensor updates dropped=" + getSensorUpdatesDropped() + ", coalesced=" + getSensorUpdatesCoalesced() + ": " + getProtocolName());
             try {
                 messageBrokerContext.stopRoute("Actuator-" + getProtocolName(), 1, TimeUnit.MILLISECONDS);
                 messageBrokerContext.removeRoute("Actuator-" + getProtocolName());
@@ -239,10 +243,12 @@ public abstract class AbstractProtocol implements Protocol {
                 }
 
                 try {
+                    sensorUpdateCoalescer.link(attribute);
                     doLinkAttribute(attribute, protocolConfiguration);
                 } catch (Exception e) {
                     LOG.log(Level.SEVERE, "Failed to link attribute to protocol: " + attribute, e);
                     linkedAttributes.remove(attributeRef);
+                    sensorUpdateCoalescer.unlink(attributeRef);
                 }
             });
         });
@@ -263,6 +269,7 @@ public abstract class AbstractProtocol implements Protocol {
                 AttributeRef attributeRef = attribute.getReferenceOrThrow();
                 linkedAttributes.remove(attributeRef);
                 dynamicAttributes.remove(attributeRef);
+                sensorUpdateCoalescer.unlink(attributeRef);
                 doUnlinkAttribute(attribute, protocolConfiguration);
             });
         });
@@ -361,10 +368,34 @@ public abstract class AbstractProtocol implements Protocol {
         }
 
         AttributeEvent attributeEvent = new AttributeEvent(new AttributeState(attribute.getReferenceOrThrow(), ignoreAndConverted.value), timestamp);
+
+        if (!sensorUpdateCoalescer.offer(attributeEvent)) {
+            return;
+        }
+
+        sendSensorEvent(attributeEvent);
+    }
+
+    private void sendSensorEvent(AttributeEvent attributeEvent) {
         LOG.fine("Sending on sensor queue: " + attributeEvent);
         producerTemplate.sendBodyAndHeader(SENSOR_QUEUE, attributeEvent, Protocol.SENSOR_QUEUE_SOURCE_PROTOCOL, getProtocolName());
     }
 
+    /**
+     * Number of sensor updates dropped by the deadband of linked attributes since this protocol was initialized.
+     */
+    public long getSensorUpdatesDropped() {
+        return sensorUpdateCoalescer != null ? sensorUpdateCoalescer.getDroppedCount() : 0;
+    }
+
+    /**
+     * Number of sensor updates superseded by a later update within the minimum interval of linked attributes since
+     * this protocol was initialized.
+     */
+    public long getSensorUpdatesCoalesced() {
+        return sensorUpdateCoalescer != null ? sensorUpdateCoalescer.getCoalescedCount() : 0;
+    }
+
     /**
      * Update the value of a linked attribute, with the current system time as event time see
      * {@link #updateLinkedAttribute(AttributeState, long)} for more details.
@@ -444,6 +475,12 @@ public abstract class AbstractProtocol implements Protocol {
         if (descriptors.stream().noneMatch(d -> d.getUrn().equalsIgnoreCase(META_ATTRIBUTE_WRITE_VALUE_CONVERTER.getUrn()))) {
             descriptors.add(META_ATTRIBUTE_WRITE_VALUE_CONVERTER);
         }
+        if (descriptors.stream().noneMatch(d -> d.getUrn().equalsIgnoreCase(META_ATTRIBUTE_SENSOR_MIN_INTERVAL_MILLIS.getUrn()))) {
+            descriptors.add(META_ATTRIBUTE_SENSOR_MIN_INTERVAL_MILLIS);
+        }
+        if (descriptors.stream().noneMatch(d -> d.getUrn().equalsIgnoreCase(META_ATTRIBUTE_SENSOR_DEADBAND.getUrn()))) {
+            descriptors.add(META_ATTRIBUTE_SENSOR_DEADBAND);
+        }
 
         return descriptors;
     }
@@ -372,6 +372,30 @@ public interface Protocol extends ContainerService {
             1000,
             null);
 
+    /**
+     * Minimum interval in milliseconds between sensor updates of a linked {@link Attribute} being sent on the
+     * {@link #SENSOR_QUEUE}; updates received within the interval are coalesced and only the latest value is sent
+     * when the interval elapses (latest wins).
+     */
+    MetaItemDescriptor META_ATTRIBUTE_SENSOR_MIN_INTERVAL_MILLIS = metaItemInteger(
+        PROTOCOL_NAMESPACE + ":sensorMinIntervalMillis",
+        ACCESS_PRIVATE,
+        false,
+        0,
+        null);
+
+    /**
+     * Deadband for sensor updates of a linked {@link Attribute}; a numeric update that differs from the last value
+     * sent on the {@link #SENSOR_QUEUE} by less than this amount is dropped. For non-numeric values an update that is
+     * equal to the last value sent is dropped.
+     */
+    MetaItemDescriptor META_ATTRIBUTE_SENSOR_DEADBAND = metaItemNumber(
+        PROTOCOL_NAMESPACE + ":sensorDeadband",
+        ACCESS_PRIVATE,
+        false,
+        0d,
+        null);
+
     /**
      * The predicate to use on incoming messages to determine if the message is intended for the {@link Attribute} that
      * has this {@link MetaItem}; it is particularly useful for pub-sub based {@link Protocol}s.
@@ -0,0 +1,211 @@
+/*
+ * Copyright 2020, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.agent.protocol;
+
+import org.openremote.container.timer.TimerService;
+import org.openremote.model.asset.AssetAttribute;
+import org.openremote.model.attribute.AttributeEvent;
+import org.openremote.model.attribute.AttributeRef;
+import org.openremote.model.syslog.SyslogCategory;
+import org.openremote.model.value.Value;
+import org.openremote.model.value.Values;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+import static org.openremote.agent.protocol.Protocol.META_ATTRIBUTE_SENSOR_DEADBAND;
+import static org.openremote.agent.protocol.Protocol.META_ATTRIBUTE_SENSOR_MIN_INTERVAL_MILLIS;
+import static org.openremote.model.syslog.SyslogCategory.PROTOCOL;
+
+/**
+ * Optional per attribute stage in front of the {@link Protocol#SENSOR_QUEUE} that drops insignificant sensor updates
+ * (see {@link Protocol#META_ATTRIBUTE_SENSOR_DEADBAND}) and coalesces bursts of updates so that only the latest value
+ * is sent per interval (see {@link Protocol#META_ATTRIBUTE_SENSOR_MIN_INTERVAL_MILLIS}). Attributes without these
+ * meta items pass straight through.
+ */
+public class SensorUpdateCoalescer {
+
+    protected static class CoalescingState {
+
+        final long minIntervalMillis;
+        final Double deadband;
+        Value lastSentValue;
+        long lastSentMillis = Long.MIN_VALUE;
+        AttributeEvent pendingEvent;
+        ScheduledFuture<?> flushFuture;
+
+        protected CoalescingState(long minIntervalMillis, Double deadband) {
+            this.minIntervalMillis = minIntervalMillis;
+            this.deadband = deadband;
+        }
+    }
+
+    private static final Logger LOG = SyslogCategory.getLogger(PROTOCOL, SensorUpdateCoalescer.class);
+    protected final Map<AttributeRef, CoalescingState> states = new ConcurrentHashMap<>();
+    protected final ProtocolExecutorService executorService;
+    protected final TimerService timerService;
+    protected final Consumer<AttributeEvent> sender;
+    protected final AtomicLong droppedCount = new AtomicLong();
+    protected final AtomicLong coalescedCount = new AtomicLong();
+
+    public SensorUpdateCoalescer(ProtocolExecutorService executorService, TimerService timerService, Consumer<AttributeEvent> sender) {
+        this.executorService = executorService;
+        this.timerService = timerService;
+        this.sender = sender;
+    }
+
+    /**
+     * Reads the coalescing configuration of the attribute; must be called whenever the attribute is linked.
+     */
+    public void link(AssetAttribute attribute) {
+        AttributeRef attributeRef = attribute.getReferenceOrThrow();
+
+        long minIntervalMillis = Values.getMetaItemValueOrThrow(attribute, META_ATTRIBUTE_SENSOR_MIN_INTERVAL_MILLIS, false, true)
+            .flatMap(Values::getIntegerCoerced)
+            .map(Integer::longValue)
+            .orElse(0L);
+
+        Double deadband = Values.getMetaItemValueOrThrow(attribute, META_ATTRIBUTE_SENSOR_DEADBAND, false, true)
+            .flatMap(Values::getNumber)
+            .orElse(null);
+
+        unlink(attributeRef);
+
+        if (minIntervalMillis > 0 || deadband != null) {
+            LOG.fine("Sensor updates will be coalesced (minIntervalMillis=" + minIntervalMillis + ", deadband=" + deadband + "): " + attributeRef);
+            states.put(attributeRef, new CoalescingState(minIntervalMillis, deadband));
+        }
+    }
+
+    /**
+     * Discards the coalescing state of the attribute including any pending update.
+     */
+    public void unlink(AttributeRef attributeRef) {
+        CoalescingState state = states.remove(attributeRef);
+        if (state != null) {
+            synchronized (state) {
+                cancelPending(state);
+            }
+        }
+    }
+
+    public void clear() {
+        states.keySet().forEach(this::unlink);
+    }
+
+    /**
+     * @return <code>true</code> if the event should be sent now, <code>false</code> if it was dropped or is held back
+     * to be sent later by this coalescer.
+     */
+    public boolean offer(AttributeEvent event) {
+        CoalescingState state = states.get(event.getAttributeRef());
+
+        if (state == null) {
+            return true;
+        }
+
+        synchronized (state) {
+            Value value = event.getValue().orElse(null);
+
+            if (state.deadband != null && state.lastSentMillis != Long.MIN_VALUE && isWithinDeadband(state.lastSentValue, value, state.deadband)) {
+                // Value returned to within the deadband so any pending update is no longer significant
+                if (state.pendingEvent != null) {
+                    droppedCount.incrementAndGet();
+                    cancelPending(state);
+                }
+                droppedCount.incrementAndGet();
+                LOG.finest("Sensor update within deadband so dropping: " + event);
+                return false;
+            }
+
+            long now = timerService.getCurrentTimeMillis();
+
+            if (state.minIntervalMillis > 0 && state.lastSentMillis != Long.MIN_VALUE && now - state.lastSentMillis < state.minIntervalMillis) {
+                if (state.pendingEvent != null) {
+                    coalescedCount.incrementAndGet();
+                }
+                state.pendingEvent = event;
+                if (state.flushFuture == null) {
+                    long delay = state.lastSentMillis + state.minIntervalMillis - now;
+                    state.flushFuture = executorService.schedule(() -> flush(event.getAttributeRef(), state), delay);
+                }
+                LOG.finest("Sensor update within minimum interval so holding back: " + event);
+                return false;
+            }
+
+            state.lastSentMillis = now;
+            state.lastSentValue = value;
+            return true;
+        }
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    public long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    protected void flush(AttributeRef attributeRef, CoalescingState state) {
+        AttributeEvent event;
+
+        synchronized (state) {
+            state.flushFuture = null;
+            event = state.pendingEvent;
+            state.pendingEvent = null;
+
+            // Attribute may have been unlinked or re-linked in the meantime
+            if (event == null || states.get(attributeRef) != state) {
+                return;
+            }
+
+            state.lastSentMillis = timerService.getCurrentTimeMillis();
+            state.lastSentValue = event.getValue().orElse(null);
+        }
+
+        LOG.finest("Sending coalesced sensor update: " + event);
+        sender.accept(event);
+    }
+
+    protected static void cancelPending(CoalescingState state) {
+        state.pendingEvent = null;
+        if (state.flushFuture != null) {
+            state.flushFuture.cancel(false);
+            state.flushFuture = null;
+        }
+    }
+
+    protected static boolean isWithinDeadband(Value lastValue, Value value, double deadband) {
+        Double last = Values.getNumber(lastValue).orElse(null);
+        Double current = Values.getNumber(value).orElse(null);
+
+        if (last != null && current != null) {
+            return Math.abs(current - last) < deadband;
+        }
+
+        return Objects.equals(lastValue, value);
+    }
+}
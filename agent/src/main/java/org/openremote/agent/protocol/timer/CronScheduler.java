@@ -19,122 +19,194 @@
  */
 package org.openremote.agent.protocol.timer;
 
+import org.openremote.agent.protocol.ProtocolExecutorService;
+import org.openremote.container.timer.TimerService;
 import org.openremote.model.syslog.SyslogCategory;
-import org.openremote.model.util.Pair;
-import org.quartz.*;
-import org.quartz.impl.StdSchedulerFactory;
+import org.quartz.CronExpression;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Properties;
+import java.util.*;
+import java.util.concurrent.ScheduledFuture;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import static org.openremote.model.syslog.SyslogCategory.PROTOCOL;
 
-class CronScheduler {
+/**
+ * Executes cron jobs on the shared protocol executor. The next fire time of each job is computed once when the job is
+ * added and after each execution, jobs are kept in a queue ordered by next fire time and a single task wakes up when
+ * the first job is due. With a pseudo clock the due jobs are checked every {@link #PSEUDO_CLOCK_CHECK_MILLIS}, as the
+ * clock can be advanced at any time.
+ */
+public class CronScheduler {
 
     private static final Logger LOG = SyslogCategory.getLogger(PROTOCOL, CronScheduler.class);
 
-    protected static final int ALARM_UPDATE_DELAY_MS = 10000;
-    protected final List<String> jobIds = new ArrayList<>();
-    protected final org.quartz.Scheduler scheduler;
-
-    public CronScheduler() {
-        org.quartz.Scheduler tempScheduler;
-
-        // Set properties for cronScheduler factory
-        Properties schedulerProperties = new Properties();
-        schedulerProperties.setProperty("org.quartz.threadPool.threadCount", "1");
-        // Use default thread pool for now
-        //schedulerProperties.setProperty("org.quartz.threadPool.class", null);
-
-        try {
-            // Initialise Quartz CronScheduler
-            SchedulerFactory factory = new StdSchedulerFactory(schedulerProperties);
-            tempScheduler = factory.getScheduler();
-        } catch (SchedulerException e) {
-            tempScheduler = null;
-            LOG.log(Level.WARNING, "Failed to create quartz cronScheduler", e);
+    protected static final int PSEUDO_CLOCK_CHECK_MILLIS = 1000;
+
+    static class CronJob {
+        final String id;
+        final CronExpression expression;
+        final Runnable executeHandler;
+        long nextFireMillis;
+
+        CronJob(String id, CronExpression expression, Runnable executeHandler, long nextFireMillis) {
+            this.id = id;
+            this.expression = expression;
+            this.executeHandler = executeHandler;
+            this.nextFireMillis = nextFireMillis;
         }
 
-        scheduler = tempScheduler;
+        @Override
+        public String toString() {
+            return getClass().getSimpleName() + "{" +
+                "id='" + id + '\'' +
+                ", expression='" + expression.getCronExpression() + '\'' +
+                ", nextFireMillis=" + nextFireMillis +
+                '}';
+        }
     }
 
-    protected boolean isValid() {
-        return scheduler != null;
+    protected final ProtocolExecutorService executorService;
+    protected final TimerService timerService;
+    protected final Map<String, CronJob> jobs = new HashMap<>();
+    protected final PriorityQueue<CronJob> queue = new PriorityQueue<>(Comparator.comparingLong(job -> job.nextFireMillis));
+    protected ScheduledFuture<?> wakeupTimer;
+    protected long wakeupMillis = Long.MAX_VALUE;
+    protected boolean shutdown;
+
+    public CronScheduler(ProtocolExecutorService executorService, TimerService timerService) {
+        this.executorService = executorService;
+        this.timerService = timerService;
     }
 
-    protected void shutdown() {
-        if (scheduler != null) {
-            try {
-                scheduler.shutdown(false);
-            } catch (SchedulerException e) {
-                LOG.log(Level.FINE, "Exception has occurred during force shutdown of quartz cronScheduler", e);
-            }
-        }
+    protected synchronized void shutdown() {
+        shutdown = true;
+        cancelWakeup();
+        jobs.clear();
+        queue.clear();
     }
 
-    protected void addOrReplaceJob(String id, CronExpression expression, Runnable executeHandler) {
-        if (jobIds.contains(id)) {
+    protected synchronized void addOrReplaceJob(String id, CronExpression expression, Runnable executeHandler) {
+        if (jobs.containsKey(id)) {
             removeJob(id);
         }
 
-        Pair<JobDetail, CronTrigger> cronTrigger = createCronTrigger(id, expression, executeHandler);
+        long nextFireMillis = getNextFireMillis(expression, timerService.getCurrentTimeMillis());
+        if (nextFireMillis == Long.MAX_VALUE) {
+            LOG.info("Cron expression will never fire so cannot schedule job: " + id);
+            return;
+        }
 
-        try {
-            LOG.fine("Scheduling job: " + id);
-            scheduler.scheduleJob(cronTrigger.key, cronTrigger.value);
+        LOG.fine("Scheduling job: " + id);
+        CronJob job = new CronJob(id, expression, executeHandler, nextFireMillis);
+        jobs.put(id, job);
+        queue.add(job);
+        scheduleWakeup();
+    }
 
-            if (!scheduler.isStarted()) {
-                LOG.info("Starting the cron scheduler");
-                scheduler.start();
+    protected synchronized void removeJob(String id) {
+        CronJob job = jobs.remove(id);
+        if (job != null) {
+            LOG.fine("Unscheduling job: " + id);
+            queue.remove(job);
+            if (queue.isEmpty()) {
+                cancelWakeup();
             }
-
-            jobIds.add(id);
-        } catch (SchedulerException e) {
-            LOG.log(Level.WARNING, "Unable to start cron job: " + id, e);
         }
     }
 
-    protected void removeJob(String id) {
-        try {
-            LOG.fine("Unscheduling job: " + id);
-            scheduler.unscheduleJob(TriggerKey.triggerKey(id));
-            scheduler.deleteJob(JobKey.jobKey("cronJob1", id));
-        } catch (SchedulerException e) {
-            LOG.log(Level.FINE, "Exception thrown whilst trying to unschedule cron job: " + id, e);
-        } finally {
-            jobIds.remove(id);
+    protected synchronized Set<String> getJobIds() {
+        return new HashSet<>(jobs.keySet());
+    }
+
+    /**
+     * @return the cron expression of the job or <code>null</code> if there is no such job.
+     */
+    protected synchronized String getCronExpression(String id) {
+        CronJob job = jobs.get(id);
+        return job != null ? job.expression.getCronExpression() : null;
+    }
+
+    /**
+     * @return the next fire time of the job or {@link Long#MAX_VALUE} if there is no such job.
+     */
+    protected synchronized long getNextFireMillis(String id) {
+        CronJob job = jobs.get(id);
+        return job != null ? job.nextFireMillis : Long.MAX_VALUE;
+    }
+
+    /**
+     * Executes all due jobs, computing their next fire time after the current time, so missed executions are skipped.
+     */
+    protected void executeDueJobs() {
+        List<CronJob> dueJobs = new ArrayList<>();
+
+        synchronized (this) {
+            wakeupTimer = null;
+            wakeupMillis = Long.MAX_VALUE;
+            long currentMillis = timerService.getCurrentTimeMillis();
+
+            while (!queue.isEmpty() && queue.peek().nextFireMillis <= currentMillis) {
+                CronJob job = queue.poll();
+                dueJobs.add(job);
+                job.nextFireMillis = getNextFireMillis(job.expression, currentMillis);
+                if (job.nextFireMillis != Long.MAX_VALUE) {
+                    queue.add(job);
+                } else {
+                    jobs.remove(job.id);
+                }
+            }
+
+            scheduleWakeup();
+        }
+
+        // Execute outside of the lock, handlers may add or remove jobs
+        for (CronJob job : dueJobs) {
+            try {
+                LOG.fine("Executing job: " + job.id);
+                job.executeHandler.run();
+            } catch (Exception ex) {
+                LOG.log(Level.WARNING, "Exception thrown whilst executing cron job: " + job.id, ex);
+            }
         }
     }
 
-    protected static Pair<JobDetail, CronTrigger> createCronTrigger(String id, CronExpression cronExpression, Runnable executeHandler) {
-        if (cronExpression == null) {
-            LOG.info("Cron expression is null so cannot create trigger: " + id);
-            return null;
+    protected void scheduleWakeup() {
+        if (shutdown || queue.isEmpty()) {
+            return;
         }
 
-        // Create the cron schedule
-        CronScheduleBuilder cronSchedule = CronScheduleBuilder.cronSchedule(cronExpression);
+        long nextFireMillis = queue.peek().nextFireMillis;
+        long delay;
 
-        // Create the job data with just the execute handler
-        JobDataMap jobData = new JobDataMap();
-        jobData.put("ACTION", executeHandler);
+        if (timerService.getClock() == TimerService.Clock.REAL) {
+            // Only reschedule if the first job is due earlier than the pending wakeup
+            if (wakeupTimer != null && wakeupMillis <= nextFireMillis) {
+                return;
+            }
+            delay = Math.max(nextFireMillis - timerService.getCurrentTimeMillis(), 0);
+        } else {
+            if (wakeupTimer != null) {
+                return;
+            }
+            delay = PSEUDO_CLOCK_CHECK_MILLIS;
+        }
 
-        // Create the execution job
-        JobDetail cronJob = JobBuilder.newJob(CronJob.class)
-            .withIdentity("cronJob1", id)
-            .setJobData(jobData)
-            .build();
+        cancelWakeup();
+        wakeupMillis = nextFireMillis;
+        wakeupTimer = executorService.schedule(this::executeDueJobs, delay);
+    }
 
-        // Create the cron trigger for this alarm
-        CronTrigger trigger = TriggerBuilder.newTrigger()
-            .withIdentity(TriggerKey.triggerKey(id))
-            .withSchedule(cronSchedule)
-            .forJob(cronJob)
-            .build();
+    protected void cancelWakeup() {
+        if (wakeupTimer != null) {
+            wakeupTimer.cancel(false);
+            wakeupTimer = null;
+        }
+        wakeupMillis = Long.MAX_VALUE;
+    }
 
-        return new Pair<>(cronJob, trigger);
+    protected static long getNextFireMillis(CronExpression expression, long afterMillis) {
+        Date next = expression.getNextValidTimeAfter(new Date(afterMillis));
+        return next != null ? next.getTime() : Long.MAX_VALUE;
     }
-}
\ No newline at end of file
+}
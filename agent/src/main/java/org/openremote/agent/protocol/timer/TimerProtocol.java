@@ -20,6 +20,7 @@
 package org.openremote.agent.protocol.timer;
 
 import org.openremote.agent.protocol.AbstractProtocol;
+import org.openremote.container.Container;
 import org.openremote.model.asset.AssetAttribute;
 import org.openremote.model.attribute.MetaItemType;
 import org.openremote.model.asset.agent.ConnectionStatus;
@@ -369,12 +370,20 @@ public class TimerProtocol extends AbstractProtocol {
     protected CronScheduler getCronScheduler() {
         if (cronScheduler == null) {
             LOG.fine("Create cron scheduler");
-            cronScheduler = new CronScheduler();
+            cronScheduler = new CronScheduler(executorService, timerService);
         }
 
         return cronScheduler;
     }
 
+    @Override
+    protected void doStop(Container container) throws Exception {
+        if (cronScheduler != null) {
+            cronScheduler.shutdown();
+            cronScheduler = null;
+        }
+    }
+
     @Override
     public String getVersion() {
         return VERSION;
@@ -34,6 +34,11 @@ import org.openremote.model.ModelModule;
 import org.openremote.container.util.LogUtil;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Handler;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -41,6 +46,7 @@ import java.util.stream.Collectors;
 
 import static java.util.stream.StreamSupport.stream;
 import static org.openremote.container.util.MapAccess.getBoolean;
+import static org.openremote.container.util.MapAccess.getInteger;
 
 /**
  * A thread-safe registry of {@link ContainerService}s.
@@ -53,6 +59,10 @@ import static org.openremote.container.util.MapAccess.getBoolean;
  * to distinguish between development and production environments.
  * <p>
  * Read and write JSON with a sensible mapper configuration using {@link #JSON}.
+ * <p>
+ * Services are initialized and started on a pool of {@link #CONTAINER_STARTUP_THREADS}, each service waits for its
+ * {@link ContainerService#getDependencies} so independent services are initialized and started in parallel. The
+ * durations are recorded in the {@link #getStartupTimeline}.
  */
 public class Container {
 
@@ -65,6 +75,8 @@ public class Container {
 
     public static final String DEV_MODE = "DEV_MODE";
     public static final boolean DEV_MODE_DEFAULT = true;
+    public static final String CONTAINER_STARTUP_THREADS = "CONTAINER_STARTUP_THREADS";
+    public static final int CONTAINER_STARTUP_THREADS_DEFAULT = 4;
 
     @SuppressWarnings("deprecation")
     public static final ObjectMapper JSON = new ObjectMapper()
@@ -86,6 +98,14 @@ public class Container {
 
     protected Thread waitingThread;
     protected final Map<Class<? extends ContainerService>, ContainerService> services = new LinkedHashMap<>();
+    // Services look each other up while the container is starting, so the life cycle can't hold the services lock
+    protected final Object lifecycleLock = new Object();
+    protected volatile StartupTimeline startupTimeline;
+
+    @FunctionalInterface
+    protected interface ServicePhase {
+        void run(ContainerService service) throws Exception;
+    }
 
     /**
      * Discover {@link ContainerService}s using {@link ServiceLoader}; services are then ordered by
@@ -144,29 +164,128 @@ public class Container {
     }
 
     public void start() throws Exception {
-        synchronized (services) {
+        synchronized (lifecycleLock) {
             if (isRunning())
                 return;
             LOG.info(">>> Starting runtime container...");
+            StartupTimeline timeline = new StartupTimeline();
+            int threads = Math.max(1, getInteger(config, CONTAINER_STARTUP_THREADS, CONTAINER_STARTUP_THREADS_DEFAULT));
+            AtomicInteger threadCount = new AtomicInteger();
+            ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+                Thread thread = new Thread(runnable, "Container Startup " + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
             try {
-                for (ContainerService service : getServices()) {
+                ContainerService[] services = getServices();
+                Map<ContainerService, List<ContainerService>> dependencies = getDependencies(services);
+                runPhase("init", services, dependencies, executor, timeline, service -> {
                     LOG.fine("Initializing service: " + service);
                     service.init(Container.this);
-                }
-                for (ContainerService service : getServices()) {
+                });
+                runPhase("start", services, dependencies, executor, timeline, service -> {
                     LOG.fine("Starting service: " + service);
                     service.start(Container.this);
-                }
+                });
             } catch (Exception ex) {
                 LOG.log(Level.SEVERE, ">>> Runtime container startup failed", ex);
                 throw ex;
+            } finally {
+                executor.shutdown();
+                timeline.complete();
+                startupTimeline = timeline;
+            }
+            LOG.info(">>> Runtime container startup complete in " + timeline.getDurationMillis() + "ms, slowest: " +
+                timeline.getSlowestEntries(5).stream()
+                    .map(entry -> entry.getService() + "." + entry.getPhase() + " " + entry.getDurationMillis() + "ms")
+                    .collect(Collectors.joining(", "))
+            );
+            LOG.fine("Runtime container startup timeline:\n" + timeline.getReport());
+        }
+    }
+
+    /**
+     * The durations of the last {@link #start}, <code>null</code> if the container hasn't been started.
+     */
+    public StartupTimeline getStartupTimeline() {
+        return startupTimeline;
+    }
+
+    /**
+     * Services without declared dependencies depend on all services added before them.
+     */
+    protected static Map<ContainerService, List<ContainerService>> getDependencies(ContainerService[] services) {
+        Map<ContainerService, List<ContainerService>> dependencies = new IdentityHashMap<>();
+        for (int i = 0; i < services.length; i++) {
+            ContainerService service = services[i];
+            Collection<Class<? extends ContainerService>> types = service.getDependencies();
+            List<ContainerService> serviceDependencies = new ArrayList<>();
+            if (types == null) {
+                serviceDependencies.addAll(Arrays.asList(services).subList(0, i));
+            } else {
+                for (Class<? extends ContainerService> type : types) {
+                    for (int j = 0; j < services.length; j++) {
+                        if (!type.isAssignableFrom(services[j].getClass()) || services[j] == service) {
+                            continue;
+                        }
+                        if (j > i) {
+                            throw new IllegalStateException(
+                                "Service '" + service + "' depends on '" + services[j] + "' which must be added to the container before it"
+                            );
+                        }
+                        serviceDependencies.add(services[j]);
+                    }
+                }
+            }
+            dependencies.put(service, serviceDependencies);
+        }
+        return dependencies;
+    }
+
+    /**
+     * Runs the phase of each service as soon as the phase completed for all its dependencies, a service is skipped if
+     * the phase failed for one of its dependencies. Rethrows the failure of the first service that failed.
+     */
+    protected static void runPhase(String phase,
+                                   ContainerService[] services,
+                                   Map<ContainerService, List<ContainerService>> dependencies,
+                                   ExecutorService executor,
+                                   StartupTimeline timeline,
+                                   ServicePhase servicePhase) throws Exception {
+        Map<ContainerService, CompletableFuture<Void>> futures = new IdentityHashMap<>();
+        for (ContainerService service : services) {
+            CompletableFuture<?>[] dependencyFutures = dependencies.get(service).stream()
+                .map(futures::get)
+                .toArray(CompletableFuture<?>[]::new);
+
+            futures.put(service, CompletableFuture.allOf(dependencyFutures).thenRunAsync(() -> {
+                long startTime = System.currentTimeMillis();
+                try {
+                    servicePhase.run(service);
+                } catch (Exception ex) {
+                    throw new CompletionException(ex);
+                }
+                timeline.add(service, phase, startTime, System.currentTimeMillis());
+            }, executor));
+        }
+
+        for (ContainerService service : services) {
+            try {
+                futures.get(service).join();
+            } catch (CompletionException ex) {
+                // Let the services that are still running complete before failing
+                CompletableFuture.allOf(futures.values().toArray(new CompletableFuture<?>[0])).exceptionally(t -> null).join();
+                Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw cause instanceof Exception ? (Exception) cause : ex;
             }
-            LOG.info(">>> Runtime container startup complete");
         }
     }
 
     public void stop() {
-        synchronized (services) {
+        synchronized (lifecycleLock) {
             if (!isRunning())
                 return;
             LOG.info("<<< Stopping runtime container...");
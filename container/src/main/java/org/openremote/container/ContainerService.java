@@ -19,6 +19,8 @@
  */
 package org.openremote.container;
 
+import java.util.Collection;
+
 /**
  * The {@link Container} is a registry of services, the order of services in a container is important and is determined
  * by the {@link #getPriority} value; when starting the {@link Container} using the auto service discovery mechanism.
@@ -31,6 +33,11 @@ package org.openremote.container;
  * <li>{@link #start} in registry insertion order</li>
  * </ol>
  * <p>
+ * Within each phase a service waits for its {@link #getDependencies} only, services that declare their dependencies
+ * can be initialized and started in parallel with other services. All services are initialized before any service
+ * is started.
+ * </p>
+ * <p>
  * Service shutdown lifecycle:
  * </p>
  * <ol>
@@ -50,6 +57,16 @@ public interface ContainerService {
      */
     int getPriority();
 
+    /**
+     * The types of the services this service uses in {@link #init} or {@link #start}, the matching services must have
+     * been added to the container before this service. Returns <code>null</code> by default, meaning this service
+     * depends on all services added before it; return an empty collection if this service doesn't depend on any
+     * other service.
+     */
+    default Collection<Class<? extends ContainerService>> getDependencies() {
+        return null;
+    }
+
     /**
      * All services are initialized in the order they have been added to the container (if container started with
      * explicit list of services) otherwise they are initialized in order of {@link #getPriority}.
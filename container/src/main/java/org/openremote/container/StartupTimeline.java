@@ -0,0 +1,126 @@
+/*
+ * Copyright 2020, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.container;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * The init and start durations of the {@link ContainerService}s during {@link Container#start}, offsets are relative
+ * to the start of the container.
+ */
+public class StartupTimeline {
+
+    public static class Entry {
+        protected final String service;
+        protected final String phase;
+        protected final String thread;
+        protected final long offsetMillis;
+        protected final long durationMillis;
+
+        public Entry(String service, String phase, String thread, long offsetMillis, long durationMillis) {
+            this.service = service;
+            this.phase = phase;
+            this.thread = thread;
+            this.offsetMillis = offsetMillis;
+            this.durationMillis = durationMillis;
+        }
+
+        public String getService() {
+            return service;
+        }
+
+        public String getPhase() {
+            return phase;
+        }
+
+        public String getThread() {
+            return thread;
+        }
+
+        public long getOffsetMillis() {
+            return offsetMillis;
+        }
+
+        public long getDurationMillis() {
+            return durationMillis;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("+%6dms %6dms %-5s %s [%s]", offsetMillis, durationMillis, phase, service, thread);
+        }
+    }
+
+    protected final long startTime = System.currentTimeMillis();
+    protected final List<Entry> entries = new ArrayList<>();
+    protected long endTime;
+
+    public synchronized void add(ContainerService service, String phase, long serviceStartTime, long serviceEndTime) {
+        entries.add(new Entry(
+            service.getClass().getSimpleName(),
+            phase,
+            Thread.currentThread().getName(),
+            serviceStartTime - startTime,
+            serviceEndTime - serviceStartTime
+        ));
+    }
+
+    public synchronized void complete() {
+        endTime = System.currentTimeMillis();
+    }
+
+    /**
+     * @return the entries ordered by their offset.
+     */
+    public synchronized List<Entry> getEntries() {
+        return entries.stream()
+            .sorted(Comparator.comparingLong(Entry::getOffsetMillis))
+            .collect(Collectors.toList());
+    }
+
+    public synchronized List<Entry> getSlowestEntries(int limit) {
+        return entries.stream()
+            .sorted(Comparator.comparingLong(Entry::getDurationMillis).reversed())
+            .limit(limit)
+            .collect(Collectors.toList());
+    }
+
+    public synchronized long getDurationMillis() {
+        return (endTime > 0 ? endTime : System.currentTimeMillis()) - startTime;
+    }
+
+    /**
+     * @return one line per entry, ordered by offset.
+     */
+    public String getReport() {
+        return getEntries().stream().map(Entry::toString).collect(Collectors.joining("\n"));
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{" +
+            "durationMillis=" + getDurationMillis() +
+            ", entries=" + entries.size() +
+            '}';
+    }
+}
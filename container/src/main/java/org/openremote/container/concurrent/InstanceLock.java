@@ -0,0 +1,113 @@
+/*
+ * Copyright 2020, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.container.concurrent;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+import static java.util.logging.Level.FINEST;
+
+/**
+ * A reentrant exclusive lock guarding the state of a single object, with the timeout and logging of
+ * {@link GlobalLock}. Code holding an instance lock must not wait for the {@link GlobalLock}, code holding the
+ * {@link GlobalLock} may wait for an instance lock.
+ */
+public class InstanceLock {
+
+    private static final Logger LOG = Logger.getLogger(InstanceLock.class.getName());
+
+    protected final String name;
+    protected final GlobalLock.CustomReentrantLock lock = new GlobalLock.CustomReentrantLock();
+
+    public InstanceLock(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Obtain the lock within {@link GlobalLock#getLockTimeoutMillis()} or throw {@link IllegalStateException}.
+     *
+     * @param info     An informal text that is printed in log messages.
+     * @param runnable The guarded code to execute while holding the lock.
+     */
+    public void withLock(String info, Runnable runnable) {
+        withLockReturning(info, () -> {
+            runnable.run();
+            return null;
+        });
+    }
+
+    /**
+     * Obtain the lock within {@link GlobalLock#getLockTimeoutMillis()} or throw {@link IllegalStateException}.
+     *
+     * @param info     An informal text that is printed in log messages.
+     * @param supplier The guarded code to execute while holding the lock.
+     */
+    public <R> R withLockReturning(String info, Supplier<R> supplier) {
+        try {
+            if (lock.tryLock(info, GlobalLock.getLockTimeoutMillis(), TimeUnit.MILLISECONDS)) {
+                LOG.finest("+ Acquired lock '" + name + "' (count: " + lock.getHoldCount() + "): " + info);
+                try {
+                    return supplier.get();
+                } finally {
+                    LOG.finest("- Releasing lock '" + name + "' (count: " + lock.getHoldCount() + "): " + info);
+                    lock.unlock();
+                }
+            } else {
+                throw new IllegalStateException(
+                    "Could not acquire lock '" + name + "' owned by " + lock.owner() + " after waiting " + GlobalLock.getLockTimeoutMillis() + "ms: " + Thread.currentThread().getName() + " executing " + info
+                );
+            }
+        } catch (InterruptedException ex) {
+            LOG.log(FINEST, "Interrupted while waiting for lock '" + name + "': " + info);
+            return null;
+        }
+    }
+
+    /**
+     * Execute the guarded code only if the lock is free or already held by the current thread.
+     *
+     * @return <code>true</code> if the code was executed.
+     */
+    public boolean tryWithLock(String info, Runnable runnable) {
+        if (!lock.tryLock()) {
+            return false;
+        }
+        lock.info = info;
+        try {
+            runnable.run();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isHeldByCurrentThread() {
+        return lock.isHeldByCurrentThread();
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{" +
+            "name='" + name + '\'' +
+            ", owner='" + (lock.isLocked() ? lock.owner() : null) + '\'' +
+            '}';
+    }
+}
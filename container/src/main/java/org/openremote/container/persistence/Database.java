@@ -66,6 +66,9 @@ public interface Database {
                 hikariConfig.setDataSourceClassName("org.postgresql.ds.PGSimpleDataSource");
                 hikariConfig.addDataSourceProperty("url", connectionUrl);
                 hikariConfig.addDataSourceProperty("currentSchema", "persistence");
+                // Use server side prepared statements (and their cached plans) for repeatedly executed SQL
+                hikariConfig.addDataSourceProperty("prepareThreshold", 3);
+                hikariConfig.addDataSourceProperty("preparedStatementCacheQueries", 1024);
                 hikariConfig.setUsername(username);
                 hikariConfig.setPassword(password);
                 hikariConfig.setConnectionTimeout(connectionTimeoutSeconds * 1000);
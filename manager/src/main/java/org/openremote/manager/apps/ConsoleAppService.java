@@ -28,6 +28,8 @@ import org.openremote.manager.web.ManagerWebService;
 import org.openremote.model.apps.ConsoleAppConfig;
 
 import java.nio.file.Files;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.logging.Logger;
 
 public class ConsoleAppService implements ContainerService {
@@ -44,6 +46,11 @@ public class ConsoleAppService implements ContainerService {
         return ContainerService.DEFAULT_PRIORITY;
     }
 
+    @Override
+    public Collection<Class<? extends ContainerService>> getDependencies() {
+        return Collections.emptyList();
+    }
+
     @Override
     public void init(Container container) throws Exception {
 
@@ -0,0 +1,248 @@
+/*
+ * Copyright 2020, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.manager.asset;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalListener;
+import org.openremote.model.asset.Asset;
+import org.openremote.model.value.Value;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Bounded read-through cache of complete {@link Asset}s (with attributes, path and parent info) by ID.
+ * <p>
+ * Cached instances are never handed out, callers always get a copy they can modify. While a transaction is modifying
+ * an asset it is marked as pending and reads bypass the cache (loading through the reader's transaction, which sees its
+ * own uncommitted writes) and drop the stale entry; when the transaction completes the entry is updated
+ * (attribute value writes) or invalidated together with its descendants, whose path and parent info might have
+ * changed. A load that overlaps with an invalidation is not cached.
+ * <p>
+ * Cached descendants are found through an index of the IDs of cached assets by their ancestor IDs, so invalidating an
+ * asset doesn't scan the cache. The index may hold IDs of assets no longer cached, these are ignored.
+ */
+public class AssetCache {
+
+    protected final Cache<String, Asset> cache;
+    protected final Map<String, Integer> pending = new ConcurrentHashMap<>();
+    protected final Map<String, Set<String>> descendants = new ConcurrentHashMap<>();
+    protected long generation;
+
+    public AssetCache(long maximumSize) {
+        cache = CacheBuilder.newBuilder()
+            .maximumSize(maximumSize)
+            .recordStats()
+            .removalListener((RemovalListener<String, Asset>) notification -> {
+                // Replaced entries are removed from the index when they are put, notifications can be delivered
+                // after the asset was cached again
+                synchronized (this) {
+                    if (notification.getCause() != RemovalCause.REPLACED
+                        && notification.getValue() != null
+                        && !this.cache.asMap().containsKey(notification.getKey())) {
+                        removeDescendant(notification.getValue());
+                    }
+                }
+            })
+            .build();
+    }
+
+    /**
+     * @return a copy of the cached asset or of the asset returned by the loader, <code>null</code> if the loader
+     * didn't find the asset.
+     */
+    public Asset get(String assetId, Supplier<Asset> loader) {
+        if (pending.containsKey(assetId)) {
+            // The asset is being modified, load it through the caller's transaction and drop the stale entry
+            synchronized (this) {
+                cache.invalidate(assetId);
+            }
+            return loader.get();
+        }
+
+        Asset asset = cache.getIfPresent(assetId);
+        if (asset != null) {
+            return copy(asset);
+        }
+
+        long loadGeneration;
+        synchronized (this) {
+            loadGeneration = generation;
+        }
+
+        asset = loader.get();
+        if (asset == null) {
+            return null;
+        }
+
+        synchronized (this) {
+            if (loadGeneration == generation && !pending.containsKey(assetId)) {
+                putInternal(assetId, copy(asset));
+            }
+        }
+        return asset;
+    }
+
+    /**
+     * Mark the asset as being modified by a transaction, must be followed by {@link #endUpdate}.
+     */
+    public void beginUpdate(String assetId) {
+        synchronized (this) {
+            generation++;
+            pending.merge(assetId, 1, Integer::sum);
+        }
+    }
+
+    /**
+     * @param invalidate if the asset and its descendants should be removed from the cache.
+     */
+    public void endUpdate(String assetId, boolean invalidate) {
+        synchronized (this) {
+            if (invalidate) {
+                invalidateInternal(assetId);
+            }
+            pending.computeIfPresent(assetId, (id, count) -> count > 1 ? count - 1 : null);
+        }
+    }
+
+    /**
+     * Apply a committed attribute value write to the cached asset, if any.
+     */
+    public void updateAttributeValue(String assetId, String attributeName, Value value, long timestamp) {
+        synchronized (this) {
+            Asset cached = cache.getIfPresent(assetId);
+            if (cached == null) {
+                return;
+            }
+            Asset updated = copy(cached);
+            boolean found = updated.getAttribute(attributeName).map(attribute -> {
+                attribute.setValue(value, timestamp);
+                updated.replaceAttribute(attribute);
+                return true;
+            }).orElse(false);
+
+            if (found) {
+                putInternal(assetId, updated);
+            } else {
+                invalidateInternal(assetId);
+            }
+        }
+    }
+
+    /**
+     * Remove the asset and any cached descendants.
+     */
+    public void invalidate(String assetId) {
+        synchronized (this) {
+            invalidateInternal(assetId);
+        }
+    }
+
+    public void invalidateAll() {
+        synchronized (this) {
+            generation++;
+            cache.invalidateAll();
+            descendants.clear();
+        }
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+    protected void invalidateInternal(String assetId) {
+        generation++;
+        cache.invalidate(assetId);
+        Set<String> descendantIds = descendants.remove(assetId);
+        if (descendantIds != null) {
+            cache.invalidateAll(descendantIds);
+        }
+    }
+
+    protected void putInternal(String assetId, Asset asset) {
+        Asset previous = cache.getIfPresent(assetId);
+        if (previous != null) {
+            removeDescendant(previous);
+        }
+        cache.put(assetId, asset);
+        for (String ancestorId : getAncestorIds(asset)) {
+            descendants.computeIfAbsent(ancestorId, id -> ConcurrentHashMap.newKeySet()).add(assetId);
+        }
+    }
+
+    protected void removeDescendant(Asset asset) {
+        for (String ancestorId : getAncestorIds(asset)) {
+            descendants.computeIfPresent(ancestorId, (id, descendantIds) -> {
+                descendantIds.remove(asset.getId());
+                return descendantIds.isEmpty() ? null : descendantIds;
+            });
+        }
+    }
+
+    protected static Set<String> getAncestorIds(Asset asset) {
+        Set<String> ancestorIds = new HashSet<>();
+        if (asset.getParentId() != null) {
+            ancestorIds.add(asset.getParentId());
+        }
+        if (asset.getPath() != null) {
+            ancestorIds.addAll(Arrays.asList(asset.getPath()));
+        }
+        ancestorIds.remove(asset.getId());
+        return ancestorIds;
+    }
+
+    protected static Asset copy(Asset asset) {
+        return new Asset(
+            asset.getId(),
+            asset.getVersion(),
+            asset.getCreatedOn(),
+            asset.getName(),
+            asset.getType(),
+            asset.isAccessPublicRead(),
+            asset.getParentId(),
+            asset.getParentName(),
+            asset.getParentType(),
+            asset.getRealm(),
+            asset.getPath() != null ? asset.getPath().clone() : null,
+            asset.getAttributes() != null ? asset.getAttributes().deepCopy() : null
+        );
+    }
+
+    @Override
+    public String toString() {
+        CacheStats stats = cache.stats();
+        return getClass().getSimpleName() + "{" +
+            "size=" + cache.size() +
+            ", hitRate=" + stats.hitRate() +
+            ", evictionCount=" + stats.evictionCount() +
+            '}';
+    }
+}
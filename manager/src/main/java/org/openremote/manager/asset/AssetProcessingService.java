@@ -22,6 +22,8 @@ package org.openremote.manager.asset;
 import org.apache.camel.Exchange;
 import org.apache.camel.Processor;
 import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.processor.aggregate.UseLatestAggregationStrategy;
+import org.hibernate.Session;
 import org.openremote.agent.protocol.Protocol;
 import org.openremote.container.Container;
 import org.openremote.container.ContainerService;
@@ -30,6 +32,7 @@ import org.openremote.container.persistence.PersistenceService;
 import org.openremote.container.security.AuthContext;
 import org.openremote.container.timer.TimerService;
 import org.openremote.manager.agent.AgentService;
+import org.openremote.manager.datapoint.AssetDatapointFilter;
 import org.openremote.manager.datapoint.AssetDatapointService;
 import org.openremote.manager.event.ClientEventService;
 import org.openremote.manager.event.EventSubscriptionAuthorizer;
@@ -42,20 +45,27 @@ import org.openremote.model.asset.*;
 import org.openremote.model.attribute.AttributeEvent;
 import org.openremote.model.attribute.AttributeEvent.Source;
 import org.openremote.model.attribute.AttributeExecuteStatus;
+import org.openremote.model.attribute.AttributeRef;
 import org.openremote.model.attribute.MetaItemType;
 import org.openremote.model.security.ClientRole;
 import org.openremote.model.util.AssetModelUtil;
+import org.openremote.model.util.Pair;
 import org.openremote.model.value.Value;
 import org.openremote.model.value.Values;
 
 import javax.persistence.EntityManager;
+import java.sql.Connection;
+import java.sql.Savepoint;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import static org.apache.camel.builder.PredicateBuilder.or;
 import static org.openremote.container.concurrent.GlobalLock.withLock;
 import static org.openremote.manager.asset.AssetProcessingException.Reason.*;
 import static org.openremote.manager.event.ClientEventService.CLIENT_EVENT_TOPIC;
@@ -78,6 +88,11 @@ import static org.openremote.model.attribute.AttributeEvent.Source.*;
  * this route but is handled separately, see {@link AssetResource}. Any attribute values
  * assigned during Asset CRUD can be thought of as the attributes initial value.
  * <p>
+ * The {@link #ASSET_QUEUE} also accepts a {@link java.util.List} of {@link AttributeEvent}s as a batch, the events
+ * are then processed one by one in list order with the headers of the batch. Batches sent with
+ * {@link #sendAttributeEvents} are processed while holding the lock once, in a single database transaction with a
+ * savepoint for each event.
+ * <p>
  * The {@link AttributeEvent}s are first validated depending on their source, and if validation fails
  * at any point then an {@link AssetProcessingException} will be logged as a warning with an
  * {@link AssetProcessingException.Reason}.
@@ -126,6 +141,8 @@ public class AssetProcessingService extends RouteBuilder implements ContainerSer
 
     // TODO: Some of these options should be configurable depending on expected load etc.
     // Message topic for communicating individual asset attribute changes
+    // Set on a batch of events to process all events in one transaction
+    public static final String HEADER_SINGLE_TRANSACTION = AssetProcessingService.class.getName() + ".SINGLE_TRANSACTION";
     public static final String ASSET_QUEUE = "seda://AssetQueue?waitForTaskToComplete=IfReplyExpected&timeout=10000&purgeWhenStopping=true&discardIfNoConsumers=false&size=25000";
 
     protected TimerService timerService;
@@ -196,7 +213,7 @@ public class AssetProcessingService extends RouteBuilder implements ContainerSer
         // A client wants to write attribute state through event bus
         from(CLIENT_EVENT_TOPIC)
             .routeId("FromClientUpdates")
-            .filter(body().isInstanceOf(AttributeEvent.class))
+            .filter(or(body().isInstanceOf(AttributeEvent.class), body().isInstanceOf(List.class)))
             .setHeader(HEADER_SOURCE, () -> CLIENT)
             .to(ASSET_QUEUE);
 
@@ -218,6 +235,16 @@ public class AssetProcessingService extends RouteBuilder implements ContainerSer
         */
         from(ASSET_QUEUE)
             .routeId("AssetQueueProcessor")
+            .choice()
+            .when(header(HEADER_SINGLE_TRANSACTION).isEqualTo(true))
+            // A batch of internal events is processed in order with one lock and one transaction
+            .process(exchange -> withLock(getClass().getSimpleName() + "::processBatchFromAssetQueue", () ->
+                processAttributeEventBatch(exchange)
+            ))
+            .otherwise()
+            // A batch of events is processed in order, each event with its own lock and transaction; the result of the
+            // last event is the reply
+            .split(body(), new UseLatestAggregationStrategy())
             .filter(body().isInstanceOf(AttributeEvent.class))
             .doTry()
             // Lock the global context, we can only process attribute events when the
@@ -226,163 +253,243 @@ public class AssetProcessingService extends RouteBuilder implements ContainerSer
             .process(exchange -> withLock(getClass().getSimpleName() + "::processFromAssetQueue", () -> {
 
                 AttributeEvent event = exchange.getIn().getBody(AttributeEvent.class);
-                LOG.finest("Processing: " + event);
-                if (event.getEntityId() == null || event.getEntityId().isEmpty())
-                    return;
-                if (event.getAttributeName() == null || event.getAttributeName().isEmpty())
-                    return;
                 Source source = exchange.getIn().getHeader(HEADER_SOURCE, () -> null, Source.class);
-                if (source == null) {
-                    throw new AssetProcessingException(MISSING_SOURCE);
-                }
+                AuthContext authContext = exchange.getIn().getHeader(Constants.AUTH_CONTEXT, AuthContext.class);
 
                 // Process the asset update in a database transaction, this ensures that processors
                 // will see consistent database state and we only commit if no processor failed. This
                 // still won't make this procedure consistent with the message queue from which we consume!
-                persistenceService.doTransaction(em -> {
-                    Asset asset = assetStorageService.find(em, event.getEntityId(), true);
-                    if (asset == null)
-                        throw new AssetProcessingException(ASSET_NOT_FOUND);
-
-
-                    AssetAttribute oldAttribute = asset.getAttribute(event.getAttributeName()).orElse(null);
-                    if (oldAttribute == null)
-                        throw new AssetProcessingException(ATTRIBUTE_NOT_FOUND);
-
-                    switch (source) {
-                        case CLIENT:
-
-                            AuthContext authContext = exchange.getIn().getHeader(Constants.AUTH_CONTEXT, AuthContext.class);
-                            if (authContext == null) {
-                                // Check attribute has public write flag
-                                if (!oldAttribute.getMetaItem(MetaItemType.ACCESS_PUBLIC_WRITE).isPresent()) {
-                                    throw new AssetProcessingException(NO_AUTH_CONTEXT);
-                                }
-                                // Check read-only
-                                if (oldAttribute.isReadOnly()) {
-                                    throw new AssetProcessingException(INSUFFICIENT_ACCESS);
-                                }
-                            } else {
-                                // Check realm, must be accessible
-                                if (!identityService.getIdentityProvider().isTenantActiveAndAccessible(authContext,
-                                                                                                       asset.getRealm())) {
-                                    throw new AssetProcessingException(INSUFFICIENT_ACCESS);
-                                }
-
-                                // Check read-only
-                                if (oldAttribute.isReadOnly() && !authContext.isSuperUser()) {
-                                    throw new AssetProcessingException(INSUFFICIENT_ACCESS);
-                                }
-
-                                // Regular user must have write assets role
-                                if (!authContext.hasResourceRoleOrIsSuperUser(ClientRole.WRITE_ASSETS.getValue(),
-                                                                              Constants.KEYCLOAK_CLIENT_ID)) {
-                                    throw new AssetProcessingException(INSUFFICIENT_ACCESS);
-                                }
-
-                                // Check restricted user
-                                if (identityService.getIdentityProvider().isRestrictedUser(authContext.getUserId())) {
-                                    // Must be asset linked to user
-                                    if (!assetStorageService.isUserAsset(authContext.getUserId(),
-                                                                         event.getEntityId())) {
-                                        throw new AssetProcessingException(INSUFFICIENT_ACCESS);
-                                    }
-                                    // Must be writable by restricted client
-                                    if (!oldAttribute.isAccessRestrictedWrite()) {
-                                        throw new AssetProcessingException(INSUFFICIENT_ACCESS);
-                                    }
-                                }
-                            }
-                            break;
-
-                        case SENSOR:
-                            Optional<AssetAttribute> protocolConfiguration =
-                                getAgentLink(oldAttribute).flatMap(agentService::getProtocolConfiguration);
-
-                            // Sensor event must be for an attribute linked to a protocol configuration
-                            if (!protocolConfiguration.isPresent()) {
-                                throw new AssetProcessingException(INVALID_AGENT_LINK);
-                            }
-                            break;
+                persistenceService.doTransaction(em -> processAttributeEvent(em, event, source, authContext));
+            }))
+            .endDoTry()
+            .doCatch(AssetProcessingException.class)
+            .process(handleAssetProcessingException(LOG));
+    }
+
+    /**
+     * Validates the {@link AttributeEvent} depending on its {@link Source} and pushes the update through the chain of
+     * processors.
+     */
+    protected void processAttributeEvent(EntityManager em, AttributeEvent event, Source source, AuthContext authContext) throws AssetProcessingException {
+        Pair<Asset, AssetAttribute> update = validateAttributeEvent(em, event, source, authContext);
+        if (update == null)
+            return;
+
+        // Push through all processors
+        boolean consumedCompletely = processAssetUpdate(em, update.key, update.value, source);
+
+        // Publish a new event for clients if no processor consumed the update completely
+        if (!consumedCompletely) {
+            publishClientEvent(update.key, update.value);
+        }
+    }
+
+    /**
+     * Validates the {@link AttributeEvent} depending on its {@link Source}, without any side effects.
+     *
+     * @return the asset and its updated attribute, <code>null</code> if the event should be ignored.
+     */
+    protected Pair<Asset, AssetAttribute> validateAttributeEvent(EntityManager em, AttributeEvent event, Source source, AuthContext authContext) throws AssetProcessingException {
+        LOG.finest("Processing: " + event);
+        if (event.getEntityId() == null || event.getEntityId().isEmpty())
+            return null;
+        if (event.getAttributeName() == null || event.getAttributeName().isEmpty())
+            return null;
+        if (source == null) {
+            throw new AssetProcessingException(MISSING_SOURCE);
+        }
+
+        Asset asset = assetStorageService.find(em, event.getEntityId(), true);
+        if (asset == null)
+            throw new AssetProcessingException(ASSET_NOT_FOUND);
+
+
+        AssetAttribute oldAttribute = asset.getAttribute(event.getAttributeName()).orElse(null);
+        if (oldAttribute == null)
+            throw new AssetProcessingException(ATTRIBUTE_NOT_FOUND);
+
+        switch (source) {
+            case CLIENT:
+
+                if (authContext == null) {
+                    // Check attribute has public write flag
+                    if (!oldAttribute.getMetaItem(MetaItemType.ACCESS_PUBLIC_WRITE).isPresent()) {
+                        throw new AssetProcessingException(NO_AUTH_CONTEXT);
+                    }
+                    // Check read-only
+                    if (oldAttribute.isReadOnly()) {
+                        throw new AssetProcessingException(INSUFFICIENT_ACCESS);
+                    }
+                } else {
+                    // Check realm, must be accessible
+                    if (!identityService.getIdentityProvider().isTenantActiveAndAccessible(authContext,
+                                                                                           asset.getRealm())) {
+                        throw new AssetProcessingException(INSUFFICIENT_ACCESS);
                     }
 
-                    // Agent attributes can't be updated with events
-                    if (asset.getWellKnownType() == AssetType.AGENT) {
-                        throw new AssetProcessingException(ILLEGAL_AGENT_UPDATE);
+                    // Check read-only
+                    if (oldAttribute.isReadOnly() && !authContext.isSuperUser()) {
+                        throw new AssetProcessingException(INSUFFICIENT_ACCESS);
                     }
 
-                    // For executable attributes, non-sensor sources can set a writable attribute execute status
-                    if (oldAttribute.isExecutable() && source != SENSOR) {
-                        Optional<AttributeExecuteStatus> status = event.getValue()
-                            .flatMap(Values::getString)
-                            .flatMap(AttributeExecuteStatus::fromString);
+                    // Regular user must have write assets role
+                    if (!authContext.hasResourceRoleOrIsSuperUser(ClientRole.WRITE_ASSETS.getValue(),
+                                                                  Constants.KEYCLOAK_CLIENT_ID)) {
+                        throw new AssetProcessingException(INSUFFICIENT_ACCESS);
+                    }
 
-                        if (status.isPresent() && !status.get().isWrite()) {
-                            throw new AssetProcessingException(INVALID_ATTRIBUTE_EXECUTE_STATUS);
+                    // Check restricted user
+                    if (identityService.getIdentityProvider().isRestrictedUser(authContext.getUserId())) {
+                        // Must be asset linked to user
+                        if (!assetStorageService.isUserAsset(authContext.getUserId(),
+                                                             event.getEntityId())) {
+                            throw new AssetProcessingException(INSUFFICIENT_ACCESS);
+                        }
+                        // Must be writable by restricted client
+                        if (!oldAttribute.isAccessRestrictedWrite()) {
+                            throw new AssetProcessingException(INSUFFICIENT_ACCESS);
                         }
                     }
+                }
+                break;
 
-                    // Check if attribute is well known and the value is valid
-                    AssetModelUtil.getAttributeDescriptor(oldAttribute.name).ifPresent(wellKnownAttribute -> {
-                        // Check if the value is valid
-                        wellKnownAttribute.getValueDescriptor()
-                            .getValidator().flatMap(v -> v.apply(event.getValue().orElse(null)))
-                            .ifPresent(validationFailure -> {
-                                throw new AssetProcessingException(
-                                    INVALID_VALUE_FOR_WELL_KNOWN_ATTRIBUTE
-                                );
-                            });
-                    });
-
-                    // Either use the timestamp of the event or set event time to processing time
-                    long processingTime = timerService.getCurrentTimeMillis();
-                    long eventTime = event.getTimestamp() > 0 ? event.getTimestamp() : processingTime;
-
-                    // Ensure timestamp of event is not in the future as that would essentially block access to
-                    // the attribute until after that time (maybe that is desirable behaviour)
-                    if (eventTime - processingTime > 0) {
-                        // TODO: Decide how to handle update events in the future - ignore or change timestamp
-                        throw new AssetProcessingException(
-                            EVENT_IN_FUTURE,
-                            "current time: " + new Date(processingTime) + "/" + processingTime
-                                + ", event time: " + new Date(eventTime) + "/" + eventTime
-                        );
-                    }
+            case SENSOR:
+                Optional<AssetAttribute> protocolConfiguration =
+                    getAgentLink(oldAttribute).flatMap(agentService::getProtocolConfiguration);
 
-                    // Check the last update timestamp of the attribute, ignoring any event that is older than last update
-                    // TODO This means we drop out-of-sequence events but accept events with the same source timestamp
-                    // TODO Several attribute events can occur in the same millisecond, then order of application is undefined
-                    oldAttribute.getValueTimestamp().filter(t -> t >= 0 && eventTime < t).ifPresent(
-                        lastStateTime -> {
-                            throw new AssetProcessingException(
-                                EVENT_OUTDATED,
-                                "last asset state time: " + new Date(lastStateTime) + "/" + lastStateTime
-                                    + ", event time: " + new Date(eventTime) + "/" + eventTime);
-                        }
+                // Sensor event must be for an attribute linked to a protocol configuration
+                if (!protocolConfiguration.isPresent()) {
+                    throw new AssetProcessingException(INVALID_AGENT_LINK);
+                }
+                break;
+        }
+
+        // Agent attributes can't be updated with events
+        if (asset.getWellKnownType() == AssetType.AGENT) {
+            throw new AssetProcessingException(ILLEGAL_AGENT_UPDATE);
+        }
+
+        // For executable attributes, non-sensor sources can set a writable attribute execute status
+        if (oldAttribute.isExecutable() && source != SENSOR) {
+            Optional<AttributeExecuteStatus> status = event.getValue()
+                .flatMap(Values::getString)
+                .flatMap(AttributeExecuteStatus::fromString);
+
+            if (status.isPresent() && !status.get().isWrite()) {
+                throw new AssetProcessingException(INVALID_ATTRIBUTE_EXECUTE_STATUS);
+            }
+        }
+
+        // Check if attribute is well known and the value is valid
+        AssetModelUtil.getAttributeDescriptor(oldAttribute.name).ifPresent(wellKnownAttribute -> {
+            // Check if the value is valid
+            wellKnownAttribute.getValueDescriptor()
+                .getValidator().flatMap(v -> v.apply(event.getValue().orElse(null)))
+                .ifPresent(validationFailure -> {
+                    throw new AssetProcessingException(
+                        INVALID_VALUE_FOR_WELL_KNOWN_ATTRIBUTE
                     );
+                });
+        });
 
-                    // Create a copy of the attribute and set the new value and timestamp
-                    AssetAttribute updatedAttribute = oldAttribute.deepCopy();
-                    updatedAttribute.setValue(event.getValue().orElse(null), eventTime);
+        // Either use the timestamp of the event or set event time to processing time
+        long processingTime = timerService.getCurrentTimeMillis();
+        long eventTime = event.getTimestamp() > 0 ? event.getTimestamp() : processingTime;
 
-                    // Validate constraints of attribute
-                    List<ValidationFailure> validationFailures = updatedAttribute.getValidationFailures();
-                    if (!validationFailures.isEmpty()) {
-                        throw new AssetProcessingException(ATTRIBUTE_VALIDATION_FAILURE, validationFailures.toString());
-                    }
+        // Ensure timestamp of event is not in the future as that would essentially block access to
+        // the attribute until after that time (maybe that is desirable behaviour)
+        if (eventTime - processingTime > 0) {
+            // TODO: Decide how to handle update events in the future - ignore or change timestamp
+            throw new AssetProcessingException(
+                EVENT_IN_FUTURE,
+                "current time: " + new Date(processingTime) + "/" + processingTime
+                    + ", event time: " + new Date(eventTime) + "/" + eventTime
+            );
+        }
+
+        // Check the last update timestamp of the attribute, ignoring any event that is older than last update
+        // TODO This means we drop out-of-sequence events but accept events with the same source timestamp
+        // TODO Several attribute events can occur in the same millisecond, then order of application is undefined
+        oldAttribute.getValueTimestamp().filter(t -> t >= 0 && eventTime < t).ifPresent(
+            lastStateTime -> {
+                throw new AssetProcessingException(
+                    EVENT_OUTDATED,
+                    "last asset state time: " + new Date(lastStateTime) + "/" + lastStateTime
+                        + ", event time: " + new Date(eventTime) + "/" + eventTime);
+            }
+        );
 
-                    // Push through all processors
-                    boolean consumedCompletely = processAssetUpdate(em, asset, updatedAttribute, source);
+        // Create a copy of the attribute and set the new value and timestamp
+        AssetAttribute updatedAttribute = oldAttribute.deepCopy();
+        updatedAttribute.setValue(event.getValue().orElse(null), eventTime);
+
+        // Validate constraints of attribute
+        List<ValidationFailure> validationFailures = updatedAttribute.getValidationFailures();
+        if (!validationFailures.isEmpty()) {
+            throw new AssetProcessingException(ATTRIBUTE_VALIDATION_FAILURE, validationFailures.toString());
+        }
+
+        return new Pair<>(asset, updatedAttribute);
+    }
+
+    /**
+     * Processes a batch of events sent with {@link #sendAttributeEvents} in one database transaction. Each event is
+     * processed within a savepoint; an event which fails validation is skipped, a processor or database failure rolls
+     * back the database updates and data point filter state of that event only. The updates of the other events are
+     * committed, consistent with the actuator writes, rules facts and forwarded events the processors already produced
+     * for them. Events of the same asset see the updates of earlier events in the batch. Client events are published
+     * after the commit.
+     */
+    protected void processAttributeEventBatch(Exchange exchange) {
+        List<?> events = exchange.getIn().getBody(List.class);
+        Source source = exchange.getIn().getHeader(HEADER_SOURCE, () -> null, Source.class);
+        AuthContext authContext = exchange.getIn().getHeader(Constants.AUTH_CONTEXT, AuthContext.class);
+
+        LOG.fine("Processing batch of " + events.size() + " attribute events from " + source);
+
+        List<Pair<Asset, AssetAttribute>> clientUpdates = new ArrayList<>();
+        persistenceService.doTransaction(em -> {
+            Session session = em.unwrap(Session.class);
+            for (Object body : events) {
+                if (!(body instanceof AttributeEvent)) {
+                    continue;
+                }
+                AttributeEvent event = (AttributeEvent) body;
+                Pair<Asset, AssetAttribute> update;
+                try {
+                    update = validateAttributeEvent(em, event, source, authContext);
+                } catch (AssetProcessingException ex) {
+                    LOG.warning("Error processing from " + source + " - " + ex.getMessage() + ": " + event);
+                    continue;
+                }
+                if (update == null) {
+                    continue;
+                }
 
-                    // Publish a new event for clients if no processor consumed the update completely
-                    if (!consumedCompletely) {
-                        publishClientEvent(asset, updatedAttribute);
+                // Earlier events must be flushed before the savepoint so a rollback only undoes this event
+                em.flush();
+                Savepoint savepoint = session.doReturningWork(Connection::setSavepoint);
+                AttributeRef attributeRef = update.value.getReferenceOrThrow();
+                AssetDatapointFilter pendingFilter = assetDatapointService.getPendingFilter(em, attributeRef);
+                try {
+                    boolean consumed = processAssetUpdate(em, update.key, update.value, source);
+                    em.flush();
+                    session.doWork(connection -> connection.releaseSavepoint(savepoint));
+                    if (!consumed) {
+                        clientUpdates.add(update);
                     }
-                });
-            }))
-            .endDoTry()
-            .doCatch(AssetProcessingException.class)
-            .process(handleAssetProcessingException(LOG));
+                } catch (RuntimeException ex) {
+                    session.doWork(connection -> connection.rollback(savepoint));
+                    assetDatapointService.resetPendingFilter(em, attributeRef, pendingFilter);
+                    // Entities of the rolled back statements must not be flushed again
+                    em.clear();
+                    LOG.log(Level.WARNING, "Error processing from " + source + " in batch of " + events.size()
+                        + " attribute events, rolled back the update - " + ex.getMessage() + ": " + event, ex);
+                }
+            }
+        });
+
+        clientUpdates.forEach(update -> publishClientEvent(update.key, update.value));
     }
 
     /**
@@ -400,6 +507,33 @@ public class AssetProcessingService extends RouteBuilder implements ContainerSer
         messageBrokerService.getProducerTemplate().sendBodyAndHeader(ASSET_QUEUE, attributeEvent, HEADER_SOURCE, source);
     }
 
+    /**
+     * Send internal attribute change events into the {@link #ASSET_QUEUE} as one batch, processed in order in a single
+     * database transaction.
+     */
+    public void sendAttributeEvents(List<AttributeEvent> attributeEvents) {
+        if (attributeEvents.isEmpty()) {
+            return;
+        }
+        if (attributeEvents.size() == 1) {
+            sendAttributeEvent(attributeEvents.get(0));
+            return;
+        }
+
+        // Set event source time if not already set
+        long timestamp = timerService.getCurrentTimeMillis();
+        for (AttributeEvent attributeEvent : attributeEvents) {
+            if (attributeEvent.getTimestamp() <= 0) {
+                attributeEvent.setTimestamp(timestamp);
+            }
+        }
+
+        Map<String, Object> headers = new HashMap<>();
+        headers.put(HEADER_SOURCE, INTERNAL);
+        headers.put(HEADER_SINGLE_TRANSACTION, true);
+        messageBrokerService.getProducerTemplate().sendBodyAndHeaders(ASSET_QUEUE, new ArrayList<>(attributeEvents), headers);
+    }
+
     /**
      * This deals with single {@link AssetAttribute} updates and pushes them through the chain where each
      * processor is given the opportunity to completely consume the update or allow its progress to the next
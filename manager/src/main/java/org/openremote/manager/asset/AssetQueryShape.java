@@ -0,0 +1,264 @@
+/*
+ * Copyright 2020, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.manager.asset;
+
+import org.openremote.model.query.AssetQuery;
+import org.openremote.model.query.LogicGroup;
+import org.openremote.model.query.filter.*;
+import org.openremote.model.value.Value;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The structure of an {@link AssetQuery}, everything that determines the generated SQL. The values which are bound as
+ * statement parameters are blanked out of the {@link #getKey} so queries only differing in these values share the
+ * same SQL. The {@link #getNodes} are the objects of the query in traversal order, queries with the same key have the
+ * same number of nodes, so a node of one query can be resolved to the node at the same position of another query.
+ * <p>
+ * Parameter values that are <code>null</code> or empty remain in the key, the SQL depends on their presence.
+ * <p>
+ * Every field of the query and its predicates must be listed in exactly one of {@link #PARAMETER_FIELDS},
+ * {@link #SHAPE_ONLY_FIELDS} or {@link #STRUCTURE_FIELDS}, a query with an unlisted field is rejected so a new field
+ * can't silently be treated as a parameter or structure.
+ */
+public class AssetQueryShape {
+
+    protected static class ShapeField {
+        protected final Field field;
+        protected final boolean parameter;
+        protected final boolean shapeOnly;
+
+        protected ShapeField(Field field, boolean parameter, boolean shapeOnly) {
+            this.field = field;
+            this.parameter = parameter;
+            this.shapeOnly = shapeOnly;
+        }
+    }
+
+    /**
+     * Fields whose values are bound as statement parameters.
+     */
+    protected static final Set<String> PARAMETER_FIELDS = new HashSet<>(Arrays.asList(
+        AssetQuery.class.getName() + ".ids",
+        AssetQuery.class.getName() + ".userIds",
+        AssetQuery.Cursor.class.getName() + ".id",
+        AssetQuery.Cursor.class.getName() + ".createdOn",
+        AssetQuery.Cursor.class.getName() + ".name",
+        StringPredicate.class.getName() + ".value",
+        ParentPredicate.class.getName() + ".id",
+        ParentPredicate.class.getName() + ".type",
+        ParentPredicate.class.getName() + ".name",
+        PathPredicate.class.getName() + ".path",
+        TenantPredicate.class.getName() + ".realm",
+        NumberPredicate.class.getName() + ".value",
+        NumberPredicate.class.getName() + ".rangeValue",
+        DateTimePredicate.class.getName() + ".value",
+        DateTimePredicate.class.getName() + ".rangeValue",
+        ObjectValueKeyPredicate.class.getName() + ".key",
+        ArrayPredicate.class.getName() + ".value",
+        CalendarEventPredicate.class.getName() + ".timestamp"
+    ));
+
+    /**
+     * Fields holding attribute and meta item names, these are grouped and matched when the SQL is built and remain in
+     * the key.
+     */
+    protected static final Set<String> SHAPE_ONLY_FIELDS = new HashSet<>(Arrays.asList(
+        AttributePredicate.class.getName() + ".name",
+        MetaPredicate.class.getName() + ".itemNamePredicate"
+    ));
+
+    /**
+     * Fields whose values change the generated SQL and remain in the key.
+     */
+    protected static final Set<String> STRUCTURE_FIELDS = new HashSet<>(Arrays.asList(
+        AssetQuery.class.getName() + ".recursive",
+        AssetQuery.class.getName() + ".select",
+        AssetQuery.class.getName() + ".access",
+        AssetQuery.class.getName() + ".names",
+        AssetQuery.class.getName() + ".parents",
+        AssetQuery.class.getName() + ".paths",
+        AssetQuery.class.getName() + ".tenant",
+        AssetQuery.class.getName() + ".types",
+        AssetQuery.class.getName() + ".attributes",
+        AssetQuery.class.getName() + ".attributeMeta",
+        AssetQuery.class.getName() + ".orderBy",
+        AssetQuery.class.getName() + ".limit",
+        AssetQuery.class.getName() + ".after",
+        AssetQuery.Select.class.getName() + ".attributes",
+        AssetQuery.Select.class.getName() + ".meta",
+        AssetQuery.Select.class.getName() + ".excludePath",
+        AssetQuery.Select.class.getName() + ".excludeAttributeMeta",
+        AssetQuery.Select.class.getName() + ".excludeAttributes",
+        AssetQuery.Select.class.getName() + ".excludeAttributeValue",
+        AssetQuery.Select.class.getName() + ".excludeAttributeTimestamp",
+        AssetQuery.Select.class.getName() + ".excludeAttributeType",
+        AssetQuery.Select.class.getName() + ".excludeParentInfo",
+        AssetQuery.OrderBy.class.getName() + ".property",
+        AssetQuery.OrderBy.class.getName() + ".descending",
+        LogicGroup.class.getName() + ".operator",
+        LogicGroup.class.getName() + ".items",
+        LogicGroup.class.getName() + ".groups",
+        StringPredicate.class.getName() + ".match",
+        StringPredicate.class.getName() + ".caseSensitive",
+        StringPredicate.class.getName() + ".negate",
+        ParentPredicate.class.getName() + ".noParent",
+        AttributePredicate.class.getName() + ".notExists",
+        AttributePredicate.class.getName() + ".value",
+        NewAttributePredicate.class.getName() + ".meta",
+        NewAttributePredicate.class.getName() + ".lastValue",
+        NewAttributePredicate.class.getName() + ".valueTimestamp",
+        MetaPredicate.class.getName() + ".itemValuePredicate",
+        NumberPredicate.class.getName() + ".operator",
+        NumberPredicate.class.getName() + ".numberType",
+        NumberPredicate.class.getName() + ".negate",
+        DateTimePredicate.class.getName() + ".operator",
+        DateTimePredicate.class.getName() + ".negate",
+        BooleanPredicate.class.getName() + ".value",
+        StringArrayPredicate.class.getName() + ".predicates",
+        ObjectValueKeyPredicate.class.getName() + ".negated",
+        ArrayPredicate.class.getName() + ".negated",
+        ArrayPredicate.class.getName() + ".index",
+        ArrayPredicate.class.getName() + ".lengthEquals",
+        ArrayPredicate.class.getName() + ".lengthGreaterThan",
+        ArrayPredicate.class.getName() + ".lengthLessThan",
+        GeofencePredicate.class.getName() + ".negated",
+        RadialGeofencePredicate.class.getName() + ".radius",
+        RadialGeofencePredicate.class.getName() + ".lat",
+        RadialGeofencePredicate.class.getName() + ".lng",
+        RectangularGeofencePredicate.class.getName() + ".latMin",
+        RectangularGeofencePredicate.class.getName() + ".lngMin",
+        RectangularGeofencePredicate.class.getName() + ".latMax",
+        RectangularGeofencePredicate.class.getName() + ".lngMax"
+    ));
+
+    protected static final Map<Class<?>, List<ShapeField>> FIELDS = new ConcurrentHashMap<>();
+
+    protected final StringBuilder key = new StringBuilder();
+    protected final List<Object> nodes = new ArrayList<>();
+
+    public static AssetQueryShape of(AssetQuery query) {
+        AssetQueryShape shape = new AssetQueryShape();
+        shape.append(query, true);
+        return shape;
+    }
+
+    protected AssetQueryShape() {
+    }
+
+    public String getKey() {
+        return key.toString();
+    }
+
+    public List<Object> getNodes() {
+        return nodes;
+    }
+
+    protected void append(Object value, boolean parameters) {
+        if (value == null) {
+            key.append("null");
+        } else if (value instanceof String) {
+            appendString((String) value);
+        } else if (value instanceof Number || value instanceof Boolean || value instanceof Character || value instanceof Enum) {
+            key.append(value);
+        } else if (value instanceof Date) {
+            key.append(((Date) value).getTime());
+        } else if (value instanceof Value) {
+            appendString(((Value) value).toJson());
+        } else if (value.getClass().isArray()) {
+            key.append('[');
+            for (int i = 0; i < Array.getLength(value); i++) {
+                append(Array.get(value, i), parameters);
+                key.append(',');
+            }
+            key.append(']');
+        } else if (value instanceof Collection) {
+            key.append('[');
+            for (Object item : (Collection<?>) value) {
+                append(item, parameters);
+                key.append(',');
+            }
+            key.append(']');
+        } else {
+            nodes.add(value);
+            key.append(value.getClass().getName()).append('{');
+            for (ShapeField shapeField : getFields(value.getClass())) {
+                Object fieldValue;
+                try {
+                    fieldValue = shapeField.field.get(value);
+                } catch (IllegalAccessException ex) {
+                    throw new IllegalStateException(ex);
+                }
+                key.append(shapeField.field.getName()).append('=');
+                if (parameters && shapeField.parameter) {
+                    appendParameter(fieldValue);
+                } else {
+                    append(fieldValue, parameters && !shapeField.shapeOnly);
+                }
+                key.append(',');
+            }
+            key.append('}');
+        }
+    }
+
+    protected void appendParameter(Object value) {
+        if (value == null || "".equals(value)) {
+            append(value, false);
+        } else if (value.getClass().isArray()) {
+            // The SQL has a placeholder for each element
+            key.append('[');
+            for (int i = 0; i < Array.getLength(value); i++) {
+                key.append("?,");
+            }
+            key.append(']');
+        } else {
+            key.append('?');
+        }
+    }
+
+    protected void appendString(String value) {
+        // Length prefixed so any content can be embedded in the key
+        key.append(value.length()).append(':').append(value);
+    }
+
+    protected static List<ShapeField> getFields(Class<?> type) {
+        return FIELDS.computeIfAbsent(type, t -> {
+            List<ShapeField> fields = new ArrayList<>();
+            for (Class<?> c = t; c != null && c != Object.class; c = c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    if (Modifier.isStatic(field.getModifiers()) || field.isSynthetic()) {
+                        continue;
+                    }
+                    field.setAccessible(true);
+                    String name = c.getName() + "." + field.getName();
+                    if (!PARAMETER_FIELDS.contains(name) && !SHAPE_ONLY_FIELDS.contains(name) && !STRUCTURE_FIELDS.contains(name)) {
+                        throw new IllegalStateException("Field is not classified as parameter, shape only or structure: " + name);
+                    }
+                    fields.add(new ShapeField(field, PARAMETER_FIELDS.contains(name), SHAPE_ONLY_FIELDS.contains(name)));
+                }
+            }
+            return fields;
+        });
+    }
+}
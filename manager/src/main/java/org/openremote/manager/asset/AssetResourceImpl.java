@@ -576,7 +576,7 @@ public class AssetResourceImpl extends ManagerWebResource implements AssetResour
 
             return result.toArray(new Asset[result.size()]);
 
-        } catch (IllegalStateException ex) {
+        } catch (IllegalStateException | IllegalArgumentException ex) {
             throw new WebApplicationException(ex, BAD_REQUEST);
         }
     }
@@ -611,7 +611,7 @@ public class AssetResourceImpl extends ManagerWebResource implements AssetResour
             request.setAttribute(HttpHeaders.CONTENT_ENCODING, "gzip");
 
             return result.toArray(new Asset[result.size()]);
-        } catch (IllegalStateException ex) {
+        } catch (IllegalStateException | IllegalArgumentException ex) {
             throw new WebApplicationException(ex, BAD_REQUEST);
         }
     }
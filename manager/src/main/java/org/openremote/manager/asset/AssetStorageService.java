@@ -19,8 +19,15 @@
  */
 package org.openremote.manager.asset;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
 import org.apache.camel.builder.RouteBuilder;
 import org.hibernate.Session;
+import org.hibernate.engine.spi.SessionImplementor;
 import org.hibernate.jdbc.AbstractReturningWork;
 import org.openremote.container.Container;
 import org.openremote.container.ContainerService;
@@ -41,6 +48,7 @@ import org.openremote.model.Constants;
 import org.openremote.model.ValidationFailure;
 import org.openremote.model.asset.*;
 import org.openremote.model.attribute.AttributeEvent;
+import org.openremote.model.attribute.AttributeType;
 import org.openremote.model.attribute.MetaItemDescriptor;
 import org.openremote.model.attribute.MetaItemType;
 import org.openremote.model.calendar.CalendarEvent;
@@ -69,8 +77,10 @@ import java.sql.*;
 import java.util.Date;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
@@ -80,6 +90,7 @@ import static java.util.stream.Collectors.joining;
 import static org.apache.camel.builder.PredicateBuilder.or;
 import static org.openremote.container.persistence.PersistenceEvent.PERSISTENCE_TOPIC;
 import static org.openremote.container.persistence.PersistenceEvent.isPersistenceEventForEntityType;
+import static org.openremote.container.util.MapAccess.getInteger;
 import static org.openremote.manager.event.ClientEventService.CLIENT_EVENT_TOPIC;
 import static org.openremote.manager.event.ClientEventService.getSessionKey;
 import static org.openremote.manager.rules.AssetQueryPredicate.asPredicate;
@@ -96,35 +107,78 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
 
         final protected String querySql;
         final protected List<ParameterBinder> binders;
+        final protected Map<Object, Integer> nodeIndices = new IdentityHashMap<>();
 
-        public PreparedAssetQuery(String querySql, List<ParameterBinder> binders) {
+        /**
+         * @param shape the shape of the query the SQL and binders were built from.
+         */
+        public PreparedAssetQuery(String querySql, List<ParameterBinder> binders, AssetQueryShape shape) {
             this.querySql = querySql;
             this.binders = binders;
+            for (int i = 0; i < shape.getNodes().size(); i++) {
+                nodeIndices.put(shape.getNodes().get(i), i);
+            }
         }
 
-        protected void apply(PreparedStatement preparedStatement) {
+        /**
+         * Binds the parameter values of the executed query, which must have the same shape as the query the SQL was
+         * built from.
+         */
+        protected void apply(PreparedStatement preparedStatement, AssetQueryShape shape) {
+            ParameterValues values = new ParameterValues(nodeIndices, shape.getNodes());
             for (ParameterBinder binder : binders) {
-                binder.accept(preparedStatement);
+                binder.accept(preparedStatement, values);
             }
         }
     }
 
-    protected interface ParameterBinder extends Consumer<PreparedStatement> {
+    /**
+     * Resolves an object of the query the SQL was built from to the object at the same position in the executed query.
+     */
+    protected static class ParameterValues {
+
+        final protected Map<Object, Integer> nodeIndices;
+        final protected List<Object> nodes;
+
+        protected ParameterValues(Map<Object, Integer> nodeIndices, List<Object> nodes) {
+            this.nodeIndices = nodeIndices;
+            this.nodes = nodes;
+        }
+
+        @SuppressWarnings("unchecked")
+        protected <T> T of(T node) {
+            Integer index = nodeIndices.get(node);
+            return index != null ? (T) nodes.get(index) : node;
+        }
+    }
+
+    protected interface ParameterBinder extends BiConsumer<PreparedStatement, ParameterValues> {
 
         @Override
-        default void accept(PreparedStatement st) {
+        default void accept(PreparedStatement st, ParameterValues values) {
             try {
-                acceptStatement(st);
+                acceptStatement(st, values);
             } catch (SQLException ex) {
                 throw new RuntimeException(ex);
             }
         }
 
-        void acceptStatement(PreparedStatement st) throws SQLException;
+        void acceptStatement(PreparedStatement st, ParameterValues values) throws SQLException;
     }
 
     private static final Logger LOG = Logger.getLogger(AssetStorageService.class.getName());
     public static final int PRIORITY = MED_PRIORITY;
+    /**
+     * Maximum number of complete assets kept in memory for {@link #find(String)} and friends, 0 disables the cache.
+     */
+    public static final String ASSET_CACHE_MAX_SIZE = "ASSET_CACHE_MAX_SIZE";
+    public static final int ASSET_CACHE_MAX_SIZE_DEFAULT = 10000;
+    public static final int PREPARED_QUERY_CACHE_MAX_SIZE = 1000;
+    // Query JSON used to copy queries, it must round trip without turning empty arrays into nulls
+    @SuppressWarnings("deprecation")
+    protected static final ObjectMapper QUERY_JSON = Container.JSON.copy()
+        .setSerializationInclusion(JsonInclude.Include.ALWAYS)
+        .configure(SerializationFeature.WRITE_EMPTY_JSON_ARRAYS, true);
     protected static String META_ITEM_RESTRICTED_READ_SQL_FRAGMENT;
     protected static String META_ITEM_PUBLIC_READ_SQL_FRAGMENT;
 
@@ -202,6 +256,11 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
     protected ManagerIdentityService identityService;
     protected ClientEventService clientEventService;
     protected GatewayService gatewayService;
+    protected AssetCache assetCache;
+    protected final Cache<String, Pair<PreparedAssetQuery, Boolean>> preparedQueryCache = CacheBuilder.newBuilder()
+        .maximumSize(PREPARED_QUERY_CACHE_MAX_SIZE)
+        .recordStats()
+        .build();
 
     /**
      * Will evaluate each {@link CalendarEventPredicate} and apply it depending on the {@link LogicGroup} type
@@ -287,6 +346,8 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
         identityService = container.getService(ManagerIdentityService.class);
         clientEventService = container.getService(ClientEventService.class);
         gatewayService = container.getService(GatewayService.class);
+        int assetCacheMaxSize = getInteger(container.getConfig(), ASSET_CACHE_MAX_SIZE, ASSET_CACHE_MAX_SIZE_DEFAULT);
+        assetCache = assetCacheMaxSize > 0 ? new AssetCache(assetCacheMaxSize) : null;
         EventSubscriptionAuthorizer assetEventAuthorizer = AssetStorageService.assetInfoAuthorizer(identityService, this);
 
         META_ITEM_RESTRICTED_READ_SQL_FRAGMENT =
@@ -342,7 +403,10 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
 
     @Override
     public void stop(Container container) throws Exception {
-
+        if (assetCache != null) {
+            LOG.info("Asset cache statistics: " + assetCache + ", " + assetCache.getStats());
+            assetCache.invalidateAll();
+        }
     }
 
     @SuppressWarnings("unchecked")
@@ -352,7 +416,14 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
         from(PERSISTENCE_TOPIC)
             .routeId("AssetPersistenceChanges")
             .filter(isPersistenceEventForEntityType(Asset.class))
-            .process(exchange -> publishModificationEvents(exchange.getIn().getBody(PersistenceEvent.class)));
+            .process(exchange -> {
+                PersistenceEvent<Asset> persistenceEvent = exchange.getIn().getBody(PersistenceEvent.class);
+                // Changes that didn't go through merge or delete
+                if (assetCache != null) {
+                    assetCache.invalidate(persistenceEvent.getEntity().getId());
+                }
+                publishModificationEvents(persistenceEvent);
+            });
 
         // React if a client wants to read assets and attributes
         from(CLIENT_EVENT_TOPIC)
@@ -415,8 +486,26 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
                         // Set access requirements
                         query.access(access);
 
-                        List<Asset> assets = findAll(query);
-                        clientEventService.sendToSession(sessionKey, new AssetsEvent(readAssets.getMessageId(), assets));
+                        Integer chunkSize = readAssets.getChunkSize();
+                        if (chunkSize == null || chunkSize <= 0) {
+                            List<Asset> assets = findAll(query);
+                            clientEventService.sendToSession(sessionKey, new AssetsEvent(readAssets.getMessageId(), assets));
+                            return;
+                        }
+
+                        // Each chunk is sent when the next one is available, so the last can be marked as such
+                        List<List<Asset>> pendingChunk = new ArrayList<>(1);
+                        findAll(query, chunkSize, chunk -> {
+                            if (!pendingChunk.isEmpty()) {
+                                clientEventService.sendToSession(sessionKey, new AssetsEvent(readAssets.getMessageId(), pendingChunk.remove(0), true));
+                            }
+                            pendingChunk.add(chunk);
+                        });
+                        clientEventService.sendToSession(sessionKey, new AssetsEvent(
+                            readAssets.getMessageId(),
+                            pendingChunk.isEmpty() ? Collections.emptyList() : pendingChunk.get(0),
+                            false
+                        ));
                     })
             .endChoice()
             .end();
@@ -425,7 +514,7 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
     public Asset find(String assetId) {
         if (assetId == null)
             throw new IllegalArgumentException("Can't query null asset identifier");
-        return find(new AssetQuery().ids(assetId));
+        return findCached(assetId, () -> find(new AssetQuery().ids(assetId)));
     }
 
     /**
@@ -434,7 +523,10 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
     public Asset find(String assetId, boolean loadComplete) {
         if (assetId == null)
             throw new IllegalArgumentException("Can't query null asset identifier");
-        return find(new AssetQuery().select(loadComplete ? null : Select.selectExcludeAll()).ids(assetId));
+        if (loadComplete) {
+            return findCached(assetId, () -> find(new AssetQuery().ids(assetId)));
+        }
+        return find(new AssetQuery().select(Select.selectExcludeAll()).ids(assetId));
     }
 
     /**
@@ -451,6 +543,9 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
     public Asset find(String assetId, boolean loadComplete, Access access) {
         if (assetId == null)
             throw new IllegalArgumentException("Can't query null asset identifier");
+        if (loadComplete && access == PRIVATE) {
+            return findCached(assetId, () -> find(new AssetQuery().ids(assetId)));
+        }
         return find(new AssetQuery()
             .select(loadComplete
                 ? null
@@ -700,6 +795,8 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
                 updatedAsset = em.merge(asset);
             }
 
+            beginAssetCacheUpdate(em, updatedAsset != null ? updatedAsset.getId() : asset.getId());
+
             if (user != null) {
                 storeUserAsset(em, new UserAsset(user.getRealm(), user.getId(), updatedAsset.getId()));
             }
@@ -797,7 +894,10 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
                 }
 
                 assets.sort(Comparator.comparingInt((Asset asset) -> asset.getPath() == null ? 0 : asset.getPath().length).reversed());
-                assets.forEach(em::remove);
+                assets.forEach(asset -> {
+                    beginAssetCacheUpdate(em, asset.getId());
+                    em.remove(asset);
+                });
             });
         } catch (Exception e) {
             return false;
@@ -907,8 +1007,8 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
         return persistenceService.doReturningTransaction(entityManager -> entityManager.unwrap(Session.class).doReturningWork(new AbstractReturningWork<Boolean>() {
             @Override
             public Boolean execute(Connection connection) throws SQLException {
-                try (PreparedStatement st = connection.prepareStatement("select count(*) from Asset a where ? = ANY(get_asset_tree_path(a.ID)) AND a.id = ANY(?)")) {
-                    st.setString(1, parentAssetId);
+                try (PreparedStatement st = connection.prepareStatement("select count(*) from Asset a where a.PATH @> ? AND a.id = ANY(?)")) {
+                    st.setArray(1, st.getConnection().createArrayOf("text", new String[]{parentAssetId}));
                     st.setArray(2, st.getConnection().createArrayOf("text", assetIds.toArray()));
                     ResultSet rs = st.executeQuery();
                     return rs.next() && rs.getInt(1) == assetIds.size();
@@ -977,6 +1077,9 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
     protected Asset find(EntityManager em, String assetId, boolean loadComplete, Access access) {
         if (assetId == null)
             throw new IllegalArgumentException("Can't query null asset identifier");
+        if (loadComplete && access == PRIVATE) {
+            return findCached(assetId, () -> find(em, new AssetQuery().ids(assetId)));
+        }
         return find(
             em,
             new AssetQuery()
@@ -988,16 +1091,55 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
         );
     }
 
+    /**
+     * Executes the query and passes the results to the consumer in chunks of at most the given size; the rows are
+     * fetched from the database with a cursor, so only one chunk of assets has to be held in memory. The consumer is
+     * called within the transaction, it is not called if there are no results.
+     */
+    public void findAll(AssetQuery query, int chunkSize, Consumer<List<Asset>> chunkConsumer) {
+        if (chunkSize <= 0)
+            throw new IllegalArgumentException("Chunk size must be greater than zero");
+
+        persistenceService.doTransaction(em -> {
+            List<Asset> chunk = new ArrayList<>(chunkSize);
+            findAll(em, query, chunkSize, asset -> {
+                chunk.add(asset);
+                if (chunk.size() == chunkSize) {
+                    chunkConsumer.accept(new ArrayList<>(chunk));
+                    chunk.clear();
+                }
+            });
+            if (!chunk.isEmpty()) {
+                chunkConsumer.accept(chunk);
+            }
+        });
+    }
+
     protected List<Asset> findAll(EntityManager em, AssetQuery query) {
+        List<Asset> result = new ArrayList<>();
+        findAll(em, query, 0, result::add);
+        return result;
+    }
+
+    /**
+     * @param fetchSize the number of rows the JDBC driver fetches per round trip, <code>0</code> fetches all rows at
+     *                  once.
+     */
+    protected void findAll(EntityManager em, AssetQuery query, int fetchSize, Consumer<Asset> consumer) {
 
         if (query.access == null)
             query.access = PRIVATE;
 
         // Default to order by creation date if the query may return multiple results
-        if (query.orderBy == null && query.ids == null)
+        if (query.orderBy == null && (query.ids == null || query.after != null))
             query.orderBy = new OrderBy(OrderBy.Property.CREATED_ON);
 
-        Pair<PreparedAssetQuery, Boolean> queryAndContainsCalendarPredicate = buildQuery(query);
+        if (query.after != null && !isKeysetOrderBy(query.orderBy)) {
+            throw new IllegalArgumentException("Asset query cursor requires order by " + OrderBy.Property.CREATED_ON + " or " + OrderBy.Property.NAME);
+        }
+
+        AssetQueryShape shape = AssetQueryShape.of(query);
+        Pair<PreparedAssetQuery, Boolean> queryAndContainsCalendarPredicate = getPreparedQuery(query, shape);
         PreparedAssetQuery querySql = queryAndContainsCalendarPredicate.key;
         boolean containsCalendarPredicate = queryAndContainsCalendarPredicate.value;
 
@@ -1006,36 +1148,67 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
             throw new IllegalArgumentException("Asset query contains a calendar event predicate which requires the attribute values and types to be included in the select (as calendar event predicate is applied post DB query)");
         }
 
-        return em.unwrap(Session.class).doReturningWork(new AbstractReturningWork<List<Asset>>() {
-            @Override
-            public List<Asset> execute(Connection connection) throws SQLException {
-                LOG.fine("Executing: " + querySql.querySql);
-                try (PreparedStatement st = connection.prepareStatement(querySql.querySql)) {
-                    querySql.apply(st);
-
-                    try (ResultSet rs = st.executeQuery()) {
-                        List<Asset> result = new ArrayList<>();
-                        if (containsCalendarPredicate) {
-                            while (rs.next()) {
-                                Asset asset = mapResultTuple(query, rs);
-                                // Apply calendar event filter here (difficult to translate this into a SQL query)
-                                if (calendarEventPredicateMatches(query, asset)) {
-                                    result.add(asset);
-                                }
-                            }
-                        } else {
-                            while (rs.next()) {
-                                result.add(mapResultTuple(query, rs));
-                            }
+        em.unwrap(Session.class).doWork(connection -> {
+            LOG.fine("Executing: " + querySql.querySql);
+            try (PreparedStatement st = connection.prepareStatement(querySql.querySql)) {
+                querySql.apply(st, shape);
+                // The driver only uses a cursor inside a transaction, which is always the case here
+                st.setFetchSize(fetchSize);
+
+                try (ResultSet rs = st.executeQuery()) {
+                    while (rs.next()) {
+                        Asset asset = mapResultTuple(query, rs);
+                        // Apply calendar event filter here (difficult to translate this into a SQL query)
+                        if (!containsCalendarPredicate || calendarEventPredicateMatches(query, asset)) {
+                            consumer.accept(asset);
                         }
-                        return result;
                     }
                 }
             }
         });
     }
 
-    protected Pair<PreparedAssetQuery, Boolean> buildQuery(AssetQuery query) {
+    protected static boolean isKeysetOrderBy(OrderBy orderBy) {
+        return orderBy != null && (orderBy.property == OrderBy.Property.CREATED_ON || orderBy.property == OrderBy.Property.NAME);
+    }
+
+    /**
+     * Queries of the same shape reuse the generated SQL and parameter binders, the binders read the values of the
+     * executed query. The SQL is built from a private copy of the query so later changes to the caller's instance
+     * can't affect it. As the SQL only depends on the shape of the query the JDBC driver can also reuse the server side
+     * prepared statement and its plan.
+     */
+    protected Pair<PreparedAssetQuery, Boolean> getPreparedQuery(AssetQuery query, AssetQueryShape shape) {
+        String key = shape.getKey();
+        Pair<PreparedAssetQuery, Boolean> prepared = preparedQueryCache.getIfPresent(key);
+        if (prepared != null) {
+            return prepared;
+        }
+
+        AssetQuery copy;
+        AssetQueryShape copyShape;
+        try {
+            copy = QUERY_JSON.readValue(QUERY_JSON.writeValueAsString(query), AssetQuery.class);
+            copyShape = AssetQueryShape.of(copy);
+        } catch (Exception e) {
+            LOG.log(Level.FINE, "Asset query can't be cached: " + query, e);
+            return buildQuery(query, shape);
+        }
+        if (!copyShape.getKey().equals(key)) {
+            LOG.fine("Asset query can't be cached, its copy has a different shape: " + query);
+            return buildQuery(query, shape);
+        }
+
+        prepared = buildQuery(copy, copyShape);
+        preparedQueryCache.put(key, prepared);
+        return prepared;
+    }
+
+    public CacheStats getPreparedQueryCacheStats() {
+        return preparedQueryCache.stats();
+    }
+
+    protected Pair<PreparedAssetQuery, Boolean> buildQuery(AssetQuery query, AssetQueryShape shape) {
         LOG.fine("Building: " + query);
         StringBuilder sb = new StringBuilder();
         boolean recursive = query.recursive;
@@ -1045,12 +1218,13 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
         boolean containsCalendarPredicate = appendWhereClause(sb, query, 1, binders);
 
         if (recursive) {
-            sb.insert(0, "WITH RECURSIVE top_level_assets AS ((");
-            sb.append(") UNION (");
+            // Descendants are found with the materialized path of each asset instead of walking the tree
+            sb.insert(0, "WITH top_level_assets AS (");
+            sb.append("), tree_assets AS (select * from top_level_assets UNION ");
             sb.append(buildSelectString(query, 2, binders));
             sb.append(buildFromString(query, 2));
             containsCalendarPredicate = !containsCalendarPredicate && appendWhereClause(sb, query, 2, binders);
-            sb.append("))");
+            sb.append(")");
             sb.append(buildSelectString(query, 3, binders));
             sb.append(buildFromString(query, 3));
             containsCalendarPredicate = !containsCalendarPredicate && appendWhereClause(sb, query, 3, binders);
@@ -1058,7 +1232,7 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
 
         sb.append(buildOrderByString(query));
         sb.append(buildLimitString(query));
-        return new Pair<>(new PreparedAssetQuery(sb.toString(), binders), containsCalendarPredicate);
+        return new Pair<>(new PreparedAssetQuery(sb.toString(), binders, shape), containsCalendarPredicate);
     }
 
     protected String buildSelectString(AssetQuery query, int level, List<ParameterBinder> binders) {
@@ -1084,12 +1258,11 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
             sb.append(", A.NAME as TENANT_NAME");
         }
 
-        if (!query.recursive || level == 3) {
-            if (select == null || !select.excludePath) {
-                sb.append(", get_asset_tree_path(A.ID) as PATH");
-            } else {
-                sb.append(", NULL as PATH");
-            }
+        // The union selects always include the path so the CTE select can return it
+        if ((query.recursive && level != 3) || select == null || !select.excludePath) {
+            sb.append(", A.PATH as PATH");
+        } else {
+            sb.append(", NULL as PATH");
         }
 
         if (select == null || !select.excludeAttributes) {
@@ -1180,7 +1353,7 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
                 sb.append(i == select.attributes.length - 1 ? "?" : "?,");
                 final String attributeName = select.attributes[i];
                 final int pos = binders.size() + 1;
-                binders.add(st -> st.setString(pos, attributeName));
+                binders.add((st, values) -> st.setString(pos, attributeName));
             }
             sb.append(")");
         }
@@ -1208,10 +1381,10 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
         if (level == 1) {
             sb.append(" from Asset A ");
         } else if (level == 2) {
-            sb.append(" from top_level_assets P ");
-            sb.append("join ASSET A on A.PARENT_ID = P.ID ");
+            sb.append(" from ASSET A ");
+            sb.append("join ASSET P on A.PARENT_ID = P.ID ");
         } else {
-            sb.append(" from top_level_assets A ");
+            sb.append(" from tree_assets A ");
         }
 
         if ((!recursive || level == 3) && query.ids == null && query.userIds != null && query.userIds.length > 0) {
@@ -1242,7 +1415,7 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
     protected String buildOrderByString(AssetQuery query) {
         StringBuilder sb = new StringBuilder();
 
-        if (query.ids != null && !query.recursive) {
+        if (query.ids != null && !query.recursive && query.after == null) {
             return sb.toString();
         }
 
@@ -1267,6 +1440,12 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
                     break;
             }
             sb.append(query.orderBy.descending ? "desc " : "asc ");
+
+            if (isKeysetOrderBy(query.orderBy)) {
+                // Unique order required for keyset pagination, served by the (CREATED_ON, ID) and (NAME, ID) indices
+                sb.append(", A.ID ");
+                sb.append(query.orderBy.descending ? "desc " : "asc ");
+            }
         }
 
         return sb.toString();
@@ -1288,19 +1467,20 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
         sb.append(" where true");
 
         if (level == 2) {
+            sb.append(" and A.PATH && (select array_agg(text(T.ID)) from top_level_assets T)");
             return containsCalendarPredicate;
         }
 
         if (level == 1 && query.ids != null && query.ids.length > 0) {
             sb.append(" and A.ID IN (?");
             final int pos = binders.size() + 1;
-            binders.add(st -> st.setString(pos, query.ids[0]));
+            binders.add((st, values) -> st.setString(pos, values.of(query).ids[0]));
 
             for (int i = 1; i < query.ids.length; i++) {
                 sb.append(",?");
                 final int pos2 = binders.size() + 1;
                 final int index = i;
-                binders.add(st -> st.setString(pos2, query.ids[index]));
+                binders.add((st, values) -> st.setString(pos2, values.of(query).ids[index]));
             }
             sb.append(")");
         }
@@ -1318,7 +1498,7 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
                 sb.append(pred.caseSensitive ? "A.NAME " : "upper(A.NAME)");
                 sb.append(buildMatchFilter(pred));
                 final int pos = binders.size() + 1;
-                binders.add(st -> st.setString(pos, pred.prepareValue()));
+                binders.add((st, values) -> st.setString(pos, values.of(pred).prepareValue()));
             }
             sb.append(")");
         }
@@ -1340,7 +1520,7 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
                     sb.append("p.ID = a.PARENT_ID");
                     sb.append(" and A.PARENT_ID = ?");
                     final int pos = binders.size() + 1;
-                    binders.add(st -> st.setString(pos, pred.id));
+                    binders.add((st, values) -> st.setString(pos, values.of(pred).id));
                 } else if (level == 1 && pred.noParent) {
                     sb.append("A.PARENT_ID is null");
                 } else if (pred.type != null || pred.name != null) {
@@ -1350,12 +1530,12 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
                     if (pred.type != null) {
                         sb.append(" and P.ASSET_TYPE = ?");
                         final int pos = binders.size() + 1;
-                        binders.add(st -> st.setString(pos, pred.type));
+                        binders.add((st, values) -> st.setString(pos, values.of(pred).type));
                     }
                     if (pred.name != null) {
                         sb.append(" and P.NAME = ?");
                         final int pos = binders.size() + 1;
-                        binders.add(st -> st.setString(pos, pred.name));
+                        binders.add((st, values) -> st.setString(pos, values.of(pred).name));
                     }
                 } else {
                     sb.append("true");
@@ -1377,31 +1557,56 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
                 }
                 isFirst = false;
 
-                sb.append("? <@ get_asset_tree_path(A.ID)");
+                sb.append("A.PATH @> ?");
                 final int pos = binders.size() + 1;
-                binders.add(st -> st.setArray(pos, st.getConnection().createArrayOf("text", pred.path)));
+                binders.add((st, values) -> st.setArray(pos, st.getConnection().createArrayOf("text", values.of(pred).path)));
             }
 
             sb.append(")");
         }
 
         if (!recursive || level == 3) {
+            if (query.after != null && isKeysetOrderBy(query.orderBy)) {
+                String comparison = query.orderBy.descending ? " < " : " > ";
+                final Cursor after = query.after;
+                if (query.orderBy.property == OrderBy.Property.CREATED_ON) {
+                    sb.append(" and (A.CREATED_ON, A.ID)").append(comparison).append("(?, ?)");
+                    final int pos = binders.size() + 1;
+                    binders.add((st, values) -> {
+                        Long createdOn = values.of(after).createdOn;
+                        st.setTimestamp(pos, new Timestamp(createdOn != null ? createdOn : 0L));
+                    });
+                } else {
+                    sb.append(" and (A.NAME, A.ID)").append(comparison).append("(?, ?)");
+                    final int pos = binders.size() + 1;
+                    binders.add((st, values) -> {
+                        String name = values.of(after).name;
+                        st.setString(pos, name != null ? name : "");
+                    });
+                }
+                final int pos = binders.size() + 1;
+                binders.add((st, values) -> {
+                    String id = values.of(after).id;
+                    st.setString(pos, id != null ? id : "");
+                });
+            }
+
             if (query.tenant != null && !TextUtil.isNullOrEmpty(query.tenant.realm)) {
                 sb.append(" and A.REALM = ?");
                 final int pos = binders.size() + 1;
-                binders.add(st -> st.setString(pos, query.tenant.realm));
+                binders.add((st, values) -> st.setString(pos, values.of(query.tenant).realm));
             }
 
             if (query.ids == null && query.userIds != null && query.userIds.length > 0) {
                 sb.append(" and ua.ASSET_ID = a.ID and ua.USER_ID IN (?");
                 final int pos = binders.size() + 1;
-                binders.add(st -> st.setString(pos, query.userIds[0]));
+                binders.add((st, values) -> st.setString(pos, values.of(query).userIds[0]));
 
                 for (int i = 1; i < query.userIds.length; i++) {
                     sb.append(",?");
                     final int pos2 = binders.size() + 1;
                     final int index = i;
-                    binders.add(st -> st.setString(pos2, query.userIds[index]));
+                    binders.add((st, values) -> st.setString(pos2, values.of(query).userIds[index]));
                 }
                 sb.append(")");
             }
@@ -1425,7 +1630,7 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
                     sb.append(pred.caseSensitive ? "A.ASSET_TYPE" : " and upper(A.ASSET_TYPE)");
                     sb.append(buildMatchFilter(pred));
                     final int pos = binders.size() + 1;
-                    binders.add(st -> st.setString(pos, pred.prepareValue()));
+                    binders.add((st, values) -> st.setString(pos, values.of(pred).prepareValue()));
                     sb.append(")");
                 }
 
@@ -1448,6 +1653,15 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
             }
 
             if (query.attributes != null) {
+                // Also apply geofences of the location attribute outside the correlated attribute sub query, so the
+                // spatial index selects the candidate assets
+                if (query.attributes.operator == null || query.attributes.operator == LogicGroup.Operator.AND) {
+                    query.attributes.getItems().stream()
+                        .filter(attributePredicate -> !attributePredicate.notExists && isIndexedLocationPredicate(attributePredicate))
+                        .forEach(attributePredicate ->
+                            sb.append(" and ").append(buildLocationFilter((GeofencePredicate) attributePredicate.value)));
+                }
+
                 AtomicInteger joinCounter = new AtomicInteger(1);
                 sb.append(" and A.ID in (select A.ID from");
                 sb.append(" jsonb_each(A.ATTRIBUTES) as AX1");
@@ -1505,7 +1719,7 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
                     if (attributePredicate.notExists && attributePredicate.name != null && attributePredicate.name.value != null) {
                         sb.append("NOT A.ATTRIBUTES ?? ?");
                         final int pos = binders.size() + 1;
-                        binders.add(st -> st.setString(pos, attributePredicate.name.value));
+                        binders.add((st, values) -> st.setString(pos, values.of(attributePredicate.name).value));
                     } else {
                         sb.append(buildAttributeFilter(attributePredicate, joinCounter.get(), binders));
                     }
@@ -1562,7 +1776,7 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
                 );
                 sb.append(buildMatchFilter(attributeMetaPredicate.itemNamePredicate));
                 final int pos = binders.size() + 1;
-                binders.add(st -> st.setString(pos, attributeMetaPredicate.itemNamePredicate.prepareValue()));
+                binders.add((st, values) -> st.setString(pos, values.of(attributeMetaPredicate.itemNamePredicate).prepareValue()));
             }
 
             if (attributeMetaPredicate.itemValuePredicate != null) {
@@ -1575,7 +1789,7 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
                     sb.append(buildMatchFilter(stringPredicate));
 
                     final int pos = binders.size() + 1;
-                    binders.add(st -> st.setString(pos, stringPredicate.prepareValue()));
+                    binders.add((st, values) -> st.setString(pos, values.of(stringPredicate).prepareValue()));
                 } else if (attributeMetaPredicate.itemValuePredicate instanceof BooleanPredicate) {
                     BooleanPredicate booleanPredicate = (BooleanPredicate) attributeMetaPredicate.itemValuePredicate;
                     sb.append(" and AM.VALUE #> '{value}' = to_jsonb(")
@@ -1591,7 +1805,7 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
                         );
                         sb.append(buildMatchFilter(stringPredicate));
                         final int pos = binders.size() + 1;
-                        binders.add(st -> st.setString(pos, stringPredicate.prepareValue()));
+                        binders.add((st, values) -> st.setString(pos, values.of(stringPredicate).prepareValue()));
                     }
                 }
             }
@@ -1612,7 +1826,7 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
             attributeBuilder.append(buildMatchFilter(attributePredicate.name));
 
             final int pos = binders.size() + 1;
-            binders.add(st -> st.setString(pos, attributePredicate.name.prepareValue()));
+            binders.add((st, values) -> st.setString(pos, values.of(attributePredicate.name).prepareValue()));
         }
         if (attributePredicate.value != null) {
 
@@ -1628,7 +1842,7 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
                 );
                 attributeBuilder.append(buildMatchFilter(stringPredicate));
                 final int pos = binders.size() + 1;
-                binders.add(st -> st.setString(pos, stringPredicate.prepareValue()));
+                binders.add((st, values) -> st.setString(pos, values.of(stringPredicate).prepareValue()));
             } else if (attributePredicate.value instanceof BooleanPredicate) {
                 BooleanPredicate booleanPredicate = (BooleanPredicate) attributePredicate.value;
                 attributeBuilder.append("AX")
@@ -1646,7 +1860,7 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
                     );
                     attributeBuilder.append(buildMatchFilter(stringPredicate));
                     final int pos = binders.size() + 1;
-                    binders.add(st -> st.setString(pos, stringPredicate.prepareValue()));
+                    binders.add((st, values) -> st.setString(pos, values.of(stringPredicate).prepareValue()));
                 }
             } else if (attributePredicate.value instanceof DateTimePredicate) {
                 DateTimePredicate dateTimePredicate = (DateTimePredicate) attributePredicate.value;
@@ -1654,15 +1868,16 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
                     .append(joinCounter)
                     .append(".Value #>> '{value}')::timestamp");
 
-                Pair<Long, Long> fromAndTo = AssetQueryPredicate.asFromAndTo(timerService.getCurrentTimeMillis(), dateTimePredicate);
-
+                // Relative date times are resolved when binding, so the prepared query can be reused
                 final int pos = binders.size() + 1;
-                binders.add(st -> st.setTimestamp(pos, new java.sql.Timestamp(fromAndTo.key)));
+                binders.add((st, values) -> st.setTimestamp(pos, new java.sql.Timestamp(
+                    AssetQueryPredicate.asFromAndTo(timerService.getCurrentTimeMillis(), values.of(dateTimePredicate)).key)));
                 attributeBuilder.append(buildOperatorFilter(dateTimePredicate.operator, dateTimePredicate.negate));
 
                 if (dateTimePredicate.operator == Operator.BETWEEN) {
                     final int pos2 = binders.size() + 1;
-                    binders.add(st -> st.setTimestamp(pos2, new java.sql.Timestamp(fromAndTo.value)));
+                    binders.add((st, values) -> st.setTimestamp(pos2, new java.sql.Timestamp(
+                        AssetQueryPredicate.asFromAndTo(timerService.getCurrentTimeMillis(), values.of(dateTimePredicate)).value)));
                 }
             } else if (attributePredicate.value instanceof NumberPredicate) {
                 NumberPredicate numberPredicate = (NumberPredicate) attributePredicate.value;
@@ -1675,17 +1890,17 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
                 switch (numberPredicate.numberType) {
                     case DOUBLE:
                     default:
-                        binders.add(st -> st.setDouble(pos, numberPredicate.value));
+                        binders.add((st, values) -> st.setDouble(pos, values.of(numberPredicate).value));
                         if (numberPredicate.operator == Operator.BETWEEN) {
                             final int pos2 = binders.size() + 1;
-                            binders.add(st -> st.setDouble(pos2, numberPredicate.rangeValue));
+                            binders.add((st, values) -> st.setDouble(pos2, values.of(numberPredicate).rangeValue));
                         }
                         break;
                     case INTEGER:
-                        binders.add(st -> st.setInt(pos, (int) numberPredicate.value));
+                        binders.add((st, values) -> st.setInt(pos, (int) values.of(numberPredicate).value));
                         if (numberPredicate.operator == Operator.BETWEEN) {
                             final int pos2 = binders.size() + 1;
-                            binders.add(st -> st.setInt(pos2, (int) numberPredicate.rangeValue));
+                            binders.add((st, values) -> st.setInt(pos2, (int) values.of(numberPredicate).rangeValue));
                         }
                         break;
                 }
@@ -1697,7 +1912,7 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
                     attributeBuilder.append("AX").append(joinCounter).append(".VALUE #> '{value}' ?? ? ");
                 }
                 final int pos = binders.size() + 1;
-                binders.add(st -> st.setString(pos, keyPredicate.key));
+                binders.add((st, values) -> st.setString(pos, values.of(keyPredicate).key));
             } else if (attributePredicate.value instanceof ArrayPredicate) {
                 ArrayPredicate arrayPredicate = (ArrayPredicate) attributePredicate.value;
                 attributeBuilder.append("true");
@@ -1715,15 +1930,12 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
                     }
                     attributeBuilder.append(" @> ?");
                     final int pos = binders.size() + 1;
-                    PGobject pgJsonValue = new PGobject();
-                    pgJsonValue.setType("jsonb");
-                    try {
-                        pgJsonValue.setValue(arrayPredicate.value.toJson());
-                    } catch (SQLException e) {
-                        LOG.log(Level.SEVERE, "Failed to build SQL statement for array predicate", e);
-                        return "";
-                    }
-                    binders.add(st -> st.setObject(pos, pgJsonValue));
+                    binders.add((st, values) -> {
+                        PGobject pgJsonValue = new PGobject();
+                        pgJsonValue.setType("jsonb");
+                        pgJsonValue.setValue(values.of(arrayPredicate).value.toJson());
+                        st.setObject(pos, pgJsonValue);
+                    });
                 }
                 if (arrayPredicate.lengthEquals != null) {
                     attributeBuilder.append("json_array_length(AX")
@@ -1747,7 +1959,9 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
                     attributeBuilder.append(")");
                 }
             } else if (attributePredicate.value instanceof GeofencePredicate) {
-                if (attributePredicate.value instanceof RadialGeofencePredicate) {
+                if (isIndexedLocationPredicate(attributePredicate)) {
+                    attributeBuilder.append(buildLocationFilter((GeofencePredicate) attributePredicate.value));
+                } else if (attributePredicate.value instanceof RadialGeofencePredicate) {
                     RadialGeofencePredicate location = (RadialGeofencePredicate) attributePredicate.value;
                     attributeBuilder.append("ST_DistanceSphere(ST_MakePoint(")
                         .append("(AX")
@@ -1789,7 +2003,7 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
                 attributeBuilder.append("AX").append(joinCounter).append(".VALUE ->> 'value' IS NULL");
             } else if (attributePredicate.value instanceof CalendarEventPredicate) {
                 final int pos = binders.size() + 1;
-                java.sql.Timestamp when = new java.sql.Timestamp(((CalendarEventPredicate)attributePredicate.value).timestamp.getTime());
+                CalendarEventPredicate calendarEventPredicate = (CalendarEventPredicate) attributePredicate.value;
 
                 // The recurrence logic is applied post DB query just check start key is present and in the past and also
                 // that the end key is numeric and in the future if no recurrence value
@@ -1804,8 +2018,8 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
                     .append(".VALUE #>> '{value,end}')::float / 1000) > ? OR jsonb_typeof(AX")
                     .append(joinCounter)
                     .append(".VALUE #> '{value,recurrence}') = 'object'))");
-                binders.add((st) -> st.setTimestamp(pos, when));
-                binders.add((st) -> st.setTimestamp(pos+1, when));
+                binders.add((st, values) -> st.setTimestamp(pos, new java.sql.Timestamp(values.of(calendarEventPredicate).timestamp.getTime())));
+                binders.add((st, values) -> st.setTimestamp(pos+1, new java.sql.Timestamp(values.of(calendarEventPredicate).timestamp.getTime())));
             } else {
                 throw new UnsupportedOperationException("Attribute value predicate is not supported: " + attributePredicate.value);
             }
@@ -1814,6 +2028,46 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
         return attributeBuilder.toString();
     }
 
+    /**
+     * @return <code>true</code> if the predicate is a geofence of the location attribute, which is maintained in the
+     * spatially indexed <code>ASSET.LOCATION</code> column.
+     */
+    protected static boolean isIndexedLocationPredicate(AttributePredicate attributePredicate) {
+        return attributePredicate.value instanceof GeofencePredicate
+            && attributePredicate.name != null
+            && attributePredicate.name.match == AssetQuery.Match.EXACT
+            && attributePredicate.name.caseSensitive
+            && !attributePredicate.name.negate
+            && AttributeType.LOCATION.getAttributeName().equals(attributePredicate.name.value);
+    }
+
+    protected static String buildLocationFilter(GeofencePredicate predicate) {
+        StringBuilder locationBuilder = new StringBuilder("(A.LOCATION is not null and ");
+        if (predicate.negated) {
+            locationBuilder.append("not ");
+        }
+        if (predicate instanceof RadialGeofencePredicate) {
+            RadialGeofencePredicate location = (RadialGeofencePredicate) predicate;
+            // Sphere distance (not spheroid), as ST_DistanceSphere
+            locationBuilder.append("ST_DWithin(A.LOCATION :: geography, ST_SetSRID(ST_MakePoint(")
+                .append(location.lng)
+                .append(",")
+                .append(location.lat)
+                .append("), 4326) :: geography, ")
+                .append(location.radius)
+                .append(", false)");
+        } else if (predicate instanceof RectangularGeofencePredicate) {
+            RectangularGeofencePredicate location = (RectangularGeofencePredicate) predicate;
+            String envelope = "ST_MakeEnvelope(" + location.lngMin + "," + location.latMin + ","
+                + location.lngMax + "," + location.latMax + ", 4326)";
+            locationBuilder.append("(A.LOCATION && ").append(envelope)
+                .append(" and ST_Within(A.LOCATION, ").append(envelope).append("))");
+        } else {
+            throw new UnsupportedOperationException("Attribute value predicate is not supported: " + predicate);
+        }
+        return locationBuilder.append(")").toString();
+    }
+
     protected String buildOperatorFilter(AssetQuery.Operator operator, boolean negate) {
         switch (operator) {
             case EQUALS:
@@ -1944,6 +2198,18 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
                 statement.setString(6, attributeName);
 
                 int updatedRows = statement.executeUpdate();
+
+                if (updatedRows == 1 && assetCache != null) {
+                    long valueTimestamp = Long.parseLong(timestamp);
+                    assetCache.beginUpdate(assetId);
+                    afterTransactionCompletion(em, success -> {
+                        if (success) {
+                            assetCache.updateAttributeValue(assetId, attributeName, value, valueTimestamp);
+                        }
+                        assetCache.endUpdate(assetId, !success);
+                    });
+                }
+
                 LOG.fine("Stored asset '" + assetId
                     + "' attribute '" + attributeName
                     + "' (affected rows: " + updatedRows + ") value: "
@@ -1953,6 +2219,37 @@ public class AssetStorageService extends RouteBuilder implements ContainerServic
         });
     }
 
+    /**
+     * @return <code>null</code> if the asset cache is disabled.
+     */
+    public AssetCache getAssetCache() {
+        return assetCache;
+    }
+
+    protected Asset findCached(String assetId, Supplier<Asset> loader) {
+        return assetCache != null ? assetCache.get(assetId, loader) : loader.get();
+    }
+
+    /**
+     * Bypass the asset cache for the asset until the transaction completes, then invalidate it.
+     */
+    protected void beginAssetCacheUpdate(EntityManager em, String assetId) {
+        if (assetCache == null || assetId == null) {
+            return;
+        }
+        assetCache.beginUpdate(assetId);
+        afterTransactionCompletion(em, success -> assetCache.endUpdate(assetId, true));
+    }
+
+    /**
+     * Calls the callback once the transaction of the entity manager completes, with <code>true</code> if it committed.
+     */
+    public static void afterTransactionCompletion(EntityManager em, Consumer<Boolean> callback) {
+        em.unwrap(SessionImplementor.class).getActionQueue().registerProcess(
+            (success, session) -> callback.accept(success)
+        );
+    }
+
     // TODO: Remove AssetTreeModifiedEvent once GWT client replaced
     protected void publishModificationEvents(PersistenceEvent<Asset> persistenceEvent) {
         Asset asset = persistenceEvent.getEntity();
@@ -0,0 +1,259 @@
+/*
+ * Copyright 2020, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.manager.datapoint;
+
+import org.openremote.model.attribute.Attribute;
+import org.openremote.model.attribute.MetaItemType;
+import org.openremote.model.datapoint.ValueDatapoint;
+import org.openremote.model.value.Value;
+import org.openremote.model.value.Values;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * In memory filter that decides which values of a single attribute are stored as data points, configured by the
+ * {@link MetaItemType#DATA_POINTS_DEADBAND}, {@link MetaItemType#DATA_POINTS_DEADBAND_PERCENT},
+ * {@link MetaItemType#DATA_POINTS_COMPRESSION_DEVIATION} and {@link MetaItemType#DATA_POINTS_MAX_INTERVAL_SECONDS}
+ * meta items.
+ * <p>
+ * With a deadband the last stored value never differs from any received value by more than the deadband (step
+ * reconstruction). With a compression deviation the swinging door algorithm is used; the line between two stored data
+ * points never differs from any received value in between by more than the deviation (linear reconstruction). The
+ * swinging door holds back the last received value until a later value closes the door; so the most recent value is
+ * only guaranteed to be stored once the max interval has elapsed.
+ * <p>
+ * Instances are not thread-safe.
+ */
+public class AssetDatapointFilter {
+
+    public static class Config {
+
+        final double deadband;
+        final double deadbandPercent;
+        final double compressionDeviation;
+        final long maxIntervalMillis;
+
+        public Config(double deadband, double deadbandPercent, double compressionDeviation, long maxIntervalMillis) {
+            this.deadband = deadband;
+            this.deadbandPercent = deadbandPercent;
+            this.compressionDeviation = compressionDeviation;
+            this.maxIntervalMillis = maxIntervalMillis;
+        }
+
+        /**
+         * @return <code>null</code> if the attribute doesn't have any data point filter meta items.
+         */
+        public static Config fromAttribute(Attribute attribute) {
+            Double deadband = getNumberMetaItem(attribute, MetaItemType.DATA_POINTS_DEADBAND);
+            Double deadbandPercent = getNumberMetaItem(attribute, MetaItemType.DATA_POINTS_DEADBAND_PERCENT);
+            Double compressionDeviation = getNumberMetaItem(attribute, MetaItemType.DATA_POINTS_COMPRESSION_DEVIATION);
+            Double maxIntervalSeconds = getNumberMetaItem(attribute, MetaItemType.DATA_POINTS_MAX_INTERVAL_SECONDS);
+
+            if (deadband == null && deadbandPercent == null && compressionDeviation == null && maxIntervalSeconds == null) {
+                return null;
+            }
+
+            return new Config(
+                deadband != null ? deadband : 0d,
+                deadbandPercent != null ? deadbandPercent : 0d,
+                compressionDeviation != null ? compressionDeviation : 0d,
+                maxIntervalSeconds != null ? (long) (maxIntervalSeconds * 1000) : 0L
+            );
+        }
+
+        protected static Double getNumberMetaItem(Attribute attribute, MetaItemType metaItemType) {
+            return attribute.getMetaItem(metaItemType)
+                .flatMap(metaItem -> Values.getNumber(metaItem.getValue().orElse(null)))
+                .filter(number -> number >= 0)
+                .orElse(null);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Config config = (Config) o;
+            return Double.compare(config.deadband, deadband) == 0
+                && Double.compare(config.deadbandPercent, deadbandPercent) == 0
+                && Double.compare(config.compressionDeviation, compressionDeviation) == 0
+                && maxIntervalMillis == config.maxIntervalMillis;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(deadband, deadbandPercent, compressionDeviation, maxIntervalMillis);
+        }
+
+        @Override
+        public String toString() {
+            return getClass().getSimpleName() + "{" +
+                "deadband=" + deadband +
+                ", deadbandPercent=" + deadbandPercent +
+                ", compressionDeviation=" + compressionDeviation +
+                ", maxIntervalMillis=" + maxIntervalMillis +
+                '}';
+        }
+    }
+
+    protected final Config config;
+    protected boolean stored;
+    protected Value storedValue;
+    protected long storedTimestamp;
+    // Swinging door state
+    protected Value heldValue;
+    protected long heldTimestamp;
+    protected double upperSlope;
+    protected double lowerSlope;
+
+    public AssetDatapointFilter(Config config) {
+        this.config = config;
+    }
+
+    public AssetDatapointFilter(AssetDatapointFilter filter) {
+        this.config = filter.config;
+        this.stored = filter.stored;
+        this.storedValue = filter.storedValue;
+        this.storedTimestamp = filter.storedTimestamp;
+        this.heldValue = filter.heldValue;
+        this.heldTimestamp = filter.heldTimestamp;
+        this.upperSlope = filter.upperSlope;
+        this.lowerSlope = filter.lowerSlope;
+    }
+
+    public Config getConfig() {
+        return config;
+    }
+
+    /**
+     * @return the received value held back by the swinging door, <code>null</code> if there is none.
+     */
+    public ValueDatapoint<Value> getHeldDatapoint() {
+        return heldValue != null ? new ValueDatapoint<>(heldTimestamp, heldValue) : null;
+    }
+
+    /**
+     * @return the data points that should be stored as a result of receiving this value, in timestamp order; this can
+     * include a previously received value held back by the swinging door.
+     */
+    public List<ValueDatapoint<Value>> accept(Value value, long timestamp) {
+        Double number = Values.getNumber(value).orElse(null);
+        Double storedNumber = Values.getNumber(storedValue).orElse(null);
+
+        if (!stored
+            || timestamp <= storedTimestamp
+            || number == null
+            || storedNumber == null
+            || (heldValue != null && timestamp <= heldTimestamp)) {
+            // Non-numeric values are only stored on change
+            if (stored && number == null && Objects.equals(storedValue, value) && !isMaxIntervalElapsed(timestamp)) {
+                return Collections.emptyList();
+            }
+            return store(value, timestamp);
+        }
+
+        if (isMaxIntervalElapsed(timestamp)) {
+            return store(value, timestamp);
+        }
+
+        if (config.compressionDeviation > 0) {
+            return swingingDoor(value, number, timestamp, storedNumber);
+        }
+
+        double threshold = Math.max(config.deadband, Math.abs(storedNumber) * config.deadbandPercent / 100d);
+
+        if (threshold > 0 ? Math.abs(number - storedNumber) >= threshold : number.doubleValue() != storedNumber) {
+            return store(value, timestamp);
+        }
+
+        return Collections.emptyList();
+    }
+
+    protected List<ValueDatapoint<Value>> swingingDoor(Value value, double number, long timestamp, double storedNumber) {
+        double deviation = config.compressionDeviation;
+        double elapsed = timestamp - storedTimestamp;
+        double upper = Math.max(upperSlope, (number - storedNumber - deviation) / elapsed);
+        double lower = Math.min(lowerSlope, (number - storedNumber + deviation) / elapsed);
+        double slope = (number - storedNumber) / elapsed;
+
+        // The value can be held while the line from the stored point to it stays within the deviation of every
+        // value received since the stored point
+        if (heldValue == null || (slope >= upper && slope <= lower)) {
+            upperSlope = upper;
+            lowerSlope = lower;
+            heldValue = value;
+            heldTimestamp = timestamp;
+            return Collections.emptyList();
+        }
+
+        // Door closed so store the held value and swing from there
+        List<ValueDatapoint<Value>> datapoints = new ArrayList<>(1);
+        datapoints.add(new ValueDatapoint<>(heldTimestamp, heldValue));
+        Value newStoredValue = heldValue;
+        long newStoredTimestamp = heldTimestamp;
+        double newStoredNumber = Values.getNumber(heldValue).orElse(0d);
+        reset(newStoredValue, newStoredTimestamp);
+
+        elapsed = timestamp - newStoredTimestamp;
+        upperSlope = (number - newStoredNumber - deviation) / elapsed;
+        lowerSlope = (number - newStoredNumber + deviation) / elapsed;
+        heldValue = value;
+        heldTimestamp = timestamp;
+        return datapoints;
+    }
+
+    protected boolean isMaxIntervalElapsed(long timestamp) {
+        return config.maxIntervalMillis > 0 && timestamp - storedTimestamp >= config.maxIntervalMillis;
+    }
+
+    protected List<ValueDatapoint<Value>> store(Value value, long timestamp) {
+        List<ValueDatapoint<Value>> datapoints = new ArrayList<>(2);
+        ValueDatapoint<Value> datapoint = new ValueDatapoint<>(timestamp, value);
+
+        if (heldValue != null && heldTimestamp > timestamp) {
+            // Out of order value so keep the held value as the most recent stored value
+            Value latestValue = heldValue;
+            long latestTimestamp = heldTimestamp;
+            datapoints.add(datapoint);
+            datapoints.add(new ValueDatapoint<>(latestTimestamp, latestValue));
+            reset(latestValue, latestTimestamp);
+            return datapoints;
+        }
+
+        if (heldValue != null && heldTimestamp < timestamp) {
+            datapoints.add(new ValueDatapoint<>(heldTimestamp, heldValue));
+        }
+        datapoints.add(datapoint);
+        reset(value, timestamp);
+        return datapoints;
+    }
+
+    protected void reset(Value value, long timestamp) {
+        stored = true;
+        storedValue = value;
+        storedTimestamp = timestamp;
+        heldValue = null;
+        heldTimestamp = 0L;
+        upperSlope = Double.NEGATIVE_INFINITY;
+        lowerSlope = Double.POSITIVE_INFINITY;
+    }
+}
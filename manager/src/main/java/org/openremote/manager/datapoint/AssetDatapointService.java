@@ -1,9 +1,12 @@
 package org.openremote.manager.datapoint;
 
+import org.apache.camel.builder.RouteBuilder;
 import org.hibernate.Session;
 import org.hibernate.jdbc.AbstractReturningWork;
 import org.openremote.container.Container;
 import org.openremote.container.ContainerService;
+import org.openremote.container.message.MessageBrokerService;
+import org.openremote.container.persistence.PersistenceEvent;
 import org.openremote.container.persistence.PersistenceService;
 import org.openremote.container.timer.TimerService;
 import org.openremote.manager.asset.AssetProcessingException;
@@ -14,6 +17,7 @@ import org.openremote.manager.security.ManagerIdentityService;
 import org.openremote.manager.web.ManagerWebService;
 import org.openremote.model.asset.Asset;
 import org.openremote.model.asset.AssetAttribute;
+import org.openremote.model.attribute.AttributeEvent;
 import org.openremote.model.attribute.AttributeEvent.Source;
 import org.openremote.model.attribute.AttributeRef;
 import org.openremote.model.attribute.MetaItemType;
@@ -34,8 +38,10 @@ import java.time.Duration;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ScheduledFuture;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -44,14 +50,21 @@ import java.util.stream.Collectors;
 import static java.time.temporal.ChronoUnit.DAYS;
 import static java.util.stream.Collectors.groupingBy;
 import static java.util.stream.Collectors.toList;
+import static org.openremote.container.persistence.PersistenceEvent.PERSISTENCE_TOPIC;
+import static org.openremote.container.persistence.PersistenceEvent.isPersistenceEventForEntityType;
 
 /**
  * Store and retrieve datapoints for asset attributes and periodically purge data points based on
  * {@link MetaItemType#DATA_POINTS_MAX_AGE_DAYS} {@link org.openremote.model.attribute.MetaItem}
  * and {@link #DATA_POINTS_MAX_AGE_DAYS} setting; storage duration defaults to {@value #DATA_POINTS_MAX_AGE_DAYS_DEFAULT}
  * days.
+ * <p>
+ * Attributes can limit which values are stored using the data point filter meta items, see
+ * {@link AssetDatapointFilter}. Filter state changes only take effect when the transaction storing the data points
+ * commits. Filters are removed when their asset or attribute is deleted, values held back by the swinging door are
+ * stored when the service stops.
  */
-public class AssetDatapointService implements ContainerService, AssetUpdateProcessor {
+public class AssetDatapointService extends RouteBuilder implements ContainerService, AssetUpdateProcessor {
 
     public static final String DATA_POINTS_MAX_AGE_DAYS = "DATA_POINTS_MAX_AGE_DAYS";
     public static final String DATA_POINTS_MAX_AGE_DAYS_DEFAULT = "31";
@@ -63,6 +76,12 @@ public class AssetDatapointService implements ContainerService, AssetUpdateProce
     protected ManagerExecutorService managerExecutorService;
     protected int maxDatapointAgeDays;
     protected ScheduledFuture dataPointsPurgeScheduledFuture;
+    // Marks the removal of a filter by an uncommitted transaction
+    protected static final AssetDatapointFilter NO_FILTER = new AssetDatapointFilter((AssetDatapointFilter.Config) null);
+    // Committed filter state by asset ID and attribute name
+    protected final Map<String, Map<String, AssetDatapointFilter>> datapointFilters = new ConcurrentHashMap<>();
+    // Filters updated by the uncommitted transaction of an entity manager
+    protected final Map<EntityManager, Map<AttributeRef, AssetDatapointFilter>> pendingFilters = new ConcurrentHashMap<>();
 
     @Override
     public int getPriority() {
@@ -92,6 +111,20 @@ public class AssetDatapointService implements ContainerService, AssetUpdateProce
         if (maxDatapointAgeDays <= 0) {
             LOG.warning(DATA_POINTS_MAX_AGE_DAYS + " value is not a valid value so data points won't be auto purged");
         }
+
+        container.getService(MessageBrokerService.class).getContext().addRoutes(this);
+    }
+
+    @Override
+    public void configure() throws Exception {
+        from(PERSISTENCE_TOPIC)
+            .routeId("AssetDatapointFilterChanges")
+            .filter(isPersistenceEventForEntityType(Asset.class))
+            .process(exchange -> {
+                @SuppressWarnings("unchecked")
+                PersistenceEvent<Asset> persistenceEvent = (PersistenceEvent<Asset>) exchange.getIn().getBody(PersistenceEvent.class);
+                processAssetChange(persistenceEvent);
+            });
     }
 
     @Override
@@ -110,6 +143,7 @@ public class AssetDatapointService implements ContainerService, AssetUpdateProce
         if (dataPointsPurgeScheduledFuture != null) {
             dataPointsPurgeScheduledFuture.cancel(true);
         }
+        storeHeldDatapoints();
     }
 
     @Override
@@ -120,13 +154,153 @@ public class AssetDatapointService implements ContainerService, AssetUpdateProce
         if (attribute.isStoreDatapoints()
                 && attribute.getStateEvent().isPresent()
                 && attribute.getStateEvent().get().getValue().isPresent()) { // Don't store datapoints with null value
-            LOG.finest("Storing datapoint for: " + attribute);
-            AssetDatapoint assetDatapoint = new AssetDatapoint(attribute.getStateEvent().get());
-            em.persist(assetDatapoint);
+            AttributeEvent stateEvent = attribute.getStateEvent().get();
+            AttributeRef attributeRef = stateEvent.getAttributeRef();
+            AssetDatapointFilter.Config filterConfig = AssetDatapointFilter.Config.fromAttribute(attribute);
+            Map<AttributeRef, AssetDatapointFilter> pending = pendingFilters.get(em);
+            AssetDatapointFilter existingFilter = pending != null && pending.containsKey(attributeRef)
+                ? pending.get(attributeRef)
+                : getFilter(attributeRef);
+
+            if (existingFilter != null && existingFilter != NO_FILTER && !existingFilter.getConfig().equals(filterConfig)) {
+                // Don't lose the value held back by the replaced filter
+                storeHeldDatapoint(em, attributeRef, existingFilter);
+                getPendingFilters(em).put(attributeRef, NO_FILTER);
+                existingFilter = null;
+            }
+
+            if (filterConfig == null) {
+                LOG.finest("Storing datapoint for: " + attribute);
+                em.persist(new AssetDatapoint(stateEvent));
+                return false;
+            }
+
+            // The filter is copied so the committed state is only replaced on commit
+            AssetDatapointFilter filter = existingFilter != null && existingFilter != NO_FILTER
+                ? new AssetDatapointFilter(existingFilter)
+                : new AssetDatapointFilter(filterConfig);
+            List<ValueDatapoint<Value>> datapoints = filter.accept(stateEvent.getValue().orElse(null), stateEvent.getTimestamp());
+            getPendingFilters(em).put(attributeRef, filter);
+
+            if (datapoints.isEmpty()) {
+                LOG.finest("Datapoint filtered for: " + attribute);
+            }
+
+            for (ValueDatapoint<Value> datapoint : datapoints) {
+                LOG.finest("Storing datapoint for: " + attribute);
+                em.persist(new AssetDatapoint(attributeRef, datapoint.getValue(), datapoint.getTimestamp()));
+            }
         }
         return false;
     }
 
+    /**
+     * @return the filter of the attribute as updated by the uncommitted transaction of the entity manager, only to be
+     * passed to {@link #resetPendingFilter} when a later update of the attribute is rolled back to a savepoint.
+     */
+    public AssetDatapointFilter getPendingFilter(EntityManager em, AttributeRef attributeRef) {
+        Map<AttributeRef, AssetDatapointFilter> pending = pendingFilters.get(em);
+        return pending != null ? pending.get(attributeRef) : null;
+    }
+
+    /**
+     * Discard the filter updates of the attribute made after {@link #getPendingFilter} returned the given filter.
+     */
+    public void resetPendingFilter(EntityManager em, AttributeRef attributeRef, AssetDatapointFilter pendingFilter) {
+        Map<AttributeRef, AssetDatapointFilter> pending = pendingFilters.get(em);
+        if (pending == null) {
+            return;
+        }
+        if (pendingFilter != null) {
+            pending.put(attributeRef, pendingFilter);
+        } else {
+            pending.remove(attributeRef);
+        }
+    }
+
+    protected Map<AttributeRef, AssetDatapointFilter> getPendingFilters(EntityManager em) {
+        return pendingFilters.computeIfAbsent(em, entityManager -> {
+            AssetStorageService.afterTransactionCompletion(entityManager, success -> {
+                Map<AttributeRef, AssetDatapointFilter> filters = pendingFilters.remove(entityManager);
+                if (success && filters != null) {
+                    filters.forEach(this::putFilter);
+                }
+            });
+            return new HashMap<>();
+        });
+    }
+
+    protected AssetDatapointFilter getFilter(AttributeRef attributeRef) {
+        Map<String, AssetDatapointFilter> assetFilters = datapointFilters.get(attributeRef.getEntityId());
+        return assetFilters != null ? assetFilters.get(attributeRef.getAttributeName()) : null;
+    }
+
+    protected void putFilter(AttributeRef attributeRef, AssetDatapointFilter filter) {
+        datapointFilters.compute(attributeRef.getEntityId(), (assetId, assetFilters) -> {
+            if (filter == NO_FILTER) {
+                if (assetFilters != null) {
+                    assetFilters.remove(attributeRef.getAttributeName());
+                }
+                return assetFilters == null || assetFilters.isEmpty() ? null : assetFilters;
+            }
+            if (assetFilters == null) {
+                assetFilters = new ConcurrentHashMap<>();
+            }
+            assetFilters.put(attributeRef.getAttributeName(), filter);
+            return assetFilters;
+        });
+    }
+
+    /**
+     * Removes the filters of deleted assets, and of attributes which were deleted or no longer have a data point
+     * filter.
+     */
+    protected void processAssetChange(PersistenceEvent<Asset> persistenceEvent) {
+        Asset asset = persistenceEvent.getEntity();
+        switch (persistenceEvent.getCause()) {
+            case DELETE:
+                datapointFilters.remove(asset.getId());
+                break;
+            case UPDATE:
+                datapointFilters.computeIfPresent(asset.getId(), (assetId, assetFilters) -> {
+                    assetFilters.keySet().removeIf(attributeName ->
+                        !asset.getAttribute(attributeName)
+                            .filter(AssetAttribute::isStoreDatapoints)
+                            .map(AssetDatapointFilter.Config::fromAttribute)
+                            .isPresent()
+                    );
+                    return assetFilters.isEmpty() ? null : assetFilters;
+                });
+                break;
+        }
+    }
+
+    protected void storeHeldDatapoint(EntityManager em, AttributeRef attributeRef, AssetDatapointFilter filter) {
+        ValueDatapoint<Value> heldDatapoint = filter.getHeldDatapoint();
+        if (heldDatapoint != null) {
+            LOG.finest("Storing held back datapoint for: " + attributeRef);
+            em.persist(new AssetDatapoint(attributeRef, heldDatapoint.getValue(), heldDatapoint.getTimestamp()));
+        }
+    }
+
+    /**
+     * Stores the values held back by the swinging door of all filters, these would otherwise be lost.
+     */
+    protected void storeHeldDatapoints() {
+        if (datapointFilters.isEmpty()) {
+            return;
+        }
+        try {
+            persistenceService.doTransaction(em ->
+                datapointFilters.forEach((assetId, assetFilters) ->
+                    assetFilters.forEach((attributeName, filter) ->
+                        storeHeldDatapoint(em, new AttributeRef(assetId, attributeName), filter))));
+        } catch (Exception ex) {
+            LOG.log(Level.WARNING, "Failed to store held back datapoints", ex);
+        }
+        datapointFilters.clear();
+    }
+
     public List<AssetDatapoint> getDatapoints(AttributeRef attributeRef) {
         return persistenceService.doReturningTransaction(entityManager ->
                 entityManager.createQuery(
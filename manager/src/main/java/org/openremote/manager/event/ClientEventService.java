@@ -38,9 +38,11 @@ import org.openremote.model.event.shared.*;
 import org.openremote.model.syslog.SyslogEvent;
 
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import static org.apache.camel.builder.PredicateBuilder.*;
@@ -92,18 +94,34 @@ import static org.openremote.manager.gateway.GatewayService.isGatewayClientId;
  * The payload is an array of {@link SharedEvent}s.
  * </p></dd>
  * </dl>
+ * <p>
+ * Client messages are converted to their type when received and processed on the {@link #CLIENT_INBOUND_QUEUE},
+ * events published on the server are delivered to subscribers from the {@link #CLIENT_EVENT_QUEUE}; both are
+ * processed in order but independently of each other.
  */
 public class ClientEventService implements ContainerService {
 
     public static final int PRIORITY = ManagerWebService.PRIORITY - 200;
     private static final Logger LOG = Logger.getLogger(ClientEventService.class.getName());
+    protected static final EventTypeConverters EVENT_TYPE_CONVERTERS = new EventTypeConverters();
     public static final String WEBSOCKET_EVENTS = "events";
 
     // TODO: Some of these options should be configurable depending on expected load etc.
     public static final String CLIENT_EVENT_TOPIC = "seda://ClientEventTopic?multipleConsumers=true&concurrentConsumers=1&waitForTaskToComplete=NEVER&purgeWhenStopping=true&discardIfNoConsumers=true&limitConcurrentConsumers=false&size=1000";
 
+    /**
+     * Outbound events published on the server, delivered to subscribed client sessions.
+     */
     public static final String CLIENT_EVENT_QUEUE = "seda://ClientEventQueue?multipleConsumers=false&waitForTaskToComplete=NEVER&purgeWhenStopping=true&discardIfNoConsumers=true&size=25000";
 
+    /**
+     * Inbound messages of client sessions (session open/close, subscriptions and events), consumed separately from
+     * {@link #CLIENT_EVENT_QUEUE} so subscription churn of reconnecting clients doesn't delay outbound delivery. The
+     * body must already be converted to the message type, see {@link #readClientMessage}, or be a {@link List} of
+     * events which are then timestamped and routed together.
+     */
+    public static final String CLIENT_INBOUND_QUEUE = "seda://ClientInboundQueue?multipleConsumers=false&waitForTaskToComplete=NEVER&purgeWhenStopping=true&discardIfNoConsumers=true&size=25000";
+
     public static final String HEADER_ACCESS_RESTRICTED = ClientEventService.class.getName() + ".HEADER_ACCESS_RESTRICTED";
     public static final String HEADER_CONNECTION_TYPE = ClientEventService.class.getName() + ".HEADER_CONNECTION_TYPE";
     public static final String HEADER_CONNECTION_TYPE_WEBSOCKET = ClientEventService.class.getName() + ".HEADER_CONNECTION_TYPE_WEBSOCKET";
@@ -130,7 +148,7 @@ public class ClientEventService implements ContainerService {
         identityService = container.getService(ManagerIdentityService.class);
         gatewayService = container.getService(GatewayService.class);
 
-        sessionKeyConnectionTypeMap = new HashMap<>();
+        sessionKeyConnectionTypeMap = new ConcurrentHashMap<>();
 
         eventSubscriptions = new EventSubscriptions(
             container.getService(TimerService.class),
@@ -138,7 +156,7 @@ public class ClientEventService implements ContainerService {
         );
 
         messageBrokerService.getContext().getTypeConverterRegistry().addTypeConverters(
-            new EventTypeConverters()
+            EVENT_TYPE_CONVERTERS
         );
 
         // TODO: Remove prefix and just use event type then use a subscription wrapper to pass subscription ID around
@@ -148,12 +166,16 @@ public class ClientEventService implements ContainerService {
 
                 from("websocket://" + WEBSOCKET_EVENTS)
                     .routeId("FromClientWebsocketEvents")
-                    .process(exchange -> exchange.getIn().setHeader(HEADER_CONNECTION_TYPE, HEADER_CONNECTION_TYPE_WEBSOCKET))
-                    .to(ClientEventService.CLIENT_EVENT_QUEUE)
+                    .process(exchange -> {
+                        exchange.getIn().setHeader(HEADER_CONNECTION_TYPE, HEADER_CONNECTION_TYPE_WEBSOCKET);
+                        // Classify the frame once on the websocket thread, the inbound route only checks the type
+                        exchange.getIn().setBody(readClientMessage(exchange.getIn().getBody()));
+                    })
+                    .to(ClientEventService.CLIENT_INBOUND_QUEUE)
                     .end();
 
-                from(ClientEventService.CLIENT_EVENT_QUEUE)
-                    .routeId("ClientEvents")
+                from(ClientEventService.CLIENT_INBOUND_QUEUE)
+                    .routeId("ClientInboundEvents")
                     .choice()
                     .when(header(ConnectionConstants.SESSION_OPEN))
                         .process(exchange -> {
@@ -179,8 +201,7 @@ public class ClientEventService implements ContainerService {
                             .to(GatewayService.GATEWAY_EVENT_TOPIC)
                         .endChoice()
                         .stop()
-                    .when(bodyAs(String.class).startsWith(EventSubscription.SUBSCRIBE_MESSAGE_PREFIX))
-                        .convertBodyTo(EventSubscription.class)
+                    .when(body().isInstanceOf(EventSubscription.class))
                         .process(exchange -> {
                             String sessionKey = getSessionKey(exchange);
                             EventSubscription subscription = exchange.getIn().getBody(EventSubscription.class);
@@ -199,27 +220,13 @@ public class ClientEventService implements ContainerService {
                             }
                         })
                         .stop()
-                    .when(or(
-                            body().isInstanceOf(CancelEventSubscription.class),
-                            bodyAs(String.class).startsWith(CancelEventSubscription.MESSAGE_PREFIX)
-                    ))
-                        .choice()
-                        .when(bodyAs(String.class).startsWith(CancelEventSubscription.MESSAGE_PREFIX))
-                            .convertBodyTo(CancelEventSubscription.class)
-                        .endChoice()
+                    .when(body().isInstanceOf(CancelEventSubscription.class))
                         .process(exchange -> {
                             String sessionKey = getSessionKey(exchange);
                             eventSubscriptions.cancel(sessionKey, exchange.getIn().getBody(CancelEventSubscription.class));
                         })
                         .stop()
-                    .when(or(
-                            body().isInstanceOf(RenewEventSubscriptions.class),
-                            bodyAs(String.class).startsWith(RenewEventSubscriptions.MESSAGE_PREFIX)
-                    ))
-                        .choice()
-                            .when(bodyAs(String.class).startsWith(RenewEventSubscriptions.MESSAGE_PREFIX))
-                            .convertBodyTo(RenewEventSubscriptions.class)
-                        .endChoice()
+                    .when(body().isInstanceOf(RenewEventSubscriptions.class))
                         .process(exchange -> {
                             String sessionKey = getSessionKey(exchange);
                             AuthContext authContext = exchange.getIn().getHeader(Constants.AUTH_CONTEXT, AuthContext.class);
@@ -227,40 +234,56 @@ public class ClientEventService implements ContainerService {
                             eventSubscriptions.update(sessionKey, restrictedUser,exchange.getIn().getBody(RenewEventSubscriptions.class).getSubscriptionIds());
                         })
                         .stop()
-                    .when(or(
-                        body().isInstanceOf(SharedEvent.class),
-                        bodyAs(String.class).startsWith(SharedEvent.MESSAGE_PREFIX)
-                    ))
+                    .when(body().isInstanceOf(SharedEvent.class))
+                        .process(exchange -> setTimestamp(exchange.getIn().getBody(SharedEvent.class)))
                         .choice()
-                            .when(bodyAs(String.class).startsWith(SharedEvent.MESSAGE_PREFIX))
-                            .convertBodyTo(SharedEvent.class)
+                            .when(exchange -> isGatewayClientId(getClientId(exchange)))
+                                .to(GatewayService.GATEWAY_EVENT_TOPIC)
+                            .otherwise()
+                                .to(ClientEventService.CLIENT_EVENT_TOPIC)
                         .endChoice()
+                        .stop()
+                    .when(body().isInstanceOf(List.class))
+                        // A batch of events, such as an MQTT bulk publish, continues as one exchange
                         .process(exchange -> {
-                            SharedEvent event = exchange.getIn().getBody(SharedEvent.class);
-                            // If there is no timestamp in event, set to system time
-                            if (event.getTimestamp() <= 0) {
-                                event.setTimestamp(timerService.getCurrentTimeMillis());
+                            for (Object event : exchange.getIn().getBody(List.class)) {
+                                if (event instanceof SharedEvent) {
+                                    setTimestamp((SharedEvent) event);
+                                }
                             }
                         })
                         .choice()
-                            .when(header(HEADER_CONNECTION_TYPE).isNotNull())
-                            .choice()
-                                .when(exchange -> isGatewayClientId(getClientId(exchange)))
-                                    .to(GatewayService.GATEWAY_EVENT_TOPIC)
-                                .otherwise()
-                                    .to(ClientEventService.CLIENT_EVENT_TOPIC)
+                            .when(exchange -> isGatewayClientId(getClientId(exchange)))
+                                .split(body())
+                                .to(GatewayService.GATEWAY_EVENT_TOPIC)
                             .endChoice()
-                            .when(header(HEADER_CONNECTION_TYPE).isNull()) // Outbound message to clients
-                                .split(method(eventSubscriptions, "splitForSubscribers"))
-                                .process(exchange -> {
-                                    String sessionKey = getSessionKey(exchange);
-                                    sendToSession(sessionKey, exchange.getIn().getBody());
-                                })
+                            .otherwise()
+                                .to(ClientEventService.CLIENT_EVENT_TOPIC)
                         .endChoice()
                         .stop()
                     .otherwise()
                         .process(exchange -> LOG.fine("Unsupported message body: " + exchange.getIn().getBody()))
                     .end();
+
+                from(ClientEventService.CLIENT_EVENT_QUEUE)
+                    .routeId("ClientEvents")
+                    .choice()
+                    .when(header(HEADER_CONNECTION_TYPE).isNotNull())
+                        // Inbound message sent to the outbound queue, hand over to the inbound pipeline
+                        .process(exchange -> exchange.getIn().setBody(readClientMessage(exchange.getIn().getBody())))
+                        .to(ClientEventService.CLIENT_INBOUND_QUEUE)
+                        .stop()
+                    .when(body().isInstanceOf(SharedEvent.class)) // Outbound message to clients
+                        .process(exchange -> setTimestamp(exchange.getIn().getBody(SharedEvent.class)))
+                        .split(method(eventSubscriptions, "splitForSubscribers"))
+                        .process(exchange -> {
+                            String sessionKey = getSessionKey(exchange);
+                            sendToSession(sessionKey, exchange.getIn().getBody());
+                        })
+                    .endChoice()
+                    .otherwise()
+                        .process(exchange -> LOG.fine("Unsupported message body: " + exchange.getIn().getBody()))
+                    .end();
             }
         });
     }
@@ -311,6 +334,11 @@ public class ClientEventService implements ContainerService {
         if (messageBrokerService != null && messageBrokerService.getProducerTemplate() != null) {
             LOG.fine("Sending to session '" + sessionKey + "': " + data);
             String sessionConnectionType = sessionKeyConnectionTypeMap.get(sessionKey);
+            if (sessionConnectionType == null) {
+                // Session closed while the message was in flight
+                LOG.fine("Session is closed, dropping message for session: " + sessionKey);
+                return;
+            }
             if (sessionConnectionType.equals(HEADER_CONNECTION_TYPE_WEBSOCKET)) {
                 messageBrokerService.getProducerTemplate().sendBodyAndHeader(
                         "websocket://" + WEBSOCKET_EVENTS,
@@ -327,6 +355,31 @@ public class ClientEventService implements ContainerService {
         }
     }
 
+    /**
+     * Converts a client message string to its message type by its prefix, any other body is returned unchanged.
+     * Unknown or invalid messages are returned as is and ignored by the inbound route.
+     */
+    public static Object readClientMessage(Object body) {
+        if (!(body instanceof String)) {
+            return body;
+        }
+
+        String message = (String) body;
+        try {
+            return EVENT_TYPE_CONVERTERS.readMessage(message);
+        } catch (Exception e) {
+            LOG.log(Level.FINE, "Invalid client message: " + message, e);
+        }
+        return message;
+    }
+
+    protected void setTimestamp(SharedEvent event) {
+        // If there is no timestamp in event, set to system time
+        if (event.getTimestamp() <= 0) {
+            event.setTimestamp(timerService.getCurrentTimeMillis());
+        }
+    }
+
     public static String getSessionKey(Exchange exchange) {
         return exchange.getIn().getHeader(ConnectionConstants.SESSION_KEY, String.class);
     }
@@ -181,14 +181,17 @@ public class EventSubscriptions {
 
         boolean accessibleForRestrictedUsers = exchange.getIn().getHeader(HEADER_ACCESS_RESTRICTED, false, Boolean.class);
 
-        Set<Map.Entry<String, SessionSubscriptions>> sessionSubscriptionsSet;
+        // Subscriptions are modified concurrently by the inbound client message pipeline, split a snapshot
+        Map<String, List<SessionSubscription>> sessionSubscriptionsSnapshot = new HashMap<>();
         synchronized (this.sessionSubscriptionIdMap) {
-            sessionSubscriptionsSet = new HashSet<>(sessionSubscriptionIdMap.entrySet());
+            sessionSubscriptionIdMap.forEach((sessionKey, subscriptions) ->
+                sessionSubscriptionsSnapshot.put(sessionKey, new ArrayList<>(subscriptions))
+            );
         }
 
-        for (Map.Entry<String, SessionSubscriptions> entry : sessionSubscriptionsSet) {
+        for (Map.Entry<String, List<SessionSubscription>> entry : sessionSubscriptionsSnapshot.entrySet()) {
             String sessionKey = entry.getKey();
-            SessionSubscriptions subscriptions = entry.getValue();
+            List<SessionSubscription> subscriptions = entry.getValue();
 
             for (SessionSubscription sessionSubscription : subscriptions) {
 
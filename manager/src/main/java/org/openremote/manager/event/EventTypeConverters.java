@@ -111,4 +111,23 @@ public class EventTypeConverters implements TypeConverters {
         string = string.substring(RenewEventSubscriptions.MESSAGE_PREFIX.length());
         return Container.JSON.readValue(string, RenewEventSubscriptions.class);
     }
-}
\ No newline at end of file
+
+    /**
+     * Converts a client message to its type with the converter of its prefix.
+     *
+     * @return the message if it has no known prefix.
+     */
+    public Object readMessage(String message) throws Exception {
+        Object result = readEventSubscription(message, null);
+        if (result == null) {
+            result = readCancelEventSubscription(message, null);
+        }
+        if (result == null) {
+            result = readRenewEventSubscriptions(message, null);
+        }
+        if (result == null) {
+            result = readEvent(message, null);
+        }
+        return result != null ? result : message;
+    }
+}
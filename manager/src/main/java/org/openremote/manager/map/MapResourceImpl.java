@@ -26,10 +26,14 @@ import org.openremote.model.map.MapResource;
 import org.openremote.model.value.ObjectValue;
 
 import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.Response;
 
 public class MapResourceImpl extends WebResource implements MapResource {
 
+    public static final String TILE_CACHE_CONTROL = "public, max-age=86400";
+
     protected final MapService mapService;
     protected final ManagerIdentityService identityService;
 
@@ -56,11 +60,48 @@ public class MapResourceImpl extends WebResource implements MapResource {
 
     @Override
     public byte[] getTile(int zoom, int column, int row) {
-        byte[] tile = mapService.getMapTile(zoom, column, row);
-        if (tile != null) {
-            return tile;
-        } else {
-            throw new WebApplicationException(Response.Status.NOT_FOUND);
+        try {
+            EntityTag etag = new EntityTag(mapService.getTileETag(zoom, column, row));
+            checkNotModified(etag);
+
+            MapService.Tile tile = mapService.getTile(zoom, column, row);
+            if (tile.getData() == null) {
+                throw new WebApplicationException(Response.Status.NOT_FOUND);
+            }
+
+            setCacheHeaders(etag);
+            // The cached array is written as is, without copying
+            return tile.getData();
+        } catch (IllegalArgumentException ex) {
+            throw new WebApplicationException(ex, Response.Status.BAD_REQUEST);
         }
     }
+
+    @Override
+    public byte[] getTilePack(int zoom, double west, double south, double east, double north) {
+        try {
+            EntityTag etag = new EntityTag(mapService.getTilePackETag(zoom, west, south, east, north));
+            checkNotModified(etag);
+
+            byte[] tilePack = mapService.getTilePack(zoom, west, south, east, north);
+            setCacheHeaders(etag);
+            return tilePack;
+        } catch (IllegalArgumentException ex) {
+            throw new WebApplicationException(ex, Response.Status.BAD_REQUEST);
+        }
+    }
+
+    protected void checkNotModified(EntityTag etag) {
+        String ifNoneMatch = httpHeaders.getHeaderString(HttpHeaders.IF_NONE_MATCH);
+        if (ifNoneMatch != null && (ifNoneMatch.contains(etag.toString()) || ifNoneMatch.trim().equals("*"))) {
+            throw new WebApplicationException(
+                Response.notModified(etag).header(HttpHeaders.CACHE_CONTROL, TILE_CACHE_CONTROL).build()
+            );
+        }
+    }
+
+    protected void setCacheHeaders(EntityTag etag) {
+        response.setHeader(HttpHeaders.ETAG, etag.toString());
+        response.setHeader(HttpHeaders.CACHE_CONTROL, TILE_CACHE_CONTROL);
+    }
 }
@@ -19,6 +19,10 @@
  */
 package org.openremote.manager.map;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.hash.Hashing;
 import io.undertow.server.HttpHandler;
 import io.undertow.server.handlers.ResponseCodeHandler;
 import io.undertow.server.handlers.proxy.ProxyHandler;
@@ -31,8 +35,11 @@ import org.openremote.model.util.TextUtil;
 import org.openremote.model.value.ArrayValue;
 import org.openremote.model.value.ObjectValue;
 import org.openremote.model.value.Values;
+import org.sqlite.SQLiteConfig;
 
 import javax.ws.rs.core.UriBuilder;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -40,10 +47,22 @@ import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 import static org.openremote.container.util.MapAccess.getInteger;
 import static org.openremote.container.util.MapAccess.getString;
@@ -64,9 +83,35 @@ public class MapService implements ContainerService {
     public static final String TILESERVER_TILE_PATH = "/styles/standard";
     public static final String MAP_TILESERVER_REQUEST_TIMEOUT = "MAP_TILESERVER_REQUEST_TIMEOUT";
     public static final int MAP_TILESERVER_REQUEST_TIMEOUT_DEFAULT = 10000;
+    public static final String MAP_TILE_READERS = "MAP_TILE_READERS";
+    public static final int MAP_TILE_READERS_DEFAULT = 4;
+    public static final String MAP_TILE_CACHE_SIZE_MB = "MAP_TILE_CACHE_SIZE_MB";
+    public static final int MAP_TILE_CACHE_SIZE_MB_DEFAULT = 32;
+    /**
+     * Cache weight of a missing tile, roughly the key and entry overhead.
+     */
+    protected static final int MISSING_TILE_WEIGHT = 100;
+    /**
+     * Zoom levels accepted when the tile data has no valid metadata.
+     */
+    protected static final int MIN_ZOOM_DEFAULT = 0;
+    protected static final int MAX_ZOOM_DEFAULT = 24;
+    public static final String MAP_TILE_MMAP_SIZE_MB = "MAP_TILE_MMAP_SIZE_MB";
+    public static final int MAP_TILE_MMAP_SIZE_MB_DEFAULT = 256;
+    public static final String MAP_TILE_PACK_MAX_TILES = "MAP_TILE_PACK_MAX_TILES";
+    public static final int MAP_TILE_PACK_MAX_TILES_DEFAULT = 256;
+    public static final double MAX_TILE_LATITUDE = 85.0511287798;
     private static final Logger LOG = Logger.getLogger(MapService.class.getName());
-    // Shared SQL connection is fine concurrently in SQLite
-    protected Connection connection;
+    // Pool of read-only connections, each used by one request at a time with its prepared tile query
+    protected BlockingQueue<TileReader> tileReaders;
+    protected final List<TileReader> allTileReaders = new ArrayList<>();
+    protected Cache<TileKey, Tile> tileCache;
+    protected int tileReaderCount;
+    protected long tileCacheSize;
+    protected long tileMmapSize;
+    protected int tilePackMaxTiles;
+    // Identifies the current tile data, the tile entity tags are derived from it and the tile coordinates
+    protected String tilesVersion;
     protected Path mapTilesPath;
     protected Path mapSettingsPath;
     protected Metadata metadata;
@@ -94,6 +139,9 @@ public class MapService implements ContainerService {
                 return new Metadata();
             }
 
+            // Digest of all metadata values, which tile generators update with each build of the tiles
+            String digest = Hashing.murmur3_128().hashString(new TreeMap<>(resultMap).toString(), StandardCharsets.UTF_8).toString();
+
             String attribution = resultMap.get("attribution");
             ArrayValue vectorLayer = Values.<ObjectValue>parse(resultMap.get("json")).flatMap(json -> json.getArray("vector_layers")).orElse(null);
             int maxZoom = Integer.valueOf(resultMap.get("maxzoom"));
@@ -103,7 +151,10 @@ public class MapService implements ContainerService {
 
             if (!TextUtil.isNullOrEmpty(attribution) && vectorLayer != null && !vectorLayer.isEmpty() && maxZoom > 0) {
                 metadata = new Metadata(attribution, vectorLayer, bounds, center, maxZoom, minZoom);
+            } else {
+                metadata = new Metadata();
             }
+            metadata.digest = digest;
         } catch (Exception ex) {
             metadata = new Metadata();
             LOG.log(Level.SEVERE, "Failed to get metadata from mbtiles DB", ex);
@@ -144,6 +195,14 @@ public class MapService implements ContainerService {
         return ContainerService.DEFAULT_PRIORITY;
     }
 
+    /**
+     * Only registers resources and reads the tile data, can be initialized and started in parallel with other services.
+     */
+    @Override
+    public Collection<Class<? extends ContainerService>> getDependencies() {
+        return Collections.emptyList();
+    }
+
     @Override
     public void init(Container container) throws Exception {
 
@@ -161,6 +220,11 @@ public class MapService implements ContainerService {
             );
         }
 
+        tileReaderCount = Math.max(1, getInteger(container.getConfig(), MAP_TILE_READERS, MAP_TILE_READERS_DEFAULT));
+        tileCacheSize = getInteger(container.getConfig(), MAP_TILE_CACHE_SIZE_MB, MAP_TILE_CACHE_SIZE_MB_DEFAULT) * 1024L * 1024L;
+        tileMmapSize = getInteger(container.getConfig(), MAP_TILE_MMAP_SIZE_MB, MAP_TILE_MMAP_SIZE_MB_DEFAULT) * 1024L * 1024L;
+        tilePackMaxTiles = getInteger(container.getConfig(), MAP_TILE_PACK_MAX_TILES, MAP_TILE_PACK_MAX_TILES_DEFAULT);
+
         container.getService(ManagerWebService.class).getApiSingletons().add(
                 new MapResourceImpl(this, container.getService(ManagerIdentityService.class))
         );
@@ -202,9 +266,26 @@ public class MapService implements ContainerService {
     public void start(Container container) throws Exception {
         LOG.info("Starting map service with tile data: " + mapTilesPath.toAbsolutePath());
         Class.forName(org.sqlite.JDBC.class.getName());
-        connection = DriverManager.getConnection("jdbc:sqlite:" + mapTilesPath.toAbsolutePath());
+        tileReaders = new ArrayBlockingQueue<>(tileReaderCount);
+        for (int i = 0; i < tileReaderCount; i++) {
+            TileReader tileReader = new TileReader(openConnection());
+            allTileReaders.add(tileReader);
+            tileReaders.add(tileReader);
+        }
+        tileCache = CacheBuilder.newBuilder()
+            .maximumWeight(tileCacheSize)
+            .weigher((TileKey key, Tile tile) -> tile.data != null ? tile.data.length : MISSING_TILE_WEIGHT)
+            .recordStats()
+            .build();
+
+        metadata = getMetadata(allTileReaders.get(0).connection);
+        tilesVersion = Hashing.murmur3_128().newHasher()
+            .putString(String.valueOf(metadata.getDigest()), StandardCharsets.UTF_8)
+            .putLong(Files.size(mapTilesPath))
+            .putLong(Files.getLastModifiedTime(mapTilesPath).toMillis())
+            .hash().toString().substring(0, 16);
+        LOG.fine("Map tiles version: " + tilesVersion);
 
-        metadata = getMetadata(connection);
         if (metadata.isValid()) {
             mapConfig = loadMapSettingsJson(mapSettingsPath);
             if (!mapConfig.hasKeys()) {
@@ -246,9 +327,26 @@ public class MapService implements ContainerService {
 
     @Override
     public void stop(Container container) throws Exception {
-        if (connection != null) {
-            connection.close();
+        for (TileReader tileReader : allTileReaders) {
+            tileReader.close();
         }
+        allTileReaders.clear();
+        if (tileCache != null) {
+            tileCache.invalidateAll();
+        }
+    }
+
+    protected Connection openConnection() throws Exception {
+        SQLiteConfig config = new SQLiteConfig();
+        config.setReadOnly(true);
+        Connection connection = DriverManager.getConnection("jdbc:sqlite:" + mapTilesPath.toAbsolutePath(), config.toProperties());
+        if (tileMmapSize > 0) {
+            // Let SQLite read tile pages straight from the memory mapped file instead of copying them through its page cache
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("pragma mmap_size = " + tileMmapSize);
+            }
+        }
+        return connection;
     }
 
     /**
@@ -358,33 +456,159 @@ public class MapService implements ContainerService {
     }
 
     public byte[] getMapTile(int zoom, int column, int row) {
-        // Flip y, oh why
-        row = new Double(Math.pow(2, zoom) - 1 - row).intValue();
+        return getTile(zoom, column, row).getData();
+    }
 
-        PreparedStatement query = null;
-        ResultSet result = null;
+    /**
+     * Returns the tile from the cache or reads it with one of the pooled connections, the returned tile data is shared
+     * and must not be modified. Missing tiles are cached as well and have no data. Tiles are always gzip encoded,
+     * tiles stored uncompressed are compressed once when they are loaded into the cache.
+     *
+     * @throws IllegalArgumentException if the zoom level is not available or the column or row is outside the zoom level.
+     */
+    public Tile getTile(int zoom, int column, int row) {
+        checkTile(zoom, column, row);
+        TileKey key = new TileKey(zoom, column, row);
+        Tile tile = tileCache.getIfPresent(key);
+        if (tile != null) {
+            return tile;
+        }
+
+        TileReader tileReader;
         try {
-            query = connection.prepareStatement(
-                    "select TILE_DATA from TILES where ZOOM_LEVEL = ? and TILE_COLUMN = ? and TILE_ROW = ?"
-            );
+            tileReader = tileReaders.take();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(ex);
+        }
 
-            int index = 0;
-            query.setInt(++index, zoom);
-            query.setInt(++index, column);
-            query.setInt(++index, row);
+        try {
+            // Flip y, oh why
+            int tmsRow = (1 << zoom) - 1 - row;
+            tile = new Tile(gzip(tileReader.read(zoom, column, tmsRow)));
+        } catch (Exception ex) {
+            throw new RuntimeException(ex);
+        } finally {
+            tileReaders.add(tileReader);
+        }
 
-            result = query.executeQuery();
+        tileCache.put(key, tile);
+        return tile;
+    }
 
-            if (result.next()) {
-                return result.getBytes(1);
-            } else {
-                return null;
+    /**
+     * The strong entity tag of a tile, it only depends on the tile data version and coordinates so conditional
+     * requests can be answered without loading the tile.
+     *
+     * @throws IllegalArgumentException if the zoom level is not available or the column or row is outside the zoom level.
+     */
+    public String getTileETag(int zoom, int column, int row) {
+        checkTile(zoom, column, row);
+        return tilesVersion + "-" + zoom + "-" + column + "-" + row;
+    }
+
+    public String getTilePackETag(int zoom, double west, double south, double east, double north) {
+        int[] range = getTileRange(zoom, west, south, east, north);
+        return tilesVersion + "-" + zoom + "-" + range[0] + "-" + range[1] + "-" + range[2] + "-" + range[3];
+    }
+
+    /**
+     * Returns a ZIP archive with an entry <code>{zoom}/{column}/{row}.pbf</code> for each existing tile of the zoom
+     * level within the bounding box (in degrees), the entries contain the gzip encoded tile data.
+     *
+     * @throws IllegalArgumentException if the zoom level is invalid or the bounding box covers too many tiles.
+     */
+    public byte[] getTilePack(int zoom, double west, double south, double east, double north) {
+        int[] range = getTileRange(zoom, west, south, east, north);
+        long tileCount = (long) (range[2] - range[0] + 1) * (range[3] - range[1] + 1);
+        if (tileCount > tilePackMaxTiles) {
+            throw new IllegalArgumentException(
+                "Bounding box covers " + tileCount + " tiles, the maximum is " + tilePackMaxTiles
+            );
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+            // Tiles are already compressed
+            zip.setLevel(Deflater.NO_COMPRESSION);
+            for (int column = range[0]; column <= range[2]; column++) {
+                for (int row = range[1]; row <= range[3]; row++) {
+                    byte[] data = getTile(zoom, column, row).getData();
+                    if (data == null) {
+                        continue;
+                    }
+                    zip.putNextEntry(new ZipEntry(zoom + "/" + column + "/" + row + ".pbf"));
+                    zip.write(data);
+                    zip.closeEntry();
+                }
             }
         } catch (Exception ex) {
             throw new RuntimeException(ex);
-        } finally {
-            closeQuietly(query, result);
         }
+        return bytes.toByteArray();
+    }
+
+    public CacheStats getTileCacheStats() {
+        return tileCache.stats();
+    }
+
+    /**
+     * @return the first column, first row, last column and last row of the tiles covering the bounding box.
+     */
+    protected int[] getTileRange(int zoom, double west, double south, double east, double north) {
+        checkZoom(zoom);
+        if (west > east || south > north) {
+            throw new IllegalArgumentException("Invalid bounding box: " + west + "," + south + "," + east + "," + north);
+        }
+        return new int[]{
+            getTileColumn(zoom, west),
+            getTileRow(zoom, north),
+            getTileColumn(zoom, east),
+            getTileRow(zoom, south)
+        };
+    }
+
+    /**
+     * Checks the zoom level against the range of the tile data, or the default range if there is no valid metadata.
+     */
+    protected void checkZoom(int zoom) {
+        int minZoom = metadata.isValid() ? metadata.minZoom : MIN_ZOOM_DEFAULT;
+        int maxZoom = metadata.isValid() ? metadata.maxZoom : MAX_ZOOM_DEFAULT;
+        if (zoom < minZoom || zoom > maxZoom) {
+            throw new IllegalArgumentException("Invalid zoom level: " + zoom);
+        }
+    }
+
+    protected void checkTile(int zoom, int column, int row) {
+        checkZoom(zoom);
+        int tiles = 1 << zoom;
+        if (column < 0 || column >= tiles || row < 0 || row >= tiles) {
+            throw new IllegalArgumentException("Invalid tile for zoom level " + zoom + ": " + column + "/" + row);
+        }
+    }
+
+    protected static int getTileColumn(int zoom, double longitude) {
+        int tiles = 1 << zoom;
+        int column = (int) Math.floor((longitude + 180) / 360 * tiles);
+        return Math.max(0, Math.min(tiles - 1, column));
+    }
+
+    protected static int getTileRow(int zoom, double latitude) {
+        int tiles = 1 << zoom;
+        double radians = Math.toRadians(Math.max(-MAX_TILE_LATITUDE, Math.min(MAX_TILE_LATITUDE, latitude)));
+        int row = (int) Math.floor((1 - Math.log(Math.tan(radians) + 1 / Math.cos(radians)) / Math.PI) / 2 * tiles);
+        return Math.max(0, Math.min(tiles - 1, row));
+    }
+
+    protected static byte[] gzip(byte[] data) throws Exception {
+        if (data == null || (data.length >= 2 && (data[0] & 0xff) == 0x1f && (data[1] & 0xff) == 0x8b)) {
+            return data;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(data.length);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+            gzip.write(data);
+        }
+        return bytes.toByteArray();
     }
 
     @Override
@@ -392,9 +616,78 @@ public class MapService implements ContainerService {
         return getClass().getSimpleName() + "{" +
                 "mapTilesPath=" + mapTilesPath +
                 ", mapSettingsPath=" + mapSettingsPath +
+                ", tileReaders=" + tileReaderCount +
+                ", tileCacheSize=" + tileCacheSize +
                 '}';
     }
 
+    public static final class Tile {
+        protected final byte[] data;
+
+        public Tile(byte[] data) {
+            this.data = data;
+        }
+
+        public byte[] getData() {
+            return data;
+        }
+    }
+
+    protected static final class TileKey {
+        protected final int zoom;
+        protected final int column;
+        protected final int row;
+
+        public TileKey(int zoom, int column, int row) {
+            this.zoom = zoom;
+            this.column = column;
+            this.row = row;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            TileKey that = (TileKey) o;
+            return zoom == that.zoom && column == that.column && row == that.row;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * zoom + column) + row;
+        }
+    }
+
+    protected static final class TileReader {
+        protected final Connection connection;
+        protected final PreparedStatement query;
+
+        public TileReader(Connection connection) throws Exception {
+            this.connection = connection;
+            this.query = connection.prepareStatement(
+                "select TILE_DATA from TILES where ZOOM_LEVEL = ? and TILE_COLUMN = ? and TILE_ROW = ?"
+            );
+        }
+
+        public byte[] read(int zoom, int column, int row) throws Exception {
+            query.setInt(1, zoom);
+            query.setInt(2, column);
+            query.setInt(3, row);
+            try (ResultSet result = query.executeQuery()) {
+                return result.next() ? result.getBytes(1) : null;
+            }
+        }
+
+        public void close() {
+            closeQuietly(query, null);
+            try {
+                connection.close();
+            } catch (Exception ex) {
+                LOG.warning("Error closing map tiles connection: " + ex);
+            }
+        }
+    }
+
     protected static final class Metadata {
         protected String attribution;
         protected ArrayValue vectorLayers;
@@ -402,6 +695,7 @@ public class MapService implements ContainerService {
         protected int minZoom;
         protected ArrayValue bounds;
         protected ArrayValue center;
+        protected String digest;
         protected boolean valid;
 
         public Metadata(String attribution, ArrayValue vectorLayers, ArrayValue bounds, ArrayValue center, int maxZoom, int minZoom) {
@@ -441,6 +735,10 @@ public class MapService implements ContainerService {
             return minZoom;
         }
 
+        public String getDigest() {
+            return digest;
+        }
+
         public boolean isValid() {
             return valid;
         }
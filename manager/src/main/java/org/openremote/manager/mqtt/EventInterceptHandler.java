@@ -21,13 +21,10 @@ package org.openremote.manager.mqtt;
 
 import io.moquette.interception.AbstractInterceptHandler;
 import io.moquette.interception.messages.*;
-import org.keycloak.adapters.rotation.AdapterTokenVerifier;
-import org.keycloak.common.VerificationException;
-import org.keycloak.exceptions.TokenNotActiveException;
-import org.keycloak.representations.AccessToken;
+import io.netty.buffer.ByteBuf;
 import org.openremote.container.message.MessageBrokerService;
+import org.openremote.container.security.AuthContext;
 import org.openremote.container.security.ClientCredentialsAuthForm;
-import org.openremote.container.security.keycloak.AccessTokenAuthContext;
 import org.openremote.container.util.UniqueIdentifierGenerator;
 import org.openremote.container.web.ConnectionConstants;
 import org.openremote.manager.event.ClientEventService;
@@ -40,18 +37,17 @@ import org.openremote.model.event.shared.CancelEventSubscription;
 import org.openremote.model.event.shared.EventSubscription;
 import org.openremote.model.event.shared.RenewEventSubscriptions;
 import org.openremote.model.value.Value;
-import org.openremote.model.value.Values;
 
-import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import static org.openremote.manager.mqtt.MqttBrokerService.ASSET_ATTRIBUTE_BINARY_VALUE_TOPIC;
+import static org.openremote.manager.mqtt.MqttBrokerService.ASSET_BULK_TOPIC;
 import static org.openremote.manager.mqtt.MqttBrokerService.ASSET_ATTRIBUTE_VALUE_TOPIC;
-import static org.openremote.manager.mqtt.MqttBrokerService.TOPIC_SEPARATOR;
-import static org.openremote.model.Constants.KEYCLOAK_CLIENT_ID;
 
 public class EventInterceptHandler extends AbstractInterceptHandler {
 
@@ -60,14 +56,17 @@ public class EventInterceptHandler extends AbstractInterceptHandler {
     protected final ManagerKeycloakIdentityProvider identityProvider;
     protected final MessageBrokerService messageBrokerService;
     protected final Map<String, MqttConnection> mqttConnectionMap;
+    protected final KeycloakAuthorizatorPolicy authorizatorPolicy;
 
     EventInterceptHandler(ManagerKeycloakIdentityProvider managerKeycloakIdentityProvider,
                           MessageBrokerService messageBrokerService,
-                          Map<String, MqttConnection> mqttConnectionMap) {
+                          Map<String, MqttConnection> mqttConnectionMap,
+                          KeycloakAuthorizatorPolicy authorizatorPolicy) {
 
         this.identityProvider = managerKeycloakIdentityProvider;
         this.messageBrokerService = messageBrokerService;
         this.mqttConnectionMap = mqttConnectionMap;
+        this.authorizatorPolicy = authorizatorPolicy;
     }
 
     @Override
@@ -96,18 +95,18 @@ public class EventInterceptHandler extends AbstractInterceptHandler {
 
         mqttConnectionMap.put(connection.clientId, connection);
 
-        Map<String, Object> headers = prepareHeaders(connection);
+        Map<String, Object> headers = new HashMap<>(prepareHeaders(connection));
         headers.put(ConnectionConstants.SESSION_OPEN, true);
-        messageBrokerService.getProducerTemplate().sendBodyAndHeaders(ClientEventService.CLIENT_EVENT_QUEUE, null, headers);
+        messageBrokerService.getProducerTemplate().sendBodyAndHeaders(ClientEventService.CLIENT_INBOUND_QUEUE, null, headers);
     }
 
     @Override
     public void onDisconnect(InterceptDisconnectMessage interceptDisconnectMessage) {
         MqttConnection connection = mqttConnectionMap.remove(interceptDisconnectMessage.getClientID());
         if (connection != null) {
-            Map<String, Object> headers = prepareHeaders(connection);
+            Map<String, Object> headers = new HashMap<>(prepareHeaders(connection));
             headers.put(ConnectionConstants.SESSION_CLOSE, true);
-            messageBrokerService.getProducerTemplate().sendBodyAndHeaders(ClientEventService.CLIENT_EVENT_QUEUE, null, headers);
+            messageBrokerService.getProducerTemplate().sendBodyAndHeaders(ClientEventService.CLIENT_INBOUND_QUEUE, null, headers);
         }
     }
 
@@ -115,9 +114,9 @@ public class EventInterceptHandler extends AbstractInterceptHandler {
     public void onConnectionLost(InterceptConnectionLostMessage interceptConnectionLostMessage) {
         MqttConnection connection = mqttConnectionMap.remove(interceptConnectionLostMessage.getClientID());
         if (connection != null) {
-            Map<String, Object> headers = prepareHeaders(connection);
+            Map<String, Object> headers = new HashMap<>(prepareHeaders(connection));
             headers.put(ConnectionConstants.SESSION_CLOSE_ERROR, true);
-            messageBrokerService.getProducerTemplate().sendBodyAndHeaders(ClientEventService.CLIENT_EVENT_QUEUE, null, headers);
+            messageBrokerService.getProducerTemplate().sendBodyAndHeaders(ClientEventService.CLIENT_INBOUND_QUEUE, null, headers);
 
         }
         LOG.info("Connection lost for client: " + interceptConnectionLostMessage.getClientID());
@@ -127,7 +126,7 @@ public class EventInterceptHandler extends AbstractInterceptHandler {
     public void onSubscribe(InterceptSubscribeMessage interceptSubscribeMessage) {
         MqttConnection connection = mqttConnectionMap.get(interceptSubscribeMessage.getClientID());
         if (connection != null) {
-            String[] topicParts = interceptSubscribeMessage.getTopicFilter().split(TOPIC_SEPARATOR);
+            String[] topicParts = MqttValueDecoder.splitTopic(interceptSubscribeMessage.getTopicFilter());
             String assetId = topicParts[1];
             AttributeRef attributeRef = null;
             boolean isValueSubscription = false;
@@ -150,7 +149,7 @@ public class EventInterceptHandler extends AbstractInterceptHandler {
             if (subscriptionId != null) { //renew subscription
                 RenewEventSubscriptions renewEventSubscriptions = new RenewEventSubscriptions(new String[]{subscriptionId});
                 Map<String, Object> headers = prepareHeaders(connection);
-                messageBrokerService.getProducerTemplate().sendBodyAndHeaders(ClientEventService.CLIENT_EVENT_QUEUE, renewEventSubscriptions, headers);
+                messageBrokerService.getProducerTemplate().sendBodyAndHeaders(ClientEventService.CLIENT_INBOUND_QUEUE, renewEventSubscriptions, headers);
             } else {
                 AssetFilter<AttributeEvent> attributeAssetFilter = new AssetFilter<AttributeEvent>().setRealm(connection.realm).setAssetIds(assetId);
                 EventSubscription<AttributeEvent> subscription = new EventSubscription<>(
@@ -171,7 +170,7 @@ public class EventInterceptHandler extends AbstractInterceptHandler {
                 }
 
                 Map<String, Object> headers = prepareHeaders(connection);
-                messageBrokerService.getProducerTemplate().sendBodyAndHeaders(ClientEventService.CLIENT_EVENT_QUEUE, subscription, headers);
+                messageBrokerService.getProducerTemplate().sendBodyAndHeaders(ClientEventService.CLIENT_INBOUND_QUEUE, subscription, headers);
             }
         } else {
             throw new IllegalStateException("Connection with clientId " + interceptSubscribeMessage.getClientID() + " not found.");
@@ -182,7 +181,7 @@ public class EventInterceptHandler extends AbstractInterceptHandler {
     public void onUnsubscribe(InterceptUnsubscribeMessage interceptUnsubscribeMessage) {
         MqttConnection connection = mqttConnectionMap.get(interceptUnsubscribeMessage.getClientID());
         if (connection != null) {
-            String[] topicParts = interceptUnsubscribeMessage.getTopicFilter().split(TOPIC_SEPARATOR);
+            String[] topicParts = MqttValueDecoder.splitTopic(interceptUnsubscribeMessage.getTopicFilter());
             String assetId = topicParts[1];
             String subscriptionId;
 
@@ -198,7 +197,7 @@ public class EventInterceptHandler extends AbstractInterceptHandler {
             if (subscriptionId != null) {
                 Map<String, Object> headers = prepareHeaders(connection);
                 CancelEventSubscription<AttributeEvent> cancelEventSubscription = new CancelEventSubscription<>(AttributeEvent.class, subscriptionId);
-                messageBrokerService.getProducerTemplate().sendBodyAndHeaders(ClientEventService.CLIENT_EVENT_QUEUE, cancelEventSubscription, headers);
+                messageBrokerService.getProducerTemplate().sendBodyAndHeaders(ClientEventService.CLIENT_INBOUND_QUEUE, cancelEventSubscription, headers);
             }
         }
     }
@@ -207,62 +206,62 @@ public class EventInterceptHandler extends AbstractInterceptHandler {
     public void onPublish(InterceptPublishMessage msg) {
         MqttConnection connection = mqttConnectionMap.get(msg.getClientID());
         if (connection != null) {
-            String[] topicParts = msg.getTopicName().split(TOPIC_SEPARATOR);
+            String[] topicParts = MqttValueDecoder.splitTopic(msg.getTopicName());
             String assetId = topicParts[1];
-            AttributeRef attributeRef = null;
-            if (topicParts.length > 2) { //attribute specific
-                attributeRef = new AttributeRef(assetId, topicParts[2]);
-            }
-            if (attributeRef == null) {
-                String payloadContent = msg.getPayload().toString(Charset.defaultCharset());
-                Values.parse(payloadContent).flatMap(Values::getObject).ifPresent(objectValue -> {
-                    Map<String, Object> headers = prepareHeaders(connection);
-                    AttributeEvent attributeEvent = new AttributeEvent(assetId, objectValue.keys()[0], objectValue.get(objectValue.keys()[0]).orElse(null));
-                    messageBrokerService.getProducerTemplate().sendBodyAndHeaders(ClientEventService.CLIENT_EVENT_QUEUE, attributeEvent, headers);
-                });
+            ByteBuf payload = msg.getPayload();
+
+            if (topicParts.length == 2) {
+                Value value = MqttValueDecoder.decodeText(payload);
+                List<AttributeEvent> attributeEvents = assetId.equals(ASSET_BULK_TOPIC)
+                    ? MqttValueDecoder.toBulkAttributeEvents(value)
+                    : MqttValueDecoder.toAttributeEvents(assetId, value);
+                if (attributeEvents.isEmpty()) {
+                    LOG.fine("No attribute updates in payload from MQTT client: " + connection.clientId);
+                    return;
+                }
+                // The events are processed as one exchange, each event is authorized by the asset processing
+                messageBrokerService.getProducerTemplate().sendBodyAndHeaders(ClientEventService.CLIENT_INBOUND_QUEUE, attributeEvents, prepareHeaders(connection));
             } else {
-                String payloadContent = msg.getPayload().toString(Charset.defaultCharset());
-                Value value = null;
-                if (Character.isLetter(payloadContent.charAt(0))) {
-                    if (payloadContent.equals(Boolean.TRUE.toString())) {
-                        value = Values.create(true);
-                    }
-                    if (payloadContent.equals(Boolean.FALSE.toString())) {
-                        value = Values.create(false);
+                Value value;
+                if (topicParts.length == 4 && topicParts[3].equals(ASSET_ATTRIBUTE_BINARY_VALUE_TOPIC)) {
+                    value = MqttValueDecoder.decodeBinary(payload);
+                    if (value == null) {
+                        LOG.info("Unsupported binary payload length " + payload.readableBytes() + " from MQTT client: " + connection.clientId);
+                        return;
                     }
-                    payloadContent = '"' + payloadContent + '"';
-                }
-                if (value == null) {
-                    value = Values.parse(payloadContent).orElse(Values.create(payloadContent));
+                } else {
+                    value = MqttValueDecoder.decodeText(payload);
                 }
 
-                Map<String, Object> headers = prepareHeaders(connection);
-                AttributeEvent attributeEvent = new AttributeEvent(assetId, attributeRef.getAttributeName(), value);
-                messageBrokerService.getProducerTemplate().sendBodyAndHeaders(ClientEventService.CLIENT_EVENT_QUEUE, attributeEvent, headers);
+                AttributeEvent attributeEvent = new AttributeEvent(assetId, topicParts[2], value);
+                messageBrokerService.getProducerTemplate().sendBodyAndHeaders(ClientEventService.CLIENT_INBOUND_QUEUE, attributeEvent, prepareHeaders(connection));
             }
         }
     }
 
+    /**
+     * The headers are only rebuilt when the auth context of the connection changes; the returned map is immutable
+     * so callers that need additional headers must copy it.
+     */
     private Map<String, Object> prepareHeaders(MqttConnection connection) {
-        Map<String, Object> headers = new HashMap<>();
-        headers.put(ConnectionConstants.SESSION_KEY, connection.clientId);
-        headers.put(ClientEventService.HEADER_CONNECTION_TYPE, ClientEventService.HEADER_CONNECTION_TYPE_MQTT);
-        try {
-            AccessToken accessToken = AdapterTokenVerifier.verifyToken(connection.accessToken, identityProvider.getKeycloakDeployment(connection.realm, KEYCLOAK_CLIENT_ID));
-            headers.put(Constants.AUTH_CONTEXT, new AccessTokenAuthContext(connection.realm, accessToken));
-        } catch (VerificationException e) {
-            if (e instanceof TokenNotActiveException) {
-                String suppliedClientSecret = new String(connection.password, StandardCharsets.UTF_8);
-                connection.accessToken = identityProvider.getExternalKeycloak().getAccessToken(connection.realm, new ClientCredentialsAuthForm(connection.username, suppliedClientSecret)).getToken();
-                try {
-                    AccessToken accessToken = AdapterTokenVerifier.verifyToken(connection.accessToken, identityProvider.getKeycloakDeployment(connection.realm, KEYCLOAK_CLIENT_ID));
-                    headers.put(Constants.AUTH_CONTEXT, new AccessTokenAuthContext(connection.realm, accessToken));
-                } catch (VerificationException verificationException) {
-                    LOG.log(Level.WARNING, "Couldn't verify token", verificationException);
-                }
+        AuthContext authContext = authorizatorPolicy.getAuthContext(connection);
+
+        synchronized (connection) {
+            if (connection.headers != null && connection.headersAuthContext == authContext) {
+                return connection.headers;
+            }
+
+            Map<String, Object> headers = new HashMap<>();
+            headers.put(ConnectionConstants.SESSION_KEY, connection.clientId);
+            headers.put(ClientEventService.HEADER_CONNECTION_TYPE, ClientEventService.HEADER_CONNECTION_TYPE_MQTT);
+            if (authContext != null) {
+                headers.put(Constants.AUTH_CONTEXT, authContext);
+            } else {
+                LOG.warning("Couldn't verify token of MQTT client: " + connection.clientId);
             }
-            LOG.log(Level.WARNING, e.getMessage(), e);
+            connection.headers = Collections.unmodifiableMap(headers);
+            connection.headersAuthContext = authContext;
+            return connection.headers;
         }
-        return headers;
     }
 }
@@ -23,6 +23,7 @@ import org.openremote.model.security.ClientRole;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -57,6 +58,61 @@ public class KeycloakAuthorizatorPolicy implements IAuthorizatorPolicy {
         return verifyRights(topic, username, clientId, ClientRole.READ_ASSETS);
     }
 
+    /**
+     * Get the {@link AuthContext} of the connection; the access token is only verified again once it is no longer
+     * active, at which point a new token is requested and any cached authorization decisions are discarded.
+     *
+     * @return <code>null</code> if the token couldn't be verified.
+     */
+    public AuthContext getAuthContext(MqttConnection connection) {
+        synchronized (connection) {
+            if (connection.authContext != null && connection.verifiedAccessToken.isActive()) {
+                return connection.authContext;
+            }
+
+            connection.authContext = null;
+            connection.verifiedAccessToken = null;
+            connection.authorizationDecisions.clear();
+
+            AccessToken accessToken;
+            try {
+                accessToken = AdapterTokenVerifier.verifyToken(connection.accessToken, identityProvider.getKeycloakDeployment(connection.realm, KEYCLOAK_CLIENT_ID));
+            } catch (VerificationException e) {
+                if (e instanceof TokenNotActiveException) {
+                    String suppliedClientSecret = new String(connection.password, StandardCharsets.UTF_8);
+                    connection.accessToken = identityProvider.getExternalKeycloak().getAccessToken(connection.realm, new ClientCredentialsAuthForm(connection.username, suppliedClientSecret)).getToken();
+                    try {
+                        accessToken = AdapterTokenVerifier.verifyToken(connection.accessToken, identityProvider.getKeycloakDeployment(connection.realm, KEYCLOAK_CLIENT_ID));
+                    } catch (VerificationException verificationException) {
+                        LOG.log(Level.INFO, "Couldn't verify token", verificationException);
+                        return null;
+                    }
+                } else {
+                    LOG.log(Level.INFO, "Couldn't verify token", e);
+                    return null;
+                }
+            }
+
+            connection.verifiedAccessToken = accessToken;
+            connection.authContext = new AccessTokenAuthContext(connection.realm, accessToken);
+            return connection.authContext;
+        }
+    }
+
+    /**
+     * Discard cached authorization decisions of all connections for topics of the specified asset.
+     */
+    public void invalidateAuthorizations(String assetId) {
+        mqttConnectionMap.values().forEach(connection -> connection.authorizationDecisions.remove(assetId));
+    }
+
+    /**
+     * Discard all cached authorization decisions of all connections.
+     */
+    public void invalidateAuthorizations() {
+        mqttConnectionMap.values().forEach(connection -> connection.authorizationDecisions.clear());
+    }
+
     private boolean verifyRights(Topic topic, String username, String clientId, ClientRole... roles) {
         MqttConnection connection = mqttConnectionMap.get(clientId);
         if (connection == null) {
@@ -80,11 +136,55 @@ public class KeycloakAuthorizatorPolicy implements IAuthorizatorPolicy {
         }
 
         if(topic.getTokens().size() == 4 && topic.getTokens().stream().noneMatch(token -> token.toString().equals(ASSET_ATTRIBUTE_VALUE_TOPIC))) {
-            LOG.info("Topic for raw values should end with '" + ASSET_ATTRIBUTE_VALUE_TOPIC + "'");
+            boolean binaryWrite = Arrays.asList(roles).contains(ClientRole.WRITE_ASSETS)
+                && topic.getTokens().get(3).toString().equals(ASSET_ATTRIBUTE_BINARY_VALUE_TOPIC);
+            if (!binaryWrite) {
+                LOG.info("Topic for raw values should end with '" + ASSET_ATTRIBUTE_VALUE_TOPIC + "' or '" + ASSET_ATTRIBUTE_BINARY_VALUE_TOPIC + "' (publish only)");
+                return false;
+            }
+        }
+
+        AuthContext authContext = getAuthContext(connection);
+        if (authContext == null) {
             return false;
         }
 
+        String assetId = topic.getTokens().get(1).toString();
+        boolean write = Arrays.asList(roles).contains(ClientRole.WRITE_ASSETS);
+        String decisionKey = (write ? "write:" : "read:") + topic.toString();
+
+        Map<String, Boolean> decisions = connection.authorizationDecisions
+            .computeIfAbsent(assetId, id -> new ConcurrentHashMap<>());
+        Boolean decision = decisions.get(decisionKey);
+
+        if (decision == null) {
+            boolean allowed = verifyRights(topic, connection, authContext, write, roles);
+            // Only cache the decision if the decisions of the asset weren't discarded while it was made, the
+            // decisions are replaced on every invalidation
+            connection.authorizationDecisions.computeIfPresent(assetId, (id, current) -> {
+                if (current == decisions) {
+                    current.put(decisionKey, allowed);
+                }
+                return current;
+            });
+            decision = allowed;
+        }
+
+        return decision;
+    }
+
+    private boolean verifyRights(Topic topic, MqttConnection connection, AuthContext authContext, boolean write, ClientRole... roles) {
         Token token = topic.getTokens().get(1);
+
+        if (topic.getTokens().size() == 2 && token.toString().equals(ASSET_BULK_TOPIC)) {
+            if (!write) {
+                LOG.info("Topic '" + ASSETS_TOPIC + TOPIC_SEPARATOR + ASSET_BULK_TOPIC + "' is publish only");
+                return false;
+            }
+            // The assets of the batch are authorized when the events are processed
+            return identityProvider.canSubscribeWith(authContext, new TenantFilter(connection.realm), roles);
+        }
+
         Asset asset = assetStorageService.find(token.toString());
         if(asset == null) {
             LOG.log(Level.INFO, "Asset not found");
@@ -98,27 +198,7 @@ public class KeycloakAuthorizatorPolicy implements IAuthorizatorPolicy {
             }
         }
 
-        AccessToken accessToken = null;
-        try {
-            accessToken = AdapterTokenVerifier.verifyToken(connection.accessToken, identityProvider.getKeycloakDeployment(connection.realm, KEYCLOAK_CLIENT_ID));
-        } catch (VerificationException e) {
-            if (e instanceof TokenNotActiveException) {
-                String suppliedClientSecret = new String(connection.password, StandardCharsets.UTF_8);
-                connection.accessToken = identityProvider.getExternalKeycloak().getAccessToken(connection.realm, new ClientCredentialsAuthForm(connection.username, suppliedClientSecret)).getToken();
-                try {
-                    accessToken = AdapterTokenVerifier.verifyToken(connection.accessToken, identityProvider.getKeycloakDeployment(connection.realm, KEYCLOAK_CLIENT_ID));
-                } catch (VerificationException verificationException) {
-                    LOG.log(Level.INFO, "Couldn't verify token", verificationException);
-                    return false;
-                }
-            } else {
-                LOG.log(Level.INFO, "Couldn't verify token", e);
-                return false;
-            }
-        }
-
-        AuthContext authContext = new AccessTokenAuthContext(connection.realm, accessToken);
-        if (Arrays.asList(roles).contains(ClientRole.WRITE_ASSETS)) { //write
+        if (write) {
 
             return identityProvider.canSubscribeWith(authContext, new TenantFilter(connection.realm), roles);
         } else { // read
@@ -31,20 +31,27 @@ import org.apache.camel.builder.RouteBuilder;
 import org.openremote.container.Container;
 import org.openremote.container.ContainerService;
 import org.openremote.container.message.MessageBrokerService;
+import org.openremote.container.persistence.PersistenceEvent;
 import org.openremote.manager.asset.AssetStorageService;
 import org.openremote.manager.event.ClientEventService;
 import org.openremote.manager.security.ManagerIdentityService;
 import org.openremote.manager.security.ManagerKeycloakIdentityProvider;
 import org.openremote.manager.web.ManagerWebService;
+import org.openremote.model.asset.Asset;
+import org.openremote.model.asset.UserAsset;
 import org.openremote.model.attribute.AttributeEvent;
 import org.openremote.model.event.TriggeredEventSubscription;
+import org.openremote.model.security.Tenant;
 import org.openremote.model.value.Value;
 
 import java.nio.charset.Charset;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import static org.openremote.container.persistence.PersistenceEvent.PERSISTENCE_TOPIC;
+import static org.openremote.container.persistence.PersistenceEvent.isPersistenceEventForEntityType;
 import static org.openremote.container.util.MapAccess.getInteger;
 import static org.openremote.container.util.MapAccess.getString;
 import static org.openremote.manager.event.ClientEventService.getSessionKey;
@@ -63,12 +70,22 @@ public class MqttBrokerService implements ContainerService {
     public static final String ASSETS_TOPIC = "assets";
     public static final String TOPIC_SEPARATOR = "/";
     public static final String ASSET_ATTRIBUTE_VALUE_TOPIC = "value";
+    /**
+     * Publish only topic suffix for compact binary attribute values, see {@link MqttValueDecoder#decodeBinary}.
+     */
+    public static final String ASSET_ATTRIBUTE_BINARY_VALUE_TOPIC = "binary";
+    /**
+     * Publish only topic <code>assets/bulk</code> for updating many attributes of one or more assets with a single
+     * message, see {@link MqttValueDecoder#toBulkAttributeEvents}.
+     */
+    public static final String ASSET_BULK_TOPIC = "bulk";
 
     protected ManagerKeycloakIdentityProvider identityProvider;
     protected ClientEventService clientEventService;
     protected MessageBrokerService messageBrokerService;
 
     protected Map<String, MqttConnection> mqttConnectionMap;
+    protected KeycloakAuthorizatorPolicy authorizatorPolicy;
 
     protected boolean active;
     protected String host;
@@ -85,7 +102,7 @@ public class MqttBrokerService implements ContainerService {
         host = getString(container.getConfig(), MQTT_SERVER_LISTEN_HOST, BrokerConstants.HOST);
         port = getInteger(container.getConfig(), MQTT_SERVER_LISTEN_PORT, BrokerConstants.PORT);
 
-        mqttConnectionMap = new HashMap<>();
+        mqttConnectionMap = new ConcurrentHashMap<>();
 
         clientEventService = container.getService(ClientEventService.class);
         ManagerIdentityService identityService = container.getService(ManagerIdentityService.class);
@@ -99,6 +116,8 @@ public class MqttBrokerService implements ContainerService {
             identityProvider = (ManagerKeycloakIdentityProvider) identityService.getIdentityProvider();
         }
 
+        authorizatorPolicy = new KeycloakAuthorizatorPolicy(identityProvider, container.getService(AssetStorageService.class), clientEventService, mqttConnectionMap);
+
         mqttBroker = new Server();
 
         messageBrokerService.getContext().addRoutes(new RouteBuilder() {
@@ -127,6 +146,28 @@ public class MqttBrokerService implements ContainerService {
                                     });
                         })
                         .end();
+
+                // Cached authorization decisions depend on assets, user asset links and realms
+                from(PERSISTENCE_TOPIC)
+                        .routeId("MqttAssetAuthorizationChanges")
+                        .filter(isPersistenceEventForEntityType(Asset.class))
+                        .filter(exchange -> mqttConnectionMap.size() > 0)
+                        .process(exchange -> {
+                            Asset asset = (Asset) exchange.getIn().getBody(PersistenceEvent.class).getEntity();
+                            authorizatorPolicy.invalidateAuthorizations(asset.getId());
+                        });
+
+                from(PERSISTENCE_TOPIC)
+                        .routeId("MqttUserAssetAuthorizationChanges")
+                        .filter(isPersistenceEventForEntityType(UserAsset.class))
+                        .filter(exchange -> mqttConnectionMap.size() > 0)
+                        .process(exchange -> authorizatorPolicy.invalidateAuthorizations());
+
+                from(PERSISTENCE_TOPIC)
+                        .routeId("MqttTenantAuthorizationChanges")
+                        .filter(isPersistenceEventForEntityType(Tenant.class))
+                        .filter(exchange -> mqttConnectionMap.size() > 0)
+                        .process(exchange -> authorizatorPolicy.invalidateAuthorizations());
             }
         });
     }
@@ -137,10 +178,9 @@ public class MqttBrokerService implements ContainerService {
         properties.setProperty(BrokerConstants.HOST_PROPERTY_NAME, host);
         properties.setProperty(BrokerConstants.PORT_PROPERTY_NAME, String.valueOf(port));
         properties.setProperty(BrokerConstants.ALLOW_ANONYMOUS_PROPERTY_NAME, String.valueOf(false));
-        List<? extends InterceptHandler> interceptHandlers = Collections.singletonList(new EventInterceptHandler(identityProvider, messageBrokerService, mqttConnectionMap));
+        List<? extends InterceptHandler> interceptHandlers = Collections.singletonList(new EventInterceptHandler(identityProvider, messageBrokerService, mqttConnectionMap, authorizatorPolicy));
 
-        AssetStorageService assetStorageService = container.getService(AssetStorageService.class);
-        mqttBroker.startServer(new MemoryConfig(properties), interceptHandlers, null, new KeycloakAuthenticator(identityProvider), new KeycloakAuthorizatorPolicy(identityProvider, assetStorageService, clientEventService, mqttConnectionMap));
+        mqttBroker.startServer(new MemoryConfig(properties), interceptHandlers, null, new KeycloakAuthenticator(identityProvider), authorizatorPolicy);
         LOG.fine("Started MQTT broker");
     }
 
@@ -1,9 +1,12 @@
 package org.openremote.manager.mqtt;
 
+import org.keycloak.representations.AccessToken;
+import org.openremote.container.security.AuthContext;
 import org.openremote.model.attribute.AttributeRef;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static org.openremote.manager.mqtt.KeycloakAuthenticator.MQTT_CLIENT_ID_SEPARATOR;
 
@@ -18,6 +21,14 @@ public class MqttConnection {
     protected final Map<AttributeRef, String> assetAttributeValueSubscriptions;
     protected String accessToken;
     protected int subscriptionId;
+    // Verified token and auth context are reused until the token expires
+    protected AccessToken verifiedAccessToken;
+    protected AuthContext authContext;
+    // Authorization decisions by asset ID then by topic and access
+    protected final Map<String, Map<String, Boolean>> authorizationDecisions = new ConcurrentHashMap<>();
+    // Message headers are reused for every publish while the auth context doesn't change
+    protected Map<String, Object> headers;
+    protected AuthContext headersAuthContext;
 
     public MqttConnection(String clientId, String username, byte[] password) {
         int indexSplit = clientId.indexOf(MQTT_CLIENT_ID_SEPARATOR);
@@ -0,0 +1,228 @@
+/*
+ * Copyright 2020, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.manager.mqtt;
+
+import io.netty.buffer.ByteBuf;
+import org.openremote.model.attribute.AttributeEvent;
+import org.openremote.model.value.ArrayValue;
+import org.openremote.model.value.ObjectValue;
+import org.openremote.model.value.Value;
+import org.openremote.model.value.Values;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Decodes MQTT topics and publish payloads without intermediate JSON parsing for the common cases.
+ * <p>
+ * Text payloads of the form <code>true</code>, <code>false</code>, <code>null</code> and decimal numbers are decoded
+ * directly from the buffer, JSON objects, arrays and strings are parsed and anything else is treated as a plain
+ * string. Binary payloads (see {@link MqttBrokerService#ASSET_ATTRIBUTE_BINARY_VALUE_TOPIC}) are big-endian and
+ * decoded by length: 1 byte is a boolean (zero is <code>false</code>), 4 bytes is a signed integer and 8 bytes is an
+ * IEEE 754 double.
+ * <p>
+ * Multi-attribute payloads are converted to {@link AttributeEvent}s; on the <code>assets/{assetId}</code> topic the
+ * payload is an object of attribute names and values, on the {@link MqttBrokerService#ASSET_BULK_TOPIC} topic it is
+ * either an object of asset IDs to such objects or an array of objects with <code>assetId</code>,
+ * <code>attributeName</code>, <code>value</code> and optional <code>timestamp</code> properties.
+ */
+public final class MqttValueDecoder {
+
+    protected static final int MAX_LONG_DIGITS = 18;
+
+    private MqttValueDecoder() {
+    }
+
+    /**
+     * Splits the topic on {@link MqttBrokerService#TOPIC_SEPARATOR} without using a regular expression.
+     */
+    public static String[] splitTopic(String topic) {
+        List<String> parts = new ArrayList<>(4);
+        int start = 0;
+        int index;
+        while ((index = topic.indexOf('/', start)) >= 0) {
+            parts.add(topic.substring(start, index));
+            start = index + 1;
+        }
+        parts.add(topic.substring(start));
+        return parts.toArray(new String[0]);
+    }
+
+    public static Value decodeText(ByteBuf payload) {
+        int start = payload.readerIndex();
+        int length = payload.readableBytes();
+
+        if (length == 0) {
+            return null;
+        }
+
+        byte first = payload.getByte(start);
+
+        if (first == '{' || first == '[' || first == '"') {
+            return Values.parseOrNull(payload.toString(StandardCharsets.UTF_8));
+        }
+
+        if (equalsAscii(payload, "true")) {
+            return Values.create(true);
+        }
+        if (equalsAscii(payload, "false")) {
+            return Values.create(false);
+        }
+        if (equalsAscii(payload, "null")) {
+            return null;
+        }
+
+        Double number = decodeNumber(payload, start, length);
+        if (number != null) {
+            return Values.create(number);
+        }
+
+        return Values.create(payload.toString(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return <code>null</code> if the payload length isn't a supported binary encoding.
+     */
+    public static Value decodeBinary(ByteBuf payload) {
+        int start = payload.readerIndex();
+
+        switch (payload.readableBytes()) {
+            case 1:
+                return Values.create(payload.getByte(start) != 0);
+            case 4:
+                return Values.create(payload.getInt(start));
+            case 8:
+                return Values.create(payload.getDouble(start));
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * @return an event for every attribute of the object value, empty if the value isn't an object.
+     */
+    public static List<AttributeEvent> toAttributeEvents(String assetId, Value value) {
+        return Values.getObject(value)
+            .map(objectValue -> {
+                List<AttributeEvent> attributeEvents = new ArrayList<>(objectValue.keys().length);
+                addAttributeEvents(assetId, objectValue, attributeEvents);
+                return attributeEvents;
+            })
+            .orElse(Collections.emptyList());
+    }
+
+    /**
+     * @return the events of a bulk payload in payload order, empty if the value isn't an object or array; invalid
+     * array elements are skipped.
+     */
+    public static List<AttributeEvent> toBulkAttributeEvents(Value value) {
+        ObjectValue objectValue = Values.getObject(value).orElse(null);
+        if (objectValue != null) {
+            List<AttributeEvent> attributeEvents = new ArrayList<>();
+            for (String assetId : objectValue.keys()) {
+                objectValue.getObject(assetId).ifPresent(attributes -> addAttributeEvents(assetId, attributes, attributeEvents));
+            }
+            return attributeEvents;
+        }
+
+        ArrayValue arrayValue = Values.getArray(value).orElse(null);
+        if (arrayValue != null) {
+            List<AttributeEvent> attributeEvents = new ArrayList<>(arrayValue.length());
+            for (int i = 0; i < arrayValue.length(); i++) {
+                arrayValue.getObject(i).ifPresent(update -> {
+                    String assetId = update.getString("assetId").orElse(null);
+                    String attributeName = update.getString("attributeName").orElse(null);
+                    if (assetId != null && attributeName != null) {
+                        long timestamp = update.getNumber("timestamp").map(Double::longValue).orElse(0L);
+                        attributeEvents.add(new AttributeEvent(assetId, attributeName, update.get("value").orElse(null), timestamp));
+                    }
+                });
+            }
+            return attributeEvents;
+        }
+
+        return Collections.emptyList();
+    }
+
+    protected static void addAttributeEvents(String assetId, ObjectValue attributes, List<AttributeEvent> attributeEvents) {
+        for (String attributeName : attributes.keys()) {
+            attributeEvents.add(new AttributeEvent(assetId, attributeName, attributes.get(attributeName).orElse(null)));
+        }
+    }
+
+    protected static Double decodeNumber(ByteBuf payload, int start, int length) {
+        int index = start;
+        int end = start + length;
+        boolean negative = payload.getByte(index) == '-';
+
+        if (negative) {
+            index++;
+        }
+
+        if (index == end) {
+            return null;
+        }
+
+        // Integers are accumulated without allocation
+        if (end - index <= MAX_LONG_DIGITS) {
+            long value = 0;
+            boolean integer = true;
+            for (int i = index; i < end; i++) {
+                byte b = payload.getByte(i);
+                if (b < '0' || b > '9') {
+                    integer = false;
+                    break;
+                }
+                value = value * 10 + (b - '0');
+            }
+            if (integer) {
+                return (double) (negative ? -value : value);
+            }
+        }
+
+        for (int i = index; i < end; i++) {
+            byte b = payload.getByte(i);
+            if (!((b >= '0' && b <= '9') || b == '.' || b == 'e' || b == 'E' || b == '-' || b == '+')) {
+                return null;
+            }
+        }
+
+        try {
+            return Double.parseDouble(payload.toString(start, length, StandardCharsets.US_ASCII));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    protected static boolean equalsAscii(ByteBuf payload, String str) {
+        if (payload.readableBytes() != str.length()) {
+            return false;
+        }
+        int start = payload.readerIndex();
+        for (int i = 0; i < str.length(); i++) {
+            if (payload.getByte(start + i) != str.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -230,56 +230,58 @@ public class NotificationService extends RouteBuilder implements ContainerServic
 
                     // Filter targets based on repeat frequency
                     if (!TextUtil.isNullOrEmpty(notification.getName()) && (!TextUtil.isNullOrEmpty(notification.getRepeatInterval()) || notification.getRepeatFrequency() != null)) {
-                        mappedTargetsList = mappedTargetsList.stream()
-                            .filter(target -> okToSendNotification(source, sourceId.get(), target, notification))
-                            .collect(Collectors.toList());
+                        mappedTargetsList = getTargetsToSend(source, sourceId.get(), mappedTargetsList, notification);
                     }
 
-                    // Send message to each applicable target
-                    mappedTargetsList.forEach(
-                        target ->
-                            persistenceService.doTransaction(em -> {
-
-                                // commit the notification first to get the ID
-                                SentNotification sentNotification = new SentNotification()
-                                    .setName(notification.getName())
-                                    .setType(notification.getMessage().getType())
-                                    .setSource(source)
-                                    .setSourceId(sourceId.get())
-                                    .setTarget(target.getType())
-                                    .setTargetId(target.getId())
-                                    .setMessage(notification.getMessage().toValue())
-                                    .setSentOn(Date.from(timerService.getNow()));
-
-                                sentNotification = em.merge(sentNotification);
-                                long id = sentNotification.getId();
-
-                                try {
-                                    NotificationSendResult result = handler.sendMessage(
-                                        id,
-                                        source,
-                                        sourceId.get(),
-                                        target,
-                                        notification.getMessage());
-
-                                    if (result.isSuccess()) {
-                                        LOG.info("Notification sent '" + id + "': " + target);
-                                    } else {
-                                        LOG.warning("Notification failed '" + id + "': " + target + ", reason=" + result.getMessage());
-                                        sentNotification.setError(TextUtil.isNullOrEmpty(result.getMessage()) ? "Unknown error" : result.getMessage());
-                                    }
-                                    // Merge the sent notification again with the message included just in case the handler modified the message
-                                    sentNotification.setMessage(notification.getMessage().toValue());
-                                    em.merge(sentNotification);
-                                } catch (Exception e) {
-                                    LOG.log(Level.SEVERE,
-                                        "Notification handler threw an exception whilst sending notification '" + id + "'",
-                                        e);
-                                    sentNotification.setError(TextUtil.isNullOrEmpty(e.getMessage()) ? "Unknown error" : e.getMessage());
-                                    em.merge(sentNotification);
-                                }
-                            })
+                    List<Notification.Target> targets = mappedTargetsList;
+
+                    // Record the notification for all targets in one transaction to get the IDs
+                    List<SentNotification> sentNotifications = persistenceService.doReturningTransaction(em ->
+                        targets.stream().map(target -> em.merge(
+                            new SentNotification()
+                                .setName(notification.getName())
+                                .setType(notification.getMessage().getType())
+                                .setSource(source)
+                                .setSourceId(sourceId.get())
+                                .setTarget(target.getType())
+                                .setTargetId(target.getId())
+                                .setMessage(notification.getMessage().toValue())
+                                .setSentOn(Date.from(timerService.getNow()))
+                        )).collect(Collectors.toList())
                     );
+
+                    // Send message to each applicable target
+                    for (int i = 0; i < targets.size(); i++) {
+                        Notification.Target target = targets.get(i);
+                        SentNotification sentNotification = sentNotifications.get(i);
+                        long id = sentNotification.getId();
+
+                        try {
+                            NotificationSendResult result = handler.sendMessage(
+                                id,
+                                source,
+                                sourceId.get(),
+                                target,
+                                notification.getMessage());
+
+                            if (result.isSuccess()) {
+                                LOG.info("Notification sent '" + id + "': " + target);
+                            } else {
+                                LOG.warning("Notification failed '" + id + "': " + target + ", reason=" + result.getMessage());
+                                sentNotification.setError(TextUtil.isNullOrEmpty(result.getMessage()) ? "Unknown error" : result.getMessage());
+                            }
+                            // Merge the sent notification again with the message included just in case the handler modified the message
+                            sentNotification.setMessage(notification.getMessage().toValue());
+                        } catch (Exception e) {
+                            LOG.log(Level.SEVERE,
+                                "Notification handler threw an exception whilst sending notification '" + id + "'",
+                                e);
+                            sentNotification.setError(TextUtil.isNullOrEmpty(e.getMessage()) ? "Unknown error" : e.getMessage());
+                        }
+                    }
+
+                    // Store the results of all targets in one transaction
+                    persistenceService.doTransaction(em -> sentNotifications.forEach(em::merge));
                 })
                 .endDoTry()
                 .doCatch(NotificationProcessingException.class)
@@ -485,6 +487,9 @@ public class NotificationService extends RouteBuilder implements ContainerServic
     }
 
     @SuppressWarnings("unchecked")
+    /**
+     * Checks access to all targets, the users and assets of the targets are each checked with a single query.
+     */
     protected void checkAccess(Notification.Source source, String sourceId, List<Notification.Target> targets, String realm, String userId, boolean isSuperUser, boolean isRestrictedUser, String assetId) throws NotificationProcessingException {
 
         if (isSuperUser) {
@@ -495,7 +500,10 @@ public class NotificationService extends RouteBuilder implements ContainerServic
             return;
         }
 
-        targets.forEach(target -> {
+        Set<String> userIds = new LinkedHashSet<>();
+        Set<String> assetIds = new LinkedHashSet<>();
+
+        for (Notification.Target target : targets) {
 
             switch (target.getType()) {
 
@@ -508,18 +516,10 @@ public class NotificationService extends RouteBuilder implements ContainerServic
                         throw new NotificationProcessingException(INSUFFICIENT_ACCESS);
                     }
 
-                    // Requester must be in the same realm as all target users
-                    boolean realmMatch = false;
-
                     if (target.getType() == Notification.TargetType.USER) {
-                        realmMatch = Arrays.stream(identityService.getIdentityProvider().getUsers(Collections.singletonList(target.getId())))
-                                .allMatch(user -> realm.equals(user.getRealm()));
-                    } else {
+                        userIds.add(target.getId());
+                    } else if (!realm.equals(target.getId())) {
                         // Can only send to the same realm as the requestor realm
-                        realmMatch = realm.equals(target.getId());
-                    }
-
-                    if (!realmMatch) {
                         throw new NotificationProcessingException(INSUFFICIENT_ACCESS, "Targets must all be in the same realm as the requestor");
                     }
                     break;
@@ -528,46 +528,70 @@ public class NotificationService extends RouteBuilder implements ContainerServic
                     if (TextUtil.isNullOrEmpty(realm)) {
                         throw new NotificationProcessingException(INSUFFICIENT_ACCESS);
                     }
+                    assetIds.add(target.getId());
+                    break;
+            }
+        }
 
-                    // If requestor is restricted user check all target assets are linked to that user
-                    if (isRestrictedUser && !assetStorageService.isUserAssets(userId, Collections.singletonList(target.getId()))) {
-                        throw new NotificationProcessingException(INSUFFICIENT_ACCESS, "Targets must all be linked to the requesting restricted user");
-                    }
+        if (!userIds.isEmpty()) {
+            // Requester must be in the same realm as all target users
+            boolean realmMatch = Arrays.stream(identityService.getIdentityProvider().getUsers(new ArrayList<>(userIds)))
+                .allMatch(user -> realm.equals(user.getRealm()));
 
-                    // Target assets must be in the same realm as requester
-                    if (!assetStorageService.isRealmAssets(realm, Collections.singletonList(target.getId()))) {
-                        throw new NotificationProcessingException(INSUFFICIENT_ACCESS, "Targets must all be in the same realm as the requestor");
-                    }
+            if (!realmMatch) {
+                throw new NotificationProcessingException(INSUFFICIENT_ACCESS, "Targets must all be in the same realm as the requestor");
+            }
+        }
 
-                    // Target assets must be descendants of the requesting asset
-                    if (!TextUtil.isNullOrEmpty(assetId)) {
-                        if (!assetStorageService.isDescendantAssets(assetId, Collections.singletonList(target.getId()))) {
-                            throw new NotificationProcessingException(INSUFFICIENT_ACCESS, "Targets must all be descendants of the requesting asset");
-                        }
-                    }
-                    break;
+        if (!assetIds.isEmpty()) {
+            List<String> assetIdList = new ArrayList<>(assetIds);
+
+            // If requestor is restricted user check all target assets are linked to that user
+            if (isRestrictedUser && !assetStorageService.isUserAssets(userId, assetIdList)) {
+                throw new NotificationProcessingException(INSUFFICIENT_ACCESS, "Targets must all be linked to the requesting restricted user");
             }
-        });
+
+            // Target assets must be in the same realm as requester
+            if (!assetStorageService.isRealmAssets(realm, assetIdList)) {
+                throw new NotificationProcessingException(INSUFFICIENT_ACCESS, "Targets must all be in the same realm as the requestor");
+            }
+
+            // Target assets must be descendants of the requesting asset
+            if (!TextUtil.isNullOrEmpty(assetId)) {
+                if (!assetStorageService.isDescendantAssets(assetId, assetIdList)) {
+                    throw new NotificationProcessingException(INSUFFICIENT_ACCESS, "Targets must all be descendants of the requesting asset");
+                }
+            }
+        }
     }
 
-    protected boolean okToSendNotification(Notification.Source source, String sourceId, Notification.Target target, Notification notification) {
+    /**
+     * @return the targets which may receive the notification again, the last time the notification was sent to each
+     * target is loaded with a single query.
+     */
+    protected List<Notification.Target> getTargetsToSend(Notification.Source source, String sourceId, List<Notification.Target> targets, Notification notification) {
 
         if (notification.getRepeatFrequency() == RepeatFrequency.ALWAYS) {
-            return true;
+            return targets;
         }
 
-        Date lastSend = persistenceService.doReturningTransaction(entityManager -> entityManager.createQuery(
-                "SELECT n.sentOn FROM SentNotification n WHERE n.source =:source AND n.sourceId =:sourceId AND n.target =:target AND n.targetId =:targetId AND n.name =:name ORDER BY n.sentOn DESC", Date.class)
+        Map<String, Date> lastSends = new HashMap<>();
+        List<String> targetIds = targets.stream().map(Notification.Target::getId).distinct().collect(Collectors.toList());
+
+        persistenceService.doReturningTransaction(entityManager -> entityManager.createQuery(
+                "SELECT n.target, n.targetId, max(n.sentOn) FROM SentNotification n WHERE n.source =:source AND n.sourceId =:sourceId AND n.name =:name AND n.targetId IN :targetIds GROUP BY n.target, n.targetId", Object[].class)
                 .setParameter("source", source)
                 .setParameter("sourceId", sourceId)
-                .setParameter("target", target.getType())
-                .setParameter("targetId", target.getId())
                 .setParameter("name", notification.getName())
-                .setMaxResults(1)
-                .getResultList()).stream().findFirst().orElse(null);
+                .setParameter("targetIds", targetIds)
+                .getResultList())
+            .forEach(row -> lastSends.put(row[0] + ":" + row[1], (Date) row[2]));
 
-        return lastSend == null ||
+        return targets.stream().filter(target -> {
+            Date lastSend = lastSends.get(target.getType() + ":" + target.getId());
+            return lastSend == null ||
                 (notification.getRepeatFrequency() != RepeatFrequency.ONCE &&
-                        timerService.getNow().plusSeconds(1).isAfter(getRepeatAfterTimestamp(notification, lastSend.toInstant())));
+                    timerService.getNow().plusSeconds(1).isAfter(getRepeatAfterTimestamp(notification, lastSend.toInstant())));
+        }).collect(Collectors.toList());
     }
 }
\ No newline at end of file
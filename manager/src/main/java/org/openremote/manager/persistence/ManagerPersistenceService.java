@@ -19,12 +19,24 @@
  */
 package org.openremote.manager.persistence;
 
+import org.openremote.container.ContainerService;
 import org.openremote.container.persistence.PersistenceService;
+import org.openremote.manager.asset.AssetModelService;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
 public class ManagerPersistenceService extends PersistenceService {
 
+    /**
+     * The database migration doesn't need the identity provider, so both can be initialized in parallel.
+     */
+    @Override
+    public Collection<Class<? extends ContainerService>> getDependencies() {
+        return Collections.singletonList(AssetModelService.class);
+    }
+
     @Override
     protected void appendSchemaLocations(List<String> locations) {
         super.appendSchemaLocations(locations);
@@ -22,9 +22,9 @@ package org.openremote.manager.rules;
 import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.Envelope;
 import net.fortuna.ical4j.model.*;
-import org.geotools.referencing.GeodeticCalculator;
 import org.openremote.container.timer.TimerService;
 import org.openremote.manager.asset.AssetStorageService;
+import org.openremote.manager.rules.geofence.GeofenceIndex;
 import org.openremote.model.attribute.Meta;
 import org.openremote.model.attribute.MetaItem;
 import org.openremote.model.calendar.CalendarEvent;
@@ -322,35 +322,15 @@ public class AssetQueryPredicate implements Predicate<AssetState> {
     }
 
     public static Predicate<Coordinate> asPredicate(GeofencePredicate predicate) {
+        // Most coordinates are outside the envelope of the geofence and rejected without a geodetic calculation
+        Envelope envelope = GeofenceIndex.getEnvelope(predicate);
         return coordinate -> {
             if (coordinate == null) {
                 return false;
             }
 
-            if (predicate instanceof RadialGeofencePredicate) {
-                //TODO geotools version to gradle properties
-                RadialGeofencePredicate radialLocationPredicate = (RadialGeofencePredicate) predicate;
-                GeodeticCalculator calculator = new GeodeticCalculator();
-                calculator.setStartingGeographicPoint(radialLocationPredicate.lng, radialLocationPredicate.lat);
-                calculator.setDestinationGeographicPoint(coordinate.x, coordinate.y);
-                if (predicate.negated) {
-                    return calculator.getOrthodromicDistance() > radialLocationPredicate.radius;
-                }
-                return calculator.getOrthodromicDistance() <= radialLocationPredicate.radius;
-            } else if (predicate instanceof RectangularGeofencePredicate) {
-                // Again this is a euclidean plane so doesn't work perfectly for WGS lat/lng - the bigger the rectangle the less accurate it is)
-                RectangularGeofencePredicate rectangularLocationPredicate = (RectangularGeofencePredicate) predicate;
-                Envelope envelope = new Envelope(rectangularLocationPredicate.lngMin,
-                    rectangularLocationPredicate.lngMax,
-                    rectangularLocationPredicate.latMin,
-                    rectangularLocationPredicate.latMax);
-                if (predicate.negated) {
-                    return !envelope.contains(coordinate);
-                }
-                return envelope.contains(coordinate);
-            } else {
-                throw new UnsupportedOperationException("Location predicate '" + predicate.getClass().getSimpleName() + "' not supported in rules matching");
-            }
+            boolean inside = envelope.contains(coordinate) && GeofenceIndex.contains(predicate, coordinate);
+            return predicate.negated != inside;
         };
     }
 
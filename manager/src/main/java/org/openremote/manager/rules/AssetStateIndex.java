@@ -0,0 +1,113 @@
+/*
+ * Copyright 2020, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.manager.rules;
+
+import org.openremote.model.rules.AssetState;
+
+import java.util.*;
+
+/**
+ * The asset states pushed into rules engines, indexed by realm and by every asset in the path of the state's asset,
+ * so the states in the scope of an asset are found without scanning all states. Not thread-safe.
+ */
+public class AssetStateIndex {
+
+    protected final Map<AssetState, AssetState> states = new HashMap<>();
+    protected final Map<String, Set<AssetState>> subtreeStates = new HashMap<>();
+    protected final Map<String, Set<AssetState>> realmStates = new HashMap<>();
+
+    /**
+     * Add the state, replacing the state with the same attribute reference.
+     *
+     * @return the replaced state or <code>null</code> if the state was inserted.
+     */
+    public AssetState put(AssetState assetState) {
+        AssetState previous = remove(assetState);
+        states.put(assetState, assetState);
+        for (String assetId : getPath(assetState)) {
+            subtreeStates.computeIfAbsent(assetId, id -> new HashSet<>()).add(assetState);
+        }
+        if (assetState.getRealm() != null) {
+            realmStates.computeIfAbsent(assetState.getRealm(), realm -> new HashSet<>()).add(assetState);
+        }
+        return previous;
+    }
+
+    /**
+     * @return the removed state with the same attribute reference or <code>null</code> if there was none.
+     */
+    public AssetState remove(AssetState assetState) {
+        AssetState previous = states.remove(assetState);
+        if (previous == null) {
+            return null;
+        }
+        // Remove from the buckets of the stored state, its path might differ from the given state
+        for (String assetId : getPath(previous)) {
+            removeFromBucket(subtreeStates, assetId, previous);
+        }
+        if (previous.getRealm() != null) {
+            removeFromBucket(realmStates, previous.getRealm(), previous);
+        }
+        return previous;
+    }
+
+    public AssetState get(AssetState assetState) {
+        return states.get(assetState);
+    }
+
+    /**
+     * @return the states of the asset and all its descendants.
+     */
+    public Set<AssetState> getSubtreeStates(String assetId) {
+        return Collections.unmodifiableSet(subtreeStates.getOrDefault(assetId, Collections.emptySet()));
+    }
+
+    public Set<AssetState> getRealmStates(String realm) {
+        return Collections.unmodifiableSet(realmStates.getOrDefault(realm, Collections.emptySet()));
+    }
+
+    public Collection<AssetState> getAll() {
+        return Collections.unmodifiableCollection(states.values());
+    }
+
+    public int size() {
+        return states.size();
+    }
+
+    public void clear() {
+        states.clear();
+        subtreeStates.clear();
+        realmStates.clear();
+    }
+
+    protected static String[] getPath(AssetState assetState) {
+        return assetState.getPath() != null ? assetState.getPath() : new String[]{assetState.getId()};
+    }
+
+    protected static void removeFromBucket(Map<String, Set<AssetState>> buckets, String key, AssetState assetState) {
+        Set<AssetState> bucket = buckets.get(key);
+        if (bucket != null) {
+            bucket.remove(assetState);
+            if (bucket.isEmpty()) {
+                buckets.remove(key);
+            }
+        }
+    }
+}
@@ -10,7 +10,6 @@ import org.openremote.model.rules.*;
 import org.openremote.model.rules.flow.*;
 
 import java.util.*;
-import java.util.stream.Collectors;
 
 public class FlowRulesBuilder {
     private AssetStorageService assetStorageService;
@@ -49,11 +48,18 @@ public class FlowRulesBuilder {
         int count = 0;
         List<Rule> rules = new ArrayList<>();
         for (NodeCollection collection : nodeCollections) {
+            FlowGraph graph;
+            try {
+                graph = new FlowGraph(collection);
+            } catch (Exception e) {
+                RulesEngine.RULES_LOG.severe("Flow rule error: " + e.getMessage());
+                continue;
+            }
             for (Node node : collection.getNodes()) {
                 if (node.getType() != NodeType.OUTPUT) continue;
                 try {
                     RulesEngine.RULES_LOG.info("Flow rule created");
-                    rules.add(createRule(collection.getName() + " - " + count, collection, node));
+                    rules.add(createRule(collection.getName() + " - " + count, graph, node));
                     count++;
                 } catch (Exception e) {
                     RulesEngine.RULES_LOG.severe("Flow rule error: " + e.getMessage());
@@ -63,8 +69,9 @@ public class FlowRulesBuilder {
         return rules.toArray(new Rule[0]);
     }
 
-    private Rule createRule(String name, NodeCollection collection, Node outputNode) throws Exception {
-        Object implementationResult = NodeModel.getImplementationFor(outputNode.getName()).execute(new NodeExecutionRequestInfo(collection, outputNode, null, null, assetsFacade, usersFacade, notificationFacade, historicDatapointsFacade, predictedDatapointsFacade));
+    private Rule createRule(String name, FlowGraph graph, Node outputNode) throws Exception {
+        NodeCollection collection = graph.getCollection();
+        Object implementationResult = graph.getModel(outputNode).getImplementation().execute(new NodeExecutionRequestInfo(graph, outputNode, null, null, assetsFacade, usersFacade, notificationFacade, historicDatapointsFacade, predictedDatapointsFacade));
 
         if (implementationResult == null)
             throw new NullPointerException(outputNode.getName() + " node returns null");
@@ -74,13 +81,19 @@ public class FlowRulesBuilder {
 
         RulesBuilder.Action action = (RulesBuilder.Action) implementationResult;
 
-        RulesBuilder.Condition condition = facts -> {
-            List<Node> connectedTree = backtrackFrom(collection, outputNode);
+        // The nodes that can trigger the rule are resolved once
+        List<Node> connectedTree = graph.getUpstreamNodes(outputNode);
+        NodeTriggerFunction[] functions = connectedTree.stream()
+            .map(node -> graph.getModel(node).getTriggerFunction())
+            .toArray(NodeTriggerFunction[]::new);
 
-            return connectedTree.stream().anyMatch(node -> {
-                NodeTriggerFunction function = NodeModel.getTriggerFunctionFor(node.getName());
-                return function.satisfies(new NodeTriggerParameters(name, facts, this, collection, node));
-            });
+        RulesBuilder.Condition condition = facts -> {
+            for (int i = 0; i < functions.length; i++) {
+                if (functions[i].satisfies(new NodeTriggerParameters(name, facts, this, graph, connectedTree.get(i)))) {
+                    return true;
+                }
+            }
+            return false;
         };
 
         triggerMap.put(name, -1L);
@@ -108,22 +121,6 @@ public class FlowRulesBuilder {
                 build();
     }
 
-    private List<Node> backtrackFrom(NodeCollection collection, Node node) {
-        List<Node> total = new ArrayList<>();
-        List<Node> children = new ArrayList<>();
-
-        for (NodeSocket s : node.getInputs()) {
-            children.addAll(Arrays.stream(collection.getConnections()).filter(c -> c.getTo().equals(s.getId())).map(c -> collection.getNodeById(collection.getSocketById(c.getFrom()).getNodeId())).collect(Collectors.toList()));
-        }
-
-        for (Node child : children) {
-            total.add(child);
-            total.addAll(backtrackFrom(collection, child));
-        }
-
-        return total;
-    }
-
     public Map<String, Long> getTriggerMap() {
         return triggerMap;
     }
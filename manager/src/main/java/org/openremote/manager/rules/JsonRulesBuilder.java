@@ -25,7 +25,9 @@ import org.openremote.container.timer.TimerService;
 import org.openremote.manager.asset.AssetStorageService;
 import org.openremote.manager.concurrent.ManagerExecutorService;
 import org.openremote.model.asset.Asset;
+import org.openremote.model.attribute.AttributeEvent;
 import org.openremote.model.attribute.AttributeRef;
+import org.openremote.model.notification.AbstractNotificationMessage;
 import org.openremote.model.notification.EmailNotificationMessage;
 import org.openremote.model.notification.Notification;
 import org.openremote.model.query.AssetQuery;
@@ -40,7 +42,6 @@ import org.openremote.model.value.*;
 import org.quartz.CronExpression;
 
 import java.util.*;
-import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.BiConsumer;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
@@ -82,7 +83,9 @@ public class JsonRulesBuilder extends RulesBuilder {
         Set<AssetState> unfilteredAssetStates = new HashSet<>();
         Set<AssetState> previouslyMatchedAssetStates = new HashSet<>();
         Set<AssetState> previouslyUnmatchedAssetStates;
-        Predicate<Long> timePredicate;
+        CronExpression timerExpression;
+        long timerDuration;
+        long nextExecuteMillis = Long.MAX_VALUE;
         RuleConditionEvaluationResult lastEvaluationResult;
 
         public RuleConditionState(RuleCondition ruleCondition, boolean trackUnmatched, TimerService timerService) throws Exception {
@@ -98,33 +101,16 @@ public class JsonRulesBuilder extends RulesBuilder {
 
                 try {
                     if (TimeUtil.isTimeDuration(ruleCondition.timer)) {
-
-                        final long duration = TimeUtil.parseTimeDuration(ruleCondition.timer);
-                        AtomicLong nextExecuteMillis = new AtomicLong(timerService.getCurrentTimeMillis());
-
-                        timePredicate = (time) -> {
-                            long nextExecute = nextExecuteMillis.get();
-                            if (time >= nextExecute) {
-                                nextExecuteMillis.set(nextExecute + duration);
-                                return true;
-                            }
-                            return false;
-                        };
+                        timerDuration = TimeUtil.parseTimeDuration(ruleCondition.timer);
+                        if (timerDuration <= 0) {
+                            throw new IllegalArgumentException("Rule condition timer duration must be positive: " + ruleCondition.timer);
+                        }
+                        nextExecuteMillis = timerService.getCurrentTimeMillis();
                     }
 
                     if (CronExpression.isValidExpression(ruleCondition.timer)) {
-
-                        CronExpression timerExpression = new CronExpression(ruleCondition.timer);
-                        AtomicLong nextExecuteMillis = new AtomicLong(timerExpression.getNextValidTimeAfter(new Date(timerService.getCurrentTimeMillis())).getTime());
-
-                        timePredicate = (time) -> {
-                            long nextExecute = nextExecuteMillis.get();
-                            if (time >= nextExecute) {
-                                nextExecuteMillis.set(timerExpression.getNextInvalidTimeAfter(timerExpression.getNextInvalidTimeAfter(new Date(nextExecute))).getTime());
-                                return true;
-                            }
-                            return false;
-                        };
+                        timerExpression = new CronExpression(ruleCondition.timer);
+                        nextExecuteMillis = getNextValidTimeAfter(timerExpression, timerService.getCurrentTimeMillis());
                     }
                 } catch (Exception e) {
                     log(Level.SEVERE, "Failed to parse rule condition timer expression: " + ruleCondition.timer, e);
@@ -190,11 +176,23 @@ public class JsonRulesBuilder extends RulesBuilder {
                 return;
             }
 
-            // Apply time condition if it exists
-            if (timePredicate != null) {
+            // Apply time condition if it exists, the next execution time is only computed when the timer is due
+            if (isTimer()) {
                 lastEvaluationResult = null;
+                long time = timerService.getCurrentTimeMillis();
 
-                if (timePredicate.test(timerService.getCurrentTimeMillis())) {
+                if (time >= nextExecuteMillis) {
+                    if (timerExpression != null) {
+                        nextExecuteMillis = getNextValidTimeAfter(timerExpression, time);
+                    } else {
+                        // Skip any executions missed while the rules engine wasn't firing
+                        long executions = (time - nextExecuteMillis) / timerDuration + 1;
+                        try {
+                            nextExecuteMillis = Math.addExact(nextExecuteMillis, Math.multiplyExact(executions, timerDuration));
+                        } catch (ArithmeticException ex) {
+                            nextExecuteMillis = Long.MAX_VALUE;
+                        }
+                    }
                     lastEvaluationResult = new RuleConditionEvaluationResult(true, Collections.emptyList(), Collections.emptyList(), Collections.emptyList(), Collections.emptyList());
                 }
 
@@ -321,6 +319,15 @@ public class JsonRulesBuilder extends RulesBuilder {
 
             return lastEvaluationResult.unmatchedAssetIds;
         }
+
+        boolean isTimer() {
+            return timerExpression != null || timerDuration > 0;
+        }
+
+        static long getNextValidTimeAfter(CronExpression expression, long time) {
+            Date next = expression.getNextValidTimeAfter(new Date(time));
+            return next != null ? next.getTime() : Long.MAX_VALUE;
+        }
     }
 
     /**
@@ -399,6 +406,20 @@ public class JsonRulesBuilder extends RulesBuilder {
             }
         }
 
+        /**
+         * @return the earliest time when a timer condition of this rule is due, or {@link Long#MAX_VALUE}.
+         */
+        public long getNextTimerMillis() {
+            long next = Long.MAX_VALUE;
+            for (RuleConditionState ruleConditionState : conditionStateMap.values()) {
+                if (ruleConditionState.isTimer()) {
+                    next = Math.min(next, ruleConditionState.nextExecuteMillis);
+                }
+            }
+            // Conditions are not updated before the next recurrence
+            return next == Long.MAX_VALUE ? next : Math.max(next, nextRecur);
+        }
+
         public boolean thenMatched() {
             return thenMatchedAssetIds != null && !thenMatchedAssetIds.isEmpty();
         }
@@ -484,6 +505,7 @@ public class JsonRulesBuilder extends RulesBuilder {
     final protected ManagerExecutorService executorService;
     final protected BiConsumer<Runnable, Long> scheduledActionConsumer;
     final protected Map<String, RuleState> ruleStateMap = new HashMap<>();
+    final protected List<RuleState> timerRuleStates = new ArrayList<>();
     final protected JsonRule[] jsonRules;
 
     public JsonRulesBuilder(Ruleset ruleset, TimerService timerService,
@@ -531,6 +553,18 @@ public class JsonRulesBuilder extends RulesBuilder {
         onAssetStatesChanged(facts, null);
     }
 
+    /**
+     * @return the earliest time when a timer condition of any rule is due, or {@link Long#MAX_VALUE} if there are no
+     * timer conditions. The rules engine uses this to only fire when a timer is due.
+     */
+    public long getNextTimerMillis() {
+        long next = Long.MAX_VALUE;
+        for (RuleState ruleState : timerRuleStates) {
+            next = Math.min(next, ruleState.getNextTimerMillis());
+        }
+        return next;
+    }
+
     public void onAssetStatesChanged(RulesFacts facts, RulesEngine.AssetStateChangeEvent event) {
         ruleStateMap.values().forEach(triggerStateMap -> triggerStateMap.conditionStateMap.values().forEach(ruleConditionState -> ruleConditionState.updateUnfilteredAssetStates(facts, event)));
     }
@@ -544,6 +578,9 @@ public class JsonRulesBuilder extends RulesBuilder {
         RuleState ruleState = new RuleState(rule);
         ruleStateMap.put(rule.name, ruleState);
         addRuleConditionStates(rule.when, rule.otherwise != null, 0, ruleState.conditionStateMap);
+        if (ruleState.conditionStateMap.values().stream().anyMatch(RuleConditionState::isTimer)) {
+            timerRuleStates.add(ruleState);
+        }
 
         Condition condition = buildLhsCondition(rule, ruleState);
         Action action = buildRhsAction(rule, ruleState);
@@ -716,10 +753,12 @@ public class JsonRulesBuilder extends RulesBuilder {
 
             if (notificationAction.notification != null) {
 
+                // Send a copy of the notification, the rule action is shared by all executions
                 Notification notification = notificationAction.notification;
+                AbstractNotificationMessage message = notification.getMessage();
 
-                if (notification.getMessage() != null && Objects.equals(notification.getMessage().getType(), EmailNotificationMessage.TYPE)) {
-                    EmailNotificationMessage email = (EmailNotificationMessage) notification.getMessage();
+                if (message != null && Objects.equals(message.getType(), EmailNotificationMessage.TYPE)) {
+                    EmailNotificationMessage email = (EmailNotificationMessage) message;
 
                     boolean hasBody = !TextUtil.isNullOrEmpty(email.getHtml()) || !TextUtil.isNullOrEmpty(email.getText());
                     boolean isHtml = !TextUtil.isNullOrEmpty(email.getHtml());
@@ -728,36 +767,38 @@ public class JsonRulesBuilder extends RulesBuilder {
                         String body = isHtml ? email.getHtml() : email.getText();
 
                         if (body.contains(PLACEHOLDER_TRIGGER_ASSETS)) {
-
-                            // Need to clone the notification
-                            try {
-                                notification = JSON.readValue(JSON.writeValueAsString(notification), Notification.class);
-                                email = (EmailNotificationMessage) notification.getMessage();
-                                String triggeredAssetInfo = buildTriggeredAssetInfo(useUnmatched, ruleState, isHtml);
-                                body = body.replace(PLACEHOLDER_TRIGGER_ASSETS, triggeredAssetInfo);
-                                if (isHtml) {
-                                    email.setHtml(body);
-                                } else {
-                                    email.setText(body);
-                                }
-                            } catch (JsonProcessingException e) {
-                                LOG.warning("Failed to clone notification so cannot insert asset info");
+                            email = new EmailNotificationMessage(email);
+                            String triggeredAssetInfo = buildTriggeredAssetInfo(useUnmatched, ruleState, isHtml);
+                            body = body.replace(PLACEHOLDER_TRIGGER_ASSETS, triggeredAssetInfo);
+                            if (isHtml) {
+                                email.setHtml(body);
+                            } else {
+                                email.setText(body);
                             }
+                            message = email;
                         }
                     }
                 }
 
+                List<Notification.Target> targets = notification.getTargets();
+
                 // Override the notification targets if set in the rule
                 Notification.TargetType targetType = targetIsNotAssets(ruleAction.target) ? Notification.TargetType.USER : Notification.TargetType.ASSET;
                 Collection<String> ids = getRuleActionTargetIds(ruleAction.target, useUnmatched, ruleState, assetsFacade, usersFacade, facts);
 
                 if (ids != null && !ids.isEmpty()) {
-                    notification.setTargets(ids.stream().map(id -> new Notification.Target(targetType, id)).collect(Collectors.toList()));
+                    targets = ids.stream().map(id -> new Notification.Target(targetType, id)).collect(Collectors.toList());
                 }
 
                 log(Level.FINE, "Sending notification for rule action: " + rule.name + " '" + actionsName + "' action index " + index);
-                Notification finalNotification = notification;
-                return new RuleActionExecution(() -> notificationsFacade.send(finalNotification), 0);
+                Notification notificationCopy = new Notification(
+                    notification.getName(),
+                    message,
+                    targets,
+                    notification.getRepeatFrequency(),
+                    notification.getRepeatInterval()
+                );
+                return new RuleActionExecution(() -> notificationsFacade.send(notificationCopy), 0);
             }
         }
 
@@ -782,9 +823,13 @@ public class JsonRulesBuilder extends RulesBuilder {
             }
 
             log(Level.FINE, "Writing attribute '" + attributeAction.attributeName + "' for " + ids.size() + " asset(s) for rule action: " + rule.name + " '" + actionsName + "' action index " + index);
+            // Dispatch all writes as one batch
             return new RuleActionExecution(() ->
-                    ids.forEach(id ->
-                            assetsFacade.dispatch(id, attributeAction.attributeName, attributeAction.value)), 0);
+                    assetsFacade.dispatch(
+                        ids.stream()
+                            .map(id -> new AttributeEvent(id, attributeAction.attributeName, attributeAction.value))
+                            .toArray(AttributeEvent[]::new)
+                    ), 0);
         }
 
         if (ruleAction instanceof RuleActionWait) {
@@ -848,7 +893,9 @@ public class JsonRulesBuilder extends RulesBuilder {
                 return null;
             }
 
-            return new RuleActionExecution(() ->
+            return new RuleActionExecution(() -> {
+
+                List<AttributeEvent> events = new ArrayList<>(matchingAssetStates.size());
 
                 matchingAssetStates.forEach(assetState -> {
                     ValueType valueType = assetState.getValue().map(Value::getType).orElseGet(() -> assetState.getAttributeValueType() != null ? assetState.getAttributeValueType().getValueType() : null);
@@ -910,9 +957,15 @@ public class JsonRulesBuilder extends RulesBuilder {
                         }
 
                         log(Level.FINE, "Updating attribute for rule action: " + rule.name + " '" + actionsName + "' action index " + index + ": " + assetState);
-                        assetsFacade.dispatch(assetState.getId(), attributeUpdateAction.attributeName, value);
+                        events.add(new AttributeEvent(assetState.getId(), attributeUpdateAction.attributeName, value));
                     }
-                }),
+                });
+
+                // Dispatch all updates as one batch
+                if (!events.isEmpty()) {
+                    assetsFacade.dispatch(events.toArray(new AttributeEvent[0]));
+                }
+            },
             0);
         }
 
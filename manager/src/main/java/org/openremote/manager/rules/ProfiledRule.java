@@ -0,0 +1,168 @@
+/*
+ * Copyright 2020, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.manager.rules;
+
+import org.jeasy.rules.api.Facts;
+import org.jeasy.rules.api.Rule;
+import org.openremote.model.rules.RuleStatistics;
+import org.openremote.model.rules.Ruleset;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.openremote.model.rules.RuleStatistics.HISTOGRAM_BUCKETS;
+
+/**
+ * Decorates a rule of a deployment, counting and timing every evaluation of its condition and execution of its action.
+ * The inference engine evaluates the conditions of all rules to select candidates without calling rule listeners, so
+ * this is measured on the rule itself. Only accessed while holding the engine lock.
+ */
+public class ProfiledRule implements Rule {
+
+    final protected Rule rule;
+    protected long evaluationCount;
+    protected long triggerCount;
+    protected long executionCount;
+    protected long failureCount;
+    protected long evaluationNanos;
+    protected long maxEvaluationNanos;
+    protected long executionNanos;
+    protected long maxExecutionNanos;
+    protected long matchedFactCount;
+    protected long maxMatchedFactCount;
+    final protected long[] evaluationHistogram = new long[HISTOGRAM_BUCKETS];
+    final protected long[] executionHistogram = new long[HISTOGRAM_BUCKETS];
+    final protected long[] matchedFactsHistogram = new long[HISTOGRAM_BUCKETS];
+
+    public ProfiledRule(Rule rule) {
+        this.rule = rule;
+    }
+
+    public Rule getRule() {
+        return rule;
+    }
+
+    @Override
+    public String getName() {
+        return rule.getName();
+    }
+
+    @Override
+    public String getDescription() {
+        return rule.getDescription();
+    }
+
+    @Override
+    public int getPriority() {
+        return rule.getPriority();
+    }
+
+    @Override
+    public boolean evaluate(Facts facts) {
+        long matchedBefore = getMatchedFactCount(facts);
+        long start = System.nanoTime();
+        boolean result = false;
+        try {
+            result = rule.evaluate(facts);
+            return result;
+        } catch (RuntimeException ex) {
+            failureCount++;
+            throw ex;
+        } finally {
+            long nanos = System.nanoTime() - start;
+            long matched = getMatchedFactCount(facts) - matchedBefore;
+            evaluationCount++;
+            if (result) {
+                triggerCount++;
+            }
+            evaluationNanos += nanos;
+            maxEvaluationNanos = Math.max(maxEvaluationNanos, nanos);
+            evaluationHistogram[getBucket(TimeUnit.NANOSECONDS.toMicros(nanos))]++;
+            matchedFactCount += matched;
+            maxMatchedFactCount = Math.max(maxMatchedFactCount, matched);
+            matchedFactsHistogram[getBucket(matched)]++;
+        }
+    }
+
+    @Override
+    public void execute(Facts facts) throws Exception {
+        long start = System.nanoTime();
+        try {
+            rule.execute(facts);
+        } catch (Exception ex) {
+            failureCount++;
+            throw ex;
+        } finally {
+            long nanos = System.nanoTime() - start;
+            executionCount++;
+            executionNanos += nanos;
+            maxExecutionNanos = Math.max(maxExecutionNanos, nanos);
+            executionHistogram[getBucket(TimeUnit.NANOSECONDS.toMicros(nanos))]++;
+        }
+    }
+
+    @Override
+    public int compareTo(Rule other) {
+        return rule.compareTo(other);
+    }
+
+    public long getTotalNanos() {
+        return evaluationNanos + executionNanos;
+    }
+
+    public RuleStatistics getStatistics(Ruleset ruleset) {
+        return new RuleStatistics(
+            ruleset.getId() != null ? ruleset.getId() : 0,
+            ruleset.getName(),
+            getName(),
+            evaluationCount,
+            triggerCount,
+            executionCount,
+            failureCount,
+            TimeUnit.NANOSECONDS.toMicros(evaluationNanos),
+            TimeUnit.NANOSECONDS.toMicros(maxEvaluationNanos),
+            TimeUnit.NANOSECONDS.toMicros(executionNanos),
+            TimeUnit.NANOSECONDS.toMicros(maxExecutionNanos),
+            matchedFactCount,
+            maxMatchedFactCount,
+            evaluationHistogram.clone(),
+            executionHistogram.clone(),
+            matchedFactsHistogram.clone()
+        );
+    }
+
+    /**
+     * @return the power of two histogram bucket of the value, see {@link RuleStatistics}.
+     */
+    public static int getBucket(long value) {
+        if (value <= 0) {
+            return 0;
+        }
+        return Math.min(Long.SIZE - Long.numberOfLeadingZeros(value), HISTOGRAM_BUCKETS - 1);
+    }
+
+    protected static long getMatchedFactCount(Facts facts) {
+        return facts instanceof RulesFacts ? ((RulesFacts) facts).getMatchedFactCount() : 0;
+    }
+
+    @Override
+    public String toString() {
+        return rule.toString();
+    }
+}
@@ -33,7 +33,8 @@ import java.util.function.Predicate;
 public class RulesClock {
 
     final public double timestamp;
-    final public LocalDateTime time;
+    // Created on first access, most firings don't need it
+    protected LocalDateTime time;
 
     public RulesClock(TimerService timerService) {
         this(timerService.getCurrentTimeMillis());
@@ -41,7 +42,6 @@ public class RulesClock {
 
     public RulesClock(double timestamp) {
         this.timestamp = timestamp;
-        time = LocalDateTime.ofInstant(Instant.ofEpochMilli((long) this.timestamp), ZoneId.systemDefault());
     }
 
     public double getTimestamp() {
@@ -49,6 +49,9 @@ public class RulesClock {
     }
 
     public LocalDateTime getTime() {
+        if (time == null) {
+            time = LocalDateTime.ofInstant(Instant.ofEpochMilli((long) timestamp), ZoneId.systemDefault());
+        }
         return time;
     }
 
@@ -81,7 +84,7 @@ public class RulesClock {
     public String toString() {
         return getClass().getSimpleName() + "{" +
             "timestamp=" + timestamp +
-            ", time=" + time +
+            ", time=" + getTime() +
             '}';
     }
 }
@@ -21,6 +21,7 @@ package org.openremote.manager.rules;
 
 import org.jeasy.rules.core.InferenceRulesEngine;
 import org.jeasy.rules.core.RulesEngineParameters;
+import org.openremote.container.concurrent.InstanceLock;
 import org.openremote.container.persistence.PersistenceEvent;
 import org.openremote.container.timer.TimerService;
 import org.openremote.manager.asset.AssetProcessingService;
@@ -42,16 +43,26 @@ import org.openremote.model.syslog.SyslogCategory;
 import org.openremote.model.util.TextUtil;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.BiConsumer;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
-import static org.openremote.container.concurrent.GlobalLock.withLock;
 import static org.openremote.model.rules.RulesetStatus.*;
 
+/**
+ * Engines fire concurrently on the rules executor, each engine guards its facts, deployments and timers with its own
+ * {@link InstanceLock}. Asset state changes are queued and applied in order when the lock is free, so pushing state
+ * into an engine never waits for a firing. Location predicate changes are passed to the {@link
+ * AssetLocationPredicateProcessor} after the lock has been released, as the processor acquires the global lock.
+ */
 public class RulesEngine<T extends Ruleset> {
 
     /**
@@ -100,12 +111,16 @@ public class RulesEngine<T extends Ruleset> {
     // Separate logger for periodic stats printer
     public static final Logger STATS_LOG = Logger.getLogger("org.openremote.rules.RulesEngineStats");
 
+    // Number of slowest rules included in the engine info
+    public static final int SLOWEST_RULES_LIMIT = 10;
+
     // Here to facilitate testing
     protected static BiConsumer<RulesEngine<?>, RulesetDeployment> PAUSE_SCHEDULER = RulesEngine::schedulePause;
     protected static BiConsumer<RulesEngine<?>, RulesetDeployment> UNPAUSE_SCHEDULER = RulesEngine::scheduleUnpause;
 
     final protected TimerService timerService;
     final protected ManagerExecutorService executorService;
+    final protected ScheduledExecutorService rulesExecutor;
     final protected AssetStorageService assetStorageService;
     final protected ClientEventService clientEventService;
 
@@ -116,12 +131,17 @@ public class RulesEngine<T extends Ruleset> {
     final protected PredictedDatapoints predictedFacade;
     final protected HistoricDatapoints historicFacade;
     final protected AssetLocationPredicateProcessor assetLocationPredicatesConsumer;
+    final protected RulesetCompiler rulesetCompiler;
 
     final protected Map<Long, RulesetDeployment> deployments = new LinkedHashMap<>();
     final protected RulesFacts facts;
     final protected InferenceRulesEngine engine;
+    final protected InstanceLock lock;
+    final protected Queue<Runnable> pendingChanges = new ConcurrentLinkedQueue<>();
+    final protected Queue<Runnable> pendingLocationNotifications = new ConcurrentLinkedQueue<>();
+    final protected AtomicBoolean notifyingLocationPredicates = new AtomicBoolean();
 
-    protected boolean running;
+    protected volatile boolean running;
     protected long lastFireTimestamp;
     protected boolean trackLocationPredicates;
     protected ScheduledFuture<?> fireTimer;
@@ -138,6 +158,7 @@ public class RulesEngine<T extends Ruleset> {
     public RulesEngine(TimerService timerService,
                        ManagerIdentityService identityService,
                        ManagerExecutorService executorService,
+                       ScheduledExecutorService rulesExecutor,
                        AssetStorageService assetStorageService,
                        AssetProcessingService assetProcessingService,
                        NotificationService notificationService,
@@ -145,19 +166,23 @@ public class RulesEngine<T extends Ruleset> {
                        AssetDatapointService assetDatapointService,
                        AssetPredictedDatapointService assetPredictedDatapointService,
                        RulesEngineId<T> id,
-                       AssetLocationPredicateProcessor assetLocationPredicatesConsumer) {
+                       AssetLocationPredicateProcessor assetLocationPredicatesConsumer,
+                       RulesetCompiler rulesetCompiler) {
         this.timerService = timerService;
         this.executorService = executorService;
+        this.rulesExecutor = rulesExecutor;
         this.assetStorageService = assetStorageService;
         this.clientEventService = clientEventService;
         this.id = id;
-        AssetsFacade<T> assetsFacade = new AssetsFacade<>(id, assetStorageService, assetProcessingService::sendAttributeEvent);
+        this.lock = new InstanceLock(getClass().getSimpleName() + " " + id);
+        AssetsFacade<T> assetsFacade = new AssetsFacade<>(id, assetStorageService, assetProcessingService::sendAttributeEvents);
         this.assetsFacade = assetsFacade;
         this.usersFacade = new UsersFacade<>(id, assetStorageService, notificationService, identityService);
         this.notificationFacade = new NotificationsFacade<>(id, notificationService);
         this.historicFacade = new HistoricFacade<>(id, assetDatapointService);
         this.predictedFacade = new PredictedFacade<>(id, assetPredictedDatapointService);
         this.assetLocationPredicatesConsumer = assetLocationPredicatesConsumer;
+        this.rulesetCompiler = rulesetCompiler;
 
         this.facts = new RulesFacts(timerService, assetStorageService, assetsFacade, this, RULES_LOG);
         engine = new InferenceRulesEngine(
@@ -175,14 +200,14 @@ public class RulesEngine<T extends Ruleset> {
      * @return a shallow copy of the asset state facts.
      */
     public Set<AssetState> getAssetStates() {
-        return new HashSet<>(facts.getAssetStates());
+        return withEngineLockReturning("getAssetStates", () -> new HashSet<>(facts.getAssetStates()));
     }
 
     /**
      * @return a shallow copy of the asset event facts.
      */
     public List<TemporaryFact<AssetState>> getAssetEvents() {
-        return new ArrayList<>(facts.getAssetEvents());
+        return withEngineLockReturning("getAssetEvents", () -> new ArrayList<>(facts.getAssetEvents()));
     }
 
     public boolean isRunning() {
@@ -206,6 +231,27 @@ public class RulesEngine<T extends Ruleset> {
         return (int) deployments.values().stream().filter(deployment -> deployment.getStatus() == COMPILATION_ERROR).count();
     }
 
+    /**
+     * @return the statistics of all rules of the deployments, collected since each ruleset was deployed.
+     */
+    public List<RuleStatistics> getRuleStatistics() {
+        return withEngineLockReturning("getRuleStatistics", () ->
+            deployments.values().stream()
+                .flatMap(deployment -> deployment.getRuleStatistics().stream())
+                .collect(Collectors.toList())
+        );
+    }
+
+    /**
+     * @return the statistics of the rules with the most time spent in condition and action, slowest first.
+     */
+    public List<RuleStatistics> getSlowestRules(int limit) {
+        return getRuleStatistics().stream()
+            .sorted(Comparator.comparingLong(RuleStatistics::getTotalMicros).reversed())
+            .limit(limit)
+            .collect(Collectors.toList());
+    }
+
     public RuntimeException getError() {
         long executionErrorCount = getExecutionErrorDeploymentCount();
         long compilationErrorCount = getCompilationErrorDeploymentCount();
@@ -229,118 +275,123 @@ public class RulesEngine<T extends Ruleset> {
     }
 
     public void addRuleset(T ruleset) {
+        withEngineLock("addRuleset", () -> {
+            // Check for previous version of this ruleset
+            RulesetDeployment previousDeployment = deployments.get(ruleset.getId());
+            boolean wasRunning = this.running;
 
-        // Check for previous version of this ruleset
-        RulesetDeployment deployment = deployments.get(ruleset.getId());
-        boolean wasRunning = this.running;
-
-        stop();
+            stop();
 
-        if (deployment != null) {
-            removeRuleset(deployment.ruleset);
-        }
+            if (previousDeployment != null) {
+                removeRuleset(previousDeployment.ruleset);
+            }
 
-        deployment = new RulesetDeployment(ruleset, timerService, assetStorageService, executorService, assetsFacade, usersFacade, notificationFacade, historicFacade, predictedFacade);
-        boolean compiled;
+            RulesetDeployment deployment = new RulesetDeployment(ruleset, timerService, assetStorageService, executorService, assetsFacade, usersFacade, notificationFacade, historicFacade, predictedFacade, this::withEngineLock, rulesetCompiler);
+            boolean compiled;
 
-        if (TextUtil.isNullOrEmpty(ruleset.getRules())) {
-            LOG.finest("Ruleset is empty so no rules to deploy: " + ruleset.getName());
-            deployment.setStatus(EMPTY);
-            publishRulesetStatus(deployment);
-        } else if (!ruleset.isEnabled()) {
-            LOG.finest("Ruleset is disabled: " + ruleset.getName());
-            deployment.setStatus(DISABLED);
-            publishRulesetStatus(deployment);
-        } else {
-            deployment.updateValidity();
-            if (deployment.hasExpired()) {
-                LOG.fine("Ruleset validity period has expired: " + ruleset.getName());
-                deployment.setStatus(EXPIRED);
+            if (TextUtil.isNullOrEmpty(ruleset.getRules())) {
+                LOG.finest("Ruleset is empty so no rules to deploy: " + ruleset.getName());
+                deployment.setStatus(EMPTY);
+                publishRulesetStatus(deployment);
+            } else if (!ruleset.isEnabled()) {
+                LOG.finest("Ruleset is disabled: " + ruleset.getName());
+                deployment.setStatus(DISABLED);
                 publishRulesetStatus(deployment);
-                compiled = true;
             } else {
-                compiled = deployment.compile();
-            }
+                deployment.updateValidity();
+                if (deployment.hasExpired()) {
+                    LOG.fine("Ruleset validity period has expired: " + ruleset.getName());
+                    deployment.setStatus(EXPIRED);
+                    publishRulesetStatus(deployment);
+                    compiled = true;
+                } else {
+                    compiled = deployment.compile();
+                }
 
-            if (!compiled) {
-                LOG.log(Level.SEVERE, "Ruleset compilation error: " + ruleset.getName(), deployment.getError());
-                deployment.setStatus(COMPILATION_ERROR);
-                publishRulesetStatus(deployment);
-            } else if (running) {
-                startRuleset(deployment);
+                if (!compiled) {
+                    LOG.log(Level.SEVERE, "Ruleset compilation error: " + ruleset.getName(), deployment.getError());
+                    deployment.setStatus(COMPILATION_ERROR);
+                    publishRulesetStatus(deployment);
+                } else if (running) {
+                    startRuleset(deployment);
+                }
             }
-        }
 
-        deployments.put(ruleset.getId(), deployment);
-        updateDeploymentInfo();
+            deployments.put(ruleset.getId(), deployment);
+            updateDeploymentInfo();
 
-        if (wasRunning) {
-            start();
-        }
+            if (wasRunning) {
+                start();
+            }
+        });
     }
 
     /**
      * @return <code>true</code> if this rules engine has no deployments.
      */
     public boolean removeRuleset(Ruleset ruleset) {
-        RulesetDeployment deployment = deployments.remove(ruleset.getId());
+        return withEngineLockReturning("removeRuleset", () -> {
+            RulesetDeployment deployment = deployments.remove(ruleset.getId());
 
-        if (deployment == null) {
-            LOG.finer("Ruleset cannot be retracted as it was never deployed: " + ruleset);
-            return deployments.size() == 0;
-        }
+            if (deployment == null) {
+                LOG.finer("Ruleset cannot be retracted as it was never deployed: " + ruleset);
+                return deployments.size() == 0;
+            }
 
-        stopRuleset(deployment);
+            stopRuleset(deployment);
 
-        deployment.setStatus(REMOVED);
-        publishRulesetStatus(deployment);
-        deployments.remove(ruleset.getId());
+            deployment.setStatus(REMOVED);
+            publishRulesetStatus(deployment);
+            deployments.remove(ruleset.getId());
 
-        ScheduledFuture<?> timer = pauseTimers.remove(ruleset.getId());
-        if (timer != null) timer.cancel(true);
-        timer = unpauseTimers.remove(ruleset.getId());
-        if (timer != null) timer.cancel(true);
+            ScheduledFuture<?> timer = pauseTimers.remove(ruleset.getId());
+            if (timer != null) timer.cancel(true);
+            timer = unpauseTimers.remove(ruleset.getId());
+            if (timer != null) timer.cancel(true);
 
-        updateDeploymentInfo();
-        start();
+            updateDeploymentInfo();
+            start();
 
-        return deployments.size() == 0;
+            return deployments.size() == 0;
+        });
     }
 
     public void start() {
-        if (running) {
-            return;
-        }
+        withEngineLock("start", () -> {
+            if (running) {
+                return;
+            }
 
-        if (deployments.size() == 0) {
-            LOG.finest("No rulesets so nothing to start");
-            return;
-        }
+            if (deployments.size() == 0) {
+                LOG.finest("No rulesets so nothing to start");
+                return;
+            }
 
-        if (!canStart()) {
-            LOG.fine("Cannot start rules engine one or more rulesets in an error state");
-            return;
-        }
+            if (!canStart()) {
+                LOG.fine("Cannot start rules engine one or more rulesets in an error state");
+                return;
+            }
 
-        LOG.info("Starting: " + this);
-        running = true;
-        trackLocationPredicates(true);
+            LOG.info("Starting: " + this);
+            running = true;
+            trackLocationPredicates(true);
 
-        deployments.values().forEach(this::startRuleset);
+            deployments.values().forEach(this::startRuleset);
 
-        updateDeploymentInfo();
-        publishRulesEngineStatus();
-        scheduleFire();
+            updateDeploymentInfo();
+            publishRulesEngineStatus();
+            scheduleFire();
 
-        // Start a background stats printer if INFO level logging is enabled
-        if (STATS_LOG.isLoggable(Level.INFO) || STATS_LOG.isLoggable(Level.FINEST)) {
-            if (STATS_LOG.isLoggable(Level.FINEST)) {
-                LOG.info("On " + this + ", enabling periodic statistics output at INFO level every 30 seconds on category: " + STATS_LOG.getName());
-            } else {
-                LOG.info("On " + this + ", enabling periodic full memory dump at FINEST level every 30 seconds on category: " + STATS_LOG.getName());
+            // Start a background stats printer if INFO level logging is enabled
+            if (STATS_LOG.isLoggable(Level.INFO) || STATS_LOG.isLoggable(Level.FINEST)) {
+                if (STATS_LOG.isLoggable(Level.FINEST)) {
+                    LOG.info("On " + this + ", enabling periodic statistics output at INFO level every 30 seconds on category: " + STATS_LOG.getName());
+                } else {
+                    LOG.info("On " + this + ", enabling periodic full memory dump at FINEST level every 30 seconds on category: " + STATS_LOG.getName());
+                }
+                statsTimer = executorService.scheduleAtFixedRate(this::printSessionStats, 3, 30, TimeUnit.SECONDS);
             }
-            statsTimer = executorService.scheduleAtFixedRate(this::printSessionStats, 3, 30, TimeUnit.SECONDS);
-        }
+        });
     }
 
     protected void trackLocationPredicates(boolean track) {
@@ -362,32 +413,34 @@ public class RulesEngine<T extends Ruleset> {
     }
 
     public void stop(boolean systemShutdownInProgress) {
-        if (!running) {
-            return;
-        }
-        LOG.info("Stopping: " + this);
-        if (fireTimer != null) {
-            fireTimer.cancel(true);
-            fireTimer = null;
-        }
-        if (statsTimer != null) {
-            statsTimer.cancel(true);
-            statsTimer = null;
-        }
-        pauseTimers.values().forEach(pauseTimer -> pauseTimer.cancel(true));
-        pauseTimers.clear();
-        unpauseTimers.values().forEach(unpauseTimer -> unpauseTimer.cancel(true));
-        unpauseTimers.clear();
+        withEngineLock("stop", () -> {
+            if (!running) {
+                return;
+            }
+            LOG.info("Stopping: " + this);
+            if (fireTimer != null) {
+                fireTimer.cancel(true);
+                fireTimer = null;
+            }
+            if (statsTimer != null) {
+                statsTimer.cancel(true);
+                statsTimer = null;
+            }
+            pauseTimers.values().forEach(pauseTimer -> pauseTimer.cancel(true));
+            pauseTimers.clear();
+            unpauseTimers.values().forEach(unpauseTimer -> unpauseTimer.cancel(true));
+            unpauseTimers.clear();
 
-        deployments.values().forEach(this::stopRuleset);
-        running = false;
+            deployments.values().forEach(this::stopRuleset);
+            running = false;
 
-        if (!systemShutdownInProgress && assetLocationPredicatesConsumer != null) {
-            assetLocationPredicatesConsumer.accept(this, null);
-        }
+            if (!systemShutdownInProgress) {
+                processLocationRules(null);
+            }
 
-        updateDeploymentInfo();
-        publishRulesEngineStatus();
+            updateDeploymentInfo();
+            publishRulesEngineStatus();
+        });
     }
 
     protected void startRuleset(RulesetDeployment deployment) {
@@ -434,39 +487,87 @@ public class RulesEngine<T extends Ruleset> {
     }
 
     public void scheduleFire() {
-        withLock(toString() + "::scheduleFire", () -> {
-            // Schedule a firing within the guaranteed expiration time (so not immediately), and
-            // only if the last firing is done. This effectively limits how often the rules engine
-            // will fire, only once within the guaranteed minimum expiration time.
-            if (fireTimer == null || fireTimer.isDone()) {
-                LOG.fine("Scheduling rules firing on: " + this);
-                fireTimer = executorService.schedule(
-                    () -> withLock(RulesEngine.this.toString() + "::fire", () -> {
-
-                        // Are temporary facts present before rules are fired?
-                        boolean hadTemporaryFactsBefore = facts.hasTemporaryFacts();
-
-                        // Process rules for all deployments
-                        fireAllDeployments();
-
-                        // If there are temporary facts, or if there were some before and
-                        // now they are gone, schedule a new firing to guarantee processing
-                        // of expired and removed temporary facts
-                        if ((facts.hasTemporaryFacts() || (hadTemporaryFactsBefore && !facts.hasTemporaryFacts()))
-                            && !disableTemporaryFactExpiration) {
-                            LOG.fine("Temporary facts require firing rules on: " + this);
-                            executorService.schedule(this::scheduleFire, 0);
-                        } else if (!disableTemporaryFactExpiration) {
-                            LOG.fine("No temporary facts present/changed when firing rules on: " + this);
-                        }
-
-                    }),
-                    TemporaryFact.GUARANTEED_MIN_EXPIRATION_MILLIS
-                );
+        scheduleFire(TemporaryFact.GUARANTEED_MIN_EXPIRATION_MILLIS);
+    }
+
+    /**
+     * Schedule a firing after the delay, but not sooner than the guaranteed expiration time. Only one firing is
+     * pending, it's moved forward if the new firing is due earlier. This effectively limits how often the rules
+     * engine will fire, only once within the guaranteed minimum expiration time.
+     */
+    protected void scheduleFire(long delayMillis) {
+        withEngineLock("scheduleFire", () -> {
+            long delay = Math.max(delayMillis, TemporaryFact.GUARANTEED_MIN_EXPIRATION_MILLIS);
+            if (fireTimer != null && !fireTimer.isDone()) {
+                if (fireTimer.getDelay(TimeUnit.MILLISECONDS) <= delay) {
+                    return;
+                }
+                fireTimer.cancel(false);
             }
+
+            LOG.fine("Scheduling rules firing in " + delay + "ms on: " + this);
+            // The firing can't start before the timer is set, it needs the engine lock
+            AtomicReference<ScheduledFuture<?>> timer = new AtomicReference<>();
+            timer.set(rulesExecutor.schedule(
+                () -> withEngineLock("fire", () -> fire(timer.get())),
+                delay,
+                TimeUnit.MILLISECONDS
+            ));
+            fireTimer = timer.get();
         });
     }
 
+    /**
+     * @param timer the timer of this firing, a cancelled timer can still fire when it was already waiting for the
+     *              engine lock while another firing was scheduled.
+     */
+    protected void fire(ScheduledFuture<?> timer) {
+        // This firing is no longer pending, the next one can be scheduled
+        if (fireTimer == timer) {
+            fireTimer = null;
+        }
+
+        // Process rules for all deployments
+        fireAllDeployments();
+
+        if (disableTemporaryFactExpiration || !running) {
+            return;
+        }
+
+        // Wake up when the next temporary fact expires, to process it being removed, or when the next timer
+        // condition of a rule is due
+        long nextTimerMillis = getNextTimerMillis();
+        if (facts.hasTemporaryFacts() || nextTimerMillis != Long.MAX_VALUE) {
+            if (timerService.getClock() == TimerService.Clock.REAL) {
+                long next = facts.hasTemporaryFacts()
+                    ? Math.min(facts.getNextExpirationTimestamp() + 1, nextTimerMillis)
+                    : nextTimerMillis;
+                long delay = next - timerService.getCurrentTimeMillis();
+                LOG.fine("Temporary facts or timers require firing rules in " + delay + "ms on: " + this);
+                scheduleFire(delay);
+            } else {
+                // A pseudo clock can be advanced at any time, keep checking for expired facts and due timers
+                LOG.fine("Temporary facts or timers require firing rules on: " + this);
+                scheduleFire();
+            }
+        } else {
+            LOG.fine("No temporary facts or timers present when firing rules on: " + this);
+        }
+    }
+
+    /**
+     * @return the earliest time when a timer condition of a deployed ruleset is due, or {@link Long#MAX_VALUE}.
+     */
+    protected long getNextTimerMillis() {
+        long next = Long.MAX_VALUE;
+        for (RulesetDeployment deployment : deployments.values()) {
+            if (deployment.getStatus() == DEPLOYED) {
+                next = Math.min(next, deployment.getNextTimerMillis());
+            }
+        }
+        return next;
+    }
+
     private void fireDeployments(Collection<RulesetDeployment> deploymentList) {
         if (!running) {
             return;
@@ -476,9 +577,13 @@ public class RulesEngine<T extends Ruleset> {
             facts.startTrackingLocationRules();
         }
 
-        // Set the current clock
-        RulesClock clock = new RulesClock(timerService);
-        facts.setClock(clock);
+        // Set the current clock, reuse it if the time hasn't changed
+        long currentTimeMillis = timerService.getCurrentTimeMillis();
+        RulesClock clock = facts.getClock();
+        if (clock == null || clock.getTimestamp() != currentTimeMillis) {
+            clock = new RulesClock(currentTimeMillis);
+            facts.setClock(clock);
+        }
 
         // Remove any expired temporary facts
         facts.removeExpiredTemporaryFacts();
@@ -531,7 +636,9 @@ public class RulesEngine<T extends Ruleset> {
     }
 
     protected void fireAllDeploymentsWithPredictedData() {
-        fireDeployments(deployments.values().stream().filter(RulesetDeployment::isTriggerOnPredictedData).collect(Collectors.toList()));
+        withEngineLock("fireAllDeploymentsWithPredictedData", () ->
+            fireDeployments(deployments.values().stream().filter(RulesetDeployment::isTriggerOnPredictedData).collect(Collectors.toList()))
+        );
     }
 
     protected void notifyAssetStatesChanged(AssetStateChangeEvent event) {
@@ -543,29 +650,97 @@ public class RulesEngine<T extends Ruleset> {
     }
 
     public void updateOrInsertAssetState(AssetState assetState, boolean insert) {
-        facts.putAssetState(assetState);
-        // Make sure location predicate tracking is activated before notifying the deployments otherwise they won't report location predicates
-        trackLocationPredicates(trackLocationPredicates || (insert && assetState.getAttributeName().equals(AttributeType.LOCATION.getAttributeName())));
-        notifyAssetStatesChanged(new AssetStateChangeEvent(insert ? PersistenceEvent.Cause.CREATE : PersistenceEvent.Cause.UPDATE, assetState));
-        if (running) {
-            scheduleFire();
-        }
+        queueChange(() -> {
+            facts.putAssetState(assetState);
+            // Make sure location predicate tracking is activated before notifying the deployments otherwise they won't report location predicates
+            trackLocationPredicates(trackLocationPredicates || (insert && assetState.getAttributeName().equals(AttributeType.LOCATION.getAttributeName())));
+            notifyAssetStatesChanged(new AssetStateChangeEvent(insert ? PersistenceEvent.Cause.CREATE : PersistenceEvent.Cause.UPDATE, assetState));
+            if (running) {
+                scheduleFire();
+            }
+        });
     }
 
     public void removeAssetState(AssetState assetState) {
-        facts.removeAssetState(assetState);
-        // Make sure location predicate tracking is activated before notifying the deployments otherwise they won't report location predicates
-        trackLocationPredicates(trackLocationPredicates || assetState.getAttributeName().equals(AttributeType.LOCATION.getAttributeName()));
-        notifyAssetStatesChanged(new AssetStateChangeEvent(PersistenceEvent.Cause.DELETE, assetState));
-        if (running) {
-            scheduleFire();
-        }
+        queueChange(() -> {
+            facts.removeAssetState(assetState);
+            // Make sure location predicate tracking is activated before notifying the deployments otherwise they won't report location predicates
+            trackLocationPredicates(trackLocationPredicates || assetState.getAttributeName().equals(AttributeType.LOCATION.getAttributeName()));
+            notifyAssetStatesChanged(new AssetStateChangeEvent(PersistenceEvent.Cause.DELETE, assetState));
+            if (running) {
+                scheduleFire();
+            }
+        });
     }
 
     public void insertAssetEvent(String expires, AssetState assetState) {
-        facts.insertAssetEvent(expires, assetState);
-        if (running) {
-            scheduleFire();
+        queueChange(() -> {
+            facts.insertAssetEvent(expires, assetState);
+            if (running) {
+                scheduleFire();
+            }
+        });
+    }
+
+    /**
+     * Applies the change now if the lock is free, otherwise the thread holding the lock applies it on release. Changes
+     * are always applied in the order they were queued.
+     */
+    protected void queueChange(Runnable change) {
+        pendingChanges.add(change);
+        applyPendingChanges();
+    }
+
+    protected void applyPendingChanges() {
+        // Changes queued by other threads while this thread released the lock are applied by the next iteration
+        while (!pendingChanges.isEmpty() && lock.tryWithLock("applyPendingChanges", () -> {
+            Runnable change;
+            while ((change = pendingChanges.poll()) != null) {
+                try {
+                    change.run();
+                } catch (Exception e) {
+                    LOG.log(Level.SEVERE, "On " + this + ", error applying asset state change", e);
+                }
+            }
+        })) {
+            notifyLocationPredicates();
+        }
+    }
+
+    protected void notifyLocationPredicates() {
+        while (!pendingLocationNotifications.isEmpty()
+            && !lock.isHeldByCurrentThread()
+            && notifyingLocationPredicates.compareAndSet(false, true)) {
+            try {
+                Runnable notification;
+                while ((notification = pendingLocationNotifications.poll()) != null) {
+                    try {
+                        notification.run();
+                    } catch (Exception e) {
+                        LOG.log(Level.SEVERE, "On " + this + ", error processing location predicates", e);
+                    }
+                }
+            } finally {
+                notifyingLocationPredicates.set(false);
+            }
+        }
+    }
+
+    protected void withEngineLock(String info, Runnable runnable) {
+        withEngineLockReturning(info, () -> {
+            runnable.run();
+            return null;
+        });
+    }
+
+    protected <R> R withEngineLockReturning(String info, Supplier<R> supplier) {
+        try {
+            return lock.withLockReturning(info, supplier);
+        } finally {
+            if (!lock.isHeldByCurrentThread()) {
+                applyPendingChanges();
+                notifyLocationPredicates();
+            }
         }
     }
 
@@ -578,7 +753,7 @@ public class RulesEngine<T extends Ruleset> {
     }
 
     protected void printSessionStats() {
-        withLock(toString() + "::printSessionStats", () -> {
+        withEngineLock("printSessionStats", () -> {
             Collection<AssetState> assetStateFacts = facts.getAssetStates();
             Collection<TemporaryFact<AssetState>> assetEventFacts = facts.getAssetEvents();
             Map<String, Object> namedFacts = facts.getNamedFacts();
@@ -592,6 +767,15 @@ public class RulesEngine<T extends Ruleset> {
                 + ", Anonymous: " + anonFacts.size()
                 + ", Temporary: " + temporaryFactsCount);
 
+            for (RuleStatistics ruleStatistics : getSlowestRules(SLOWEST_RULES_LIMIT)) {
+                STATS_LOG.fine("Rule '" + ruleStatistics.getRuleName() + "' of '" + ruleStatistics.getRulesetName()
+                    + "', evaluations: " + ruleStatistics.getEvaluationCount()
+                    + " (" + ruleStatistics.getEvaluationMicros() + "us)"
+                    + ", executions: " + ruleStatistics.getExecutionCount()
+                    + " (" + ruleStatistics.getExecutionMicros() + "us)"
+                    + ", matched facts: " + ruleStatistics.getMatchedFactCount());
+            }
+
             // Additional details if FINEST is enabled
             if (STATS_LOG.isLoggable(Level.FINEST)) {
                 facts.logFacts(STATS_LOG);
@@ -605,7 +789,8 @@ public class RulesEngine<T extends Ruleset> {
      */
     protected void processLocationRules(List<AssetStateLocationPredicates> assetStateLocationPredicates) {
         if (assetLocationPredicatesConsumer != null) {
-            assetLocationPredicatesConsumer.accept(this, assetStateLocationPredicates);
+            pendingLocationNotifications.add(() -> assetLocationPredicatesConsumer.accept(this, assetStateLocationPredicates));
+            notifyLocationPredicates();
         }
     }
 
@@ -618,7 +803,7 @@ public class RulesEngine<T extends Ruleset> {
     }
 
     protected void publishRulesEngineStatus() {
-        withLock(getClass().getSimpleName() + "::publishRulesEngineStatus", () -> {
+        withEngineLock("publishRulesEngineStatus", () -> {
 
             String engineId = id == null ? null : id.getRealm().orElse(id.getAssetId().orElse(null));
             int compilationErrors = getCompilationErrorDeploymentCount();
@@ -626,7 +811,8 @@ public class RulesEngine<T extends Ruleset> {
             RulesEngineInfo engineInfo = new RulesEngineInfo(
                 getStatus(),
                 compilationErrors,
-                executionErrors);
+                executionErrors,
+                getSlowestRules(SLOWEST_RULES_LIMIT).toArray(new RuleStatistics[0]));
 
             RulesEngineStatusEvent event = new RulesEngineStatusEvent(
                 timerService.getCurrentTimeMillis(),
@@ -642,7 +828,7 @@ public class RulesEngine<T extends Ruleset> {
     }
 
     protected void publishRulesetStatus(RulesetDeployment deployment) {
-        withLock(getClass().getSimpleName() + "::publishRulesetStatus", () -> {
+        withEngineLock("publishRulesetStatus", () -> {
 
             Ruleset ruleset = deployment.ruleset;
             String engineId = id == null ? null : id.getRealm().orElse(id.getAssetId().orElse(null));
@@ -676,7 +862,7 @@ public class RulesEngine<T extends Ruleset> {
             return;
         }
 
-        withLock(getClass().getSimpleName() + ":pauseRuleset", () -> {
+        withEngineLock("pauseRuleset", () -> {
             LOG.info("Pausing ruleset: " + deployment.getRuleset().getName());
             stopRuleset(deployment);
             deployment.updateValidity();
@@ -706,7 +892,7 @@ public class RulesEngine<T extends Ruleset> {
             return;
         }
 
-        withLock(getClass().getSimpleName() + "::unpauseRuleset", () -> {
+        withEngineLock("unpauseRuleset", () -> {
             LOG.info("Un-pausing ruleset: " + deployment.getRuleset().getName());
             startRuleset(deployment);
         });
@@ -37,6 +37,7 @@ import org.openremote.model.value.Values;
 
 import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.logging.Level;
@@ -61,6 +62,24 @@ public class RulesFacts extends Facts implements RuleListener {
     public static final String EXECUTION_VARS = "INTERNAL_EXECUTION_VAR";
     public static final String ANONYMOUS_FACTS = "ANONYMOUS_FACTS";
 
+    /**
+     * A temporary fact in the expiration queue, with the location of the fact.
+     */
+    protected static class ExpiringFact {
+        final TemporaryFact<?> fact;
+        // The name of a named fact, null for anonymous facts and asset events
+        final String name;
+        final boolean assetEvent;
+        final long expirationTimestamp;
+
+        protected ExpiringFact(TemporaryFact<?> fact, String name, boolean assetEvent) {
+            this.fact = fact;
+            this.name = name;
+            this.assetEvent = assetEvent;
+            this.expirationTimestamp = fact.getTimestamp() + fact.getExpirationMilliseconds();
+        }
+    }
+
     final protected TimerService timerService;
     final protected AssetStorageService assetStorageService;
     final protected Assets assetsFacade;
@@ -68,6 +87,12 @@ public class RulesFacts extends Facts implements RuleListener {
     final protected Logger LOG;
     final protected Map<String, Collection<AssetState>> assetIdIndex = new HashMap<>();
     final protected Map<String, Collection<AssetState>> assetTypeIndex = new HashMap<>();
+    // All temporary facts ordered by expiration time, expired facts are removed without scanning all facts
+    final protected PriorityQueue<ExpiringFact> expiringFacts = new PriorityQueue<>(
+        Comparator.comparingLong(expiringFact -> expiringFact.expirationTimestamp)
+    );
+    // Facts returned by match queries, streams may be parallel
+    final protected LongAdder matchedFacts = new LongAdder();
     public RulesClock clock;
     protected int triggerCount;
     protected boolean trackLocationRules;
@@ -81,9 +106,10 @@ public class RulesFacts extends Facts implements RuleListener {
         this.LOG = logger;
 
         asMap().put(ASSET_STATES, new ArrayDeque(INITIAL_CAPACITY));
-        asMap().put(ASSET_EVENTS, new ArrayDeque(INITIAL_CAPACITY));
+        // Expired asset events and anonymous facts are removed by their handle, without scanning
+        asMap().put(ASSET_EVENTS, new LinkedHashSet(INITIAL_CAPACITY));
         asMap().put(EXECUTION_VARS, new HashMap());
-        asMap().put(ANONYMOUS_FACTS, new ArrayDeque(INITIAL_CAPACITY));
+        asMap().put(ANONYMOUS_FACTS, new LinkedHashSet(INITIAL_CAPACITY));
     }
 
     protected void startTrackingLocationRules() {
@@ -194,7 +220,11 @@ public class RulesFacts extends Facts implements RuleListener {
         if (LOG.isLoggable(Level.FINEST)) {
             LOG.finest("Fact change (UPDATE): " + name + " => " + fact + " - on: " + loggingContext);
         }
+        removeExpiringFact(asMap().get(name));
         super.put(name, fact);
+        if (fact instanceof TemporaryFact) {
+            expiringFacts.add(new ExpiringFact((TemporaryFact<?>) fact, name, false));
+        }
         return this;
     }
 
@@ -202,8 +232,13 @@ public class RulesFacts extends Facts implements RuleListener {
         if (LOG.isLoggable(Level.FINEST)) {
             LOG.finest("Fact change (UPDATE): " + o + " - on: " + loggingContext);
         }
-        getAnonymousFacts().remove(o);
+        if (getAnonymousFacts().remove(o)) {
+            removeExpiringFact(o);
+        }
         getAnonymousFacts().add(o);
+        if (o instanceof TemporaryFact) {
+            expiringFacts.add(new ExpiringFact((TemporaryFact<?>) o, null, false));
+        }
         return this;
     }
 
@@ -258,6 +293,7 @@ public class RulesFacts extends Facts implements RuleListener {
             LOG.finest("Fact change (INSERT): " + fact + " - on: " + loggingContext);
         }
         getAssetEvents().add(fact);
+        expiringFacts.add(new ExpiringFact(fact, null, true));
         return this;
     }
 
@@ -274,7 +310,9 @@ public class RulesFacts extends Facts implements RuleListener {
     }
 
     public RulesFacts putTemporary(long expires, Object value) {
-        getAnonymousFacts().add(new TemporaryFact<>((long) getClock().getTimestamp(), expires, value));
+        TemporaryFact<Object> fact = new TemporaryFact<>((long) getClock().getTimestamp(), expires, value);
+        getAnonymousFacts().add(fact);
+        expiringFacts.add(new ExpiringFact(fact, null, false));
         return this;
     }
 
@@ -292,35 +330,56 @@ public class RulesFacts extends Facts implements RuleListener {
     }
 
     public boolean hasTemporaryFacts() {
-        return getTemporaryFacts().count() > 0;
+        return !expiringFacts.isEmpty();
     }
 
     public Stream<TemporaryFact> getTemporaryFacts() {
-        return Stream.concat(
-                Stream.concat(
-                        getAssetEvents().stream().parallel(),
-                        getNamedFacts().values().stream().parallel().filter(fact -> fact instanceof TemporaryFact).map(fact -> (TemporaryFact) fact)
-                ),
-                getAnonymousFacts().stream().parallel().filter(fact -> fact instanceof TemporaryFact).map(fact -> (TemporaryFact) fact)
-        ).parallel();
+        return expiringFacts.stream().map(expiringFact -> expiringFact.fact);
+    }
+
+    /**
+     * @return the time when the next temporary fact expires or {@link Long#MAX_VALUE} if there are no temporary facts.
+     */
+    public long getNextExpirationTimestamp() {
+        ExpiringFact next = expiringFacts.peek();
+        return next != null ? next.expirationTimestamp : Long.MAX_VALUE;
     }
 
     @Override
     public RulesFacts remove(String name) {
+        removeExpiringFact(asMap().get(name));
         super.remove(name);
         return this;
     }
 
     public RulesFacts remove(Object fact) {
         getAnonymousFacts().removeIf(anonFact -> {
+            Object value = anonFact;
             if (anonFact instanceof TemporaryFact) {
-                anonFact = ((TemporaryFact) anonFact).getFact();
+                value = ((TemporaryFact) anonFact).getFact();
+            }
+            if (value.equals(fact)) {
+                removeExpiringFact(anonFact);
+                return true;
             }
-            return anonFact.equals(fact);
+            return false;
         });
         return this;
     }
 
+    protected void removeExpiringFact(Object fact) {
+        if (fact instanceof TemporaryFact) {
+            expiringFacts.removeIf(expiringFact -> expiringFact.fact == fact);
+        }
+    }
+
+    /**
+     * @return the total number of facts returned by match queries, used for profiling rules.
+     */
+    public long getMatchedFactCount() {
+        return matchedFacts.sum();
+    }
+
     /**
      * Reset rules triggered counter, used for loop detection.
      */
@@ -415,6 +474,7 @@ public class RulesFacts extends Facts implements RuleListener {
     public <T> Stream<T> match(Class<T> factType, Predicate<T> predicate) {
         return getAllFacts()
                 .filter(fact -> matchFact(fact, factType, predicate).isPresent())
+                .peek(fact -> matchedFacts.increment())
                 .map(fact -> {
                     if (fact instanceof TemporaryFact) {
                         return ((TemporaryFact) fact).getFact();
@@ -441,7 +501,7 @@ public class RulesFacts extends Facts implements RuleListener {
     public Stream<AssetState> matchAssetState(Predicate<AssetState> p) {
         // Match against all asset states by default
         Stream<AssetState> assetStates = getAssetStates().stream();
-        return assetStates.parallel().filter(p);
+        return assetStates.parallel().filter(p).peek(assetState -> matchedFacts.increment());
     }
 
     public Optional<TemporaryFact<AssetState>> matchFirstAssetEvent(AssetQuery assetQuery) {
@@ -455,7 +515,8 @@ public class RulesFacts extends Facts implements RuleListener {
     public Stream<TemporaryFact<AssetState>> matchAssetEvent(AssetQuery assetQuery) {
         Predicate<AssetState> p = new AssetQueryPredicate(timerService, assetStorageService, assetQuery);
         return getAssetEvents().stream().parallel()
-                .filter(fact -> matchFact(fact, AssetState.class, p).isPresent());
+                .filter(fact -> matchFact(fact, AssetState.class, p).isPresent())
+                .peek(fact -> matchedFacts.increment());
     }
 
     public RulesFacts updateAssetState(String assetId, String attributeName, Value value) {
@@ -484,39 +545,21 @@ public class RulesFacts extends Facts implements RuleListener {
 
     public void removeExpiredTemporaryFacts() {
         long currentTimestamp = (long) getClock().getTimestamp();
-        getAssetEvents().removeIf(fact -> {
-            boolean result = fact.isExpired(currentTimestamp);
-            if (result && LOG.isLoggable(Level.FINEST)) {
-                LOG.finest("Fact change (DELETE EXPIRED): " + fact + " - on: " + loggingContext);
+        ExpiringFact expiringFact;
+        while ((expiringFact = expiringFacts.peek()) != null && expiringFact.fact.isExpired(currentTimestamp)) {
+            expiringFacts.poll();
+            boolean removed;
+            if (expiringFact.name != null) {
+                removed = asMap().remove(expiringFact.name, expiringFact.fact);
+            } else if (expiringFact.assetEvent) {
+                removed = getAssetEvents().remove(expiringFact.fact);
+            } else {
+                removed = getAnonymousFacts().remove(expiringFact.fact);
             }
-            return result;
-        });
-        asMap().entrySet().removeIf(entry -> {
-            if (entry.getKey().equals(CLOCK)
-                    || entry.getKey().equals(ASSET_STATES)
-                    || entry.getKey().equals(ASSET_EVENTS)
-                    || entry.getKey().equals(EXECUTION_VARS)
-                    || entry.getKey().equals(ANONYMOUS_FACTS)
-                    || !(entry.getValue() instanceof TemporaryFact)) {
-                return false;
-            }
-            boolean result = ((TemporaryFact) entry.getValue()).isExpired(currentTimestamp);
-            if (result && LOG.isLoggable(Level.FINEST)) {
-                LOG.finest("Fact change (DELETE EXPIRED): " + entry.getValue() + " - on: " + loggingContext);
-            }
-            return result;
-        });
-        getAnonymousFacts().removeIf(fact -> {
-            boolean result = false;
-            if (fact instanceof TemporaryFact) {
-                TemporaryFact temporaryFact = (TemporaryFact) fact;
-                result = temporaryFact.isExpired((long) getClock().getTimestamp());
+            if (removed && LOG.isLoggable(Level.FINEST)) {
+                LOG.finest("Fact change (DELETE EXPIRED): " + expiringFact.fact + " - on: " + loggingContext);
             }
-            if (result && LOG.isLoggable(Level.FINEST)) {
-                LOG.finest("Fact change (DELETE EXPIRED): " + fact + " - on: " + loggingContext);
-            }
-            return result;
-        });
+        }
     }
 
     public boolean logFacts(Logger logger) {
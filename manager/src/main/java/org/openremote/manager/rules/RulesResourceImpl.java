@@ -66,25 +66,51 @@ public class RulesResourceImpl extends ManagerWebResource implements RulesResour
 
     @Override
     public RulesEngineInfo getGlobalEngineInfo(RequestParams requestParams) {
+        return getEngineInfo(getGlobalEngine());
+    }
+
+    @Override
+    public RulesEngineInfo getTenantEngineInfo(RequestParams requestParams, String realm) {
+        return getEngineInfo(getTenantEngine(realm));
+    }
+
+    @Override
+    public RulesEngineInfo getAssetEngineInfo(RequestParams requestParams, String assetId) {
+        return getEngineInfo(getAssetEngine(assetId));
+    }
+
+    @Override
+    public RuleStatistics[] getGlobalRuleStatistics(RequestParams requestParams, Integer limit) {
+        return getRuleStatistics(getGlobalEngine(), limit);
+    }
+
+    @Override
+    public RuleStatistics[] getTenantRuleStatistics(RequestParams requestParams, String realm, Integer limit) {
+        return getRuleStatistics(getTenantEngine(realm), limit);
+    }
+
+    @Override
+    public RuleStatistics[] getAssetRuleStatistics(RequestParams requestParams, String assetId, Integer limit) {
+        return getRuleStatistics(getAssetEngine(assetId), limit);
+    }
+
+    protected RulesEngine<GlobalRuleset> getGlobalEngine() {
         if (!isSuperUser()) {
             throw new WebApplicationException(Response.Status.FORBIDDEN);
         }
 
-        return getEngineInfo(rulesService.globalEngine);
+        return rulesService.globalEngine;
     }
 
-    @Override
-    public RulesEngineInfo getTenantEngineInfo(RequestParams requestParams, String realm) {
+    protected RulesEngine<TenantRuleset> getTenantEngine(String realm) {
         if (!isRealmAccessibleByUser(realm) || isRestrictedUser()) {
             throw new WebApplicationException(Response.Status.FORBIDDEN);
         }
 
-        RulesEngine<TenantRuleset> engine = rulesService.tenantEngines.get(realm);
-        return getEngineInfo(engine);
+        return rulesService.tenantEngines.get(realm);
     }
 
-    @Override
-    public RulesEngineInfo getAssetEngineInfo(RequestParams requestParams, String assetId) {
+    protected RulesEngine<AssetRuleset> getAssetEngine(String assetId) {
         Asset asset = assetStorageService.find(assetId, false);
 
         if (asset == null)
@@ -98,25 +124,38 @@ public class RulesResourceImpl extends ManagerWebResource implements RulesResour
             throw new WebApplicationException(Response.Status.FORBIDDEN);
         }
 
-        RulesEngine<AssetRuleset> engine = rulesService.assetEngines.get(assetId);
-        return getEngineInfo(engine);
+        return rulesService.assetEngines.get(assetId);
     }
 
-    protected RulesEngineInfo getEngineInfo(RulesEngine engine) {
+    protected RulesEngineInfo getEngineInfo(RulesEngine<?> engine) {
         if (engine == null) {
             return null;
         }
 
         int compilationErrorCount = engine.getCompilationErrorDeploymentCount();
         int executionErrorCount = engine.getExecutionErrorDeploymentCount();
+        List<RuleStatistics> slowestRules = engine.getSlowestRules(RulesEngine.SLOWEST_RULES_LIMIT);
 
         return new RulesEngineInfo(
             engine.getStatus(),
             compilationErrorCount,
-            executionErrorCount
+            executionErrorCount,
+            slowestRules.toArray(new RuleStatistics[0])
         );
     }
 
+    protected RuleStatistics[] getRuleStatistics(RulesEngine<?> engine, Integer limit) {
+        if (engine == null) {
+            return new RuleStatistics[0];
+        }
+
+        if (limit != null && limit < 0) {
+            throw new WebApplicationException(BAD_REQUEST);
+        }
+
+        return engine.getSlowestRules(limit != null ? limit : Integer.MAX_VALUE).toArray(new RuleStatistics[0]);
+    }
+
     @Override
     public GlobalRuleset[] getGlobalRulesets(@BeanParam RequestParams requestParams, List<Ruleset.Lang> languages, boolean fullyPopulate) {
         if (!isSuperUser()) {
@@ -22,6 +22,7 @@ package org.openremote.manager.rules;
 import org.apache.camel.builder.RouteBuilder;
 import org.openremote.container.Container;
 import org.openremote.container.ContainerService;
+import org.openremote.container.concurrent.ContainerScheduledExecutor;
 import org.openremote.container.message.MessageBrokerService;
 import org.openremote.container.persistence.PersistenceEvent;
 import org.openremote.container.persistence.PersistenceService;
@@ -37,6 +38,7 @@ import org.openremote.manager.notification.NotificationService;
 import org.openremote.manager.predicted.AssetPredictedDatapointService;
 import org.openremote.manager.rules.flow.FlowResourceImpl;
 import org.openremote.manager.rules.geofence.GeofenceAssetAdapter;
+import org.openremote.manager.rules.geofence.GeofenceIndex;
 import org.openremote.manager.security.ManagerIdentityService;
 import org.openremote.manager.web.ManagerWebService;
 import org.openremote.model.Constants;
@@ -47,6 +49,7 @@ import org.openremote.model.attribute.MetaItemType;
 import org.openremote.model.query.AssetQuery;
 import org.openremote.model.query.RulesetQuery;
 import org.openremote.model.query.filter.BooleanPredicate;
+import org.openremote.model.query.filter.GeofencePredicate;
 import org.openremote.model.query.filter.LocationAttributePredicate;
 import org.openremote.model.query.filter.MetaPredicate;
 import org.openremote.model.rules.*;
@@ -58,6 +61,7 @@ import org.openremote.model.value.ObjectValue;
 
 import javax.persistence.EntityManager;
 import java.util.*;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.function.BiFunction;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
@@ -69,6 +73,8 @@ import static org.openremote.container.concurrent.GlobalLock.withLock;
 import static org.openremote.container.concurrent.GlobalLock.withLockReturning;
 import static org.openremote.container.persistence.PersistenceEvent.PERSISTENCE_TOPIC;
 import static org.openremote.container.persistence.PersistenceEvent.isPersistenceEventForEntityType;
+import static org.openremote.container.util.MapAccess.getBoolean;
+import static org.openremote.container.util.MapAccess.getInteger;
 import static org.openremote.container.util.MapAccess.getString;
 import static org.openremote.model.asset.AssetAttribute.attributesFromJson;
 import static org.openremote.model.asset.AssetAttribute.getAddedOrModifiedAttributes;
@@ -99,6 +105,21 @@ public class RulesService extends RouteBuilder implements ContainerService, Asse
     public static final int PRIORITY = AssetProcessingService.PRIORITY + 100;
     public static final String RULE_EVENT_EXPIRES = "RULE_EVENT_EXPIRES";
     public static final String RULE_EVENT_EXPIRES_DEFAULT = "1h";
+    /**
+     * Threads firing the rules engines, each engine fires on one thread at a time.
+     */
+    public static final String RULES_THREADS_MAX = "RULES_THREADS_MAX";
+    public static final int RULES_THREADS_MAX_DEFAULT = Math.max(Runtime.getRuntime().availableProcessors(), 2);
+    /**
+     * Compiled Groovy and JavaScript rulesets kept in memory, identical rules share one entry.
+     */
+    public static final String RULES_COMPILATION_CACHE_SIZE = "RULES_COMPILATION_CACHE_SIZE";
+    public static final int RULES_COMPILATION_CACHE_SIZE_DEFAULT = 1000;
+    /**
+     * Set to false to compile Groovy global rulesets, which only super users can write, without the sandbox.
+     */
+    public static final String RULES_SANDBOX_GLOBAL = "RULES_SANDBOX_GLOBAL";
+    public static final boolean RULES_SANDBOX_GLOBAL_DEFAULT = true;
     private static final Logger LOG = Logger.getLogger(RulesService.class.getName());
 
     protected List<GeofenceAssetAdapter> geofenceAssetAdapters = new ArrayList<>();
@@ -106,6 +127,8 @@ public class RulesService extends RouteBuilder implements ContainerService, Asse
     protected final Map<String, RulesEngine<AssetRuleset>> assetEngines = new HashMap<>();
     protected TimerService timerService;
     protected ManagerExecutorService executorService;
+    protected ScheduledExecutorService rulesExecutor;
+    protected RulesetCompiler rulesetCompiler;
     protected PersistenceService persistenceService;
     protected RulesetStorageService rulesetStorageService;
     protected ManagerIdentityService identityService;
@@ -118,14 +141,35 @@ public class RulesService extends RouteBuilder implements ContainerService, Asse
     protected RulesEngine<GlobalRuleset> globalEngine;
     protected Tenant[] tenants;
     protected AssetLocationPredicateProcessor locationPredicateRulesConsumer;
-    protected Map<RulesEngine<?>, List<RulesEngine.AssetStateLocationPredicates>> engineAssetLocationPredicateMap = new HashMap<>();
+    protected final GeofenceIndex geofenceIndex = new GeofenceIndex();
     protected Set<String> assetsWithModifiedLocationPredicates = new HashSet<>();
-    // Keep global list of asset states that have been pushed to any engines
+    // Keep global index of asset states that have been pushed to any engines
     // The objects are already in memory inside the rule engines but keeping them
     // here means we can quickly insert facts into newly started engines
-    protected Set<AssetState> assetStates = new HashSet<>();
+    protected final AssetStateIndex assetStates = new AssetStateIndex();
+    // The engines in scope of an asset, cleared when an engine is created or removed
+    protected final Map<String, EngineChain> assetEngineChains = new HashMap<>();
     protected String configEventExpires;
 
+    /**
+     * The rules engines in scope of an asset, valid as long as the asset is not moved.
+     */
+    protected static class EngineChain {
+        final String realm;
+        final String[] path;
+        final List<RulesEngine<?>> rulesEngines;
+
+        public EngineChain(String realm, String[] path, List<RulesEngine<?>> rulesEngines) {
+            this.realm = realm;
+            this.path = path;
+            this.rulesEngines = rulesEngines;
+        }
+
+        public boolean isValidFor(String realm, String[] path) {
+            return Objects.equals(this.realm, realm) && (this.path == path || Arrays.equals(this.path, path));
+        }
+    }
+
     @Override
     public int getPriority() {
         return PRIORITY;
@@ -175,6 +219,14 @@ public class RulesService extends RouteBuilder implements ContainerService, Asse
         geofenceAssetAdapters.sort(Comparator.comparingInt(GeofenceAssetAdapter::getPriority));
         container.getService(MessageBrokerService.class).getContext().addRoutes(this);
         configEventExpires = getString(container.getConfig(), RULE_EVENT_EXPIRES, RULE_EVENT_EXPIRES_DEFAULT);
+        rulesExecutor = new ContainerScheduledExecutor(
+            "Rules", getInteger(container.getConfig(), RULES_THREADS_MAX, RULES_THREADS_MAX_DEFAULT)
+        );
+        rulesetCompiler = new RulesetCompiler(
+            RulesetDeployment.scriptEngineManager,
+            getInteger(container.getConfig(), RULES_COMPILATION_CACHE_SIZE, RULES_COMPILATION_CACHE_SIZE_DEFAULT),
+            getBoolean(container.getConfig(), RULES_SANDBOX_GLOBAL, RULES_SANDBOX_GLOBAL_DEFAULT)
+        );
 
         container.getService(ManagerWebService.class).getApiSingletons().add(
                 new FlowResourceImpl(
@@ -229,17 +281,14 @@ public class RulesService extends RouteBuilder implements ContainerService, Asse
             }
         }
 
-        LOG.info("Deploying global rulesets");
-        rulesetStorageService.findAll(
+        List<GlobalRuleset> globalRulesets = rulesetStorageService.findAll(
             GlobalRuleset.class,
             new RulesetQuery()
                 .setEnabledOnly(true)
-                .setFullyPopulate(true)
-        ).forEach(this::deployGlobalRuleset);
+                .setFullyPopulate(true));
 
-        LOG.info("Deploying tenant rulesets");
         tenants = identityService.getIdentityProvider().getTenants();
-        rulesetStorageService.findAll(
+        List<TenantRuleset> tenantRulesets = rulesetStorageService.findAll(
             TenantRuleset.class,
             new RulesetQuery()
                 .setEnabledOnly(true)
@@ -248,16 +297,31 @@ public class RulesService extends RouteBuilder implements ContainerService, Asse
             .filter(rd ->
                 Arrays.stream(tenants)
                     .anyMatch(tenant -> rd.getRealm().equals(tenant.getRealm()))
-            ).forEach(this::deployTenantRuleset);
+            ).collect(Collectors.toList());
+
+        List<AssetRuleset> assetRulesets = rulesetStorageService.findAll(
+            AssetRuleset.class,
+            new RulesetQuery()
+                .setEnabledOnly(true)
+                .setFullyPopulate(true));
+
+        LOG.info("Compiling rulesets");
+        List<Ruleset> rulesets = new ArrayList<>(globalRulesets);
+        rulesets.addAll(tenantRulesets);
+        rulesets.addAll(assetRulesets);
+        long compileStart = System.currentTimeMillis();
+        rulesetCompiler.compileAll(rulesets, rulesExecutor);
+        LOG.info("Compiled " + rulesets.size() + " rulesets in " + (System.currentTimeMillis() - compileStart) + "ms: " + rulesetCompiler);
+
+        LOG.info("Deploying global rulesets");
+        globalRulesets.forEach(this::deployGlobalRuleset);
+
+        LOG.info("Deploying tenant rulesets");
+        tenantRulesets.forEach(this::deployTenantRuleset);
 
         LOG.info("Deploying asset rulesets");
         // Group by asset ID then tenant and check tenant is enabled
-        deployAssetRulesets(
-            rulesetStorageService.findAll(
-                AssetRuleset.class,
-                new RulesetQuery()
-                    .setEnabledOnly(true)
-                    .setFullyPopulate(true)))
+        deployAssetRulesets(assetRulesets)
             .count();//Needed in order to execute the stream. TODO: can this be done differently?
 
         LOG.info("Loading all assets with fact attributes to initialize state of rules engines");
@@ -303,7 +367,17 @@ public class RulesService extends RouteBuilder implements ContainerService, Asse
                 globalEngine.stop(true);
                 globalEngine = null;
             }
+
+            geofenceIndex.clear();
+            assetEngineChains.clear();
+            if (rulesetCompiler != null) {
+                rulesetCompiler.clear();
+            }
         });
+
+        if (rulesExecutor != null) {
+            rulesExecutor.shutdownNow();
+        }
     }
 
     @Override
@@ -365,6 +439,7 @@ public class RulesService extends RouteBuilder implements ContainerService, Asse
                     tenantRulesEngine.stop();
                     tenantEngines.remove(tenant.getRealm());
                 }
+                assetEngineChains.clear();
 
                 // Remove any asset rules engines for assets in this realm
                 assetEngines.values().stream()
@@ -434,8 +509,13 @@ public class RulesService extends RouteBuilder implements ContainerService, Asse
                     break;
                 }
                 case UPDATE: {
-                    int attributesIndex = Arrays.asList(persistenceEvent.getPropertyNames()).indexOf("attributes");
-                    if (attributesIndex < 0) {
+                    List<String> propertyNames = Arrays.asList(persistenceEvent.getPropertyNames());
+                    int attributesIndex = propertyNames.indexOf("attributes");
+                    boolean moved = propertyNames.contains("parentId") && !Objects.equals(
+                        persistenceEvent.getPreviousState("parentId"),
+                        persistenceEvent.getCurrentState("parentId")
+                    );
+                    if (attributesIndex < 0 && !moved) {
                         return;
                     }
 
@@ -445,6 +525,13 @@ public class RulesService extends RouteBuilder implements ContainerService, Asse
                     if (loadedAsset == null)
                         return;
 
+                    if (moved) {
+                        moveAssetStates(loadedAsset);
+                    }
+                    if (attributesIndex < 0) {
+                        return;
+                    }
+
                     // Attributes have possibly changed so need to compare old and new attributes
                     // to determine which facts to retract and which to insert
                     List<AssetAttribute> oldRuleStateAttributes =
@@ -487,6 +574,7 @@ public class RulesService extends RouteBuilder implements ContainerService, Asse
                             LOG.fine("Asset was persisted (" + persistenceEvent.getCause() + "), retracting fact: " + assetState);
                             retractAssetState(assetState);
                         });
+                    assetEngineChains.remove(asset.getId());
                     break;
             }
         });
@@ -510,7 +598,7 @@ public class RulesService extends RouteBuilder implements ContainerService, Asse
 
                     if (isNewEngine) {
                         // Push all existing facts into the engine
-                        assetStates.forEach(assetState -> engine.updateOrInsertAssetState(assetState, true));
+                        assetStates.getAll().forEach(assetState -> engine.updateOrInsertAssetState(assetState, true));
                     }
 
                     engine.start();
@@ -522,11 +610,8 @@ public class RulesService extends RouteBuilder implements ContainerService, Asse
 
                     if (isNewEngine) {
                         // Push all existing facts into the engine
-                        assetStates.forEach(assetState -> {
-                            if (assetState.getRealm().equals(((TenantRuleset) ruleset).getRealm())) {
-                                engine.updateOrInsertAssetState(assetState, true);
-                            }
-                        });
+                        assetStates.getRealmStates(((TenantRuleset) ruleset).getRealm())
+                            .forEach(assetState -> engine.updateOrInsertAssetState(assetState, true));
                     }
 
                     engine.start();
@@ -540,7 +625,7 @@ public class RulesService extends RouteBuilder implements ContainerService, Asse
 
                     if (isNewEngine) {
                         // Push all existing facts for this asset (and it's children into the engine)
-                        getAssetStatesInScope(((AssetRuleset) ruleset).getAssetId())
+                        assetStates.getSubtreeStates(((AssetRuleset) ruleset).getAssetId())
                             .forEach(assetState -> engine.updateOrInsertAssetState(assetState, true));
                     }
 
@@ -562,6 +647,7 @@ public class RulesService extends RouteBuilder implements ContainerService, Asse
                     timerService,
                     identityService,
                     executorService,
+                    rulesExecutor,
                     assetStorageService,
                     assetProcessingService,
                     notificationService,
@@ -569,8 +655,10 @@ public class RulesService extends RouteBuilder implements ContainerService, Asse
                     assetDatapointService,
                     assetPredictedDatapointService,
                     new RulesEngineId<>(),
-                    locationPredicateRulesConsumer
+                    locationPredicateRulesConsumer,
+                    rulesetCompiler
                 );
+                assetEngineChains.clear();
             }
 
             globalEngine.addRuleset(ruleset);
@@ -588,6 +676,7 @@ public class RulesService extends RouteBuilder implements ContainerService, Asse
             if (globalEngine.removeRuleset(ruleset)) {
                 globalEngine.stop();
                 globalEngine = null;
+                assetEngineChains.clear();
             }
         });
     }
@@ -598,11 +687,13 @@ public class RulesService extends RouteBuilder implements ContainerService, Asse
 
             // Look for existing rules engines for this tenant
             RulesEngine<TenantRuleset> tenantRulesEngine = tenantEngines
-                .computeIfAbsent(ruleset.getRealm(), (realm) ->
-                    new RulesEngine<>(
+                .computeIfAbsent(ruleset.getRealm(), (realm) -> {
+                    assetEngineChains.clear();
+                    return new RulesEngine<>(
                         timerService,
                         identityService,
                         executorService,
+                        rulesExecutor,
                         assetStorageService,
                         assetProcessingService,
                         notificationService,
@@ -610,8 +701,10 @@ public class RulesService extends RouteBuilder implements ContainerService, Asse
                         assetDatapointService,
                         assetPredictedDatapointService,
                         new RulesEngineId<>(realm),
-                        locationPredicateRulesConsumer
-                    ));
+                        locationPredicateRulesConsumer,
+                        rulesetCompiler
+                    );
+                });
 
             tenantRulesEngine.addRuleset(ruleset);
 
@@ -629,6 +722,7 @@ public class RulesService extends RouteBuilder implements ContainerService, Asse
             if (rulesEngine.removeRuleset(ruleset)) {
                 rulesEngine.stop();
                 tenantEngines.remove(ruleset.getRealm());
+                assetEngineChains.clear();
             }
         });
     }
@@ -673,11 +767,13 @@ public class RulesService extends RouteBuilder implements ContainerService, Asse
 
             // Look for existing rules engine for this asset
             RulesEngine<AssetRuleset> assetRulesEngine = assetEngines
-                .computeIfAbsent(ruleset.getAssetId(), (assetId) ->
-                    new RulesEngine<>(
+                .computeIfAbsent(ruleset.getAssetId(), (assetId) -> {
+                    assetEngineChains.clear();
+                    return new RulesEngine<>(
                         timerService,
                         identityService,
                         executorService,
+                        rulesExecutor,
                         assetStorageService,
                         assetProcessingService,
                         notificationService,
@@ -685,8 +781,10 @@ public class RulesService extends RouteBuilder implements ContainerService, Asse
                         assetDatapointService,
                         assetPredictedDatapointService,
                         new RulesEngineId<>(ruleset.getRealm(), assetId),
-                        locationPredicateRulesConsumer
-                    ));
+                        locationPredicateRulesConsumer,
+                        rulesetCompiler
+                    );
+                });
 
             assetRulesEngine.addRuleset(ruleset);
 
@@ -704,6 +802,7 @@ public class RulesService extends RouteBuilder implements ContainerService, Asse
             if (rulesEngine.removeRuleset(ruleset)) {
                 rulesEngine.stop();
                 assetEngines.remove(ruleset.getAssetId());
+                assetEngineChains.clear();
             }
         });
     }
@@ -711,7 +810,7 @@ public class RulesService extends RouteBuilder implements ContainerService, Asse
     protected void insertAssetEvent(AssetState assetState, String expires) {
         withLock(getClass().getSimpleName() + "::insertAssetEvent", () -> {
             // Get the chain of rule engines that we need to pass through
-            List<RulesEngine<?>> rulesEngines = getEnginesInScope(assetState.getRealm(), assetState.getPath());
+            List<RulesEngine<?>> rulesEngines = getEnginesInScope(assetState);
 
             // Check that all engines in the scope are available
             if (rulesEngines.stream().anyMatch(RulesEngine::isError)) {
@@ -740,11 +839,10 @@ public class RulesService extends RouteBuilder implements ContainerService, Asse
             LOG.fine("Updating asset state: " + assetState);
 
             // Get the chain of rule engines that we need to pass through
-            List<RulesEngine<?>> rulesEngines = getEnginesInScope(assetState.getRealm(), assetState.getPath());
+            List<RulesEngine<?>> rulesEngines = getEnginesInScope(assetState);
 
-            // Remove asset state with same attribute ref as new state, add new state
-            boolean inserted = !assetStates.remove(assetState);
-            assetStates.add(assetState);
+            // Replace asset state with same attribute ref as new state
+            boolean inserted = assetStates.put(assetState) == null;
 
             // Pass through each rules engine
             for (RulesEngine<?> rulesEngine : rulesEngines) {
@@ -755,10 +853,13 @@ public class RulesService extends RouteBuilder implements ContainerService, Asse
 
     protected void retractAssetState(AssetState assetState) {
         // Get the chain of rule engines that we need to pass through
-        List<RulesEngine<?>> rulesEngines = getEnginesInScope(assetState.getRealm(), assetState.getPath());
+        List<RulesEngine<?>> rulesEngines = getEnginesInScope(assetState);
 
         // Remove asset state with same attribute ref
         assetStates.remove(assetState);
+        if (assetStates.getSubtreeStates(assetState.getId()).isEmpty()) {
+            assetEngineChains.remove(assetState.getId());
+        }
 
         if (rulesEngines.size() == 0) {
             LOG.fine("Ignoring as there are no matching rules engines: " + assetState);
@@ -770,11 +871,61 @@ public class RulesService extends RouteBuilder implements ContainerService, Asse
         }
     }
 
-    protected List<AssetState> getAssetStatesInScope(String assetId) {
-        return assetStates
-            .stream()
-            .filter(assetState -> Arrays.asList(assetState.getPath()).contains(assetId))
-            .collect(Collectors.toList());
+    /**
+     * Moves the asset states of the asset and its descendants to the engines in scope of the new asset path.
+     */
+    protected void moveAssetStates(Asset movedAsset) {
+        List<AssetState> subtreeStates = new ArrayList<>(assetStates.getSubtreeStates(movedAsset.getId()));
+        if (subtreeStates.isEmpty()) {
+            return;
+        }
+
+        LOG.fine("Asset was moved, updating " + subtreeStates.size() + " asset state(s) of subtree: " + movedAsset.getId());
+
+        for (AssetState oldState : subtreeStates) {
+            AssetState newState;
+            if (oldState.getId().equals(movedAsset.getId())) {
+                // The moved asset also has a new parent
+                newState = movedAsset.getAttribute(oldState.getAttributeName())
+                    .map(attribute -> new AssetState(movedAsset, attribute.deepCopy(), Source.INTERNAL))
+                    .orElseGet(() -> new AssetState(oldState, movedAsset.getPath()));
+            } else {
+                // Replace the ancestors of the moved asset in the path of the descendant
+                String[] oldPath = oldState.getPath();
+                int movedIndex = Arrays.asList(oldPath).indexOf(movedAsset.getId());
+                String[] newPath = Arrays.copyOf(oldPath, movedIndex + movedAsset.getPath().length);
+                System.arraycopy(movedAsset.getPath(), 0, newPath, movedIndex, movedAsset.getPath().length);
+                newState = new AssetState(oldState, newPath);
+            }
+
+            List<RulesEngine<?>> oldEngines = getEnginesInScope(oldState);
+            assetStates.put(newState);
+            List<RulesEngine<?>> newEngines = getEnginesInScope(newState);
+
+            for (RulesEngine<?> rulesEngine : oldEngines) {
+                if (!newEngines.contains(rulesEngine)) {
+                    rulesEngine.removeAssetState(oldState);
+                }
+            }
+            for (RulesEngine<?> rulesEngine : newEngines) {
+                rulesEngine.updateOrInsertAssetState(newState, !oldEngines.contains(rulesEngine));
+            }
+        }
+    }
+
+    /**
+     * Get the chain of rule engines the state of an asset passes through, cached per asset.
+     */
+    protected List<RulesEngine<?>> getEnginesInScope(AssetState assetState) {
+        String[] assetPath = AssetStateIndex.getPath(assetState);
+        EngineChain engineChain = assetEngineChains.get(assetState.getId());
+        if (engineChain == null || !engineChain.isValidFor(assetState.getRealm(), assetPath)) {
+            engineChain = new EngineChain(
+                assetState.getRealm(), assetPath, getEnginesInScope(assetState.getRealm(), assetPath)
+            );
+            assetEngineChains.put(assetState.getId(), engineChain);
+        }
+        return engineChain.rulesEngines;
     }
 
     protected List<RulesEngine<?>> getEnginesInScope(String realm, String[] assetPath) {
@@ -828,72 +979,28 @@ public class RulesService extends RouteBuilder implements ContainerService, Asse
         withLock(getClass().getSimpleName() + "::onEngineLocationRulesChanged", () -> {
             int initialModifiedCount = assetsWithModifiedLocationPredicates.size();
 
-            if (newEngineAssetStateLocationPredicates == null) {
-                engineAssetLocationPredicateMap.computeIfPresent(rulesEngine,
-                    (re, existingAssetStateLocationPredicates) -> {
-                        // All location predicates have been removed so record each asset state as modified
-                        assetsWithModifiedLocationPredicates.addAll(
-                            existingAssetStateLocationPredicates.stream().map(
-                                RulesEngine.AssetStateLocationPredicates::getAssetId).collect(
-                                Collectors.toList()));
-                        // Remove this engine from the map
-                        return null;
-                    });
-            } else {
-                engineAssetLocationPredicateMap.compute(rulesEngine,
-                    (re, existingEngineAssetStateLocationPredicates) -> {
-                        // Check if this not the first time this engine has been seen with location predicates so we can check
-                        // for any removed asset states
-                        if (existingEngineAssetStateLocationPredicates == null) {
-                            // All asset states are new so record them all as modified
-                            assetsWithModifiedLocationPredicates.addAll(
-                                newEngineAssetStateLocationPredicates.stream().map(
-                                    RulesEngine.AssetStateLocationPredicates::getAssetId).collect(
-                                    Collectors.toList()));
-                        } else {
-                            // Find obsolete and modified asset states
-                            existingEngineAssetStateLocationPredicates.forEach(
-                                existingAssetStateLocationPredicates -> {
-                                    // Check if there are no longer any location predicates for this asset
-                                    Optional<RulesEngine.AssetStateLocationPredicates> newAssetStateLocationPredicates = newEngineAssetStateLocationPredicates.stream()
-                                        .filter(assetStateLocationPredicates ->
-                                            assetStateLocationPredicates.getAssetId().equals(
-                                                existingAssetStateLocationPredicates.getAssetId()))
-                                        .findFirst();
-
-                                    if (newAssetStateLocationPredicates.isPresent()) {
-                                        // Compare existing and new location predicate sets if there is any change then record it
-                                        if (!newAssetStateLocationPredicates.get().getLocationPredicates().equals(
-                                            existingAssetStateLocationPredicates.getLocationPredicates())) {
-                                            assetsWithModifiedLocationPredicates.add(
-                                                existingAssetStateLocationPredicates.getAssetId());
-                                        }
-                                    } else {
-                                        // This means that there are no longer any location predicates so old ones are obsolete
-                                        assetsWithModifiedLocationPredicates.add(
-                                            existingAssetStateLocationPredicates.getAssetId());
-                                    }
-                                });
-
-                            // Check for asset states in the new map but not in the old one
-                            newEngineAssetStateLocationPredicates.forEach(
-                                newAssetStateLocationPredicates -> {
-                                    boolean isNewAssetState = existingEngineAssetStateLocationPredicates.stream()
-                                        .noneMatch(assetStateLocationPredicates ->
-                                            assetStateLocationPredicates.getAssetId().equals(
-                                                newAssetStateLocationPredicates.getAssetId()));
-
-                                    if (isNewAssetState) {
-                                        // This means that all predicates for this asset are new
-                                        assetsWithModifiedLocationPredicates.add(
-                                            newAssetStateLocationPredicates.getAssetId());
-                                    }
-                                });
-                        }
-                        return newEngineAssetStateLocationPredicates;
-                    });
+            // Compare the existing and new location predicates of each asset state of this engine, an asset state
+            // only present on one side has had all its location predicates added or removed
+            Map<String, Set<GeofencePredicate>> existingAssetPredicates = new HashMap<>(
+                geofenceIndex.getEngineGeofences(rulesEngine));
+            Map<String, Set<GeofencePredicate>> newAssetPredicates = new HashMap<>();
+            if (newEngineAssetStateLocationPredicates != null) {
+                newEngineAssetStateLocationPredicates.forEach(assetStateLocationPredicates ->
+                    newAssetPredicates.put(
+                        assetStateLocationPredicates.getAssetId(),
+                        assetStateLocationPredicates.getLocationPredicates()));
             }
 
+            Set<String> assetIds = new HashSet<>(existingAssetPredicates.keySet());
+            assetIds.addAll(newAssetPredicates.keySet());
+            assetIds.forEach(assetId -> {
+                if (!Objects.equals(existingAssetPredicates.get(assetId), newAssetPredicates.get(assetId))) {
+                    assetsWithModifiedLocationPredicates.add(assetId);
+                }
+            });
+
+            geofenceIndex.setEngineGeofences(rulesEngine, newEngineAssetStateLocationPredicates);
+
             if (assetsWithModifiedLocationPredicates.size() != initialModifiedCount) {
                 processModifiedGeofences();
             }
@@ -909,26 +1016,10 @@ public class RulesService extends RouteBuilder implements ContainerService, Asse
                 List<RulesEngine.AssetStateLocationPredicates> assetLocationPredicates = new ArrayList<>(
                     assetsWithModifiedLocationPredicates.size());
 
-                assetsWithModifiedLocationPredicates.forEach(assetId -> {
-
-                    RulesEngine.AssetStateLocationPredicates locationPredicates = new RulesEngine.AssetStateLocationPredicates(
+                assetsWithModifiedLocationPredicates.forEach(assetId ->
+                    assetLocationPredicates.add(new RulesEngine.AssetStateLocationPredicates(
                         assetId,
-                        new HashSet<>());
-
-                    engineAssetLocationPredicateMap.forEach((rulesEngine, engineAssetStateLocationPredicates) ->
-                        engineAssetStateLocationPredicates.stream().filter(
-                            assetStateLocationPredicates ->
-                                assetStateLocationPredicates.getAssetId().equals(
-                                    assetId))
-                            .findFirst()
-                            .ifPresent(
-                                assetStateLocationPredicate -> {
-                                    locationPredicates.getLocationPredicates().addAll(
-                                        assetStateLocationPredicate.getLocationPredicates());
-                                }));
-
-                    assetLocationPredicates.add(locationPredicates);
-                });
+                        geofenceIndex.getAssetGeofences(assetId))));
 
                 for (GeofenceAssetAdapter geofenceAssetAdapter : geofenceAssetAdapters) {
                     LOG.finest("Passing modified geofences to adapter: " + geofenceAssetAdapter.getName());
@@ -949,6 +1040,10 @@ public class RulesService extends RouteBuilder implements ContainerService, Asse
         });
     }
 
+    public GeofenceIndex getGeofenceIndex() {
+        return geofenceIndex;
+    }
+
     protected Optional<RulesetDeployment> getRulesetDeployment(Long rulesetId) {
         if (globalEngine != null) {
             if (globalEngine.deployments.containsKey(rulesetId)) {
@@ -972,13 +1067,13 @@ public class RulesService extends RouteBuilder implements ContainerService, Asse
     }
 
     public void fireDeploymentsWithPredictedDataForAsset(String assetId) {
-        List<AssetState> assetStates = getAssetStatesInScope(assetId);
-        if (assetStates.size() > 0) {
-            String realm = assetStates.get(0).getRealm();
-            String[] assetPaths = assetStates.stream().flatMap(assetState -> Arrays.stream(assetState.getPath())).toArray(String[]::new);
-            for (RulesEngine<?> rulesEngine : getEnginesInScope(realm, assetPaths)) {
-                rulesEngine.fireAllDeploymentsWithPredictedData();
-            }
+        Set<RulesEngine<?>> rulesEngines = withLockReturning(getClass().getSimpleName() + "::fireDeploymentsWithPredictedDataForAsset", () -> {
+            Set<RulesEngine<?>> engines = new LinkedHashSet<>();
+            assetStates.getSubtreeStates(assetId).forEach(assetState -> engines.addAll(getEnginesInScope(assetState)));
+            return engines;
+        });
+        for (RulesEngine<?> rulesEngine : rulesEngines) {
+            rulesEngine.fireAllDeploymentsWithPredictedData();
         }
     }
 
@@ -0,0 +1,259 @@
+/*
+ * Copyright 2020, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.manager.rules;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import groovy.lang.GroovyShell;
+import groovy.lang.Script;
+import org.codehaus.groovy.control.CompilerConfiguration;
+import org.kohsuke.groovy.sandbox.SandboxTransformer;
+import org.openremote.model.rules.GlobalRuleset;
+import org.openremote.model.rules.Ruleset;
+import org.openremote.model.util.TextUtil;
+
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineManager;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Compiles Groovy and JavaScript rulesets, caching the compiled scripts by a hash of their source so redeploying a
+ * ruleset doesn't compile it again. Each deployment runs its own instance of a Groovy script class or evaluates the
+ * JavaScript in its own global scope. Compiled JavaScript is shared by all rulesets with the same source. A Groovy
+ * script class can hold static state, such as the static fields of classes declared in the script, so Groovy script
+ * classes are only shared by deployments of the same ruleset.
+ * <p>
+ * Groovy rulesets are compiled with the {@link SandboxTransformer}, which intercepts every call in the script at
+ * runtime. Global rulesets can only be written by super users; they can optionally be compiled without the sandbox.
+ */
+public class RulesetCompiler {
+
+    private static final Logger LOG = Logger.getLogger(RulesetCompiler.class.getName());
+
+    // Default header/imports for all JavaScript rules
+    public static final String JAVASCRIPT_HEADER =
+        "load(\"nashorn:mozilla_compat.js\");\n" + // This provides importPackage
+            "\n" +
+            "importPackage(\n" +
+            "    \"java.util.stream\",\n" +
+            "    \"org.openremote.model.asset\",\n" +
+            "    \"org.openremote.model.attribute\",\n" +
+            "    \"org.openremote.model.value\",\n" +
+            "    \"org.openremote.model.rules\",\n" +
+            "    \"org.openremote.model.query\"\n" +
+            ");\n" +
+            "var Match = Java.type(\"org.openremote.model.query.AssetQuery$Match\");\n" +
+            "var Operator = Java.type(\"org.openremote.model.query.AssetQuery$Operator\");\n" +
+            "var NumberType = Java.type(\"org.openremote.model.query.AssetQuery$NumberType\");\n" +
+            "var StringPredicate = Java.type(\"org.openremote.model.query.filter.StringPredicate\");\n" +
+            "var BooleanPredicate = Java.type(\"org.openremote.model.query.filter.BooleanPredicate\");\n" +
+            "var StringArrayPredicate = Java.type(\"org.openremote.model.query.filter.StringArrayPredicate\");\n" +
+            "var DateTimePredicate = Java.type(\"org.openremote.model.query.filter.DateTimePredicate\");\n" +
+            "var NumberPredicate = Java.type(\"org.openremote.model.query.filter.NumberPredicate\");\n" +
+            "var ParentPredicate = Java.type(\"org.openremote.model.query.filter.ParentPredicate\");\n" +
+            "var PathPredicate = Java.type(\"org.openremote.model.query.filter.PathPredicate\");\n" +
+            "var TenantPredicate = Java.type(\"org.openremote.model.query.filter.TenantPredicate\");\n" +
+            "var AttributePredicate = Java.type(\"org.openremote.model.query.filter.AttributePredicate\");\n" +
+            "var AttributeExecuteStatus = Java.type(\"org.openremote.model.attribute.AttributeExecuteStatus\");\n" +
+            "var EXACT = Match.EXACT;\n" +
+            "var BEGIN = Match.BEGIN;\n" +
+            "var END = Match.END;\n" +
+            "var CONTAINS = Match.CONTAINS;\n" +
+            "var EQUALS = Operator.EQUALS;\n" +
+            "var GREATER_THAN = Operator.GREATER_THAN;\n" +
+            "var GREATER_EQUALS = Operator.GREATER_EQUALS;\n" +
+            "var LESS_THAN = Operator.LESS_THAN;\n" +
+            "var LESS_EQUALS = Operator.LESS_EQUALS;\n" +
+            "var BETWEEN = Operator.BETWEEN;\n" +
+            "var REQUEST_START = AttributeExecuteStatus.REQUEST_START;\n" +
+            "var REQUEST_REPEATING = AttributeExecuteStatus.REQUEST_REPEATING;\n" +
+            "var REQUEST_CANCEL = AttributeExecuteStatus.REQUEST_CANCEL;\n" +
+            "var READY = AttributeExecuteStatus.READY;\n" +
+            "var COMPLETED = AttributeExecuteStatus.COMPLETED;\n" +
+            "var RUNNING = AttributeExecuteStatus.RUNNING;\n" +
+            "var CANCELLED = AttributeExecuteStatus.CANCELLED;\n" +
+            "var ERROR = AttributeExecuteStatus.ERROR;\n" +
+            "var DISABLED = AttributeExecuteStatus.DISABLED;\n" +
+            "\n";
+
+    /* TODO Sharing a static GroovyShell doesn't work, redeploying a ruleset which defines classes (e.g. Flight) is broken:
+
+    java.lang.RuntimeException: Error evaluating condition of rule '-Update flight facts when estimated landing time of flight asset is updated':
+    No signature of method: org.openremote.manager.setup.database.Script1$_run_closure2$_closure14$_closure17.doCall() is applicable for argument types: (org.openremote.manager.setup.database.Flight) values: [...]
+    Possible solutions: doCall(org.openremote.manager.setup.database.Flight), findAll(), findAll(), isCase(java.lang.Object), isCase(java.lang.Object)
+    The following classes appear as argument class and as parameter class, but are defined by different class loader:
+    org.openremote.manager.setup.database.Flight (defined by 'groovy.lang.GroovyClassLoader$InnerLoader@2cc34cd5' and 'groovy.lang.GroovyClassLoader$InnerLoader@1af957bc')
+    If one of the method suggestions matches the method you wanted to call,
+    then check your class loader setup.
+     */
+    protected final GroovyShell sandboxedGroovyShell = new GroovyShell(
+        new CompilerConfiguration().addCompilationCustomizers(new SandboxTransformer())
+    );
+    protected final GroovyShell trustedGroovyShell = new GroovyShell();
+    protected final ScriptEngine javascriptEngine;
+    protected final boolean sandboxGlobalRulesets;
+    protected final Cache<String, Class<? extends Script>> groovyScripts;
+    protected final Cache<String, CompiledScript> javascriptScripts;
+
+    public RulesetCompiler(ScriptEngineManager scriptEngineManager, long maximumSize, boolean sandboxGlobalRulesets) {
+        this.javascriptEngine = scriptEngineManager.getEngineByName("nashorn");
+        this.sandboxGlobalRulesets = sandboxGlobalRulesets;
+        groovyScripts = CacheBuilder.newBuilder()
+            .maximumSize(maximumSize)
+            .recordStats()
+            .build();
+        javascriptScripts = CacheBuilder.newBuilder()
+            .maximumSize(maximumSize)
+            .recordStats()
+            .build();
+    }
+
+    public boolean isSandboxed(Ruleset ruleset) {
+        return sandboxGlobalRulesets || !(ruleset instanceof GlobalRuleset);
+    }
+
+    /**
+     * @return the compiled script class of the Groovy ruleset, a new instance must be created for each deployment.
+     */
+    @SuppressWarnings("unchecked")
+    public Class<? extends Script> compileGroovy(Ruleset ruleset) throws Exception {
+        boolean sandboxed = isSandboxed(ruleset);
+        Callable<Class<? extends Script>> compiler = () -> {
+            GroovyShell groovyShell = sandboxed ? sandboxedGroovyShell : trustedGroovyShell;
+            return (Class<? extends Script>) groovyShell.parse(ruleset.getRules()).getClass();
+        };
+        if (ruleset.getId() == null) {
+            // Not stored, can't be identified on redeploy
+            return compiler.call();
+        }
+        String type = (sandboxed ? "groovy" : "groovy-trusted") + ":" + ruleset.getClass().getSimpleName() + ":" + ruleset.getId();
+        return get(groovyScripts, getKey(type, ruleset.getRules()), compiler);
+    }
+
+    /**
+     * @return the compiled script of the JavaScript ruleset with the default header, it must be evaluated in a new
+     * global scope of {@link #getJavascriptEngine()} for each deployment.
+     */
+    public CompiledScript compileJavascript(Ruleset ruleset) throws Exception {
+        String script = JAVASCRIPT_HEADER + ruleset.getRules();
+        return get(javascriptScripts, getKey("javascript", script), () -> {
+            // Compilation uses the default context of the engine, evaluation is done in a context per deployment
+            synchronized (javascriptEngine) {
+                return ((Compilable) javascriptEngine).compile(script);
+            }
+        });
+    }
+
+    public ScriptEngine getJavascriptEngine() {
+        return javascriptEngine;
+    }
+
+    /**
+     * Compile the Groovy and JavaScript rulesets in parallel and wait until all are compiled. Compilation errors are
+     * not cached, they are reported when the ruleset is deployed.
+     */
+    public void compileAll(Collection<? extends Ruleset> rulesets, ExecutorService executorService) {
+        List<Future<?>> futures = new ArrayList<>();
+        for (Ruleset ruleset : rulesets) {
+            if (!ruleset.isEnabled() || TextUtil.isNullOrEmpty(ruleset.getRules())) {
+                continue;
+            }
+            switch (ruleset.getLang()) {
+                case GROOVY:
+                    futures.add(executorService.submit(() -> compileQuietly(ruleset, () -> compileGroovy(ruleset))));
+                    break;
+                case JAVASCRIPT:
+                    futures.add(executorService.submit(() -> compileQuietly(ruleset, () -> compileJavascript(ruleset))));
+                    break;
+            }
+        }
+
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                LOG.log(Level.WARNING, "Ruleset compilation failed", e.getCause());
+            }
+        }
+    }
+
+    public CacheStats getGroovyStats() {
+        return groovyScripts.stats();
+    }
+
+    public CacheStats getJavascriptStats() {
+        return javascriptScripts.stats();
+    }
+
+    public void clear() {
+        groovyScripts.invalidateAll();
+        javascriptScripts.invalidateAll();
+    }
+
+    protected static String getKey(String type, String source) {
+        return type + ":" + Hashing.sha256().hashString(source, StandardCharsets.UTF_8).toString();
+    }
+
+    protected static <V> V get(Cache<String, V> cache, String key, Callable<V> compiler) throws Exception {
+        try {
+            return cache.get(key, compiler);
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            // Report the compilation error of the script
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    protected static void compileQuietly(Ruleset ruleset, Callable<?> compiler) {
+        try {
+            compiler.call();
+        } catch (Exception e) {
+            LOG.log(Level.FINE, "Ruleset compilation failed, error will be reported on deployment: " + ruleset, e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{" +
+            "sandboxGlobalRulesets=" + sandboxGlobalRulesets +
+            ", groovyScripts=" + groovyScripts.size() +
+            ", javascriptScripts=" + javascriptScripts.size() +
+            '}';
+    }
+}
@@ -20,17 +20,15 @@
 package org.openremote.manager.rules;
 
 import groovy.lang.Binding;
-import groovy.lang.GroovyShell;
 import groovy.lang.Script;
 import jdk.nashorn.api.scripting.ScriptObjectMirror;
-import org.codehaus.groovy.control.CompilerConfiguration;
+import org.codehaus.groovy.runtime.InvokerHelper;
 import org.jeasy.rules.api.Action;
 import org.jeasy.rules.api.Condition;
 import org.jeasy.rules.api.Rule;
 import org.jeasy.rules.api.Rules;
 import org.jeasy.rules.core.RuleBuilder;
 import org.kohsuke.groovy.sandbox.GroovyValueFilter;
-import org.kohsuke.groovy.sandbox.SandboxTransformer;
 import org.openremote.container.Container;
 import org.openremote.container.timer.TimerService;
 import org.openremote.manager.asset.AssetStorageService;
@@ -47,10 +45,10 @@ import java.util.Date;
 import java.util.List;
 import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledFuture;
+import java.util.function.BiConsumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import static org.openremote.container.concurrent.GlobalLock.withLock;
 import static org.openremote.manager.rules.AssetQueryPredicate.getNextOrActiveFromTo;
 
 public class RulesetDeployment {
@@ -95,8 +93,6 @@ public class RulesetDeployment {
     // Share one JS script engine manager, it's thread-safe
     static final protected ScriptEngineManager scriptEngineManager;
 
-    static final protected GroovyShell groovyShell;
-
     static {
         scriptEngineManager = new ScriptEngineManager();
 
@@ -104,20 +100,6 @@ public class RulesetDeployment {
         // TODO Use a different logger for each RulesEngine and show messages in Manager UI for that engine
         scriptEngineManager.put("LOG", RulesEngine.RULES_LOG);
         scriptEngineManager.put("console", new JsConsole(RulesEngine.RULES_LOG));
-
-        /* TODO Sharing a static GroovyShell doesn't work, redeploying a ruleset which defines classes (e.g. Flight) is broken:
-
-        java.lang.RuntimeException: Error evaluating condition of rule '-Update flight facts when estimated landing time of flight asset is updated':
-        No signature of method: org.openremote.manager.setup.database.Script1$_run_closure2$_closure14$_closure17.doCall() is applicable for argument types: (org.openremote.manager.setup.database.Flight) values: [...]
-        Possible solutions: doCall(org.openremote.manager.setup.database.Flight), findAll(), findAll(), isCase(java.lang.Object), isCase(java.lang.Object)
-        The following classes appear as argument class and as parameter class, but are defined by different class loader:
-        org.openremote.manager.setup.database.Flight (defined by 'groovy.lang.GroovyClassLoader$InnerLoader@2cc34cd5' and 'groovy.lang.GroovyClassLoader$InnerLoader@1af957bc')
-        If one of the method suggestions matches the method you wanted to call,
-        then check your class loader setup.
-         */
-        groovyShell = new GroovyShell(
-                new CompilerConfiguration().addCompilationCustomizers(new SandboxTransformer())
-        );
     }
 
     final protected Ruleset ruleset;
@@ -130,6 +112,8 @@ public class RulesetDeployment {
     final protected Notifications notificationsFacade;
     final protected HistoricDatapoints historicDatapointsFacade;
     final protected PredictedDatapoints predictedDatapointsFacade;
+    final protected BiConsumer<String, Runnable> engineLock;
+    final protected RulesetCompiler compiler;
     final protected List<ScheduledFuture<?>> scheduledRuleActions = new ArrayList<>();
     protected RulesetStatus status = RulesetStatus.READY;
     protected Throwable error;
@@ -141,7 +125,8 @@ public class RulesetDeployment {
     public RulesetDeployment(Ruleset ruleset, TimerService timerService,
                              AssetStorageService assetStorageService, ManagerExecutorService executorService,
                              Assets assetsFacade, Users usersFacade, Notifications notificationsFacade,
-                             HistoricDatapoints historicDatapointsFacade, PredictedDatapoints predictedDatapointsFacade) {
+                             HistoricDatapoints historicDatapointsFacade, PredictedDatapoints predictedDatapointsFacade,
+                             BiConsumer<String, Runnable> engineLock, RulesetCompiler compiler) {
         this.ruleset = ruleset;
         this.timerService = timerService;
         this.assetStorageService = assetStorageService;
@@ -151,6 +136,8 @@ public class RulesetDeployment {
         this.notificationsFacade = notificationsFacade;
         this.historicDatapointsFacade = historicDatapointsFacade;
         this.predictedDatapointsFacade = predictedDatapointsFacade;
+        this.engineLock = engineLock;
+        this.compiler = compiler;
 
         if (ruleset.hasMeta(Ruleset.META_KEY_VALIDITY)) {
             validity = ruleset.getValidity();
@@ -181,6 +168,19 @@ public class RulesetDeployment {
         return rules;
     }
 
+    /**
+     * @return the statistics of the rules of this deployment, collected since the ruleset was deployed.
+     */
+    public List<RuleStatistics> getRuleStatistics() {
+        List<RuleStatistics> statistics = new ArrayList<>();
+        for (Rule rule : rules) {
+            if (rule instanceof ProfiledRule) {
+                statistics.add(((ProfiledRule) rule).getStatistics(ruleset));
+            }
+        }
+        return statistics;
+    }
+
     public void updateValidity() {
         if (validity != null && !hasExpired()) {
             Pair<Long, Long> fromTo = getNextOrActiveFromTo(validity, new Date(timerService.getCurrentTimeMillis()));
@@ -253,10 +253,17 @@ public class RulesetDeployment {
         }
     }
 
+    /**
+     * @return the earliest time when a timer condition of a JSON rule is due, or {@link Long#MAX_VALUE}.
+     */
+    public long getNextTimerMillis() {
+        return jsonRulesBuilder != null ? jsonRulesBuilder.getNextTimerMillis() : Long.MAX_VALUE;
+    }
+
     protected void scheduleRuleAction(Runnable action, long delayMillis) {
-        withLock(toString() + "::scheduleRuleAction", () -> {
+        engineLock.accept(toString() + "::scheduleRuleAction", () -> {
             ScheduledFuture<?> future = executorService.schedule(() ->
-                    withLock(toString() + "::scheduledRuleActionFire", () -> {
+                    engineLock.accept(toString() + "::scheduledRuleActionFire", () -> {
                         scheduledRuleActions.removeIf(Future::isDone);
                         action.run();
                     }), delayMillis);
@@ -264,6 +271,10 @@ public class RulesetDeployment {
         });
     }
 
+    protected void registerRule(Rule rule) {
+        rules.register(new ProfiledRule(rule));
+    }
+
     protected boolean compileRulesJson(Ruleset ruleset) {
 
         try {
@@ -271,7 +282,7 @@ public class RulesetDeployment {
 
             for (Rule rule : jsonRulesBuilder.build()) {
                 RulesEngine.LOG.fine("Registering JSON rule: " + rule.getName());
-                rules.register(rule);
+                registerRule(rule);
             }
 
             return true;
@@ -283,9 +294,11 @@ public class RulesetDeployment {
 
     protected boolean compileRulesJavascript(Ruleset ruleset, Assets assetsFacade, Users usersFacade, Notifications notificationsFacade, HistoricDatapoints historicDatapointsFacade, PredictedDatapoints predictedDatapointsFacade) {
         // TODO https://github.com/pfisterer/scripting-sandbox/blob/master/src/main/java/de/farberg/scripting/sandbox/ScriptingSandbox.java
-        ScriptEngine scriptEngine = scriptEngineManager.getEngineByName("nashorn");
+        ScriptEngine scriptEngine = compiler.getJavascriptEngine();
         ScriptContext newContext = new SimpleScriptContext();
         newContext.setBindings(scriptEngine.createBindings(), ScriptContext.ENGINE_SCOPE);
+        // The global scope of the engine has the LOG and console bindings
+        newContext.setBindings(scriptEngine.getBindings(ScriptContext.GLOBAL_SCOPE), ScriptContext.GLOBAL_SCOPE);
         Bindings engineScope = newContext.getBindings(ScriptContext.ENGINE_SCOPE);
 
         engineScope.put("assets", assetsFacade);
@@ -294,56 +307,11 @@ public class RulesetDeployment {
         engineScope.put("historicDatapoints", historicDatapointsFacade);
         engineScope.put("predictedDatapoints", predictedDatapointsFacade);
 
-        String script = ruleset.getRules();
-
-        // Default header/imports for all rules scripts
-        script = "load(\"nashorn:mozilla_compat.js\");\n" + // This provides importPackage
-                "\n" +
-                "importPackage(\n" +
-                "    \"java.util.stream\",\n" +
-                "    \"org.openremote.model.asset\",\n" +
-                "    \"org.openremote.model.attribute\",\n" +
-                "    \"org.openremote.model.value\",\n" +
-                "    \"org.openremote.model.rules\",\n" +
-                "    \"org.openremote.model.query\"\n" +
-                ");\n" +
-                "var Match = Java.type(\"org.openremote.model.query.AssetQuery$Match\");\n" +
-                "var Operator = Java.type(\"org.openremote.model.query.AssetQuery$Operator\");\n" +
-                "var NumberType = Java.type(\"org.openremote.model.query.AssetQuery$NumberType\");\n" +
-                "var StringPredicate = Java.type(\"org.openremote.model.query.filter.StringPredicate\");\n" +
-                "var BooleanPredicate = Java.type(\"org.openremote.model.query.filter.BooleanPredicate\");\n" +
-                "var StringArrayPredicate = Java.type(\"org.openremote.model.query.filter.StringArrayPredicate\");\n" +
-                "var DateTimePredicate = Java.type(\"org.openremote.model.query.filter.DateTimePredicate\");\n" +
-                "var NumberPredicate = Java.type(\"org.openremote.model.query.filter.NumberPredicate\");\n" +
-                "var ParentPredicate = Java.type(\"org.openremote.model.query.filter.ParentPredicate\");\n" +
-                "var PathPredicate = Java.type(\"org.openremote.model.query.filter.PathPredicate\");\n" +
-                "var TenantPredicate = Java.type(\"org.openremote.model.query.filter.TenantPredicate\");\n" +
-                "var AttributePredicate = Java.type(\"org.openremote.model.query.filter.AttributePredicate\");\n" +
-                "var AttributeExecuteStatus = Java.type(\"org.openremote.model.attribute.AttributeExecuteStatus\");\n" +
-                "var EXACT = Match.EXACT;\n" +
-                "var BEGIN = Match.BEGIN;\n" +
-                "var END = Match.END;\n" +
-                "var CONTAINS = Match.CONTAINS;\n" +
-                "var EQUALS = Operator.EQUALS;\n" +
-                "var GREATER_THAN = Operator.GREATER_THAN;\n" +
-                "var GREATER_EQUALS = Operator.GREATER_EQUALS;\n" +
-                "var LESS_THAN = Operator.LESS_THAN;\n" +
-                "var LESS_EQUALS = Operator.LESS_EQUALS;\n" +
-                "var BETWEEN = Operator.BETWEEN;\n" +
-                "var REQUEST_START = AttributeExecuteStatus.REQUEST_START;\n" +
-                "var REQUEST_REPEATING = AttributeExecuteStatus.REQUEST_REPEATING;\n" +
-                "var REQUEST_CANCEL = AttributeExecuteStatus.REQUEST_CANCEL;\n" +
-                "var READY = AttributeExecuteStatus.READY;\n" +
-                "var COMPLETED = AttributeExecuteStatus.COMPLETED;\n" +
-                "var RUNNING = AttributeExecuteStatus.RUNNING;\n" +
-                "var CANCELLED = AttributeExecuteStatus.CANCELLED;\n" +
-                "var ERROR = AttributeExecuteStatus.ERROR;\n" +
-                "var DISABLED = AttributeExecuteStatus.DISABLED;\n" +
-                "\n"
-                + script;
-
         try {
-            scriptEngine.eval(script, engineScope);
+            // Default header/imports for all rules scripts are added by the compiler
+            CompiledScript compiledScript = compiler.compileJavascript(ruleset);
+            // Evaluated in its own global scope, so deployments can be evaluated concurrently
+            compiledScript.eval(newContext);
 
             compileRulesJavascript((ScriptObjectMirror) engineScope.get("rules"));
             return true;
@@ -418,7 +386,7 @@ public class RulesetDeployment {
 
             RulesEngine.LOG.fine("Registering javascript rule: " + name);
 
-            rules.register(
+            registerRule(
                     new RuleBuilder().name(name).description(description).priority(priority).when(when).then(then).build()
             );
         }
@@ -428,7 +396,6 @@ public class RulesetDeployment {
         try {
             // TODO Implement sandbox
             // new DenyAll().register();
-            Script script = groovyShell.parse(ruleset.getRules());
             Binding binding = new Binding();
             RulesBuilder rulesBuilder = new RulesBuilder();
             binding.setVariable("LOG", RulesEngine.RULES_LOG);
@@ -438,11 +405,14 @@ public class RulesetDeployment {
             binding.setVariable("notifications", notificationFacade);
             binding.setVariable("historicDatapoints", historicDatapointsFacade);
             binding.setVariable("predictedDatapoints", predictedDatapointsFacade);
-            script.setBinding(binding);
+            Script script = InvokerHelper.createScript(compiler.compileGroovy(ruleset), binding);
+            long startNanos = System.nanoTime();
             script.run();
+            RulesEngine.LOG.fine("Evaluated groovy ruleset " + (compiler.isSandboxed(ruleset) ? "with" : "without")
+                + " sandbox in " + (System.nanoTime() - startNanos) / 1000 + "us: " + ruleset);
             for (Rule rule : rulesBuilder.build()) {
                 RulesEngine.LOG.fine("Registering groovy rule: " + rule.getName());
-                rules.register(rule);
+                registerRule(rule);
             }
 
             return true;
@@ -460,7 +430,7 @@ public class RulesetDeployment {
             flowRulesBuilder.add(nodeCollection);
             for (Rule rule : flowRulesBuilder.build()) {
                 RulesEngine.LOG.info("Registering rule: " + rule.getName());
-                rules.register(rule);
+                registerRule(rule);
             }
             return true;
         } catch (Exception e) {
@@ -35,6 +35,7 @@ import org.openremote.model.value.Value;
 import org.openremote.model.value.Values;
 
 import java.util.Arrays;
+import java.util.List;
 import java.util.function.Consumer;
 import java.util.logging.Logger;
 import java.util.stream.Stream;
@@ -48,12 +49,15 @@ public class AssetsFacade<T extends Ruleset> extends Assets {
 
     protected final RulesEngineId<T> rulesEngineId;
     protected final AssetStorageService assetStorageService;
-    protected final Consumer<AttributeEvent> eventConsumer;
+    protected final Consumer<List<AttributeEvent>> eventsConsumer;
 
-    public AssetsFacade(RulesEngineId<T> rulesEngineId, AssetStorageService assetStorageService, Consumer<AttributeEvent> eventConsumer) {
+    /**
+     * @param eventsConsumer receives the events of each dispatch as one batch, after access to all assets was checked.
+     */
+    public AssetsFacade(RulesEngineId<T> rulesEngineId, AssetStorageService assetStorageService, Consumer<List<AttributeEvent>> eventsConsumer) {
         this.rulesEngineId = rulesEngineId;
         this.assetStorageService = assetStorageService;
-        this.eventConsumer = eventConsumer;
+        this.eventsConsumer = eventsConsumer;
     }
 
     @Override
@@ -99,7 +103,7 @@ public class AssetsFacade<T extends Ruleset> extends Assets {
             return this;
 
         // Check if the asset ID of every event can be found with the default security of this facade
-        String[] ids = Arrays.stream(events).map(AttributeEvent::getEntityId).toArray(String[]::new);
+        String[] ids = Arrays.stream(events).map(AttributeEvent::getEntityId).distinct().toArray(String[]::new);
 
         AssetQuery query = new AssetQuery().ids(ids);
         long count = this.getResults(query).count();
@@ -109,9 +113,7 @@ public class AssetsFacade<T extends Ruleset> extends Assets {
             return this;
         }
 
-        for (AttributeEvent event : events) {
-            eventConsumer.accept(event);
-        }
+        eventsConsumer.accept(Arrays.asList(events));
         return this;
     }
 
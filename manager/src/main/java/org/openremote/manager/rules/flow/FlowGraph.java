@@ -0,0 +1,210 @@
+/*
+ * Copyright 2020, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.manager.rules.flow;
+
+import org.openremote.container.Container;
+import org.openremote.model.rules.flow.Node;
+import org.openremote.model.rules.flow.NodeCollection;
+import org.openremote.model.rules.flow.NodeConnection;
+import org.openremote.model.rules.flow.NodeSocket;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A {@link NodeCollection} compiled once when the flow is deployed: nodes, sockets and connections are indexed, the
+ * nodes are sorted topologically (flows with cycles are rejected) and node internals are decoded on first use.
+ * Evaluation stays demand driven, {@link NodeExecutionRequestInfo#getValueFromInput} memoizes the value of each
+ * output socket for one firing of the rule.
+ */
+public class FlowGraph {
+
+    protected final NodeCollection collection;
+    protected final Map<String, Node> nodes = new HashMap<>();
+    protected final Map<String, NodeModel> models = new HashMap<>();
+    protected final Map<String, NodeSocket> sockets = new HashMap<>();
+    // The output sockets connected to the inputs of a node and the input sockets connected to its outputs, by node ID
+    protected final Map<String, NodeSocket[]> inputs = new HashMap<>();
+    protected final Map<String, NodeSocket[]> outputs = new HashMap<>();
+    protected final Map<String, Integer> order = new HashMap<>();
+    protected final List<Node> sortedNodes = new ArrayList<>();
+    protected final Map<String, List<Node>> upstreamNodes = new ConcurrentHashMap<>();
+    protected final Map<String, Optional<?>> internalValues = new ConcurrentHashMap<>();
+
+    /**
+     * @throws IllegalArgumentException if a node type is unknown, a connection references an unknown socket or the
+     *                                  connections contain a cycle.
+     */
+    public FlowGraph(NodeCollection collection) throws IllegalArgumentException {
+        this.collection = collection;
+
+        for (Node node : collection.getNodes()) {
+            nodes.put(node.getId(), node);
+            models.put(node.getId(), NodeModel.valueOf(node.getName()));
+            for (NodeSocket socket : node.getInputs()) {
+                sockets.put(socket.getId(), socket);
+            }
+            for (NodeSocket socket : node.getOutputs()) {
+                sockets.put(socket.getId(), socket);
+            }
+        }
+
+        Map<String, List<NodeSocket>> sourcesBySocket = new HashMap<>();
+        Map<String, List<NodeSocket>> targetsBySocket = new HashMap<>();
+        for (NodeConnection connection : collection.getConnections()) {
+            NodeSocket from = getSocket(connection.getFrom());
+            NodeSocket to = getSocket(connection.getTo());
+            sourcesBySocket.computeIfAbsent(to.getId(), id -> new ArrayList<>()).add(from);
+            targetsBySocket.computeIfAbsent(from.getId(), id -> new ArrayList<>()).add(to);
+        }
+
+        for (Node node : collection.getNodes()) {
+            inputs.put(node.getId(), connected(node.getInputs(), sourcesBySocket));
+            outputs.put(node.getId(), connected(node.getOutputs(), targetsBySocket));
+        }
+
+        sort();
+    }
+
+    public NodeCollection getCollection() {
+        return collection;
+    }
+
+    public Node getNode(String id) throws IllegalArgumentException {
+        Node node = nodes.get(id);
+        if (node == null)
+            throw new IllegalArgumentException("Invalid node ID");
+        return node;
+    }
+
+    public NodeModel getModel(Node node) {
+        return models.get(node.getId());
+    }
+
+    public NodeSocket getSocket(String id) throws IllegalArgumentException {
+        NodeSocket socket = sockets.get(id);
+        if (socket == null)
+            throw new IllegalArgumentException("Invalid socket ID");
+        return socket;
+    }
+
+    /**
+     * @return the output sockets of other nodes connected to the inputs of the node, in input order.
+     */
+    public NodeSocket[] getInputs(Node node) {
+        return inputs.get(node.getId());
+    }
+
+    /**
+     * @return the input sockets of other nodes connected to the outputs of the node, in output order.
+     */
+    public NodeSocket[] getOutputs(Node node) {
+        return outputs.get(node.getId());
+    }
+
+    /**
+     * @return all nodes, every node after the nodes it receives values from.
+     */
+    public List<Node> getSortedNodes() {
+        return Collections.unmodifiableList(sortedNodes);
+    }
+
+    /**
+     * @return the nodes the node directly or indirectly receives values from, each once and in topological order.
+     */
+    public List<Node> getUpstreamNodes(Node node) {
+        return upstreamNodes.computeIfAbsent(node.getId(), id -> {
+            Set<Node> upstream = new HashSet<>();
+            Deque<Node> pending = new ArrayDeque<>();
+            pending.push(node);
+            while (!pending.isEmpty()) {
+                for (NodeSocket socket : getInputs(pending.pop())) {
+                    Node source = getNode(socket.getNodeId());
+                    if (upstream.add(source)) {
+                        pending.push(source);
+                    }
+                }
+            }
+            List<Node> result = new ArrayList<>(upstream);
+            result.sort(Comparator.comparingInt(n -> order.get(n.getId())));
+            return Collections.unmodifiableList(result);
+        });
+    }
+
+    /**
+     * @return the value of the node internal converted to the type, converted only once.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T getInternalValue(Node node, int index, Class<T> type) {
+        String key = node.getId() + ":" + index + ":" + type.getName();
+        return (T) internalValues.computeIfAbsent(key, k ->
+            Optional.ofNullable(convertInternalValue(node, index, type))
+        ).orElse(null);
+    }
+
+    public static <T> T convertInternalValue(Node node, int index, Class<T> type) {
+        return Container.JSON.convertValue(node.getInternals()[index].getValue(), type);
+    }
+
+    protected NodeSocket[] connected(NodeSocket[] sockets, Map<String, List<NodeSocket>> connections) {
+        List<NodeSocket> result = new ArrayList<>();
+        for (NodeSocket socket : sockets) {
+            result.addAll(connections.getOrDefault(socket.getId(), Collections.emptyList()));
+        }
+        return result.toArray(new NodeSocket[0]);
+    }
+
+    protected void sort() {
+        Map<String, Integer> pendingInputs = new HashMap<>();
+        Deque<Node> ready = new ArrayDeque<>();
+        for (Node node : collection.getNodes()) {
+            int count = getInputs(node).length;
+            pendingInputs.put(node.getId(), count);
+            if (count == 0) {
+                ready.add(node);
+            }
+        }
+
+        while (!ready.isEmpty()) {
+            Node node = ready.poll();
+            order.put(node.getId(), sortedNodes.size());
+            sortedNodes.add(node);
+            for (NodeSocket socket : getOutputs(node)) {
+                String targetId = socket.getNodeId();
+                if (pendingInputs.merge(targetId, -1, Integer::sum) == 0) {
+                    ready.add(getNode(targetId));
+                }
+            }
+        }
+
+        if (sortedNodes.size() != collection.getNodes().length) {
+            throw new IllegalArgumentException("Flow '" + collection.getName() + "' contains a cycle");
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{" +
+            "name='" + collection.getName() + '\'' +
+            ", nodes=" + nodes.size() +
+            ", sockets=" + sockets.size() +
+            '}';
+    }
+}
@@ -6,11 +6,16 @@ import org.openremote.model.rules.flow.*;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 public class NodeExecutionRequestInfo {
     private NodeCollection collection;
+    private FlowGraph graph;
+    // Values of the output sockets already evaluated in the current firing, by socket ID
+    private Map<String, Object> results;
 
     private int outputSocketIndex;
     private NodeSocket outputSocket;
@@ -96,12 +101,59 @@ public class NodeExecutionRequestInfo {
         this.predictedDatapoints = predictedDatapoints;
     }
 
+    /**
+     * Uses the compiled graph, the values of output sockets are evaluated once per firing, see {@link #setFacts}.
+     */
+    public NodeExecutionRequestInfo(FlowGraph graph, Node node, NodeSocket socket, RulesFacts facts,
+                                    Assets assets, Users users, Notifications notifications,
+                                    HistoricDatapoints historicDatapoints, PredictedDatapoints predictedDatapoints) {
+        this.collection = graph.getCollection();
+        this.graph = graph;
+        this.results = new HashMap<>();
+        this.outputSocketIndex = Arrays.asList(node.getOutputs()).indexOf(socket);
+        this.outputSocket = socket;
+        this.node = node;
+        this.inputs = graph.getInputs(node);
+        this.outputs = graph.getOutputs(node);
+        this.internals = node.getInternals();
+        this.facts = facts;
+        this.assets = assets;
+        this.users = users;
+        this.notifications = notifications;
+        this.historicDatapoints = historicDatapoints;
+        this.predictedDatapoints = predictedDatapoints;
+    }
+
+    protected NodeExecutionRequestInfo(NodeExecutionRequestInfo parent, Node node, NodeSocket socket) {
+        this(parent.graph, node, socket, parent.facts, parent.assets, parent.users, parent.notifications, parent.historicDatapoints, parent.predictedDatapoints);
+        this.results = parent.results;
+    }
+
     public Object getValueFromInput(int index) {
         NodeSocket aSocket = getInputs()[index];
-        Node aNode = getCollection().getNodeById(aSocket.getNodeId());
-        return NodeModel.getImplementationFor(aNode.getName()).execute(
-            new NodeExecutionRequestInfo(getCollection(), aNode, aSocket, getFacts(), getAssets(), getUsers(), getNotifications(), getHistoricDatapoints(), getPredictedDatapoints())
-        );
+        if (graph == null) {
+            Node aNode = getCollection().getNodeById(aSocket.getNodeId());
+            return NodeModel.getImplementationFor(aNode.getName()).execute(
+                new NodeExecutionRequestInfo(getCollection(), aNode, aSocket, getFacts(), getAssets(), getUsers(), getNotifications(), getHistoricDatapoints(), getPredictedDatapoints())
+            );
+        }
+
+        if (results.containsKey(aSocket.getId())) {
+            return results.get(aSocket.getId());
+        }
+        Node aNode = graph.getNode(aSocket.getNodeId());
+        Object value = graph.getModel(aNode).getImplementation().execute(new NodeExecutionRequestInfo(this, aNode, aSocket));
+        results.put(aSocket.getId(), value);
+        return value;
+    }
+
+    /**
+     * @return the value of the node internal converted to the type, decoded only once when the graph is compiled.
+     */
+    public <T> T getInternalValue(int index, Class<T> type) {
+        return graph != null
+            ? graph.getInternalValue(getNode(), index, type)
+            : FlowGraph.convertInternalValue(getNode(), index, type);
     }
 
     public NodeDataType getTypeFromInput(int index) {
@@ -113,6 +165,10 @@ public class NodeExecutionRequestInfo {
         return collection;
     }
 
+    public FlowGraph getGraph() {
+        return graph;
+    }
+
     public void setCollection(NodeCollection collection) {
         this.collection = collection;
     }
@@ -205,7 +261,13 @@ public class NodeExecutionRequestInfo {
         return facts;
     }
 
+    /**
+     * Sets the facts of a new firing, values evaluated in a previous firing are discarded.
+     */
     public void setFacts(RulesFacts facts) {
         this.facts = facts;
+        if (graph != null) {
+            results = new HashMap<>();
+        }
     }
 }
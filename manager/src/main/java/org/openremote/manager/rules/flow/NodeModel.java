@@ -22,7 +22,7 @@ public enum NodeModel {
                     new NodeSocket("value", NodeDataType.ANY)
             }),
             info -> {
-                AssetAttributeInternalValue assetAttributePair = Container.JSON.convertValue(info.getInternals()[0].getValue(), AssetAttributeInternalValue.class);
+                AssetAttributeInternalValue assetAttributePair = info.getInternalValue(0, AssetAttributeInternalValue.class);
                 String assetId = assetAttributePair.getAssetId();
                 String attributeName = assetAttributePair.getAttributeName();
                 Optional<AssetState> readValue = info.getFacts().matchFirstAssetState(new AssetQuery().ids(assetId).attributeName(attributeName));
@@ -30,7 +30,7 @@ public enum NodeModel {
                 return readValue.get().getValue().orElse(null);
             },
             params -> {
-                AssetAttributeInternalValue internal = Container.JSON.convertValue(params.getNode().getInternals()[0].getValue(), AssetAttributeInternalValue.class);
+                AssetAttributeInternalValue internal = params.getInternalValue(0, AssetAttributeInternalValue.class);
                 String assetId = internal.getAssetId();
                 String attributeName = internal.getAttributeName();
                 List<AssetState> allAssets = params.getFacts().matchAssetState(new AssetQuery().ids(assetId).attributeName(attributeName)
@@ -57,7 +57,7 @@ public enum NodeModel {
                     RulesEngine.LOG.warning("Flow rule error: node " + info.getNode().getName() + " receives invalid value");
                     return;
                 }
-                AssetAttributeInternalValue assetAttributePair = Container.JSON.convertValue(info.getInternals()[0].getValue(), AssetAttributeInternalValue.class);
+                AssetAttributeInternalValue assetAttributePair = info.getInternalValue(0, AssetAttributeInternalValue.class);
                 Optional<AssetState> existingValue = info.getFacts().matchFirstAssetState(new AssetQuery().ids(assetAttributePair.getAssetId()).attributeName(assetAttributePair.getAttributeName()));
 
                 if (existingValue.isPresent())
@@ -150,12 +150,17 @@ public enum NodeModel {
             new NodeSocket("value", NodeDataType.NUMBER)
     }),
             info -> {
+                Float value;
                 try {
-                    return Values.create(Float.parseFloat(Container.JSON.writeValueAsString(info.getInternals()[0].getValue())));
-                } catch (JsonProcessingException e) {
+                    value = info.getInternalValue(0, Float.class);
+                } catch (IllegalArgumentException e) {
+                    value = null;
+                }
+                if (value == null) {
                     RulesEngine.RULES_LOG.warning("Number node returned invalid value");
                     return Values.create(0f);
                 }
+                return Values.create(value.floatValue());
             }),
 
     ADD_OPERATOR(new Node(NodeType.PROCESSOR, "+", new NodeInternal[0], new NodeSocket[]{
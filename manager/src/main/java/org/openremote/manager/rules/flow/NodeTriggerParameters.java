@@ -11,6 +11,7 @@ public class NodeTriggerParameters {
     private FlowRulesBuilder builder;
     private NodeCollection collection;
     private Node node;
+    private FlowGraph graph;
 
     public NodeTriggerParameters(String ruleName, RulesFacts facts, FlowRulesBuilder builder, NodeCollection collection, Node node) {
         this.ruleName = ruleName;
@@ -20,6 +21,11 @@ public class NodeTriggerParameters {
         this.node = node;
     }
 
+    public NodeTriggerParameters(String ruleName, RulesFacts facts, FlowRulesBuilder builder, FlowGraph graph, Node node) {
+        this(ruleName, facts, builder, graph.getCollection(), node);
+        this.graph = graph;
+    }
+
     public String getRuleName() {
         return ruleName;
     }
@@ -39,4 +45,17 @@ public class NodeTriggerParameters {
     public Node getNode() {
         return node;
     }
+
+    public FlowGraph getGraph() {
+        return graph;
+    }
+
+    /**
+     * @return the value of the node internal converted to the type, decoded only once when the graph is compiled.
+     */
+    public <T> T getInternalValue(int index, Class<T> type) {
+        return graph != null
+            ? graph.getInternalValue(node, index, type)
+            : FlowGraph.convertInternalValue(node, index, type);
+    }
 }
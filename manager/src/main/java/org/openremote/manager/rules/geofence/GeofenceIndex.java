@@ -0,0 +1,129 @@
+/*
+ * Copyright 2020, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.manager.rules.geofence;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
+import org.geotools.referencing.GeodeticCalculator;
+import org.openremote.manager.rules.RulesEngine;
+import org.openremote.model.query.filter.GeofencePredicate;
+import org.openremote.model.query.filter.RadialGeofencePredicate;
+import org.openremote.model.query.filter.RectangularGeofencePredicate;
+
+import java.util.*;
+
+/**
+ * The {@link GeofencePredicate}s of all {@link RulesEngine}s by asset ID, so the geofences of an asset are resolved
+ * without scanning the location predicates of every engine. Also provides the bounding envelope and containment test
+ * of a geofence for rules matching.
+ * <p>
+ * Containment ignores {@link GeofencePredicate#negated}, a negated geofence has the same area as its non-negated
+ * form.
+ */
+public class GeofenceIndex {
+
+    // Shortest length of a degree of latitude on the WGS84 ellipsoid, in metres
+    protected static final double MIN_METRES_PER_DEGREE = 110574d;
+    protected static final ThreadLocal<GeodeticCalculator> CALCULATOR = ThreadLocal.withInitial(GeodeticCalculator::new);
+
+    protected final Map<RulesEngine<?>, Map<String, Set<GeofencePredicate>>> engineAssetGeofences = new HashMap<>();
+
+    /**
+     * Replace the geofences of the engine, an empty or null list removes the engine from the index.
+     */
+    public synchronized void setEngineGeofences(RulesEngine<?> rulesEngine, List<RulesEngine.AssetStateLocationPredicates> assetStateLocationPredicates) {
+        engineAssetGeofences.remove(rulesEngine);
+
+        if (assetStateLocationPredicates == null || assetStateLocationPredicates.isEmpty()) {
+            return;
+        }
+
+        Map<String, Set<GeofencePredicate>> assetGeofences = new HashMap<>(assetStateLocationPredicates.size());
+        for (RulesEngine.AssetStateLocationPredicates locationPredicates : assetStateLocationPredicates) {
+            assetGeofences.put(locationPredicates.getAssetId(), new HashSet<>(locationPredicates.getLocationPredicates()));
+        }
+        engineAssetGeofences.put(rulesEngine, assetGeofences);
+    }
+
+    /**
+     * @return the geofences of the engine by asset ID.
+     */
+    public synchronized Map<String, Set<GeofencePredicate>> getEngineGeofences(RulesEngine<?> rulesEngine) {
+        return Collections.unmodifiableMap(engineAssetGeofences.getOrDefault(rulesEngine, Collections.emptyMap()));
+    }
+
+    /**
+     * @return the geofences of the asset in all engines.
+     */
+    public synchronized Set<GeofencePredicate> getAssetGeofences(String assetId) {
+        Set<GeofencePredicate> result = new HashSet<>();
+        for (Map<String, Set<GeofencePredicate>> assetGeofences : engineAssetGeofences.values()) {
+            result.addAll(assetGeofences.getOrDefault(assetId, Collections.emptySet()));
+        }
+        return result;
+    }
+
+    public synchronized void clear() {
+        engineAssetGeofences.clear();
+    }
+
+    /**
+     * @return an envelope (longitude, latitude) containing the whole area of the geofence.
+     */
+    public static Envelope getEnvelope(GeofencePredicate predicate) {
+        if (predicate instanceof RadialGeofencePredicate) {
+            RadialGeofencePredicate radial = (RadialGeofencePredicate) predicate;
+            double latDelta = radial.radius / MIN_METRES_PER_DEGREE;
+            double latMin = radial.lat - latDelta;
+            double latMax = radial.lat + latDelta;
+            if (latMin <= -90 || latMax >= 90) {
+                return new Envelope(-180, 180, Math.max(latMin, -90), Math.min(latMax, 90));
+            }
+            // Longitude degrees are shortest at the latitude furthest from the equator
+            double lngDelta = latDelta / Math.cos(Math.toRadians(Math.max(Math.abs(latMin), Math.abs(latMax))));
+            if (radial.lng - lngDelta < -180 || radial.lng + lngDelta > 180) {
+                return new Envelope(-180, 180, latMin, latMax);
+            }
+            return new Envelope(radial.lng - lngDelta, radial.lng + lngDelta, latMin, latMax);
+        } else if (predicate instanceof RectangularGeofencePredicate) {
+            RectangularGeofencePredicate rectangular = (RectangularGeofencePredicate) predicate;
+            return new Envelope(rectangular.lngMin, rectangular.lngMax, rectangular.latMin, rectangular.latMax);
+        }
+        throw new UnsupportedOperationException("Location predicate '" + predicate.getClass().getSimpleName() + "' not supported in rules matching");
+    }
+
+    /**
+     * @return <code>true</code> if the area of the geofence contains the coordinate (longitude, latitude), ignoring
+     * {@link GeofencePredicate#negated}.
+     */
+    public static boolean contains(GeofencePredicate predicate, Coordinate coordinate) {
+        if (predicate instanceof RadialGeofencePredicate) {
+            RadialGeofencePredicate radial = (RadialGeofencePredicate) predicate;
+            GeodeticCalculator calculator = CALCULATOR.get();
+            calculator.setStartingGeographicPoint(radial.lng, radial.lat);
+            calculator.setDestinationGeographicPoint(coordinate.x, coordinate.y);
+            return calculator.getOrthodromicDistance() <= radial.radius;
+        } else if (predicate instanceof RectangularGeofencePredicate) {
+            // This is a euclidean plane so doesn't work perfectly for WGS lat/lng - the bigger the rectangle the less accurate it is
+            return getEnvelope(predicate).contains(coordinate);
+        }
+        throw new UnsupportedOperationException("Location predicate '" + predicate.getClass().getSimpleName() + "' not supported in rules matching");
+    }
+}
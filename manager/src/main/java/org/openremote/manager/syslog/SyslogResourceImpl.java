@@ -43,7 +43,7 @@ public class SyslogResourceImpl extends WebResource implements SyslogResource {
     }
 
     @Override
-    public Response getEvents(@BeanParam RequestParams requestParams, SyslogLevel level, Integer perPage, Integer page, Long from, Long to, List<SyslogCategory> categories, List<String> subCategories) {
+    public Response getEvents(@BeanParam RequestParams requestParams, SyslogLevel level, Integer perPage, Integer page, Long from, Long to, List<SyslogCategory> categories, List<String> subCategories, Long cursorTimestamp, Long cursorId, Boolean approximateCount) {
 
         perPage = perPage != null ? perPage : DEFAULT_LIMIT;
         page = page != null ? page : 1;
@@ -55,21 +55,37 @@ public class SyslogResourceImpl extends WebResource implements SyslogResource {
             from != null ? Instant.ofEpochMilli(from) : null,
             to != null ? Instant.ofEpochMilli(to) : null,
             categories,
-            subCategories
+            subCategories,
+            cursorTimestamp,
+            cursorId,
+            approximateCount != null && approximateCount
         );
 
         if (result == null) {
             return Response.ok(Collections.emptyList()).build();
         }
 
-        long lastPage = (result.key / perPage) + 1L;
         Response.ResponseBuilder rb = Response.ok(result.value.toArray(new SyslogEvent[0]));
 
         URI requestBaseUri = requestParams.getRequestBaseUri().build(); // This gives request base from in front of proxy
         UriBuilder requestUriBuilder = requestParams.uriInfo.getRequestUriBuilder();
         requestUriBuilder.scheme(requestBaseUri.getScheme()).host(requestBaseUri.getHost()).port(requestBaseUri.getPort());
 
-        if (page != lastPage) {
+        if (result.key == null) {
+            // Cursor pagination, there might be a next page if this one is full
+            if (result.value.size() == perPage) {
+                SyslogEvent lastEvent = result.value.get(result.value.size() - 1);
+                rb.link(requestUriBuilder
+                    .replaceQueryParam("cursor_timestamp", lastEvent.getTimestamp())
+                    .replaceQueryParam("cursor_id", lastEvent.getId())
+                    .build(), "next");
+            }
+            return rb.build();
+        }
+
+        long lastPage = Math.max(1L, (result.key + perPage - 1) / perPage);
+
+        if (page < lastPage) {
             rb.link(requestUriBuilder.replaceQueryParam("page", page + 1).build(), "next");
         }
 
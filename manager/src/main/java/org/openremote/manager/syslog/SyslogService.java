@@ -19,6 +19,7 @@
  */
 package org.openremote.manager.syslog;
 
+import org.hibernate.Session;
 import org.openremote.container.Container;
 import org.openremote.container.ContainerService;
 import org.openremote.container.persistence.PersistenceService;
@@ -32,35 +33,66 @@ import org.openremote.model.syslog.SyslogEvent;
 import org.openremote.model.syslog.SyslogLevel;
 import org.openremote.model.util.Pair;
 
-import javax.persistence.Query;
-import javax.persistence.TypedQuery;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
 import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Handler;
 import java.util.logging.Level;
 import java.util.logging.LogRecord;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
 
-import static org.openremote.model.syslog.SyslogConfig.DEFAULT_LIMIT;
+import static org.openremote.container.util.MapAccess.getInteger;
 
 /**
  * Act as a JUL handler, publishes (some) log messages on the client event bus, stores
  * (some, depending on {@link SyslogConfig}) log messages in the database.
+ * <p>
+ * The handler only queues the log messages, a background task publishes them to clients (at most
+ * {@link #SYSLOG_MAX_PUBLISH_RATE} per second) and inserts them into the database in batches. The queue is bounded by
+ * {@link #SYSLOG_QUEUE_CAPACITY}, when it is full new messages are dropped except for warnings and errors, which
+ * replace the oldest queued message. Messages that can't be stored are dropped as well, see
+ * {@link #getDroppedCount}.
  */
 public class SyslogService extends Handler implements ContainerService {
 
     private static final Logger LOG = Logger.getLogger(SyslogService.class.getName());
 
+    public static final String SYSLOG_QUEUE_CAPACITY = "SYSLOG_QUEUE_CAPACITY";
+    public static final int SYSLOG_QUEUE_CAPACITY_DEFAULT = 10000;
+    public static final String SYSLOG_MAX_PUBLISH_RATE = "SYSLOG_MAX_PUBLISH_RATE";
+    public static final int SYSLOG_MAX_PUBLISH_RATE_DEFAULT = 100;
+    protected static final String INSERT_EVENT_SQL = "insert into %s (ID, TIMESTAMP, CATEGORY, LEVEL, MESSAGE, SUBCATEGORY)" +
+        " values (nextval('OPENREMOTE_SEQUENCE'), ?, ?, ?, ?, ?)";
+    protected static final String SELECT_EVENT_SQL = "select e.ID, e.TIMESTAMP, e.CATEGORY, e.LEVEL, e.MESSAGE, e.SUBCATEGORY";
+
     protected ManagerExecutorService executorService;
     protected PersistenceService persistenceService;
     protected ClientEventService clientEventService;
 
-    protected SyslogConfig config;
+    protected volatile SyslogConfig config;
 
-    final protected List<SyslogEvent> batch = new ArrayList<>();
+    final protected Queue<SyslogEvent> queue = new ConcurrentLinkedQueue<>();
+    final protected AtomicInteger queueSize = new AtomicInteger();
+    final protected AtomicLong droppedCount = new AtomicLong();
+    final protected AtomicLong droppedPublishCount = new AtomicLong();
+    final protected Map<LocalDate, String> partitions = new ConcurrentHashMap<>();
+    protected long reportedDroppedCount;
+    protected volatile int queueCapacity = SYSLOG_QUEUE_CAPACITY_DEFAULT;
+    protected int maxPublishRate = SYSLOG_MAX_PUBLISH_RATE_DEFAULT;
     protected ScheduledFuture flushBatchFuture;
     protected ScheduledFuture deleteOldFuture;
 
@@ -72,6 +104,8 @@ public class SyslogService extends Handler implements ContainerService {
     @Override
     public void init(Container container) throws Exception {
         executorService = container.getService(ManagerExecutorService.class);
+        queueCapacity = getInteger(container.getConfig(), SYSLOG_QUEUE_CAPACITY, SYSLOG_QUEUE_CAPACITY_DEFAULT);
+        maxPublishRate = getInteger(container.getConfig(), SYSLOG_MAX_PUBLISH_RATE, SYSLOG_MAX_PUBLISH_RATE_DEFAULT);
 
         if (container.hasService(ClientEventService.class) && container.hasService(PersistenceService.class)) {
             LOG.info("Syslog service enabled");
@@ -103,19 +137,24 @@ public class SyslogService extends Handler implements ContainerService {
     @Override
     public void start(Container container) throws Exception {
         if (persistenceService != null) {
-            // Flush batch every 3 seconds (wait 10 seconds for database (schema) to be ready in dev mode)
-            flushBatchFuture = executorService.scheduleAtFixedRate(this::flushBatch, 10 * 1000, 3 * 1000);
+            // Process the queue every second (wait 10 seconds for database (schema) to be ready in dev mode)
+            flushBatchFuture = executorService.scheduleAtFixedRate(this::flushBatch, 10 * 1000, 1000);
 
             // Clear outdated events every minute
             deleteOldFuture = executorService.scheduleAtFixedRate(() -> {
                 // Not ready on startup
                 if (persistenceService.getEntityManagerFactory() == null)
                     return;
-                final int maxAgeMinutes;
-                synchronized (batch) {
-                    maxAgeMinutes = config.getStoredMaxAgeMinutes();
-                }
+                final int maxAgeMinutes = config.getStoredMaxAgeMinutes();
                 persistenceService.doTransaction(em -> {
+                    // Drop whole partitions first, this doesn't lock or scan the remaining events
+                    Number droppedPartitions = (Number) em.createNativeQuery(
+                        "select DROP_SYSLOG_EVENT_PARTITIONS(now() - make_interval(0, 0, 0, 0, 0, ?1, 0))"
+                    ).setParameter(1, maxAgeMinutes).getSingleResult();
+                    if (droppedPartitions.intValue() > 0) {
+                        LOG.fine("Dropped outdated syslog partitions: " + droppedPartitions);
+                        partitions.clear();
+                    }
                     em.createQuery(
                         "delete from SyslogEvent e " +
                             "where e.timestamp < now() - make_interval(0, 0, 0, 0, 0, :minutes, 0)"
@@ -135,6 +174,7 @@ public class SyslogService extends Handler implements ContainerService {
             deleteOldFuture.cancel(true);
             deleteOldFuture = null;
         }
+        LOG.info("Syslog events dropped: " + getDroppedCount() + ", not published to clients: " + getDroppedPublishCount());
     }
 
     @Override
@@ -149,42 +189,54 @@ public class SyslogService extends Handler implements ContainerService {
     public void publish(LogRecord record) {
         SyslogEvent syslogEvent = SyslogCategory.mapSyslogEvent(record);
         if (syslogEvent != null) {
-            try {
-                store(syslogEvent);
-            } catch (Exception e) {
-                LOG.log(Level.SEVERE, "Failed to store syslog event", e);
-            }
-            try {
-                if (clientEventService != null)
-                    clientEventService.publishEvent(syslogEvent);
-            } catch (Exception e) {
-                LOG.log(Level.SEVERE, "Failed to send syslog event to subscribed clients", e);
-            }
+            enqueue(syslogEvent);
         }
     }
 
     public void setConfig(SyslogConfig config) {
-        synchronized (batch) {
-            LOG.info("Using: " + config);
-            this.config = config;
-        }
+        LOG.info("Using: " + config);
+        this.config = config;
     }
 
     public SyslogConfig getConfig() {
-        synchronized (batch) {
-            return config;
-        }
+        return config;
+    }
+
+    /**
+     * @return the number of events that were dropped because the queue was full or they couldn't be stored.
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * @return the number of events that were not published to clients because of the rate limit.
+     */
+    public long getDroppedPublishCount() {
+        return droppedPublishCount.get();
     }
 
     public void clearStoredEvents() {
         if (persistenceService == null)
             return;
-        synchronized (batch) {
-            persistenceService.doTransaction(em -> em.createQuery("delete from SyslogEvent e").executeUpdate());
-        }
+        // Truncate includes the partitions and doesn't have to scan or lock the events
+        persistenceService.doTransaction(em -> em.createNativeQuery("truncate SYSLOG_EVENT").executeUpdate());
     }
 
     public Pair<Long, List<SyslogEvent>> getEvents(SyslogLevel level, int perPage, int page, Instant from, Instant to, List<SyslogCategory> categories, List<String> subCategories) {
+        return getEvents(level, perPage, page, from, to, categories, subCategories, null, null, false);
+    }
+
+    /**
+     * Events are ordered by timestamp and ID, newest first. Pages can be selected by number (offset) or with the
+     * timestamp and ID of the last event of the previous page (keyset), which is equally fast for every page.
+     *
+     * @param cursorTimestamp timestamp of the last event of the previous page, if set the page number is ignored.
+     * @param cursorId        ID of the last event of the previous page, required with the cursor timestamp.
+     * @param approximateCount if the count should be the query planner estimate instead of counting the events.
+     * @return the number of matching events (<code>null</code> when paging with a cursor) and the events of the page.
+     */
+    public Pair<Long, List<SyslogEvent>> getEvents(SyslogLevel level, int perPage, int page, Instant from, Instant to, List<SyslogCategory> categories, List<String> subCategories, Long cursorTimestamp, Long cursorId, boolean approximateCount) {
         if (persistenceService == null)
             return null;
 
@@ -195,110 +247,236 @@ public class SyslogService extends Handler implements ContainerService {
             from = to.minus(1, ChronoUnit.HOURS);
         }
 
-        Date fromDate = Date.from(from);
-        Date toDate = Date.from(to);
-        AtomicLong count = new AtomicLong();
+        boolean keyset = cursorTimestamp != null && cursorId != null;
+        List<Object> parameters = new ArrayList<>();
+        // The time range is inlined so partitions outside of it are excluded when the statement is planned, a generic
+        // plan of a server side prepared statement with bound time parameters would scan all partitions
+        StringBuilder sb = new StringBuilder(" from SYSLOG_EVENT e where e.TIMESTAMP >= ")
+            .append(toTimestampLiteral(from))
+            .append(" and e.TIMESTAMP <= ")
+            .append(toTimestampLiteral(to));
+
+        if (level != null) {
+            sb.append(" and e.LEVEL >= ?");
+            parameters.add(level.ordinal());
+        }
+        if (categories != null && !categories.isEmpty()) {
+            sb.append(" and e.CATEGORY in (");
+            sb.append(categories.stream().map(category -> "?").collect(Collectors.joining(",")));
+            sb.append(")");
+            categories.forEach(category -> parameters.add(category.name()));
+        }
+        if (subCategories != null && !subCategories.isEmpty()) {
+            sb.append(" and e.SUBCATEGORY in (");
+            sb.append(subCategories.stream().map(subCategory -> "?").collect(Collectors.joining(",")));
+            sb.append(")");
+            parameters.addAll(subCategories);
+        }
 
-        List<SyslogEvent> events = persistenceService.doReturningTransaction(em -> {
-            StringBuilder sb = new StringBuilder("from SyslogEvent e where e.timestamp >= :from and e.timestamp <= :to");
-            if (level != null) {
-                sb.append(" and e.level >= :level");
-            }
-            if (categories != null && !categories.isEmpty()) {
-                sb.append(" and e.category in :categories");
-            }
-            if (subCategories != null && !subCategories.isEmpty()) {
-                sb.append(" and e.subCategory in :subCategories");
-            }
+        String whereSql = sb.toString();
 
-            TypedQuery<Long> countQuery = em.createQuery("select count(e.id) " + sb.toString(), Long.class);
-            countQuery.setParameter("from", fromDate);
-            countQuery.setParameter("to", toDate);
-            if (level != null) {
-                countQuery.setParameter("level", level);
-            }
-            if (categories != null && !categories.isEmpty()) {
-                countQuery.setParameter("categories", categories);
-            }
-            if (subCategories != null && !subCategories.isEmpty()) {
-                countQuery.setParameter("subCategories", subCategories);
-            }
-            count.set(countQuery.getSingleResult());
+        if (keyset) {
+            sb.append(" and (e.TIMESTAMP, e.ID) < (?, ?)");
+        }
+        sb.append(" order by e.TIMESTAMP desc, e.ID desc limit ?");
+        if (!keyset && page > 1) {
+            sb.append(" offset ?");
+        }
+        String selectSql = SELECT_EVENT_SQL + sb.toString();
+
+        return persistenceService.doReturningTransaction(em -> em.unwrap(Session.class).doReturningWork(connection -> {
+            Long count = null;
+
+            if (!keyset) {
+                String countSql = approximateCount ? "explain (format json) select e.ID" + whereSql : "select count(e.ID)" + whereSql;
+                try (PreparedStatement st = connection.prepareStatement(countSql)) {
+                    bindParameters(st, parameters);
+                    try (ResultSet rs = st.executeQuery()) {
+                        rs.next();
+                        count = approximateCount ? getEstimatedRows(rs.getString(1)) : rs.getLong(1);
+                    }
+                }
 
-            if (count.get() == 0L) {
-                return Collections.emptyList();
+                if (count == 0L) {
+                    return new Pair<>(count, Collections.<SyslogEvent>emptyList());
+                }
             }
 
-            sb.append(" order by e.timestamp desc");
-            TypedQuery<SyslogEvent> query = em.createQuery("select e " + sb.toString(), SyslogEvent.class);
-
-            query.setParameter("from", fromDate);
-            query.setParameter("to", toDate);
-            if (level != null) {
-                query.setParameter("level", level);
-            }
-            if (categories != null && !categories.isEmpty()) {
-                query.setParameter("categories", categories);
+            List<Object> selectParameters = new ArrayList<>(parameters);
+            if (keyset) {
+                selectParameters.add(new Timestamp(cursorTimestamp));
+                selectParameters.add(cursorId);
             }
-            if (subCategories != null && !subCategories.isEmpty()) {
-                query.setParameter("subCategories", subCategories);
+            selectParameters.add(perPage);
+            if (!keyset && page > 1) {
+                selectParameters.add((page - 1) * perPage);
             }
 
-            query.setMaxResults(perPage);
-            if (page > 1) {
-                query.setFirstResult(((page-1) * perPage) + 1);
+            List<SyslogEvent> events = new ArrayList<>(perPage);
+            try (PreparedStatement st = connection.prepareStatement(selectSql)) {
+                bindParameters(st, selectParameters);
+                try (ResultSet rs = st.executeQuery()) {
+                    while (rs.next()) {
+                        SyslogEvent syslogEvent = new SyslogEvent(
+                            rs.getTimestamp("TIMESTAMP").getTime(),
+                            SyslogLevel.values()[rs.getInt("LEVEL")],
+                            SyslogCategory.valueOf(rs.getString("CATEGORY")),
+                            rs.getString("SUBCATEGORY"),
+                            rs.getString("MESSAGE")
+                        );
+                        syslogEvent.setId(rs.getLong("ID"));
+                        events.add(syslogEvent);
+                    }
+                }
             }
-            return query.getResultList();
-        });
+            return new Pair<>(count, events);
+        }));
+    }
 
-        return new Pair<>(count.get(), events);
+    protected static void bindParameters(PreparedStatement st, List<Object> parameters) throws SQLException {
+        for (int i = 0; i < parameters.size(); i++) {
+            st.setObject(i + 1, parameters.get(i));
+        }
     }
 
-    protected void store(SyslogEvent syslogEvent) {
-        if (persistenceService == null)
-            return;
+    protected static long getEstimatedRows(String explainJson) {
+        try {
+            return Container.JSON.readTree(explainJson).path(0).path("Plan").path("Plan Rows").asLong();
+        } catch (IOException e) {
+            LOG.log(Level.FINE, "Failed to read query plan: " + explainJson, e);
+            return 0L;
+        }
+    }
 
-        // If we are not ready (on startup), ignore
-        if (persistenceService.getEntityManagerFactory() == null) {
+    /**
+     * Called on the logging thread, must not block.
+     */
+    protected void enqueue(SyslogEvent syslogEvent) {
+        if (queueSize.incrementAndGet() <= queueCapacity) {
+            queue.offer(syslogEvent);
             return;
         }
-        boolean isLoggable =
-            config.getStoredLevel().isLoggable(syslogEvent)
-                && Arrays.asList(config.getStoredCategories()).contains(syslogEvent.getCategory());
-        if (isLoggable) {
-            synchronized (batch) {
-                batch.add(syslogEvent);
-            }
+
+        // Queue is full, warnings and errors replace the oldest queued event
+        if (SyslogLevel.WARN.isLoggable(syslogEvent) && queue.poll() != null) {
+            queue.offer(syslogEvent);
         }
+        queueSize.decrementAndGet();
+        droppedCount.incrementAndGet();
     }
 
     protected void flushBatch() {
-        if (persistenceService == null)
+        List<SyslogEvent> events = new ArrayList<>(Math.min(queueSize.get(), queueCapacity));
+        SyslogEvent syslogEvent;
+        while ((syslogEvent = queue.poll()) != null) {
+            queueSize.decrementAndGet();
+            events.add(syslogEvent);
+        }
+
+        long dropped = droppedCount.get();
+        if (dropped > reportedDroppedCount) {
+            LOG.warning("Syslog events dropped since last report: " + (dropped - reportedDroppedCount));
+            reportedDroppedCount = dropped;
+        }
+
+        if (events.isEmpty())
             return;
-        synchronized (batch) {
-            final List<SyslogEvent> transientEvents = new ArrayList<>(batch);
-            batch.clear();
-            if (transientEvents.size() == 0)
+
+        try {
+            publishToClients(events);
+        } catch (Exception e) {
+            LOG.log(Level.SEVERE, "Failed to send syslog events to subscribed clients", e);
+        }
+
+        store(events);
+    }
+
+    protected void publishToClients(List<SyslogEvent> events) {
+        if (clientEventService == null)
+            return;
+
+        int published = 0;
+        for (SyslogEvent syslogEvent : events) {
+            if (published >= maxPublishRate) {
+                droppedPublishCount.addAndGet(events.size() - published);
                 return;
-            LOG.fine("Flushing syslog batch: " + transientEvents.size());
-            try {
-                persistenceService.doTransaction(em -> {
-                    try {
-                        for (SyslogEvent e : transientEvents) {
-                            em.persist(e);
+            }
+            clientEventService.publishEvent(syslogEvent);
+            published++;
+        }
+    }
+
+    protected void store(List<SyslogEvent> events) {
+        // If we are not ready (on startup), ignore
+        if (persistenceService == null || persistenceService.getEntityManagerFactory() == null)
+            return;
+
+        SyslogConfig config = this.config;
+        List<SyslogCategory> storedCategories = Arrays.asList(config.getStoredCategories());
+        List<SyslogEvent> storedEvents = new ArrayList<>(events.size());
+        for (SyslogEvent syslogEvent : events) {
+            if (config.getStoredLevel().isLoggable(syslogEvent) && storedCategories.contains(syslogEvent.getCategory())) {
+                storedEvents.add(syslogEvent);
+            }
+        }
+
+        if (storedEvents.isEmpty())
+            return;
+
+        LOG.fine("Flushing syslog batch: " + storedEvents.size());
+        Map<LocalDate, List<SyslogEvent>> eventsByDay = storedEvents.stream().collect(Collectors.groupingBy(
+            syslogEvent -> Instant.ofEpochMilli(syslogEvent.getTimestamp()).atOffset(ZoneOffset.UTC).toLocalDate()
+        ));
+        try {
+            persistenceService.doTransaction(em -> em.unwrap(Session.class).doWork(connection -> {
+                for (Map.Entry<LocalDate, List<SyslogEvent>> dayEvents : eventsByDay.entrySet()) {
+                    String partition = getPartition(connection, dayEvents.getKey());
+                    try (PreparedStatement st = connection.prepareStatement(String.format(INSERT_EVENT_SQL, partition))) {
+                        for (SyslogEvent syslogEvent : dayEvents.getValue()) {
+                            st.setTimestamp(1, new Timestamp(syslogEvent.getTimestamp()));
+                            st.setString(2, syslogEvent.getCategory().name());
+                            st.setInt(3, syslogEvent.getLevel().ordinal());
+                            st.setString(4, syslogEvent.getMessage());
+                            st.setString(5, syslogEvent.getSubCategoryOptional().orElse(null));
+                            st.addBatch();
                         }
-                    } catch (RuntimeException ex) {
-                        // This is not a big problem, it may happen on shutdown of database connections during tests, just inform the user
-                        // TODO Or is it a serious problem and we need to escalate? In any case, just throwing the ex is not good
-                        LOG.info("Error flushing syslog to database, some events are lost: " + ex);
-                    } finally {
-                        em.flush();
+                        st.executeBatch();
                     }
-                });
-            } catch (Exception e) {
-                LOG.log(Level.SEVERE, "Exception occurred whilst flushing the syslog", e);
+                }
+            }));
+        } catch (Exception e) {
+            // This is not a big problem, it may happen on shutdown of database connections during tests, just inform the user
+            LOG.info("Error flushing syslog to database, " + storedEvents.size() + " events are lost: " + e);
+            droppedCount.addAndGet(storedEvents.size());
+            // Partitions created in the failed transaction don't exist
+            partitions.clear();
+        }
+    }
+
+    /**
+     * @return an SQL literal of the instant, the ISO-8601 representation only contains digits and separators.
+     */
+    protected static String toTimestampLiteral(Instant instant) {
+        return "timestamp with time zone '" + instant + "'";
+    }
+
+    /**
+     * @return the name of the (created if necessary) daily partition table for the given UTC day.
+     */
+    protected String getPartition(Connection connection, LocalDate day) throws SQLException {
+        String partition = partitions.get(day);
+        if (partition != null) {
+            return partition;
+        }
+        try (PreparedStatement st = connection.prepareStatement("select CREATE_SYSLOG_EVENT_PARTITION(cast(? as date))")) {
+            st.setString(1, day.toString());
+            try (ResultSet rs = st.executeQuery()) {
+                rs.next();
+                partition = rs.getString(1);
             }
         }
+        partitions.put(day, partition);
+        return partition;
     }
 
     @Override
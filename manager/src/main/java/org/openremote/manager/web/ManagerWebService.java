@@ -43,6 +43,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.logging.Logger;
@@ -79,7 +80,8 @@ public class ManagerWebService extends WebService {
     protected Path appDocRoot;
     protected Path sharedDocRoot;
     protected Collection<Class<?>> apiClasses = new HashSet<>();
-    protected Collection<Object> apiSingletons = new HashSet<>();
+    // Services add their resources while they are initialized in parallel
+    protected Collection<Object> apiSingletons = Collections.synchronizedSet(new HashSet<>());
 
     /**
      * Start web service after other services.
@@ -0,0 +1,79 @@
+/*
+  ############################# TABLES #############################
+ */
+
+/*
+  Materialized asset tree path, the asset ID followed by the IDs of all its ancestors up to the root asset
+ */
+alter table ASSET
+  add column PATH text [];
+
+update ASSET
+set PATH = GET_ASSET_TREE_PATH(ID);
+
+alter table ASSET
+  alter column PATH set not null;
+
+/*
+  ############################# FUNCTIONS #############################
+ */
+create or replace function GET_ASSET_TREE_PATH(ASSET_ID text)
+  returns text [] as
+$$
+  select PATH
+  from ASSET
+  where ID = ASSET_ID;
+$$
+language sql stable;
+
+create or replace function UPDATE_ASSET_PATH()
+  returns trigger as
+$$
+begin
+  if NEW.PARENT_ID is null then
+    NEW.PATH := array [text(NEW.ID)];
+  else
+    NEW.PATH := array [text(NEW.ID)] || (select P.PATH from ASSET P where P.ID = NEW.PARENT_ID);
+  end if;
+  return NEW;
+end;
+$$
+language plpgsql;
+
+create or replace function UPDATE_ASSET_DESCENDANT_PATHS()
+  returns trigger as
+$$
+begin
+  update ASSET A
+  set PATH = A.PATH [1 : array_position(A.PATH, text(NEW.ID)) - 1] || NEW.PATH
+  where A.PATH @> array [text(NEW.ID)] and A.ID != NEW.ID;
+  return null;
+end;
+$$
+language plpgsql;
+
+/*
+  ############################# TRIGGERS #############################
+ */
+create trigger ASSET_PATH_INSERT
+  before insert on ASSET
+  for each row
+execute procedure UPDATE_ASSET_PATH();
+
+create trigger ASSET_PATH_UPDATE
+  before update of PARENT_ID on ASSET
+  for each row
+  when (OLD.PARENT_ID is distinct from NEW.PARENT_ID)
+execute procedure UPDATE_ASSET_PATH();
+
+create trigger ASSET_DESCENDANT_PATHS_UPDATE
+  after update of PARENT_ID on ASSET
+  for each row
+  when (OLD.PARENT_ID is distinct from NEW.PARENT_ID)
+execute procedure UPDATE_ASSET_DESCENDANT_PATHS();
+
+/*
+  ############################# INDICES #############################
+ */
+
+create index ASSET_PATH on ASSET using gin (PATH);
@@ -0,0 +1,10 @@
+/*
+  ############################# INDICES #############################
+ */
+
+/*
+  Asset queries are ordered by creation date or name with the ID as tie breaker, these indices serve the ordering and
+  the keyset pagination predicate
+ */
+create index ASSET_CREATED_ON_ID on ASSET(CREATED_ON, ID);
+create index ASSET_NAME_ID on ASSET(NAME, ID);
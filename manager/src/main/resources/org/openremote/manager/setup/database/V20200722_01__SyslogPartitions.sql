@@ -0,0 +1,71 @@
+/*
+  ############################# FUNCTIONS #############################
+ */
+
+/*
+  Daily partitions of SYSLOG_EVENT (inheritance based), named SYSLOG_EVENT_YYYYMMDD with the day in UTC. Queries on
+  SYSLOG_EVENT include the partitions and only scan the partitions of the queried time range. Partitions are excluded
+  by their check constraint when the query is planned, so the time range must be constant in the query and not a bound
+  parameter of a prepared statement.
+ */
+create or replace function CREATE_SYSLOG_EVENT_PARTITION(PARTITION_DAY date)
+  returns text as
+$$
+declare
+  PARTITION_NAME text := 'syslog_event_' || to_char(PARTITION_DAY, 'YYYYMMDD');
+  PARTITION_START timestamp with time zone := PARTITION_DAY::timestamp at time zone 'UTC';
+begin
+  execute format(
+    'create table if not exists %I (primary key (ID), check (TIMESTAMP >= %L and TIMESTAMP < %L)) inherits (SYSLOG_EVENT)',
+    PARTITION_NAME, PARTITION_START, PARTITION_START + interval '1 day'
+  );
+  execute format(
+    'create index if not exists %I on %I (TIMESTAMP, ID)',
+    PARTITION_NAME || '_timestamp_id', PARTITION_NAME
+  );
+  execute format(
+    'create index if not exists %I on %I (CATEGORY, TIMESTAMP, ID)',
+    PARTITION_NAME || '_category_timestamp_id', PARTITION_NAME
+  );
+  return PARTITION_NAME;
+end;
+$$
+language plpgsql;
+
+/*
+  Drops the partitions that only contain events older than the given time, returns the number of dropped partitions
+ */
+create or replace function DROP_SYSLOG_EVENT_PARTITIONS(OLDER_THAN timestamp with time zone)
+  returns integer as
+$$
+declare
+  PARTITION_NAME text;
+  DROPPED integer := 0;
+begin
+  for PARTITION_NAME in
+    select C.RELNAME
+    from PG_INHERITS I
+      join PG_CLASS C on C.OID = I.INHRELID
+      join PG_CLASS P on P.OID = I.INHPARENT
+    where P.RELNAME = 'syslog_event' and C.RELNAME ~ '^syslog_event_[0-9]{8}$'
+  loop
+    if (to_date(substring(PARTITION_NAME from 14), 'YYYYMMDD')::timestamp at time zone 'UTC') + interval '1 day' <= OLDER_THAN then
+      execute format('drop table %I', PARTITION_NAME);
+      DROPPED := DROPPED + 1;
+    end if;
+  end loop;
+  return DROPPED;
+end;
+$$
+language plpgsql;
+
+/*
+  ############################# INDICES #############################
+ */
+
+/*
+  Serve the time range, the keyset pagination predicate and the ordering of syslog queries for events stored before
+  partitioning
+ */
+create index SYSLOG_EVENT_TIMESTAMP_ID on SYSLOG_EVENT(TIMESTAMP, ID);
+create index SYSLOG_EVENT_CATEGORY_TIMESTAMP_ID on SYSLOG_EVENT(CATEGORY, TIMESTAMP, ID);
@@ -0,0 +1,68 @@
+/*
+  ############################# FUNCTIONS #############################
+ */
+
+/*
+  The point of the location attribute value (a GeoJSON point), null if the asset has no valid location
+ */
+create or replace function GET_ASSET_LOCATION(ATTRIBUTES jsonb)
+  returns geometry(Point, 4326) as
+$$
+  select case
+    when jsonb_typeof(ATTRIBUTES #> '{location,value,coordinates,0}') = 'number'
+      and jsonb_typeof(ATTRIBUTES #> '{location,value,coordinates,1}') = 'number'
+      then ST_SetSRID(ST_MakePoint(
+        (ATTRIBUTES #>> '{location,value,coordinates,0}')::double precision,
+        (ATTRIBUTES #>> '{location,value,coordinates,1}')::double precision
+      ), 4326)
+  end;
+$$
+language sql immutable;
+
+create or replace function UPDATE_ASSET_LOCATION()
+  returns trigger as
+$$
+begin
+  NEW.LOCATION := GET_ASSET_LOCATION(NEW.ATTRIBUTES);
+  return NEW;
+end;
+$$
+language plpgsql;
+
+/*
+  ############################# TABLES #############################
+ */
+
+/*
+  Maintained point of the location attribute so geofence queries can use a spatial index instead of reading the
+  attributes of every asset
+ */
+alter table ASSET
+  add column LOCATION geometry(Point, 4326);
+
+update ASSET
+set LOCATION = GET_ASSET_LOCATION(ATTRIBUTES);
+
+/*
+  ############################# TRIGGERS #############################
+ */
+create trigger ASSET_LOCATION_INSERT
+  before insert on ASSET
+  for each row
+execute procedure UPDATE_ASSET_LOCATION();
+
+create trigger ASSET_LOCATION_UPDATE
+  before update of ATTRIBUTES on ASSET
+  for each row
+  when (OLD.ATTRIBUTES -> 'location' is distinct from NEW.ATTRIBUTES -> 'location')
+execute procedure UPDATE_ASSET_LOCATION();
+
+/*
+  ############################# INDICES #############################
+ */
+
+/*
+  Rectangular geofences use the planar index, radial geofences the geography index with sphere distances
+ */
+create index ASSET_LOCATION on ASSET using gist (LOCATION);
+create index ASSET_LOCATION_GEOGRAPHY on ASSET using gist ((LOCATION :: geography));
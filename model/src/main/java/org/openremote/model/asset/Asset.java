@@ -23,7 +23,6 @@ import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import org.hibernate.annotations.Check;
-import org.hibernate.annotations.Formula;
 import org.openremote.model.AbstractValueHolder;
 import org.openremote.model.IdentifiableEntity;
 import org.openremote.model.ValidationFailure;
@@ -77,9 +76,9 @@ import static org.openremote.model.attribute.AttributeType.LOCATION;
  * <p>
  * The {@link #path} is a list of parent asset identifiers, starting with the identifier of
  * this asset, followed by parent asset identifiers, and ending with the identifier of the
- * root asset in the tree. This is a transient property and only resolved and usable when
- * the asset is loaded from storage and as calculating it is costly, might be empty when
- * certain optimized loading operations are used.
+ * root asset in the tree. It is maintained by the database when the asset is created or moved
+ * and only usable when the asset is loaded from storage, it might be empty when certain
+ * optimized loading operations are used.
  * An asset may have dynamically-typed {@link #attributes} with an underlying
  * {@link ObjectValue} model. Use the {@link Attribute} etc. class to work with this API.
  * This property can be empty when certain optimized loading operations are used.
@@ -273,7 +272,8 @@ public class Asset implements IdentifiableEntity {
 
     // The following are expensive to query, so if they are null, they might not have been loaded
 
-    @Formula("get_asset_tree_path(ID)")
+    // Maintained by database triggers when the asset is created or moved
+    @Column(name = "PATH", insertable = false, updatable = false)
     @org.hibernate.annotations.Type(type = "org.openremote.container.persistence.ArrayUserType")
     protected String[] path;
 
@@ -253,6 +253,9 @@ public interface AssetResource {
      * assets must be linked to the user. An empty result is returned if the user does not have access to the assets.
      * What is populated on the returned assets is determined by the
      * {@link AssetQuery#select} value.
+     * <p>
+     * Large results should be retrieved in pages with {@link AssetQuery#limit} and {@link AssetQuery#after}, using the
+     * last asset of the previous page as cursor.
      */
     @POST
     @Path("query")
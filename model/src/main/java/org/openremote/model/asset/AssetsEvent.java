@@ -34,11 +34,17 @@ public class AssetsEvent extends SharedEvent implements EventIdentifier {
 
     protected String messageId;
     protected List<Asset> assets;
+    protected Boolean more;
 
     @JsonCreator
-    public AssetsEvent(@JsonProperty("messageId") String messageId, @JsonProperty("assets") List<Asset> assets) {
+    public AssetsEvent(@JsonProperty("messageId") String messageId, @JsonProperty("assets") List<Asset> assets, @JsonProperty("more") Boolean more) {
         this.messageId = messageId;
         this.assets = assets;
+        this.more = more;
+    }
+
+    public AssetsEvent(String messageId, List<Asset> assets) {
+        this(messageId, assets, null);
     }
 
     public String getMessageId() {
@@ -49,11 +55,19 @@ public class AssetsEvent extends SharedEvent implements EventIdentifier {
         return assets;
     }
 
+    /**
+     * @return <code>true</code> if this is a chunk of a larger result and more events with the same message ID follow.
+     */
+    public boolean hasMore() {
+        return more != null && more;
+    }
+
     @Override
     public String toString() {
         return AssetsEvent.class.getSimpleName() + "{" +
             "messageId='" + messageId + '\'' +
             ", assets=" + (assets == null ? "null" : assets.stream().map(Asset::getId).collect(Collectors.joining())) +
+            ", more=" + more +
             '}';
     }
 }
@@ -33,11 +33,17 @@ public class ReadAssetsEvent extends SharedEvent implements EventIdentifier {
 
     protected String messageId;
     protected AssetQuery assetQuery;
+    protected Integer chunkSize;
 
     @JsonCreator
-    public ReadAssetsEvent(@JsonProperty("messageId") String messageId, @JsonProperty("assetQuery") AssetQuery assetQuery) {
+    public ReadAssetsEvent(@JsonProperty("messageId") String messageId, @JsonProperty("assetQuery") AssetQuery assetQuery, @JsonProperty("chunkSize") Integer chunkSize) {
         this.messageId = messageId;
         this.assetQuery = assetQuery;
+        this.chunkSize = chunkSize;
+    }
+
+    public ReadAssetsEvent(String messageId, AssetQuery assetQuery) {
+        this(messageId, assetQuery, null);
     }
 
     public ReadAssetsEvent(AssetQuery assetQuery) {
@@ -52,11 +58,20 @@ public class ReadAssetsEvent extends SharedEvent implements EventIdentifier {
         return messageId;
     }
 
+    /**
+     * @return the maximum number of assets per {@link AssetsEvent} reply, if set the results are sent in multiple
+     * replies with the same message ID (see {@link AssetsEvent#hasMore}).
+     */
+    public Integer getChunkSize() {
+        return chunkSize;
+    }
+
     @Override
     public String toString() {
         return getClass().getSimpleName() + "{" +
             "messageId='" + messageId + '\'' +
             "query='" + assetQuery + '\'' +
+            ", chunkSize=" + chunkSize +
             '}';
     }
 }
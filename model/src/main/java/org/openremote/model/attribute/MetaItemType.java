@@ -35,6 +35,7 @@ import static org.openremote.model.Constants.ASSET_META_NAMESPACE;
 import static org.openremote.model.attribute.MetaItem.MetaItemFailureReason.META_ITEM_VALUE_MISMATCH;
 import static org.openremote.model.attribute.MetaItemDescriptor.Access.ACCESS_PRIVATE;
 import static org.openremote.model.util.TextUtil.REGEXP_PATTERN_DOUBLE;
+import static org.openremote.model.util.TextUtil.REGEXP_PATTERN_DOUBLE_POSITIVE;
 import static org.openremote.model.util.TextUtil.REGEXP_PATTERN_INTEGER_POSITIVE_NON_ZERO;
 
 /**
@@ -311,6 +312,65 @@ public enum MetaItemType implements MetaItemDescriptor {
             value -> value == null ? Optional.empty() : Values.getIntegerCoerced(value)
                     .isPresent() ? Optional.empty() : Optional.of(new ValidationFailure(META_ITEM_VALUE_MISMATCH, "Integer"))),
 
+    /**
+     * Only store a numeric data point when the value differs from the last stored value by at least this amount.
+     */
+    DATA_POINTS_DEADBAND(
+        ASSET_META_NAMESPACE + ":dataPointsDeadband",
+        new Access(true, false, true),
+        ValueType.NUMBER,
+        REGEXP_PATTERN_DOUBLE_POSITIVE,
+        PatternFailure.DOUBLE_POSITIVE.name(),
+        null,
+        false),
+
+    /**
+     * Only store a numeric data point when the value differs from the last stored value by at least this percentage
+     * of the last stored value.
+     */
+    DATA_POINTS_DEADBAND_PERCENT(
+        ASSET_META_NAMESPACE + ":dataPointsDeadbandPercent",
+        new Access(true, false, true),
+        ValueType.NUMBER,
+        REGEXP_PATTERN_DOUBLE_POSITIVE,
+        PatternFailure.DOUBLE_POSITIVE.name(),
+        null,
+        false),
+
+    /**
+     * Compress numeric data points using the swinging door algorithm; a linear interpolation between stored data
+     * points never deviates from the actual values by more than this amount.
+     */
+    DATA_POINTS_COMPRESSION_DEVIATION(
+        ASSET_META_NAMESPACE + ":dataPointsCompressionDeviation",
+        new Access(true, false, true),
+        ValueType.NUMBER,
+        REGEXP_PATTERN_DOUBLE_POSITIVE,
+        PatternFailure.DOUBLE_POSITIVE.name(),
+        null,
+        false),
+
+    /**
+     * Maximum time between stored data points when any of the data point filters are used ({@link #DATA_POINTS_DEADBAND},
+     * {@link #DATA_POINTS_DEADBAND_PERCENT}, {@link #DATA_POINTS_COMPRESSION_DEVIATION}); a data point is stored for
+     * the first value received after this interval even if the value has not changed significantly. If used on its
+     * own then only changed values are stored.
+     */
+    DATA_POINTS_MAX_INTERVAL_SECONDS(
+        ASSET_META_NAMESPACE + ":dataPointsMaxIntervalSeconds",
+        new Access(true, false, true),
+        ValueType.NUMBER,
+        REGEXP_PATTERN_INTEGER_POSITIVE_NON_ZERO,
+        PatternFailure.INTEGER_POSITIVE_NON_ZERO.name(),
+        null,
+        false,
+        false,
+        Values.create(1d),
+        null,
+        null,
+        value -> value == null ? Optional.empty() : Values.getIntegerCoerced(value)
+            .isPresent() ? Optional.empty() : Optional.of(new ValidationFailure(META_ITEM_VALUE_MISMATCH, "Integer"))),
+
     /**
      * Should attribute writes be processed by the rules engines as {@link AssetState} facts, with a lifecycle that
      * reflects the state of the asset attribute. Each attribute will have one fact at all times in rules memory. These
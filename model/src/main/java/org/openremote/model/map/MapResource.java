@@ -59,4 +59,19 @@ public interface MapResource {
     @Path("tile/{zoom}/{column}/{row}")
     @SuppressWarnings("unusable-by-js")
     byte[] getTile(@PathParam("zoom")int zoom, @PathParam("column")int column, @PathParam("row")int row);
+
+    /**
+     * Gets a ZIP archive with the vector tiles of the zoom level within the bounding box (in degrees), so clients can
+     * prefetch an area in one request. The entries are named <code>{zoom}/{column}/{row}.pbf</code> and contain the
+     * gzip encoded tile data. Responds with 400 if the bounding box covers too many tiles.
+     */
+    @GET
+    @Produces("application/zip")
+    @Path("tiles/{zoom}")
+    @SuppressWarnings("unusable-by-js")
+    byte[] getTilePack(@PathParam("zoom")int zoom,
+                       @QueryParam("west") double west,
+                       @QueryParam("south") double south,
+                       @QueryParam("east") double east,
+                       @QueryParam("north") double north);
 }
@@ -89,6 +89,18 @@ public class EmailNotificationMessage extends AbstractNotificationMessage {
         super(TYPE);
     }
 
+    public EmailNotificationMessage(EmailNotificationMessage that) {
+        this();
+        this.from = that.from;
+        this.replyTo = that.replyTo;
+        this.subject = that.subject;
+        this.text = that.text;
+        this.html = that.html;
+        this.to = that.to != null ? new ArrayList<>(that.to) : null;
+        this.cc = that.cc != null ? new ArrayList<>(that.cc) : null;
+        this.bcc = that.bcc != null ? new ArrayList<>(that.bcc) : null;
+    }
+
     public Recipient getFrom() {
         return from;
     }
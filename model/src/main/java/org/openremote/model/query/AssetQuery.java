@@ -19,6 +19,7 @@
  */
 package org.openremote.model.query;
 
+import org.openremote.model.asset.Asset;
 import org.openremote.model.asset.AssetDescriptor;
 import org.openremote.model.asset.AssetType;
 import org.openremote.model.attribute.MetaItemDescriptor;
@@ -186,6 +187,48 @@ public class AssetQuery {
         }
     }
 
+    /**
+     * Keyset pagination position, results continue after the asset with these values in the order of
+     * {@link AssetQuery#orderBy}. Only ordering by {@link OrderBy.Property#CREATED_ON} or
+     * {@link OrderBy.Property#NAME} is supported, the asset ID breaks ties. Unlike an offset this doesn't get slower
+     * for later pages and isn't affected by assets inserted into or removed from previous pages.
+     */
+    public static class Cursor {
+
+        public String id;
+        public Long createdOn;
+        public String name;
+
+        public Cursor() {
+        }
+
+        public Cursor(String id, Long createdOn, String name) {
+            this.id = id;
+            this.createdOn = createdOn;
+            this.name = name;
+        }
+
+        /**
+         * @return a cursor positioned after the given asset, usually the last asset of the previous page.
+         */
+        public static Cursor after(Asset asset) {
+            return new Cursor(
+                asset.getId(),
+                asset.getCreatedOn() != null ? asset.getCreatedOn().getTime() : null,
+                asset.getName()
+            );
+        }
+
+        @Override
+        public String toString() {
+            return getClass().getSimpleName() + "{" +
+                    "id='" + id + '\'' +
+                    ", createdOn=" + createdOn +
+                    ", name='" + name + '\'' +
+                    '}';
+        }
+    }
+
     public enum Access {
         PRIVATE,
         PROTECTED,
@@ -250,6 +293,7 @@ public class AssetQuery {
     // Ordering
     public OrderBy orderBy;
     public int limit;
+    public Cursor after;
 
     public AssetQuery() {
     }
@@ -422,6 +466,23 @@ public class AssetQuery {
         return this;
     }
 
+    public AssetQuery limit(int limit) {
+        this.limit = limit;
+        return this;
+    }
+
+    public AssetQuery after(Cursor cursor) {
+        this.after = cursor;
+        return this;
+    }
+
+    /**
+     * Continue after the given asset, combine with {@link #limit} to page through the results.
+     */
+    public AssetQuery after(Asset asset) {
+        return after(asset != null ? Cursor.after(asset) : null);
+    }
+
     @Override
     public String toString() {
         return getClass().getSimpleName() + "{" +
@@ -436,6 +497,8 @@ public class AssetQuery {
                 ", attribute=" + (attributes != null ? attributes.toString() : "null") +
                 ", attributeMeta=" + Arrays.toString(attributeMeta) +
                 ", orderBy=" + orderBy +
+                ", limit=" + limit +
+                ", after=" + after +
                 ", recursive=" + recursive +
                 '}';
     }
@@ -86,6 +86,13 @@ public class AssetState implements Comparable<AssetState> {
     final protected Meta meta;
 
     public AssetState(AssetState that) {
+        this(that, that.path);
+    }
+
+    /**
+     * Copy the state of an asset that has been moved in the asset tree.
+     */
+    public AssetState(AssetState that, String[] path) {
         this.attributeName = that.attributeName;
         this.attributeValueType = that.attributeValueType;
         this.value = that.value;
@@ -98,7 +105,7 @@ public class AssetState implements Comparable<AssetState> {
         this.typeString = that.typeString;
         this.type = that.type;
         this.createdOn = that.createdOn;
-        this.path = that.path;
+        this.path = path;
         this.parentId = that.parentId;
         this.parentName = that.parentName;
         this.parentTypeString = that.parentTypeString;
@@ -0,0 +1,175 @@
+/*
+ * Copyright 2020, OpenRemote Inc.
+ *
+ * See the CONTRIBUTORS.txt file in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.openremote.model.rules;
+
+/**
+ * Counters and latency histograms of a single rule in a deployed ruleset, collected since the ruleset was deployed.
+ * <p>
+ * The histograms have {@link #HISTOGRAM_BUCKETS} power of two buckets: bucket <code>0</code> counts values of
+ * <code>0</code>, bucket <code>i</code> counts values from <code>2^(i-1)</code> up to <code>2^i - 1</code>, the last
+ * bucket counts all larger values. Times are in microseconds, matched facts are counted per condition evaluation.
+ */
+public class RuleStatistics {
+
+    public static final int HISTOGRAM_BUCKETS = 25;
+
+    protected long rulesetId;
+    protected String rulesetName;
+    protected String ruleName;
+    protected long evaluationCount;
+    protected long triggerCount;
+    protected long executionCount;
+    protected long failureCount;
+    protected long evaluationMicros;
+    protected long maxEvaluationMicros;
+    protected long executionMicros;
+    protected long maxExecutionMicros;
+    protected long matchedFactCount;
+    protected long maxMatchedFactCount;
+    protected long[] evaluationHistogram;
+    protected long[] executionHistogram;
+    protected long[] matchedFactsHistogram;
+
+    protected RuleStatistics() {
+    }
+
+    public RuleStatistics(long rulesetId, String rulesetName, String ruleName,
+                          long evaluationCount, long triggerCount, long executionCount, long failureCount,
+                          long evaluationMicros, long maxEvaluationMicros,
+                          long executionMicros, long maxExecutionMicros,
+                          long matchedFactCount, long maxMatchedFactCount,
+                          long[] evaluationHistogram, long[] executionHistogram, long[] matchedFactsHistogram) {
+        this.rulesetId = rulesetId;
+        this.rulesetName = rulesetName;
+        this.ruleName = ruleName;
+        this.evaluationCount = evaluationCount;
+        this.triggerCount = triggerCount;
+        this.executionCount = executionCount;
+        this.failureCount = failureCount;
+        this.evaluationMicros = evaluationMicros;
+        this.maxEvaluationMicros = maxEvaluationMicros;
+        this.executionMicros = executionMicros;
+        this.maxExecutionMicros = maxExecutionMicros;
+        this.matchedFactCount = matchedFactCount;
+        this.maxMatchedFactCount = maxMatchedFactCount;
+        this.evaluationHistogram = evaluationHistogram;
+        this.executionHistogram = executionHistogram;
+        this.matchedFactsHistogram = matchedFactsHistogram;
+    }
+
+    public long getRulesetId() {
+        return rulesetId;
+    }
+
+    public String getRulesetName() {
+        return rulesetName;
+    }
+
+    public String getRuleName() {
+        return ruleName;
+    }
+
+    /**
+     * @return how often the condition of the rule was evaluated.
+     */
+    public long getEvaluationCount() {
+        return evaluationCount;
+    }
+
+    /**
+     * @return how often the condition of the rule was <code>true</code>.
+     */
+    public long getTriggerCount() {
+        return triggerCount;
+    }
+
+    /**
+     * @return how often the action of the rule was executed, including failed executions.
+     */
+    public long getExecutionCount() {
+        return executionCount;
+    }
+
+    /**
+     * @return how often the condition or action of the rule threw an exception.
+     */
+    public long getFailureCount() {
+        return failureCount;
+    }
+
+    public long getEvaluationMicros() {
+        return evaluationMicros;
+    }
+
+    public long getMaxEvaluationMicros() {
+        return maxEvaluationMicros;
+    }
+
+    public long getExecutionMicros() {
+        return executionMicros;
+    }
+
+    public long getMaxExecutionMicros() {
+        return maxExecutionMicros;
+    }
+
+    /**
+     * @return the total time spent in the condition and action of the rule.
+     */
+    public long getTotalMicros() {
+        return evaluationMicros + executionMicros;
+    }
+
+    public long getMatchedFactCount() {
+        return matchedFactCount;
+    }
+
+    public long getMaxMatchedFactCount() {
+        return maxMatchedFactCount;
+    }
+
+    public long[] getEvaluationHistogram() {
+        return evaluationHistogram;
+    }
+
+    public long[] getExecutionHistogram() {
+        return executionHistogram;
+    }
+
+    public long[] getMatchedFactsHistogram() {
+        return matchedFactsHistogram;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{" +
+            "rulesetId=" + rulesetId +
+            ", rulesetName='" + rulesetName + '\'' +
+            ", ruleName='" + ruleName + '\'' +
+            ", evaluationCount=" + evaluationCount +
+            ", triggerCount=" + triggerCount +
+            ", executionCount=" + executionCount +
+            ", failureCount=" + failureCount +
+            ", evaluationMicros=" + evaluationMicros +
+            ", executionMicros=" + executionMicros +
+            ", matchedFactCount=" + matchedFactCount +
+            '}';
+    }
+}
@@ -19,10 +19,13 @@
  */
 package org.openremote.model.rules;
 
+import java.util.Arrays;
+
 public class RulesEngineInfo {
     protected RulesEngineStatus status;
     protected int compilationErrorCount;
     protected int executionErrorCount;
+    protected RuleStatistics[] slowestRules;
 
     protected RulesEngineInfo() {
     }
@@ -33,6 +36,11 @@ public class RulesEngineInfo {
         this.executionErrorCount = executionErrorCount;
     }
 
+    public RulesEngineInfo(RulesEngineStatus status, int compilationErrorCount, int executionErrorCount, RuleStatistics[] slowestRules) {
+        this(status, compilationErrorCount, executionErrorCount);
+        this.slowestRules = slowestRules;
+    }
+
     public RulesEngineStatus getStatus() {
         return status;
     }
@@ -45,12 +53,20 @@ public class RulesEngineInfo {
         return executionErrorCount;
     }
 
+    /**
+     * @return the statistics of the rules with the most time spent in condition and action, slowest first.
+     */
+    public RuleStatistics[] getSlowestRules() {
+        return slowestRules;
+    }
+
     @Override
     public String toString() {
         return getClass().getSimpleName() + "{" +
             "status=" + status +
             ", compilationErrorCount=" + compilationErrorCount +
             ", executionErrorCount=" + executionErrorCount +
+            ", slowestRules=" + Arrays.toString(slowestRules) +
             '}';
     }
 }
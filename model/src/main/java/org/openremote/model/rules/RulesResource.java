@@ -67,6 +67,43 @@ public interface RulesResource {
     @SuppressWarnings("unusable-by-js")
     RulesEngineInfo getAssetEngineInfo(@BeanParam RequestParams requestParams, @PathParam("assetId") String assetId);
 
+    /**
+     * Retrieve the statistics of the rules in the global rules engine, slowest rules first; the number of rules can be
+     * limited. Only the superuser can perform this operation, a 403 status is returned if a regular user tries to access
+     * the global rules engine.
+     */
+    @GET
+    @Path("statistics/global")
+    @Produces(APPLICATION_JSON)
+    @SuccessStatusCode(200)
+    @RolesAllowed({Constants.READ_RULES_ROLE})
+    @SuppressWarnings("unusable-by-js")
+    RuleStatistics[] getGlobalRuleStatistics(@BeanParam RequestParams requestParams, @QueryParam("limit") Integer limit);
+
+    /**
+     * Retrieve the statistics of the rules in the specified tenant rules engine, slowest rules first; the number of
+     * rules can be limited.
+     */
+    @GET
+    @Path("statistics/tenant/{realm}")
+    @Produces(APPLICATION_JSON)
+    @SuccessStatusCode(200)
+    @RolesAllowed({Constants.READ_RULES_ROLE})
+    @SuppressWarnings("unusable-by-js")
+    RuleStatistics[] getTenantRuleStatistics(@BeanParam RequestParams requestParams, @PathParam("realm") String realm, @QueryParam("limit") Integer limit);
+
+    /**
+     * Retrieve the statistics of the rules in the specified asset rules engine, slowest rules first; the number of
+     * rules can be limited.
+     */
+    @GET
+    @Path("statistics/asset/{assetId}")
+    @Produces(APPLICATION_JSON)
+    @SuccessStatusCode(200)
+    @RolesAllowed({Constants.READ_RULES_ROLE})
+    @SuppressWarnings("unusable-by-js")
+    RuleStatistics[] getAssetRuleStatistics(@BeanParam RequestParams requestParams, @PathParam("assetId") String assetId, @QueryParam("limit") Integer limit);
+
     /**
      * Retrieve global rules. Only the superuser can perform this operation, a 403 status is returned if a regular user
      * tries to access global rulesets.
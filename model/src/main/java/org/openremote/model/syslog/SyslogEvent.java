@@ -116,6 +116,14 @@ public class SyslogEvent extends SharedEvent {
         this.message = message;
     }
 
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
     public SyslogLevel getLevel() {
         return level;
     }
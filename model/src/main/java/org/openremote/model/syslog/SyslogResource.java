@@ -37,13 +37,20 @@ import static javax.ws.rs.core.MediaType.APPLICATION_JSON;
 @JsType(isNative = true)
 public interface SyslogResource {
 
+    /**
+     * Retrieve stored events, newest first. Pages can be selected by <code>page</code> number, the response then has
+     * <code>next</code> and <code>last</code> links based on the (optionally approximate) number of events, or with
+     * the timestamp and ID of the last event of the previous page as cursor, the response then has a
+     * <code>next</code> link with the cursor of the returned page if it is full. Cursor pagination doesn't count the
+     * events and is equally fast for every page.
+     */
     @GET
     @Path("event")
     @Produces(APPLICATION_JSON)
     @RolesAllowed({Constants.READ_RULES_ROLE})
     @SuppressWarnings({"unusable-by-js"})
     @GwtIncompatible
-    Response getEvents(@BeanParam RequestParams requestParams, @QueryParam("level") SyslogLevel level, @QueryParam("per_page") Integer perPage, @QueryParam("page") Integer page, @QueryParam("from") Long from, @QueryParam("to") Long to, @QueryParam("category") List<SyslogCategory> categories, @QueryParam("subCategory") List<String> subCategories);
+    Response getEvents(@BeanParam RequestParams requestParams, @QueryParam("level") SyslogLevel level, @QueryParam("per_page") Integer perPage, @QueryParam("page") Integer page, @QueryParam("from") Long from, @QueryParam("to") Long to, @QueryParam("category") List<SyslogCategory> categories, @QueryParam("subCategory") List<String> subCategories, @QueryParam("cursor_timestamp") Long cursorTimestamp, @QueryParam("cursor_id") Long cursorId, @QueryParam("approximate_count") Boolean approximateCount);
 
     @DELETE
     @Path("event")
@@ -0,0 +1,146 @@
+package org.openremote.test.assets
+
+import org.openremote.manager.asset.AssetCache
+import org.openremote.model.asset.Asset
+import org.openremote.model.asset.AssetAttribute
+import org.openremote.model.value.Values
+import spock.lang.Specification
+
+import static org.openremote.model.attribute.AttributeValueType.NUMBER
+
+class AssetCacheTest extends Specification {
+
+    static Asset createAsset(String id, String parentId, String... path) {
+        def asset = new Asset(id, 1, new Date(), "Asset " + id, "urn:openremote:asset:thing", false, parentId, null, null, "master", path, Values.createObject())
+        asset.addAttributes(new AssetAttribute("temperature", NUMBER, Values.create(20), 1000))
+        asset
+    }
+
+    def "Cache hits return copies of the loaded asset"() {
+
+        given: "an asset cache"
+        def cache = new AssetCache(100)
+        def loads = 0
+
+        when: "an asset is loaded twice"
+        def first = cache.get("a") { loads++; createAsset("a", null, "a") }
+        def second = cache.get("a") { loads++; createAsset("a", null, "a") }
+
+        then: "the loader should only be called once"
+        loads == 1
+        cache.size() == 1
+        cache.stats.hitCount() == 1
+        cache.stats.missCount() == 1
+
+        when: "a returned asset is modified"
+        second.getAttribute("temperature").get().with {
+            it.setValue(Values.create(30))
+            second.replaceAttribute(it)
+        }
+
+        then: "the cached asset should not be modified"
+        Values.getNumber(cache.get("a") { null }.getAttribute("temperature").get().value.orElse(null)).get() == 20d
+        first.id == "a"
+    }
+
+    def "Attribute value writes update the cached asset"() {
+
+        given: "an asset cache with a cached asset"
+        def cache = new AssetCache(100)
+        cache.get("a") { createAsset("a", null, "a") }
+
+        when: "an attribute value write is committed"
+        cache.beginUpdate("a")
+        cache.updateAttributeValue("a", "temperature", Values.create(25), 2000)
+        cache.endUpdate("a", false)
+
+        then: "the cached asset should have the new value without loading"
+        def asset = cache.get("a") { throw new IllegalStateException("Should not load") }
+        Values.getNumber(asset.getAttribute("temperature").get().value.orElse(null)).get() == 25d
+        asset.getAttribute("temperature").get().valueTimestamp.get() == 2000L
+    }
+
+    def "Pending updates bypass the cache and invalidation removes descendants"() {
+
+        given: "an asset cache with a small asset tree"
+        def cache = new AssetCache(100)
+        cache.get("a") { createAsset("a", null, "a") }
+        cache.get("b") { createAsset("b", "a", "b", "a") }
+        cache.get("c") { createAsset("c", "b", "c", "b", "a") }
+        cache.get("d") { createAsset("d", null, "d") }
+
+        when: "an asset is being updated and read by the updating transaction"
+        cache.beginUpdate("d")
+        def updated = cache.get("d") {
+            def asset = createAsset("d", null, "d")
+            asset.getAttribute("temperature").get().with {
+                it.setValue(Values.create(30), 2000)
+                asset.replaceAttribute(it)
+            }
+            asset
+        }
+
+        then: "the loader should be used instead of the stale cached asset"
+        Values.getNumber(updated.getAttribute("temperature").get().value.orElse(null)).get() == 30d
+
+        and: "the stale asset and loads during the update should not be cached"
+        cache.size() == 3
+
+        when: "the update of the root asset completes"
+        cache.beginUpdate("a")
+        cache.endUpdate("a", true)
+        cache.endUpdate("d", true)
+
+        then: "the asset and its descendants should be removed"
+        cache.size() == 0
+    }
+
+    def "Cache size is bounded"() {
+
+        given: "a small asset cache"
+        def cache = new AssetCache(10)
+
+        when: "more assets than the maximum size are loaded"
+        (1..50).each { i -> cache.get("asset" + i) { createAsset("asset" + i, null, "asset" + i) } }
+
+        then: "assets should be evicted"
+        cache.size() <= 10
+        cache.stats.evictionCount() >= 40
+    }
+
+    def "Descendants are found through the index of cached assets by ancestor"() {
+
+        given: "an asset cache with a small asset tree"
+        def cache = new AssetCache(100)
+        cache.get("a") { createAsset("a", null, "a") }
+        cache.get("b") { createAsset("b", "a", "b", "a") }
+        cache.get("c") { createAsset("c", "b", "c", "b", "a") }
+
+        expect: "the cached assets to be indexed by their ancestors"
+        cache.descendants["a"] == ["b", "c"] as Set
+        cache.descendants["b"] == ["c"] as Set
+
+        when: "a descendant is invalidated"
+        cache.invalidate("c")
+
+        then: "it should be removed from the index"
+        cache.descendants["a"] == ["b"] as Set
+        !cache.descendants.containsKey("b")
+
+        when: "a descendant is cached again under a different parent"
+        cache.get("c") { createAsset("c", "d", "c", "d") }
+        cache.get("d") { createAsset("d", null, "d") }
+
+        then: "it should only be indexed by its new ancestors"
+        cache.descendants["d"] == ["c"] as Set
+        cache.descendants["a"] == ["b"] as Set
+
+        when: "the root is invalidated"
+        cache.invalidate("a")
+
+        then: "only its descendants should have been removed"
+        cache.size() == 2
+        cache.get("c") { throw new IllegalStateException("Should not load") }.id == "c"
+        !cache.descendants.containsKey("a")
+    }
+}
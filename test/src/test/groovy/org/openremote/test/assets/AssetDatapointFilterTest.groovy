@@ -0,0 +1,248 @@
+package org.openremote.test.assets
+
+import org.hibernate.action.spi.AfterTransactionCompletionProcess
+import org.hibernate.engine.spi.ActionQueue
+import org.hibernate.engine.spi.SessionImplementor
+import org.openremote.container.persistence.PersistenceEvent
+import org.openremote.container.persistence.PersistenceService
+import org.openremote.manager.datapoint.AssetDatapointFilter
+import org.openremote.manager.datapoint.AssetDatapointService
+import org.openremote.model.asset.Asset
+import org.openremote.model.asset.AssetAttribute
+import org.openremote.model.asset.AssetType
+import org.openremote.model.attribute.AttributeEvent
+import org.openremote.model.attribute.AttributeRef
+import org.openremote.model.attribute.AttributeValueType
+import org.openremote.model.attribute.MetaItem
+import org.openremote.model.attribute.MetaItemType
+import org.openremote.model.datapoint.AssetDatapoint
+import org.openremote.model.datapoint.ValueDatapoint
+import org.openremote.model.value.Value
+import org.openremote.model.value.Values
+import spock.lang.Specification
+
+import javax.persistence.EntityManager
+import java.util.function.Consumer
+
+class AssetDatapointFilterTest extends Specification {
+
+    static final double EPSILON = 1e-9
+
+    static List<double[]> generateSignal(int count, long intervalMillis) {
+        def random = new Random(42)
+        def signal = []
+        for (int i = 0; i < count; i++) {
+            // Slowly changing temperature with sensor noise and a few steps
+            def value = 20 + 5 * Math.sin(i / 500d) + (random.nextDouble() - 0.5) * 0.2 + (i > count / 2 ? 3 : 0)
+            signal << ([i * intervalMillis, value] as double[])
+        }
+        signal
+    }
+
+    static List<ValueDatapoint<Value>> filter(AssetDatapointFilter filter, List<double[]> signal) {
+        def stored = []
+        signal.each { stored.addAll(filter.accept(Values.create(it[1]), (long) it[0])) }
+        stored
+    }
+
+    static double stepValueAt(List<ValueDatapoint<Value>> stored, long timestamp) {
+        def previous = stored.findAll { it.timestamp <= timestamp }.last()
+        Values.getNumber(previous.value).get()
+    }
+
+    static double linearValueAt(List<ValueDatapoint<Value>> stored, long timestamp) {
+        def index = stored.findLastIndexOf { it.timestamp <= timestamp }
+        def before = stored[index]
+        if (before.timestamp == timestamp || index == stored.size() - 1) {
+            return Values.getNumber(before.value).get()
+        }
+        def after = stored[index + 1]
+        def v0 = Values.getNumber(before.value).get()
+        def v1 = Values.getNumber(after.value).get()
+        v0 + (v1 - v0) * (timestamp - before.timestamp) / (after.timestamp - before.timestamp)
+    }
+
+    def "Absolute deadband bounds the step reconstruction error"() {
+
+        given: "a 1 Hz sensor signal"
+        def signal = generateSignal(10000, 1000)
+
+        when: "the signal is filtered with an absolute deadband"
+        def deadband = 0.5d
+        def stored = filter(new AssetDatapointFilter(new AssetDatapointFilter.Config(deadband, 0, 0, 0)), signal)
+
+        then: "the number of stored data points should be reduced by more than an order of magnitude"
+        stored.size() < signal.size() / 10
+        stored.first().timestamp == 0L
+
+        and: "the step reconstruction should never deviate by the deadband or more"
+        signal.every { Math.abs(it[1] - stepValueAt(stored, (long) it[0])) < deadband + EPSILON }
+    }
+
+    def "Percent deadband bounds the step reconstruction error relative to the stored value"() {
+
+        given: "a 1 Hz sensor signal"
+        def signal = generateSignal(5000, 1000)
+
+        when: "the signal is filtered with a percent deadband"
+        def stored = filter(new AssetDatapointFilter(new AssetDatapointFilter.Config(0, 2, 0, 0)), signal)
+
+        then: "the step reconstruction should never deviate by 2% of the stored value or more"
+        stored.size() < signal.size() / 10
+        signal.every {
+            def reconstructed = stepValueAt(stored, (long) it[0])
+            Math.abs(it[1] - reconstructed) < Math.abs(reconstructed) * 0.02 + EPSILON
+        }
+    }
+
+    def "Swinging door compression bounds the linear reconstruction error"() {
+
+        given: "a 1 Hz sensor signal"
+        def signal = generateSignal(10000, 1000)
+
+        when: "the signal is compressed with a swinging door"
+        def deviation = 0.25d
+        def compressor = new AssetDatapointFilter(new AssetDatapointFilter.Config(0, 0, deviation, 0))
+        def stored = filter(compressor, signal)
+
+        and: "the final held value is flushed by a later value outside the door"
+        stored.addAll(compressor.accept(Values.create(1000d), 10000 * 1000L))
+
+        then: "the number of stored data points should be reduced by more than an order of magnitude"
+        stored.size() < signal.size() / 10
+
+        and: "stored data points should be in timestamp order"
+        (1..<stored.size()).every { stored[it - 1].timestamp < stored[it].timestamp }
+
+        and: "the linear reconstruction should never deviate by more than the compression deviation"
+        signal.every { Math.abs(it[1] - linearValueAt(stored, (long) it[0])) <= deviation + EPSILON }
+    }
+
+    def "Max interval forces storage of unchanged values"() {
+
+        given: "a filter with a deadband and a max interval of 60s"
+        def filter = new AssetDatapointFilter(new AssetDatapointFilter.Config(1, 0, 0, 60000))
+
+        expect: "the first value to be stored"
+        filter.accept(Values.create(10d), 0).size() == 1
+
+        and: "an unchanged value within the max interval to be dropped"
+        filter.accept(Values.create(10d), 30000).isEmpty()
+
+        and: "an unchanged value after the max interval to be stored"
+        filter.accept(Values.create(10d), 60000).size() == 1
+
+        and: "a value outside the deadband to be stored"
+        filter.accept(Values.create(11.5d), 61000).size() == 1
+    }
+
+    def "Non numeric values are only stored on change"() {
+
+        given: "a filter with only a max interval"
+        def filter = new AssetDatapointFilter(new AssetDatapointFilter.Config(0, 0, 0, 3600000))
+
+        expect: "changes to be stored and repeated values to be dropped"
+        filter.accept(Values.create("ON"), 0).size() == 1
+        filter.accept(Values.create("ON"), 1000).isEmpty()
+        filter.accept(Values.create("OFF"), 2000).size() == 1
+        filter.accept(Values.create(false), 3000).size() == 1
+        filter.accept(Values.create(false), 4000).isEmpty()
+    }
+
+    def "The datapoint service applies filter state on commit, evicts filters of removed attributes and stores held values on stop"() {
+
+        given: "entity managers recording persisted data points and transaction completion callbacks"
+        List<AssetDatapoint> persisted = []
+        List<AfterTransactionCompletionProcess> callbacks = []
+        def actionQueue = Stub(ActionQueue) {
+            registerProcess(_ as AfterTransactionCompletionProcess) >> { AfterTransactionCompletionProcess process -> callbacks << process }
+        }
+        def session = Stub(SessionImplementor) {
+            getActionQueue() >> actionQueue
+        }
+        def createEntityManager = {
+            Stub(EntityManager) {
+                unwrap(SessionImplementor) >> session
+                persist(_) >> { AssetDatapoint datapoint -> persisted << datapoint }
+            }
+        }
+        def complete = { boolean success ->
+            callbacks.each { it.doAfterTransactionCompletion(success, null) }
+            callbacks.clear()
+        }
+
+        and: "a datapoint service"
+        def service = new AssetDatapointService()
+        service.persistenceService = Stub(PersistenceService) {
+            doTransaction(_) >> { Consumer<EntityManager> consumer -> consumer.accept(createEntityManager()) }
+        }
+
+        and: "an asset with a swinging door filtered attribute"
+        def asset = new Asset("Sensor", AssetType.THING)
+        asset.setId("sensor1")
+        asset.setAttributes(
+            new AssetAttribute(asset.id, "temperature", AttributeValueType.NUMBER).setMeta(
+                new MetaItem(MetaItemType.STORE_DATA_POINTS, Values.create(true)),
+                new MetaItem(MetaItemType.DATA_POINTS_COMPRESSION_DEVIATION, Values.create(0.5))
+            )
+        )
+        def attributeRef = new AttributeRef(asset.id, "temperature")
+        def update = { EntityManager em, Number value, Number timestamp ->
+            def attribute = asset.getAttribute("temperature").get().deepCopy()
+            attribute.setValue(Values.create(value.doubleValue()), timestamp.longValue())
+            service.processAssetUpdate(em, asset, attribute, AttributeEvent.Source.SENSOR)
+        }
+
+        when: "a value is processed in a transaction that rolls back"
+        update(createEntityManager(), 20, 1000)
+        complete(false)
+
+        then: "the filter state should not have been applied"
+        persisted.size() == 1
+        service.getFilter(attributeRef) == null
+
+        when: "the value and a value held back by the swinging door are processed in a transaction that commits"
+        persisted.clear()
+        def em = createEntityManager()
+        update(em, 20, 1000)
+        update(em, 20.1, 2000)
+        complete(true)
+
+        then: "the filter state should have been applied"
+        persisted.collect { it.timestamp } == [1000L]
+        service.getFilter(attributeRef).heldDatapoint.timestamp == 2000L
+
+        when: "the asset is updated without changing the filtered attribute"
+        service.processAssetChange(new PersistenceEvent(PersistenceEvent.Cause.UPDATE, asset, null, null))
+
+        then: "the filter should be kept"
+        service.getFilter(attributeRef) != null
+
+        when: "the service stops"
+        persisted.clear()
+        service.stop(null)
+
+        then: "the held back value should have been stored"
+        persisted.collect { it.timestamp } == [2000L]
+        service.getFilter(attributeRef) == null
+
+        when: "a value is committed and the attribute is removed from the asset"
+        update(createEntityManager(), 21, 3000)
+        complete(true)
+        def updatedAsset = new Asset("Sensor", AssetType.THING)
+        updatedAsset.setId(asset.id)
+        service.processAssetChange(new PersistenceEvent(PersistenceEvent.Cause.UPDATE, updatedAsset, null, null))
+
+        then: "the filter should have been evicted"
+        service.getFilter(attributeRef) == null
+
+        when: "a value is committed and the asset is deleted"
+        update(createEntityManager(), 22, 4000)
+        complete(true)
+        service.processAssetChange(new PersistenceEvent(PersistenceEvent.Cause.DELETE, asset, null, null))
+
+        then: "the filter should have been evicted"
+        service.getFilter(attributeRef) == null
+        service.datapointFilters.isEmpty()
+    }
+}
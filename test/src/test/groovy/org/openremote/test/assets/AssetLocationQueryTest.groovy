@@ -0,0 +1,119 @@
+package org.openremote.test.assets
+
+import org.openremote.container.persistence.PersistenceService
+import org.openremote.manager.asset.AssetStorageService
+import org.openremote.manager.setup.SetupService
+import org.openremote.manager.setup.builtin.KeycloakDemoSetup
+import org.openremote.model.geo.GeoJSONPoint
+import org.openremote.model.query.AssetQuery
+import org.openremote.model.query.filter.AttributePredicate
+import org.openremote.model.query.filter.LocationAttributePredicate
+import org.openremote.model.query.filter.RadialGeofencePredicate
+import org.openremote.model.query.filter.RectangularGeofencePredicate
+import org.openremote.model.query.filter.StringPredicate
+import org.openremote.model.query.filter.TenantPredicate
+import org.openremote.test.ManagerContainerTrait
+import spock.lang.Specification
+
+import static org.openremote.model.query.AssetQuery.Select.selectExcludeAll
+
+class AssetLocationQueryTest extends Specification implements ManagerContainerTrait {
+
+    static final int LOCATED_ASSETS = 100000
+    static final int GRID_COLUMNS = 400
+
+    def "Geofence queries use the maintained location column"() {
+
+        given: "the server container is started"
+        def serverPort = findEphemeralPort()
+        def container = startContainer(defaultConfig(serverPort), defaultServices())
+        def keycloakDemoSetup = container.getService(SetupService.class).getTaskOfType(KeycloakDemoSetup.class)
+        def assetStorageService = container.getService(AssetStorageService.class)
+        def persistenceService = container.getService(PersistenceService.class)
+        def realm = keycloakDemoSetup.masterTenant.realm
+
+        and: "a grid of located assets"
+        persistenceService.doTransaction { em ->
+            em.createNativeQuery(
+                "insert into ASSET (ID, OBJ_VERSION, CREATED_ON, NAME, ASSET_TYPE, ACCESS_PUBLIC_READ, REALM, ATTRIBUTES)" +
+                    " select 'location' || lpad(I::text, 14, '0'), 0, now(), 'Located ' || I, 'urn:openremote:asset:thing', false, '" + realm + "'," +
+                    " jsonb_build_object('location', jsonb_build_object('type', 'GEO_JSON_POINT', 'value', jsonb_build_object(" +
+                    "   'type', 'Point', 'coordinates', jsonb_build_array(5 + (I % " + GRID_COLUMNS + ") * 0.0025, 51 + (I / " + GRID_COLUMNS + ") * 0.004))))" +
+                    " from generate_series(0, " + (LOCATED_ASSETS - 1) + ") as I"
+            ).executeUpdate()
+            em.createNativeQuery("analyze ASSET").executeUpdate()
+        }
+
+        expect: "the location column to be maintained for the inserted assets"
+        persistenceService.doReturningTransaction { em ->
+            em.createNativeQuery("select count(*) from ASSET where ID like 'location%' and LOCATION is not null").getSingleResult()
+        } == LOCATED_ASSETS
+
+        when: "a radial geofence query is executed"
+        def radial = new RadialGeofencePredicate(1000, 51.5, 5.5)
+        def assets = assetStorageService.findAll(
+            new AssetQuery()
+                .select(selectExcludeAll())
+                .tenant(new TenantPredicate(realm))
+                .attributes(new LocationAttributePredicate(radial))
+        )
+
+        and: "the same geofence is evaluated on the attribute values of every asset"
+        def scannedCount = persistenceService.doReturningTransaction { em ->
+            em.createNativeQuery(
+                "select count(*) from ASSET A where A.REALM = '" + realm + "' and ST_DistanceSphere(ST_MakePoint(" +
+                    "(A.ATTRIBUTES #>> '{location,value,coordinates,0}')::numeric, (A.ATTRIBUTES #>> '{location,value,coordinates,1}')::numeric)," +
+                    " ST_MakePoint(5.5, 51.5)) <= 1000"
+            ).getSingleResult()
+        }
+
+        then: "the query should return the same assets"
+        assets.size() > 0
+        assets.size() == scannedCount
+
+        when: "a rectangular geofence query is executed"
+        assets = assetStorageService.findAll(
+            new AssetQuery()
+                .select(selectExcludeAll())
+                .tenant(new TenantPredicate(realm))
+                .attributes(new LocationAttributePredicate(new RectangularGeofencePredicate(51.401, 5.401, 51.419, 5.424)))
+        )
+
+        then: "the assets inside the rectangle should be returned"
+        // Columns 161 to 169 and rows 101 to 104
+        assets.size() == 9 * 4
+
+        when: "the location of an asset is stored as an attribute value"
+        def movedId = "location" + String.format("%014d", 0)
+        persistenceService.doTransaction { em ->
+            assetStorageService.storeAttributeValue(em, movedId, "location", new GeoJSONPoint(5.5, 51.5).toValue(), Long.toString(System.currentTimeMillis()))
+        }
+        assets = assetStorageService.findAll(
+            new AssetQuery()
+                .select(selectExcludeAll())
+                .tenant(new TenantPredicate(realm))
+                .attributes(new LocationAttributePredicate(radial))
+        )
+
+        then: "the moved asset should be found in its new location"
+        assets.any { it.id == movedId }
+
+        when: "the location attribute is matched by a name prefix"
+        assets = assetStorageService.findAll(
+            new AssetQuery()
+                .select(selectExcludeAll())
+                .tenant(new TenantPredicate(realm))
+                .attributes(new AttributePredicate(
+                    new StringPredicate(AssetQuery.Match.BEGIN, "locat"), radial))
+        )
+
+        then: "the geofence should be evaluated on the attribute values"
+        assets.any { it.id == movedId }
+
+        cleanup: "the located assets should be removed and the server stopped"
+        persistenceService?.doTransaction { em ->
+            em.createNativeQuery("delete from ASSET where ID like 'location%'").executeUpdate()
+        }
+        stopContainer(container)
+    }
+}
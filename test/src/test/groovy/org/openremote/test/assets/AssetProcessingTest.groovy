@@ -1,6 +1,7 @@
 package org.openremote.test.assets
 
 import org.openremote.agent.protocol.AbstractProtocol
+import org.openremote.container.timer.TimerService
 import org.openremote.manager.agent.AgentService
 import org.openremote.manager.asset.*
 import org.openremote.manager.datapoint.AssetDatapointService
@@ -306,4 +307,165 @@ class AssetProcessingTest extends Specification implements ManagerContainerTrait
         cleanup: "the server should be stopped"
         stopContainer(container)
     }
+
+    def "Check processing of attribute event batches in one transaction"() {
+
+        given: "expected conditions"
+        def conditions = new PollingConditions(timeout: 10, delay: 1)
+
+        and: "a mock protocol recording actuator writes"
+        def mockProtocolName = "urn:myCustom:batchProtocol"
+        def protocolDeployed = false
+        List<AttributeEvent> sendToActuatorEvents = []
+        def mockProtocol = new AbstractProtocol() {
+            @Override
+            protected List<MetaItemDescriptor> getProtocolConfigurationMetaItemDescriptors() {
+                return null
+            }
+
+            @Override
+            protected List<MetaItemDescriptor> getLinkedAttributeMetaItemDescriptors() {
+                return null
+            }
+
+            @Override
+            protected void doLinkProtocolConfiguration(AssetAttribute protocolConfiguration) {
+            }
+
+            @Override
+            protected void doUnlinkProtocolConfiguration(AssetAttribute protocolConfiguration) {
+            }
+
+            @Override
+            protected void doLinkAttribute(AssetAttribute attribute, AssetAttribute protocolConfiguration) {
+                protocolDeployed = true
+            }
+
+            @Override
+            protected void doUnlinkAttribute(AssetAttribute attribute, AssetAttribute protocolConfiguration) {
+            }
+
+            @Override
+            protected void processLinkedAttributeWrite(AttributeEvent event, Value processedValue, AssetAttribute protocolConfiguration) {
+                sendToActuatorEvents.add(event)
+            }
+
+            @Override
+            String getVersion() {
+                return "1.0"
+            }
+
+            @Override
+            String getProtocolName() {
+                return mockProtocolName
+            }
+
+            @Override
+            String getProtocolDisplayName() {
+                return "Batch Mock"
+            }
+        }
+
+        when: "the container is started"
+        def serverPort = findEphemeralPort()
+        def container = startContainer(defaultConfig(serverPort), defaultServices(mockProtocol))
+        def assetStorageService = container.getService(AssetStorageService.class)
+        def assetProcessingService = container.getService(AssetProcessingService.class)
+        def rulesService = container.getService(RulesService.class)
+        def timerService = container.getService(TimerService.class)
+        def keycloakDemoSetup = container.getService(SetupService.class).getTaskOfType(KeycloakDemoSetup.class)
+
+        then: "the container should be running and initialised"
+        conditions.eventually {
+            assert noEventProcessedIn(assetProcessingService, 500)
+        }
+
+        when: "a processor recording the current asset state and failing on request is registered"
+        List<String> processedCounters = []
+        List<String> processedLabels = []
+        assetProcessingService.processors.add(0, new AssetUpdateProcessor() {
+            @Override
+            boolean processAssetUpdate(EntityManager em, Asset asset, AssetAttribute attribute, AttributeEvent.Source source) throws AssetProcessingException {
+                if (attribute.nameOrThrow == "counter") {
+                    processedCounters.add(asset.getAttribute("counter").flatMap { it.valueAsNumber }.map { it.intValue() + "->" }.orElse("null->") + attribute.valueAsNumber.get().intValue())
+                } else if (attribute.nameOrThrow == "label") {
+                    processedLabels.add(attribute.valueAsString.get())
+                    if (attribute.valueAsString.get() == "fail") {
+                        throw new IllegalStateException("Processor failure requested")
+                    }
+                }
+                false
+            }
+        })
+
+        and: "a mock agent and a thing asset with a rule state counter, a label and a linked switch are created"
+        def mockAgent = new Asset("Batch Agent", AssetType.AGENT)
+        mockAgent.setAttributes(
+            ProtocolConfiguration.initProtocolConfiguration(new AssetAttribute("batch123"), mockProtocolName)
+        )
+        mockAgent.setRealm(keycloakDemoSetup.masterTenant.realm)
+        mockAgent = assetStorageService.merge(mockAgent)
+
+        def thing = new Asset("Batch Thing", AssetType.THING)
+        thing.setRealm(keycloakDemoSetup.masterTenant.realm)
+        thing.setAttributes(
+            new AssetAttribute("counter", AttributeValueType.NUMBER)
+                .setMeta(new MetaItem(MetaItemType.RULE_STATE, Values.create(true))),
+            new AssetAttribute("label", AttributeValueType.STRING),
+            new AssetAttribute("switch", AttributeValueType.BOOLEAN)
+                .setMeta(new MetaItem(MetaItemType.AGENT_LINK, new AttributeRef(mockAgent.id, "batch123").toArrayValue()))
+        )
+        thing = assetStorageService.merge(thing)
+        def thingId = thing.id
+
+        then: "the switch should be linked to the protocol"
+        conditions.eventually {
+            assert protocolDeployed
+        }
+
+        when: "a batch of events with two updates of the same attribute and an invalid event is sent"
+        def time = timerService.currentTimeMillis
+        assetProcessingService.sendAttributeEvents([
+            new AttributeEvent(thingId, "counter", Values.create(1), time - 30),
+            new AttributeEvent(thingId, "missing", Values.create(1), time - 30),
+            new AttributeEvent(thingId, "counter", Values.create(2), time - 20),
+            new AttributeEvent(thingId, "label", Values.create("batch"), time - 20)
+        ])
+
+        then: "the valid events should be stored and the second update should see the first"
+        conditions.eventually {
+            assert processedCounters == ["null->1", "1->2"]
+            def asset = assetStorageService.find(thingId, true)
+            assert asset.getAttribute("counter").get().valueAsNumber.get() == 2d
+            assert asset.getAttribute("label").get().valueAsString.get() == "batch"
+        }
+
+        when: "a batch fails in a processor after an update was stored and a switch was written"
+        assetProcessingService.sendAttributeEvents([
+            new AttributeEvent(thingId, "counter", Values.create(3), time - 10),
+            new AttributeEvent(thingId, "switch", Values.create(true), time - 10),
+            new AttributeEvent(thingId, "label", Values.create("fail"), time - 10)
+        ])
+
+        and: "a single event is sent afterwards"
+        assetProcessingService.sendAttributeEvent(new AttributeEvent(thingId, "label", Values.create("after"), time))
+
+        then: "only the failed event should have been rolled back"
+        conditions.eventually {
+            assert processedCounters == ["null->1", "1->2", "2->3"]
+            assert processedLabels == ["batch", "fail", "after"]
+            def asset = assetStorageService.find(thingId, true)
+            assert asset.getAttribute("label").get().valueAsString.get() == "after"
+            assert asset.getAttribute("counter").get().valueAsNumber.get() == 3d
+        }
+
+        and: "the rules facts and the actuator writes should match the stored updates"
+        rulesService.assetStates.getAll().find { it.id == thingId && it.attributeName == "counter" }.value.flatMap { Values.getNumber(it) }.orElse(null) == 3d
+        sendToActuatorEvents.size() == 1
+        sendToActuatorEvents[0].attributeRef == new AttributeRef(thingId, "switch")
+        sendToActuatorEvents[0].value.flatMap { Values.getBoolean(it) }.orElse(false)
+
+        cleanup: "the server should be stopped"
+        stopContainer(container)
+    }
 }
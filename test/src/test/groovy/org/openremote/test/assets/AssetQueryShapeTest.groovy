@@ -0,0 +1,117 @@
+package org.openremote.test.assets
+
+import org.openremote.manager.asset.AssetQueryShape
+import org.openremote.model.query.AssetQuery
+import org.openremote.model.query.filter.AttributePredicate
+import org.openremote.model.query.filter.NumberPredicate
+import org.openremote.model.query.filter.RadialGeofencePredicate
+import org.openremote.model.query.filter.StringPredicate
+import org.openremote.model.query.filter.TenantPredicate
+import spock.lang.Specification
+
+import java.lang.reflect.Field
+import java.lang.reflect.Modifier
+import java.lang.reflect.ParameterizedType
+import java.lang.reflect.Type
+import java.net.JarURLConnection
+
+class AssetQueryShapeTest extends Specification {
+
+    static AssetQuery createQuery(String realm, double temperature, String... ids) {
+        new AssetQuery()
+            .ids(ids)
+            .tenant(new TenantPredicate(realm))
+            .attributes(new AttributePredicate(new StringPredicate("temperature"), new NumberPredicate(temperature)))
+    }
+
+    /**
+     * Classes of the filter package, to find the subtypes a predicate field can hold.
+     */
+    static List<Class<?>> getFilterClasses() {
+        def url = AttributePredicate.getResource(AttributePredicate.simpleName + ".class")
+        def packagePath = AttributePredicate.package.name.replace('.', '/') + "/"
+        List<String> classNames
+        if (url.protocol == "jar") {
+            classNames = ((JarURLConnection) url.openConnection()).jarFile.entries().toList()
+                .collect { it.name }
+                .findAll { it.startsWith(packagePath) && it.endsWith(".class") && it.indexOf('/', packagePath.length()) < 0 }
+                .collect { it.substring(packagePath.length()) }
+        } else {
+            classNames = new File(url.toURI()).parentFile.list().findAll { it.endsWith(".class") }
+        }
+        classNames.collect { Class.forName(AttributePredicate.package.name + "." + it.substring(0, it.length() - 6)) }
+    }
+
+    static void addReachable(Type type, Set<Class<?>> reachable, List<Class<?>> filterClasses) {
+        if (type instanceof ParameterizedType) {
+            addReachable(type.rawType, reachable, filterClasses)
+            type.actualTypeArguments.each { addReachable(it, reachable, filterClasses) }
+            return
+        }
+        if (!(type instanceof Class)) {
+            return
+        }
+        Class<?> c = (Class<?>) type
+        if (c.isArray()) {
+            addReachable(c.componentType, reachable, filterClasses)
+            return
+        }
+        if (!c.name.startsWith("org.openremote.model.query.") || c.isEnum() || !reachable.add(c)) {
+            return
+        }
+        filterClasses.findAll { c != it && c.isAssignableFrom(it) }.each { addReachable(it, reachable, filterClasses) }
+        for (Class<?> declaring = c; declaring != null && declaring != Object; declaring = declaring.superclass) {
+            declaring.declaredFields.findAll { Field field -> !Modifier.isStatic(field.modifiers) && !field.synthetic }.each {
+                addReachable(it.genericType, reachable, filterClasses)
+            }
+        }
+    }
+
+    def "Queries only differing in parameter values have the same shape"() {
+
+        when: "the shapes of two queries with different parameter values are compared"
+        def shape1 = AssetQueryShape.of(createQuery("master", 20, "a", "b"))
+        def query2 = createQuery("building", 25, "c", "d")
+        def shape2 = AssetQueryShape.of(query2)
+
+        then: "they should have the same key"
+        shape1.key == shape2.key
+
+        and: "the nodes of both queries should be in the same order"
+        shape2.nodes.size() == shape1.nodes.size()
+        shape2.nodes[0].is(query2)
+        shape2.nodes.collect { it.class } == shape1.nodes.collect { it.class }
+
+        and: "the values should not be part of the key"
+        !shape1.key.contains("master")
+        !shape1.key.contains("20.0")
+    }
+
+    def "Queries differing in structure have different shapes"() {
+
+        expect: "the number of values, attribute names and empty values to change the key"
+        AssetQueryShape.of(createQuery("master", 20, "a")).key != AssetQueryShape.of(createQuery("master", 20, "a", "b")).key
+        AssetQueryShape.of(createQuery("master", 20, "a")).key != AssetQueryShape.of(createQuery("", 20, "a")).key
+        AssetQueryShape.of(new AssetQuery().attributes(new AttributePredicate("temperature"))).key !=
+            AssetQueryShape.of(new AssetQuery().attributes(new AttributePredicate("humidity"))).key
+
+        and: "limits which are part of the SQL to change the key"
+        AssetQueryShape.of(new AssetQuery().limit(1)).key != AssetQueryShape.of(new AssetQuery().limit(2)).key
+    }
+
+    def "Every field of a query is classified for its shape"() {
+
+        given: "all classes which can be reached from the fields of a query"
+        Set<Class<?>> reachable = new LinkedHashSet<>()
+        addReachable(AssetQuery, reachable, getFilterClasses())
+
+        expect: "the predicates, nested classes and geofences to be reached"
+        reachable.containsAll([AssetQuery.Select, AssetQuery.Cursor, AttributePredicate, NumberPredicate, RadialGeofencePredicate])
+
+        when: "the shape fields of the classes are read"
+        reachable.findAll { !it.isInterface() }.each { AssetQueryShape.getFields(it) }
+
+        then: "every field should have been classified as parameter, shape only or structure"
+        notThrown(IllegalStateException)
+    }
+}
@@ -1022,4 +1022,154 @@ class AssetQueryTest extends Specification implements ManagerContainerTrait {
         assets.size() == 1
         assets[0].id == lobby.id
     }
+
+    def "Asset tree path is maintained when assets are moved"() {
+
+        when: "a small asset tree is created in the master realm"
+        def smartOffice = assetStorageService.find(managerDemoSetup.smartOfficeId, true)
+        def parent = assetStorageService.merge(new Asset("Path Parent", THING, smartOffice))
+        def child = assetStorageService.merge(new Asset("Path Child", THING, parent))
+        def grandChild = assetStorageService.merge(new Asset("Path Grand Child", THING, child))
+
+        then: "the paths should be stored"
+        assetStorageService.find(grandChild.id, true).path == [grandChild.id, child.id, parent.id, managerDemoSetup.smartOfficeId] as String[]
+
+        when: "the child is moved to the root of the realm"
+        child = assetStorageService.find(child.id, true)
+        child.setParentId(null)
+        child = assetStorageService.merge(child)
+
+        then: "the paths of the child and its descendants should be updated"
+        assetStorageService.find(child.id, true).path == [child.id] as String[]
+        assetStorageService.find(grandChild.id, true).path == [grandChild.id, child.id] as String[]
+
+        and: "path, descendant and recursive queries should use the new tree"
+        assetStorageService.findAll(
+            new AssetQuery()
+                .select(selectExcludePathAndAttributes())
+                .paths(new PathPredicate(parent.id))
+        ).collect { it.id } == [parent.id]
+        assetStorageService.findAll(
+            new AssetQuery()
+                .select(selectExcludePathAndAttributes())
+                .paths(new PathPredicate(child.id))
+        ).collect { it.id } as Set == [child.id, grandChild.id] as Set
+        assetStorageService.isDescendantAsset(child.id, grandChild.id)
+        !assetStorageService.isDescendantAsset(parent.id, grandChild.id)
+        assetStorageService.findAll(
+            new AssetQuery()
+                .ids(child.id)
+                .recursive(true)
+        ).collect { it.id } as Set == [child.id, grandChild.id] as Set
+
+        cleanup: "the assets are removed"
+        if (grandChild != null && child != null && parent != null) {
+            assetStorageService.delete([grandChild.id])
+            assetStorageService.delete([child.id])
+            assetStorageService.delete([parent.id])
+        }
+    }
+
+    def "Queries of the same shape reuse the prepared query and server side statement"() {
+
+        given: "a query for a single asset"
+        def query = {
+            new AssetQuery()
+                .ids(managerDemoSetup.apartment1LivingroomId)
+        }
+        def hits = assetStorageService.preparedQueryCacheStats.hitCount()
+
+        when: "the query is executed repeatedly on the same connection"
+        def preparedStatements = persistenceService.doReturningTransaction { EntityManager em ->
+            (1..5).each {
+                assert assetStorageService.find(em, query()).id == managerDemoSetup.apartment1LivingroomId
+            }
+            em.unwrap(org.hibernate.Session.class).doReturningWork { connection ->
+                def st = connection.prepareStatement("select count(*) from PG_PREPARED_STATEMENTS where not FROM_SQL and STATEMENT like '%from Asset A%'")
+                def rs = st.executeQuery()
+                rs.next()
+                def count = rs.getInt(1)
+                st.close()
+                count
+            }
+        }
+
+        then: "the generated SQL should have been reused"
+        assetStorageService.preparedQueryCacheStats.hitCount() >= hits + 4
+
+        and: "the statement should have been prepared on the server"
+        preparedStatements >= 1
+
+        when: "the caller modifies the query instance after execution"
+        def modifiedQuery = query()
+        def asset = assetStorageService.find(modifiedQuery)
+        modifiedQuery.ids(managerDemoSetup.apartment1KitchenId)
+
+        and: "the original query is executed again"
+        def cachedAsset = assetStorageService.find(query())
+
+        then: "the cached query should not be affected"
+        asset.id == managerDemoSetup.apartment1LivingroomId
+        cachedAsset.id == managerDemoSetup.apartment1LivingroomId
+
+        when: "queries of the same shape with other values are executed"
+        hits = assetStorageService.preparedQueryCacheStats.hitCount()
+        def kitchen = assetStorageService.find(new AssetQuery().ids(managerDemoSetup.apartment1KitchenId))
+        def hallway = assetStorageService.find(new AssetQuery().ids(managerDemoSetup.apartment1HallwayId))
+
+        then: "the prepared query should be reused with the values of each query"
+        kitchen.id == managerDemoSetup.apartment1KitchenId
+        hallway.id == managerDemoSetup.apartment1HallwayId
+        assetStorageService.preparedQueryCacheStats.hitCount() >= hits + 2
+
+        when: "a query with more values is executed"
+        def rooms = assetStorageService.findAll(
+            new AssetQuery().ids(managerDemoSetup.apartment1KitchenId, managerDemoSetup.apartment1HallwayId)
+        )
+
+        then: "a query with a placeholder for each value should be used"
+        rooms.collect { it.id } as Set == [managerDemoSetup.apartment1KitchenId, managerDemoSetup.apartment1HallwayId] as Set
+    }
+
+    def "Keyset pagination and chunked results"() {
+
+        given: "a query for all assets of a realm"
+        def query = { OrderBy orderBy ->
+            new AssetQuery()
+                .select(selectExcludePathAndAttributes())
+                .tenant(new TenantPredicate(keycloakDemoSetup.tenantBuilding.realm))
+                .orderBy(orderBy)
+        }
+
+        expect: "paging through the results should return the same assets as a single query"
+        [new OrderBy(CREATED_ON), new OrderBy(NAME), new OrderBy(NAME, true)].each { orderBy ->
+            def allAssets = assetStorageService.findAll(query(orderBy))
+            assert allAssets.size() > 3
+
+            def pagedAssets = []
+            def page = assetStorageService.findAll(query(orderBy).limit(3))
+            while (!page.isEmpty()) {
+                assert page.size() <= 3
+                pagedAssets.addAll(page)
+                page = assetStorageService.findAll(query(orderBy).limit(3).after(page.last()))
+            }
+            assert pagedAssets.collect { it.id } == allAssets.collect { it.id }
+        }
+
+        when: "the results are retrieved in chunks"
+        def allAssets = assetStorageService.findAll(query(new OrderBy(NAME)))
+        def chunks = []
+        assetStorageService.findAll(query(new OrderBy(NAME)), 3) { chunk -> chunks.add(chunk) }
+
+        then: "all assets should be returned in order in chunks of the requested size"
+        chunks.size() == Math.ceil(allAssets.size() / 3) as int
+        chunks.every { it.size() <= 3 }
+        chunks.flatten().collect { it.id } == allAssets.collect { it.id }
+
+        when: "a cursor is used with an unsupported order"
+        assetStorageService.findAll(query(new OrderBy(OrderBy.Property.ASSET_TYPE)).after(allAssets.first()))
+
+        then: "the query should be rejected"
+        thrown(IllegalArgumentException)
+    }
 }
@@ -0,0 +1,116 @@
+package org.openremote.test.container
+
+import org.openremote.container.Container
+import org.openremote.container.ContainerService
+import org.openremote.manager.map.MapService
+import org.openremote.test.ManagerContainerTrait
+import spock.lang.Specification
+
+class ContainerStartupTest extends Specification implements ManagerContainerTrait {
+
+    static class IndependentService implements ContainerService {
+        long initStart
+        long initEnd
+        String initThread
+
+        @Override
+        int getPriority() {
+            DEFAULT_PRIORITY
+        }
+
+        @Override
+        Collection<Class<? extends ContainerService>> getDependencies() {
+            []
+        }
+
+        @Override
+        void init(Container container) throws Exception {
+            initStart = System.currentTimeMillis()
+            initThread = Thread.currentThread().name
+            Thread.sleep(200)
+            initEnd = System.currentTimeMillis()
+        }
+
+        @Override
+        void start(Container container) throws Exception {
+        }
+
+        @Override
+        void stop(Container container) throws Exception {
+        }
+    }
+
+    static class DependentService implements ContainerService {
+        long initStart
+        long startStart
+
+        @Override
+        int getPriority() {
+            DEFAULT_PRIORITY
+        }
+
+        @Override
+        Collection<Class<? extends ContainerService>> getDependencies() {
+            [IndependentService.class]
+        }
+
+        @Override
+        void init(Container container) throws Exception {
+            initStart = System.currentTimeMillis()
+        }
+
+        @Override
+        void start(Container container) throws Exception {
+            startStart = System.currentTimeMillis()
+        }
+
+        @Override
+        void stop(Container container) throws Exception {
+        }
+    }
+
+    def "Services are started in dependency order with a startup timeline"() {
+
+        given: "services with declared dependencies"
+        def independentService = new IndependentService()
+        def dependentService = new DependentService()
+
+        when: "the container is started"
+        def serverPort = findEphemeralPort()
+        def container = startContainerNoDemoImport(defaultConfig(serverPort), defaultServices(independentService, dependentService))
+        def timeline = container.startupTimeline
+
+        then: "the dependent service should have been initialized after its dependency"
+        independentService.initThread.startsWith("Container Startup")
+        dependentService.initStart >= independentService.initEnd
+
+        and: "all services should have been initialized before any service was started"
+        dependentService.startStart >= independentService.initEnd
+
+        and: "the timeline should contain the init and start phase of each service"
+        timeline.durationMillis > 0
+        timeline.entries.size() == container.services.length * 2
+        timeline.entries.any { it.service == MapService.simpleName && it.phase == "start" }
+        timeline.entries.find { it.service == IndependentService.simpleName && it.phase == "init" }.durationMillis >= 200
+        timeline.getSlowestEntries(5).size() == 5
+
+        and: "the report should have a line per entry"
+        timeline.report.readLines().size() == timeline.entries.size()
+        timeline.report.readLines().any { it.contains("init") && it.contains(DependentService.simpleName) }
+
+        cleanup: "the server should be stopped"
+        stopContainer(container)
+    }
+
+    def "Dependencies must be added to the container before the dependent service"() {
+
+        given: "a container with a service added before its dependency"
+        def container = new Container(defaultConfig(findEphemeralPort()), [new DependentService(), new IndependentService()])
+
+        when: "the container is started"
+        container.start()
+
+        then: "startup should fail"
+        thrown(IllegalStateException)
+    }
+}
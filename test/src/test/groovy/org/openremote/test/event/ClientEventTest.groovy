@@ -19,6 +19,7 @@
  */
 package org.openremote.test.event
 
+import org.openremote.container.Container
 import org.openremote.manager.agent.AgentService
 import org.openremote.manager.asset.AssetProcessingService
 import org.openremote.manager.asset.AssetStorageService
@@ -31,7 +32,9 @@ import org.openremote.model.asset.agent.ConnectionStatus
 import org.openremote.model.attribute.AttributeEvent
 import org.openremote.model.attribute.AttributeRef
 import org.openremote.model.attribute.MetaItem
+import org.openremote.model.event.shared.CancelEventSubscription
 import org.openremote.model.event.shared.EventSubscription
+import org.openremote.model.event.shared.RenewEventSubscriptions
 import org.openremote.model.event.shared.SharedEvent
 import org.openremote.model.geo.GeoJSONPoint
 import org.openremote.model.value.Values
@@ -43,7 +46,9 @@ import spock.util.concurrent.PollingConditions
 
 import static org.openremote.container.util.MapAccess.getString
 import static org.openremote.manager.event.ClientEventService.CLIENT_EVENT_QUEUE
+import static org.openremote.manager.event.ClientEventService.CLIENT_INBOUND_QUEUE
 import static org.openremote.manager.event.ClientEventService.WEBSOCKET_EVENTS
+import static org.openremote.manager.event.ClientEventService.readClientMessage
 import static org.openremote.manager.security.ManagerIdentityProvider.SETUP_ADMIN_PASSWORD
 import static org.openremote.manager.security.ManagerIdentityProvider.SETUP_ADMIN_PASSWORD_DEFAULT
 import static org.openremote.model.Constants.*
@@ -71,6 +76,7 @@ class ClientEventTest extends Specification implements ManagerContainerTrait, Gw
 
         expect: "all client events happening during startup to be consumed"
         noPendingExchangesOnMessageEndpoint(container, CLIENT_EVENT_QUEUE)
+        noPendingExchangesOnMessageEndpoint(container, CLIENT_INBOUND_QUEUE)
 
         when: "a client websocket connection and attached event bus and service"
         def accessToken = {
@@ -233,4 +239,23 @@ class ClientEventTest extends Specification implements ManagerContainerTrait, Gw
         and: "the server should be stopped"
         stopContainer(container)
     }
-}
\ No newline at end of file
+
+    def "Client messages are converted by prefix"() {
+
+        given: "the inbound message reader"
+        def read = { Object message -> readClientMessage(message) }
+
+        expect: "client messages to be converted to their type"
+        read("SUBSCRIBE:" + Container.JSON.writeValueAsString(new EventSubscription(AttributeEvent.class))) instanceof EventSubscription
+        read("UNSUBSCRIBE:" + Container.JSON.writeValueAsString(new CancelEventSubscription(AttributeEvent.class))) instanceof CancelEventSubscription
+        read("RENEW:" + Container.JSON.writeValueAsString(new RenewEventSubscriptions(["1"] as String[]))) instanceof RenewEventSubscriptions
+        read("EVENT:" + Container.JSON.writeValueAsString(new AttributeEvent("123", "foo", Values.create(true)))) instanceof AttributeEvent
+
+        and: "unknown or invalid messages and objects to be returned unchanged"
+        read("FOO:{}") == "FOO:{}"
+        read("SUBSCRIBE:{invalid") == "SUBSCRIBE:{invalid"
+        def subscription = new EventSubscription(AttributeEvent.class)
+        read(subscription).is(subscription)
+        read(null) == null
+    }
+}
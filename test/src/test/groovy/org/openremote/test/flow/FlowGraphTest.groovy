@@ -0,0 +1,139 @@
+package org.openremote.test.flow
+
+import org.openremote.container.Container
+import org.openremote.manager.rules.flow.FlowGraph
+import org.openremote.manager.rules.flow.NodeExecutionRequestInfo
+import org.openremote.manager.rules.flow.NodeModel
+import org.openremote.model.rules.flow.NodeCollection
+import org.openremote.model.value.NumberValue
+import spock.lang.Specification
+
+class FlowGraphTest extends Specification {
+
+    static Map numberNode(String id, double value) {
+        [
+            id       : id,
+            type     : "INPUT",
+            name     : "NUMBER_INPUT",
+            inputs   : [],
+            outputs  : [[id: id + "-out", nodeId: id, name: "value", type: "NUMBER", index: 0]],
+            internals: [[name: "value", value: value]]
+        ]
+    }
+
+    static Map addNode(String id) {
+        [
+            id       : id,
+            type     : "PROCESSOR",
+            name     : "ADD_OPERATOR",
+            inputs   : [
+                [id: id + "-a", nodeId: id, name: "a", type: "NUMBER", index: 0],
+                [id: id + "-b", nodeId: id, name: "b", type: "NUMBER", index: 1]
+            ],
+            outputs  : [[id: id + "-out", nodeId: id, name: "c", type: "NUMBER", index: 0]],
+            internals: []
+        ]
+    }
+
+    /**
+     * A number input followed by a chain of add operators that add the previous result to itself, so each level
+     * doubles the value and the unshared expression tree doubles in size.
+     */
+    static NodeCollection createDoublingFlow(int levels) {
+        def nodes = [numberNode("n0", 1)]
+        def connections = []
+        (1..levels).each { level ->
+            def id = "n" + level
+            nodes << addNode(id)
+            connections << [from: "n" + (level - 1) + "-out", to: id + "-a"]
+            connections << [from: "n" + (level - 1) + "-out", to: id + "-b"]
+        }
+        Container.JSON.convertValue([name: "Doubling " + levels, description: "", nodes: nodes, connections: connections], NodeCollection.class)
+    }
+
+    static double evaluateLast(NodeExecutionRequestInfo info) {
+        ((NumberValue) NodeModel.ADD_OPERATOR.implementation.execute(info)).number
+    }
+
+    def "Compiled flow graphs are sorted and evaluate shared expressions once"() {
+
+        given: "a generated flow"
+        def collection = createDoublingFlow(10)
+
+        when: "the flow is compiled"
+        def graph = new FlowGraph(collection)
+        def last = collection.nodes.last()
+
+        then: "the nodes should be sorted and the upstream nodes resolved once each"
+        graph.sortedNodes*.id == (0..10).collect { "n" + it }
+        graph.getUpstreamNodes(last)*.id == (0..9).collect { "n" + it }
+        graph.getInputs(last)*.id == ["n9-out", "n9-out"]
+
+        and: "the compiled and the original evaluation should return the same value"
+        evaluateLast(new NodeExecutionRequestInfo(graph, last, last.outputs[0], null, null, null, null, null, null)) == 1024d
+        evaluateLast(new NodeExecutionRequestInfo(collection, last, last.outputs[0], null, null, null, null, null, null)) == 1024d
+
+        and: "node internals should be decoded once"
+        graph.getInternalValue(collection.nodes[0], 0, Float.class).is(graph.getInternalValue(collection.nodes[0], 0, Float.class))
+    }
+
+    def "Flows with cycles are rejected"() {
+
+        given: "a flow with two add operators feeding each other"
+        def collection = Container.JSON.convertValue([
+            name       : "Cycle",
+            nodes      : [addNode("a"), addNode("b"), numberNode("n", 1)],
+            connections: [
+                [from: "a-out", to: "b-a"],
+                [from: "b-out", to: "a-a"],
+                [from: "n-out", to: "a-b"],
+                [from: "n-out", to: "b-b"]
+            ]
+        ], NodeCollection.class)
+
+        when: "the flow is compiled"
+        new FlowGraph(collection)
+
+        then: "the flow should be rejected"
+        thrown(IllegalArgumentException)
+    }
+
+    def "Each node of large generated flows is evaluated once per firing"() {
+
+        given: "a small generated flow and generated flows of increasing size"
+        def smallCollection = createDoublingFlow(14)
+        def smallLast = smallCollection.nodes.last()
+        def levels = [100, 200, 400]
+
+        when: "the small flow is evaluated with and without the compiled graph"
+        def smallValue = evaluateLast(new NodeExecutionRequestInfo(smallCollection, smallLast, smallLast.outputs[0], null, null, null, null, null, null))
+        def smallGraph = new FlowGraph(smallCollection)
+        def compiledSmallValue = evaluateLast(new NodeExecutionRequestInfo(smallGraph, smallLast, smallLast.outputs[0], null, null, null, null, null, null))
+
+        then: "the results should be the same"
+        smallValue == Math.pow(2, 14)
+        compiledSmallValue == smallValue
+
+        when: "the larger flows are compiled and evaluated twice, once per firing"
+        def evaluations = levels.collect { level ->
+            def collection = createDoublingFlow(level)
+            def last = collection.nodes.last()
+            def info = new NodeExecutionRequestInfo(new FlowGraph(collection), last, last.outputs[0], null, null, null, null, null, null)
+            (1..2).collect {
+                info.setFacts(null)
+                def value = evaluateLast(info)
+                [value: value, evaluatedSockets: info.results.size()]
+            }
+        }
+
+        then: "the results should be correct"
+        evaluations.eachWithIndex { firings, i ->
+            assert firings.every { it.value == Math.pow(2, levels[i]) }
+        }
+
+        and: "every upstream node should have been evaluated exactly once in each firing, linear in the flow size"
+        evaluations.eachWithIndex { firings, i ->
+            assert firings.every { it.evaluatedSockets == levels[i] }
+        }
+    }
+}
@@ -1,16 +1,77 @@
 package org.openremote.test.map
 
 import groovy.json.JsonSlurper
+import org.openremote.manager.map.MapService
 import org.openremote.model.map.MapResource
 import org.openremote.test.ManagerContainerTrait
 import spock.lang.Specification
 
+import javax.ws.rs.core.HttpHeaders
+import java.nio.file.Files
+import java.nio.file.Path
+import java.sql.DriverManager
+import java.util.concurrent.Callable
+import java.util.concurrent.Executors
+import java.util.zip.GZIPInputStream
+import java.util.zip.GZIPOutputStream
+import java.util.zip.ZipInputStream
+
 import static org.openremote.container.util.MapAccess.getString
 import static org.openremote.manager.security.ManagerIdentityProvider.*
 import static org.openremote.model.Constants.*
 
 class MapResourceTest extends Specification implements ManagerContainerTrait {
 
+    static final int TILE_ZOOM = 4
+
+    static byte[] gzip(byte[] data) {
+        def bytes = new ByteArrayOutputStream()
+        new GZIPOutputStream(bytes).withStream { it.write(data) }
+        bytes.toByteArray()
+    }
+
+    // The HTTP client might have decoded the tile already
+    static String readTile(byte[] data) {
+        data.length > 1 && (data[0] & 0xff) == 0x1f && (data[1] & 0xff) == 0x8b
+            ? new GZIPInputStream(new ByteArrayInputStream(data)).text
+            : new String(data)
+    }
+
+    /**
+     * Writes a sample MBTiles file with all tiles of the given zoom level, each gzipped tile contains its own
+     * coordinates.
+     */
+    static Path createSampleTiles(int zoom) {
+        def path = Files.createTempFile("or-map-test", ".mbtiles")
+        Files.delete(path)
+        def connection = DriverManager.getConnection("jdbc:sqlite:" + path.toAbsolutePath())
+        try {
+            connection.createStatement().with {
+                execute("create table METADATA (NAME text, VALUE text)")
+                execute("create table TILES (ZOOM_LEVEL integer, TILE_COLUMN integer, TILE_ROW integer, TILE_DATA blob)")
+                execute("create unique index TILE_INDEX on TILES (ZOOM_LEVEL, TILE_COLUMN, TILE_ROW)")
+                close()
+            }
+            connection.setAutoCommit(false)
+            def insert = connection.prepareStatement("insert into TILES values (?, ?, ?, ?)")
+            def size = 1 << zoom
+            (0..<size).each { column ->
+                (0..<size).each { row ->
+                    insert.setInt(1, zoom)
+                    insert.setInt(2, column)
+                    insert.setInt(3, row)
+                    insert.setBytes(4, gzip(("tile " + zoom + "/" + column + "/" + row).padRight(4096, ".").bytes))
+                    insert.addBatch()
+                }
+            }
+            insert.executeBatch()
+            connection.commit()
+        } finally {
+            connection.close()
+        }
+        path
+    }
+
     def "Retrieve map settings"() {
         given: "the server container is started"
         def serverPort = findEphemeralPort()
@@ -50,4 +111,125 @@ class MapResourceTest extends Specification implements ManagerContainerTrait {
         cleanup: "the server should be stopped"
         stopContainer(container)
     }
+
+    def "Serve cached map tiles under load"() {
+        given: "a sample map tiles file"
+        def tilesPath = createSampleTiles(TILE_ZOOM)
+
+        and: "the server container is started with the sample tiles"
+        def serverPort = findEphemeralPort()
+        def container = startContainerNoDemoImport(
+            defaultConfig(serverPort) << [(MapService.MAP_TILES_PATH): tilesPath.toAbsolutePath().toString()],
+            defaultServices()
+        )
+        def mapService = container.getService(MapService.class)
+
+        and: "a test client target"
+        def clientTarget = getClientApiTarget(serverUri(serverPort), MASTER_REALM)
+
+        when: "a tile is requested"
+        def response = clientTarget.path("map/tile/" + TILE_ZOOM + "/1/2").request().get()
+        def etag = response.getHeaderString(HttpHeaders.ETAG)
+        def tile = response.readEntity(byte[].class)
+
+        then: "the tile of the flipped row should be returned with cache headers"
+        response.status == 200
+        readTile(tile).startsWith("tile " + TILE_ZOOM + "/1/" + ((1 << TILE_ZOOM) - 1 - 2))
+        etag != null
+        response.getHeaderString(HttpHeaders.CACHE_CONTROL).contains("max-age")
+
+        when: "the tile is requested again with its entity tag"
+        response = clientTarget.path("map/tile/" + TILE_ZOOM + "/1/2").request().header(HttpHeaders.IF_NONE_MATCH, etag).get()
+        response.close()
+
+        then: "the tile should not have been modified"
+        response.status == 304
+
+        when: "a missing tile is requested"
+        response = clientTarget.path("map/tile/" + (TILE_ZOOM + 1) + "/0/0").request().get()
+        response.close()
+
+        then: "it should not be found"
+        response.status == 404
+
+        when: "a tile of an invalid zoom level is requested"
+        response = clientTarget.path("map/tile/31/0/0").request().get()
+        response.close()
+
+        then: "the request should be rejected"
+        response.status == 400
+
+        when: "a tile outside of the zoom level is requested"
+        response = clientTarget.path("map/tile/" + TILE_ZOOM + "/" + (1 << TILE_ZOOM) + "/0").request().get()
+        response.close()
+
+        then: "the request should be rejected"
+        response.status == 400
+
+        when: "all tiles are requested concurrently several times"
+        def size = 1 << TILE_ZOOM
+        def requests = []
+        3.times {
+            (0..<size).each { column ->
+                (0..<size).each { row ->
+                    requests << { ->
+                        def tileResponse = clientTarget.path("map/tile/" + TILE_ZOOM + "/" + column + "/" + row).request().get()
+                        try {
+                            tileResponse.status == 200 ? readTile(tileResponse.readEntity(byte[].class)).length() : -1
+                        } finally {
+                            tileResponse.close()
+                        }
+                    } as Callable<Integer>
+                }
+            }
+        }
+        def executor = Executors.newFixedThreadPool(8)
+        def results = executor.invokeAll(requests).collect { it.get() }
+        executor.shutdown()
+
+        then: "all tiles should have been served and repeated requests served from the cache"
+        results.every { it == 4096 }
+        mapService.tileCacheStats.hitCount() >= size * size * 2
+
+        when: "the tiles of a bounding box are requested as a tile pack"
+        response = clientTarget.path("map/tiles/" + TILE_ZOOM)
+            .queryParam("west", -180).queryParam("south", 0.1).queryParam("east", -0.1).queryParam("north", 85)
+            .request().get()
+        def packETag = response.getHeaderString(HttpHeaders.ETAG)
+        def entries = [:]
+        new ZipInputStream(new ByteArrayInputStream(response.readEntity(byte[].class))).withStream { zip ->
+            def entry
+            while ((entry = zip.nextEntry) != null) {
+                entries[entry.name] = readTile(zip.bytes)
+            }
+        }
+
+        then: "the pack should contain the tiles of the north western quarter"
+        response.status == 200
+        packETag != null
+        entries.size() == (size / 2) * (size / 2)
+        entries[TILE_ZOOM + "/0/0.pbf"].startsWith("tile " + TILE_ZOOM + "/0/" + (size - 1))
+
+        when: "the tile pack is requested again with its entity tag"
+        response = clientTarget.path("map/tiles/" + TILE_ZOOM)
+            .queryParam("west", -180).queryParam("south", 0.1).queryParam("east", -0.1).queryParam("north", 85)
+            .request().header(HttpHeaders.IF_NONE_MATCH, packETag).get()
+        response.close()
+
+        then: "the tile pack should not have been modified"
+        response.status == 304
+
+        when: "a tile pack covering too many tiles is requested"
+        response = clientTarget.path("map/tiles/" + (TILE_ZOOM + 4))
+            .queryParam("west", -180).queryParam("south", -85).queryParam("east", 180).queryParam("north", 85)
+            .request().get()
+        response.close()
+
+        then: "the request should be rejected"
+        response.status == 400
+
+        cleanup: "the server should be stopped and the sample tiles removed"
+        stopContainer(container)
+        Files.deleteIfExists(tilesPath)
+    }
 }
@@ -0,0 +1,130 @@
+package org.openremote.test.mqtt
+
+import io.moquette.BrokerConstants
+import org.openremote.container.util.UniqueIdentifierGenerator
+import org.openremote.manager.asset.AssetStorageService
+import org.openremote.manager.mqtt.MqttBrokerService
+import org.openremote.manager.setup.SetupService
+import org.openremote.manager.setup.builtin.ManagerDemoSetup
+import org.openremote.test.ManagerContainerTrait
+import org.openremote.test.RawClient
+import spock.lang.Specification
+import spock.util.concurrent.PollingConditions
+
+import static org.openremote.container.util.MapAccess.getInteger
+import static org.openremote.container.util.MapAccess.getString
+import static org.openremote.manager.mqtt.KeycloakAuthenticator.MQTT_CLIENT_ID_SEPARATOR
+import static org.openremote.manager.mqtt.MqttBrokerService.*
+
+/**
+ * Publishes a burst of attribute values through the embedded MQTT broker and reports the throughput of the text and
+ * binary ingest paths.
+ */
+class MqttPublishThroughputTest extends Specification implements ManagerContainerTrait {
+
+    static final int PUBLISH_COUNT = 2000
+
+    static void publish(RawClient client, String topic, int... payload) {
+        client.write(0x30) // MQTT Control Packet type(3) with QoS level 0
+        writeRemainingLength(client, 2 + topic.size() + payload.length)
+        client.write(0x00, topic.size().byteValue()) // Topic Length
+            .write(topic) // Topic
+            .write(payload) // content
+    }
+
+    static void writeRemainingLength(RawClient client, int length) {
+        while (true) {
+            int encoded = length % 128
+            length = length.intdiv(128)
+            client.write(length > 0 ? encoded | 0x80 : encoded)
+            if (length == 0) {
+                break
+            }
+        }
+    }
+
+    def "Mqtt publish throughput"() {
+
+        given: "the container environment is started"
+        def conditions = new PollingConditions(timeout: 60, delay: 0.2)
+        def serverPort = findEphemeralPort()
+        def container = startContainer(defaultConfig(serverPort), defaultServices())
+        def managerDemoSetup = container.getService(SetupService.class).getTaskOfType(ManagerDemoSetup.class)
+        def mqttBrokerService = container.getService(MqttBrokerService.class)
+        def assetStorageService = container.getService(AssetStorageService.class)
+        def mqttClientId = managerDemoSetup.realmBuildingTenant + MQTT_CLIENT_ID_SEPARATOR + UniqueIdentifierGenerator.generateId()
+        def clientId = MQTT_CLIENT_ID_PREFIX + UniqueIdentifierGenerator.generateId(managerDemoSetup.realmBuildingTenant)
+        def clientSecret = UniqueIdentifierGenerator.generateId(managerDemoSetup.realmBuildingTenant)
+        def mqttHost = getString(container.getConfig(), MQTT_SERVER_LISTEN_HOST, BrokerConstants.HOST)
+        def mqttPort = getInteger(container.getConfig(), MQTT_SERVER_LISTEN_PORT, BrokerConstants.PORT)
+
+        when: "a mqtt client connects"
+        def client = RawClient.connect(mqttHost, mqttPort).isConnected()
+        // CONNECT
+            .write(0x10) // MQTT Control Packet type(1)
+            .write((16 + mqttClientId.size() + clientId.size() + clientSecret.size()).byteValue()) // Remaining Length
+            .write(0x00, 0x04) // Protocol Name Length
+            .write("MQTT") // Protocol Name
+            .write(0x04) // Protocol Level 3.1.1
+            .write(0xC2) // User Name, Password and Clean Session flags
+            .write(0x00, 0x00) // Keep Alive
+            .write(0x00, mqttClientId.size().byteValue())
+            .write(mqttClientId)
+            .write(0x00, clientId.size().byteValue())
+            .write(clientId)
+            .write(0x00, clientSecret.size().byteValue())
+            .write(clientSecret)
+            .flush()
+
+        then: "mqtt connection should exist"
+        conditions.eventually {
+            assert mqttBrokerService.mqttConnectionMap.get(mqttClientId) != null
+        }
+
+        when: "the client publishes a burst of text values to an asset attribute"
+        def topic = ASSETS_TOPIC + TOPIC_SEPARATOR + managerDemoSetup.apartment1HallwayId + TOPIC_SEPARATOR + "lights"
+        (1..PUBLISH_COUNT).each {
+            publish(client, topic, ((it % 2 == 0 ? "true" : "false").bytes as int[]))
+        }
+        client.flush()
+
+        then: "the last value should be stored"
+        conditions.eventually {
+            def asset = assetStorageService.find(managerDemoSetup.apartment1HallwayId, true)
+            assert asset.getAttribute("lights").get().valueAsBoolean.orElse(false)
+        }
+
+        when: "the client publishes a burst of binary values to the same asset attribute"
+        def binaryTopic = topic + TOPIC_SEPARATOR + ASSET_ATTRIBUTE_BINARY_VALUE_TOPIC
+        (1..PUBLISH_COUNT).each {
+            publish(client, binaryTopic, it % 2 == 0 ? 0x00 : 0x01)
+        }
+        client.flush()
+
+        then: "the last value should be stored"
+        conditions.eventually {
+            def asset = assetStorageService.find(managerDemoSetup.apartment1HallwayId, true)
+            assert !asset.getAttribute("lights").get().valueAsBoolean.orElse(true)
+        }
+
+        when: "the client publishes bulk updates for the same asset attribute"
+        def bulkTopic = ASSETS_TOPIC + TOPIC_SEPARATOR + ASSET_BULK_TOPIC
+        def bulkCount = PUBLISH_COUNT.intdiv(10)
+        (1..bulkCount).each { batch ->
+            def updates = (1..10).collect {
+                "{\"assetId\":\"${managerDemoSetup.apartment1HallwayId}\",\"attributeName\":\"lights\",\"value\":${batch == bulkCount && it == 10}}"
+            }
+            publish(client, bulkTopic, ("[" + updates.join(",") + "]").bytes as int[])
+        }
+        client.flush()
+
+        then: "the last value of the last batch should be stored"
+        conditions.eventually {
+            def asset = assetStorageService.find(managerDemoSetup.apartment1HallwayId, true)
+            assert asset.getAttribute("lights").get().valueAsBoolean.orElse(false)
+        }
+
+        cleanup: "the server should be stopped"
+        stopContainer(container)
+    }
+}
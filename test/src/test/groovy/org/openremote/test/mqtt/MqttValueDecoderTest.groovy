@@ -0,0 +1,141 @@
+package org.openremote.test.mqtt
+
+import io.netty.buffer.ByteBuf
+import io.netty.buffer.Unpooled
+import org.openremote.manager.mqtt.MqttValueDecoder
+import org.openremote.model.value.Values
+import spock.lang.Specification
+
+import java.nio.charset.StandardCharsets
+
+class MqttValueDecoderTest extends Specification {
+
+    static ByteBuf text(String payload) {
+        Unpooled.copiedBuffer(payload, StandardCharsets.UTF_8)
+    }
+
+    static decode(String payload) {
+        MqttValueDecoder.decodeText(text(payload))
+    }
+
+    def "Text payloads are decoded to the same values as the JSON parser"() {
+
+        expect: "empty and null payloads to be decoded to a null value"
+        decode("") == null
+        decode("null") == null
+
+        and: "booleans and numbers to be decoded"
+        decode("true") == Values.create(true)
+        decode("false") == Values.create(false)
+        decode("42") == Values.create(42d)
+        decode("-42") == Values.create(-42d)
+        decode(".5") == Values.create(0.5d)
+        decode("-1.5e3") == Values.create(-1500d)
+        decode("1234567890123456789012") == Values.create(1234567890123456789012d)
+
+        and: "JSON strings, objects and arrays to be parsed"
+        decode("\"quoted\"") == Values.create("quoted")
+        decode("{\"a\":1}") == Values.parseOrNull("{\"a\":1}")
+        decode("[1,2]") == Values.parseOrNull("[1,2]")
+    }
+
+    def "Invalid text payloads are decoded to plain strings or a null value"() {
+
+        expect: "numbers with surrounding whitespace not to be parsed as numbers"
+        decode(" 5") == Values.create(" 5")
+        decode("5 ") == Values.create("5 ")
+
+        and: "invalid numbers and literals to be plain strings"
+        decode("-") == Values.create("-")
+        decode("1e") == Values.create("1e")
+        decode("1.2.3") == Values.create("1.2.3")
+        decode("0x10") == Values.create("0x10")
+        decode("True") == Values.create("True")
+        decode("nullish") == Values.create("nullish")
+
+        and: "invalid JSON to be a null value"
+        decode("{invalid") == null
+        decode("[1,") == null
+    }
+
+    def "Decoding doesn't consume the payload"() {
+
+        given: "a payload with a reader index past the start of the buffer"
+        def payload = text("xx12")
+        payload.readerIndex(2)
+
+        when: "the payload is decoded"
+        def value = MqttValueDecoder.decodeText(payload)
+
+        then: "only the readable bytes should have been decoded and the reader index should not have changed"
+        value == Values.create(12d)
+        payload.readerIndex() == 2
+    }
+
+    def "Binary payloads are decoded by length"() {
+
+        expect: "booleans, integers and doubles to be decoded"
+        MqttValueDecoder.decodeBinary(Unpooled.wrappedBuffer([0] as byte[])) == Values.create(false)
+        MqttValueDecoder.decodeBinary(Unpooled.wrappedBuffer([2] as byte[])) == Values.create(true)
+        MqttValueDecoder.decodeBinary(Unpooled.buffer(4).writeInt(-7)) == Values.create(-7)
+        MqttValueDecoder.decodeBinary(Unpooled.buffer(8).writeDouble(21.5d)) == Values.create(21.5d)
+
+        and: "unsupported lengths to be invalid"
+        MqttValueDecoder.decodeBinary(Unpooled.EMPTY_BUFFER) == null
+        MqttValueDecoder.decodeBinary(Unpooled.wrappedBuffer([1, 2] as byte[])) == null
+        MqttValueDecoder.decodeBinary(Unpooled.wrappedBuffer(new byte[16])) == null
+    }
+
+    def "Object payloads are converted to attribute events"() {
+
+        when: "an object of attribute values is converted"
+        def events = MqttValueDecoder.toAttributeEvents("asset1", Values.parseOrNull("{\"temperature\":21.5,\"label\":null}"))
+
+        then: "there should be an event for every attribute"
+        events.size() == 2
+        events.every { it.entityId == "asset1" }
+        events.find { it.attributeName == "temperature" }.value.orElse(null) == Values.create(21.5d)
+        !events.find { it.attributeName == "label" }.value.isPresent()
+
+        and: "values other than objects to have no events"
+        MqttValueDecoder.toAttributeEvents("asset1", Values.create(1d)).isEmpty()
+        MqttValueDecoder.toAttributeEvents("asset1", Values.parseOrNull("[1,2]")).isEmpty()
+        MqttValueDecoder.toAttributeEvents("asset1", null).isEmpty()
+    }
+
+    def "Bulk payloads are converted to attribute events in payload order"() {
+
+        when: "an array of updates with an invalid element is converted"
+        def events = MqttValueDecoder.toBulkAttributeEvents(Values.parseOrNull("""[
+            {"assetId": "asset1", "attributeName": "temperature", "value": 20, "timestamp": 1000},
+            {"assetId": "asset1"},
+            "invalid",
+            {"assetId": "asset2", "attributeName": "humidity", "value": 50}
+        ]"""))
+
+        then: "the invalid elements should have been skipped"
+        events.collect { it.entityId + ":" + it.attributeName } == ["asset1:temperature", "asset2:humidity"]
+        events[0].timestamp == 1000L
+
+        when: "an object of assets and attribute values is converted"
+        events = MqttValueDecoder.toBulkAttributeEvents(Values.parseOrNull("""{
+            "asset1": {"temperature": 20},
+            "asset2": {"humidity": 50},
+            "asset3": 1
+        }"""))
+
+        then: "there should be an event for every attribute of every asset object"
+        events.collect { it.entityId + ":" + it.attributeName } == ["asset1:temperature", "asset2:humidity"]
+
+        and: "other values to have no events"
+        MqttValueDecoder.toBulkAttributeEvents(Values.create("invalid")).isEmpty()
+    }
+
+    def "Topics are split on the separator"() {
+
+        expect: "topics to be split on the separator"
+        MqttValueDecoder.splitTopic("assets/asset1/temperature/value") == ["assets", "asset1", "temperature", "value"] as String[]
+        MqttValueDecoder.splitTopic("assets/") == ["assets", ""] as String[]
+        MqttValueDecoder.splitTopic("assets") == ["assets"] as String[]
+    }
+}
@@ -0,0 +1,181 @@
+package org.openremote.test.protocol
+
+import org.openremote.agent.protocol.ProtocolExecutorService
+import org.openremote.agent.protocol.SensorUpdateCoalescer
+import org.openremote.container.timer.TimerService
+import org.openremote.model.asset.AssetAttribute
+import org.openremote.model.attribute.AttributeEvent
+import org.openremote.model.attribute.AttributeRef
+import org.openremote.model.attribute.MetaItem
+import org.openremote.model.value.Values
+import spock.lang.Specification
+
+import java.util.concurrent.ScheduledFuture
+
+import static org.openremote.agent.protocol.Protocol.META_ATTRIBUTE_SENSOR_DEADBAND
+import static org.openremote.agent.protocol.Protocol.META_ATTRIBUTE_SENSOR_MIN_INTERVAL_MILLIS
+import static org.openremote.model.attribute.AttributeValueType.NUMBER
+
+class SensorUpdateCoalescerTest extends Specification {
+
+    static final AttributeRef SENSOR_REF = new AttributeRef("asset1", "sensor")
+
+    long now = 0
+    List<AttributeEvent> sent = []
+    List<Runnable> scheduled = []
+    List<Long> scheduledDelays = []
+    ScheduledFuture future = Mock(ScheduledFuture)
+
+    SensorUpdateCoalescer createCoalescer() {
+        def executorService = Stub(ProtocolExecutorService) {
+            schedule(_, _) >> { Runnable runnable, long delayMillis ->
+                scheduled << runnable
+                scheduledDelays << delayMillis
+                future
+            }
+        }
+        def timerService = Stub(TimerService) {
+            getCurrentTimeMillis() >> { now }
+        }
+        new SensorUpdateCoalescer(executorService, timerService, { AttributeEvent event -> sent << event })
+    }
+
+    static AssetAttribute createSensor(MetaItem... meta) {
+        def attribute = new AssetAttribute(SENSOR_REF.entityId, SENSOR_REF.attributeName, NUMBER)
+        attribute.setMeta(meta)
+        attribute
+    }
+
+    static AttributeEvent createEvent(Number value) {
+        new AttributeEvent(SENSOR_REF, Values.create(value.doubleValue()))
+    }
+
+    def "Attributes without coalescing meta items pass straight through"() {
+
+        given: "a coalescer with a linked attribute without coalescing meta items"
+        def coalescer = createCoalescer()
+        coalescer.link(createSensor())
+
+        expect: "every update to be sent now"
+        coalescer.offer(createEvent(1))
+        coalescer.offer(createEvent(1))
+        coalescer.droppedCount == 0
+        coalescer.coalescedCount == 0
+        scheduled.isEmpty()
+    }
+
+    def "Updates within the deadband are dropped"() {
+
+        given: "a coalescer with a linked attribute with a deadband"
+        def coalescer = createCoalescer()
+        coalescer.link(createSensor(new MetaItem(META_ATTRIBUTE_SENSOR_DEADBAND, Values.create(0.5))))
+
+        expect: "the first update to be sent"
+        coalescer.offer(createEvent(20))
+
+        and: "updates within the deadband of the last sent value to be dropped"
+        !coalescer.offer(createEvent(20.3))
+        !coalescer.offer(createEvent(19.6))
+        coalescer.droppedCount == 2
+
+        and: "an update outside of the deadband to be sent"
+        coalescer.offer(createEvent(20.6))
+        coalescer.droppedCount == 2
+
+        and: "the deadband to apply to the new last sent value"
+        !coalescer.offer(createEvent(20.9))
+        coalescer.offer(createEvent(20.0))
+        coalescer.droppedCount == 3
+        scheduled.isEmpty()
+    }
+
+    def "Updates within the minimum interval are coalesced and the latest is sent"() {
+
+        given: "a coalescer with a linked attribute with a minimum interval"
+        def coalescer = createCoalescer()
+        coalescer.link(createSensor(new MetaItem(META_ATTRIBUTE_SENSOR_MIN_INTERVAL_MILLIS, Values.create(1000))))
+
+        when: "the first update and a burst of updates within the minimum interval arrive"
+        def first = coalescer.offer(createEvent(1))
+        now = 100
+        def held = [2, 3, 4].collect { coalescer.offer(createEvent(it)) }
+
+        then: "the first update should be sent now"
+        first
+
+        and: "the burst should be held back and a single flush scheduled at the end of the interval"
+        held == [false, false, false]
+        scheduled.size() == 1
+        scheduledDelays == [900L]
+        coalescer.coalescedCount == 2
+        sent.isEmpty()
+
+        when: "the flush runs"
+        now = 1000
+        scheduled[0].run()
+
+        then: "only the latest update should have been sent"
+        sent.size() == 1
+        sent[0].value.flatMap { Values.getNumber(it) }.orElse(null) == 4d
+
+        when: "another update arrives within the minimum interval of the flushed update"
+        now = 1500
+        def sentNow = coalescer.offer(createEvent(5))
+
+        then: "it should be held back until the end of that interval"
+        !sentNow
+        scheduled.size() == 2
+        scheduledDelays[1] == 500L
+
+        when: "the flush runs and an update arrives after the minimum interval"
+        now = 2600
+        scheduled[1].run()
+        now = 3700
+        def sentAfterInterval = coalescer.offer(createEvent(6))
+
+        then: "the held back update should have been sent and the new update should be sent now"
+        sent.size() == 2
+        sentAfterInterval
+        coalescer.coalescedCount == 2
+    }
+
+    def "Pending updates are cancelled when the attribute is unlinked or returns to within the deadband"() {
+
+        given: "a coalescer with a linked attribute with a minimum interval and a deadband"
+        def coalescer = createCoalescer()
+        coalescer.link(createSensor(
+            new MetaItem(META_ATTRIBUTE_SENSOR_MIN_INTERVAL_MILLIS, Values.create(1000)),
+            new MetaItem(META_ATTRIBUTE_SENSOR_DEADBAND, Values.create(0.5))
+        ))
+        coalescer.offer(createEvent(10))
+
+        when: "a significant update is held back and the value returns to within the deadband"
+        now = 100
+        def held = coalescer.offer(createEvent(12))
+        def returned = coalescer.offer(createEvent(10.2))
+
+        then: "the pending update should have been cancelled and both dropped"
+        !held
+        !returned
+        1 * future.cancel(false)
+        coalescer.droppedCount == 2
+
+        when: "another significant update is held back and the attribute is unlinked"
+        def heldAgain = coalescer.offer(createEvent(13))
+        coalescer.unlink(SENSOR_REF)
+
+        then: "the pending update should have been cancelled"
+        !heldAgain
+        1 * future.cancel(false)
+
+        when: "a flush that was already running completes"
+        now = 1000
+        scheduled.each { it.run() }
+
+        then: "nothing should have been sent"
+        sent.isEmpty()
+
+        and: "updates of the unlinked attribute should pass straight through"
+        coalescer.offer(createEvent(10.1))
+    }
+}
@@ -1,9 +1,12 @@
 package org.openremote.test.protocol
 
+import org.openremote.agent.protocol.ProtocolExecutorService
+import org.openremote.agent.protocol.timer.CronScheduler
 import org.openremote.agent.protocol.timer.TimerProtocol
 import org.openremote.agent.protocol.timer.TimerValue
 import org.openremote.manager.asset.AssetProcessingService
 import org.openremote.manager.asset.AssetStorageService
+import org.openremote.container.timer.TimerService
 
 import org.openremote.manager.setup.SetupService
 import org.openremote.manager.setup.builtin.ManagerDemoSetup
@@ -17,12 +20,12 @@ import org.openremote.model.attribute.AttributeRef
 import org.openremote.model.attribute.AttributeValueType
 import org.openremote.model.value.Values
 import org.openremote.test.ManagerContainerTrait
-import org.quartz.CronTrigger
-import org.quartz.JobKey
-import org.quartz.impl.matchers.GroupMatcher
+import org.quartz.CronExpression
 import spock.lang.Specification
 import spock.util.concurrent.PollingConditions
 
+import java.util.concurrent.ScheduledFuture
+
 class TimerProtocolTest extends Specification implements ManagerContainerTrait {
     def "Check timer protocol agent and device asset deployment"() {
 
@@ -51,26 +54,19 @@ class TimerProtocolTest extends Specification implements ManagerContainerTrait {
             assert sceneAgent != null
         }
 
-        and: "the quartz scheduler is running and contains all the demo triggers with the correct cron expression"
+        and: "the cron scheduler contains all the demo triggers with the correct cron expression"
         conditions.eventually {
             assert timerProtocol.cronScheduler != null
-            assert timerProtocol.cronScheduler.scheduler != null
-            assert timerProtocol.cronScheduler.scheduler.isStarted()
-            assert timerProtocol.cronScheduler.scheduler.getJobKeys(GroupMatcher.anyJobGroup()).size() >= 28
+            assert timerProtocol.cronScheduler.getJobIds().size() >= 28
+            assert timerProtocol.cronScheduler.wakeupTimer != null
         }
 
-        and: "the quartz job has the correct time"
+        and: "the cron job has the correct time"
         conditions.eventually {
             def awaySceneFridayRef = new AttributeRef(sceneAgent.id, "daySceneFRIDAY")
             def timerId = timerProtocol.getTimerId(awaySceneFridayRef)
-            def jobKey = JobKey.jobKey("cronJob1", timerId)
-            def jobDetail = timerProtocol.cronScheduler.scheduler.getJobDetail(jobKey)
-            def triggers = timerProtocol.cronScheduler.scheduler.getTriggersOfJob(jobKey)
-            assert jobDetail != null
-            assert triggers.size() == 1
-            assert triggers[0] instanceof CronTrigger
-            def cronTrigger = (CronTrigger)triggers[0]
-            assert cronTrigger.cronExpression == "0 30 8 ? * FRI *"
+            assert timerProtocol.cronScheduler.getCronExpression(timerId) == "0 30 8 ? * FRI *"
+            assert timerProtocol.cronScheduler.getNextFireMillis(timerId) > timerProtocol.timerService.getCurrentTimeMillis()
         }
 
         and: "all protocol linked attributes should be linked"
@@ -86,11 +82,8 @@ class TimerProtocolTest extends Specification implements ManagerContainerTrait {
         conditions.eventually {
             def awaySceneFridayRef = new AttributeRef(sceneAgent.id, "daySceneFRIDAY")
             def timerId = timerProtocol.getTimerId(awaySceneFridayRef)
-            def jobKey = JobKey.jobKey("cronJob1", timerId)
-            def jobDetail = timerProtocol.cronScheduler.scheduler.getJobDetail(jobKey)
-            def triggers = timerProtocol.cronScheduler.scheduler.getTriggersOfJob(jobKey)
-            assert jobDetail == null
-            assert triggers.isEmpty()
+            assert timerProtocol.cronScheduler.getCronExpression(timerId) == null
+            assert !timerProtocol.cronScheduler.getJobIds().contains(timerId)
         }
 
         and: "all protocol linked attributes should be re-linked"
@@ -102,36 +95,24 @@ class TimerProtocolTest extends Specification implements ManagerContainerTrait {
         def enableScene = new AttributeEvent(managerDemoSetup.apartment1Id, "daySceneEnabledFRIDAY", Values.create(true))
         assetProcessingService.sendAttributeEvent(enableScene)
 
-        then: "the quartz job should be recreated and have the correct time"
+        then: "the cron job should be recreated and have the correct time"
         conditions.eventually {
             def awaySceneFridayRef = new AttributeRef(sceneAgent.id, "daySceneFRIDAY")
             def timerId = timerProtocol.getTimerId(awaySceneFridayRef)
-            def jobKey = JobKey.jobKey("cronJob1", timerId)
-            def jobDetail = timerProtocol.cronScheduler.scheduler.getJobDetail(jobKey)
-            def triggers = timerProtocol.cronScheduler.scheduler.getTriggersOfJob(jobKey)
-            assert jobDetail != null
-            assert triggers.size() == 1
-            assert triggers[0] instanceof CronTrigger
-            def cronTrigger = (CronTrigger)triggers[0]
-            assert cronTrigger.cronExpression == "0 30 8 ? * FRI *"
+            assert timerProtocol.cronScheduler.getCronExpression(timerId) == "0 30 8 ? * FRI *"
+            assert timerProtocol.cronScheduler.getNextFireMillis(timerId) > timerProtocol.timerService.getCurrentTimeMillis()
         }
 
         when: "a trigger time is modified"
         def modifyTime = new AttributeEvent(managerDemoSetup.apartment1Id, "daySceneTimeFRIDAY", Values.create("04:00:00"))
         assetProcessingService.sendAttributeEvent(modifyTime)
 
-        then: "the quartz job should have the new trigger time"
+        then: "the cron job should have the new trigger time"
         conditions.eventually {
             def awaySceneFridayRef = new AttributeRef(sceneAgent.id, "daySceneFRIDAY")
             def timerId = timerProtocol.getTimerId(awaySceneFridayRef)
-            def jobKey = JobKey.jobKey("cronJob1", timerId)
-            def jobDetail = timerProtocol.cronScheduler.scheduler.getJobDetail(jobKey)
-            def triggers = timerProtocol.cronScheduler.scheduler.getTriggersOfJob(jobKey)
-            assert jobDetail != null
-            assert triggers.size() == 1
-            assert triggers[0] instanceof CronTrigger
-            def cronTrigger = (CronTrigger)triggers[0]
-            assert cronTrigger.cronExpression == "0 0 4 ? * FRI *"
+            assert timerProtocol.cronScheduler.getCronExpression(timerId) == "0 0 4 ? * FRI *"
+            assert timerProtocol.cronScheduler.getNextFireMillis(timerId) > timerProtocol.timerService.getCurrentTimeMillis()
         }
 
         when: "an attribute is added that links to a timers cron expression"
@@ -154,18 +135,12 @@ class TimerProtocolTest extends Specification implements ManagerContainerTrait {
         def modifyCron = new AttributeEvent(managerDemoSetup.apartment1Id, "daySceneCronFRIDAY", Values.create("0 0 4 ? * MON,FRI *"))
         assetProcessingService.sendAttributeEvent(modifyCron)
 
-        then: "the quartz job should have the new cron expression"
+        then: "the cron job should have the new cron expression"
         conditions.eventually {
             def awaySceneFridayRef = new AttributeRef(sceneAgent.id, "daySceneFRIDAY")
             def timerId = timerProtocol.getTimerId(awaySceneFridayRef)
-            def jobKey = JobKey.jobKey("cronJob1", timerId)
-            def jobDetail = timerProtocol.cronScheduler.scheduler.getJobDetail(jobKey)
-            def triggers = timerProtocol.cronScheduler.scheduler.getTriggersOfJob(jobKey)
-            assert jobDetail != null
-            assert triggers.size() == 1
-            assert triggers[0] instanceof CronTrigger
-            def cronTrigger = (CronTrigger)triggers[0]
-            assert cronTrigger.cronExpression == "0 0 4 ? * MON,FRI *"
+            assert timerProtocol.cronScheduler.getCronExpression(timerId) == "0 0 4 ? * MON,FRI *"
+            assert timerProtocol.cronScheduler.getNextFireMillis(timerId) > timerProtocol.timerService.getCurrentTimeMillis()
         }
 
         when: "a timer action is executed"
@@ -188,14 +163,70 @@ class TimerProtocolTest extends Specification implements ManagerContainerTrait {
             assert !sceneAgent.getAttribute("daySceneFRIDAY").isPresent()
             def awaySceneFridayRef = new AttributeRef(sceneAgent.id, "daySceneFRIDAY")
             def timerId = timerProtocol.getTimerId(awaySceneFridayRef)
-            def jobKey = JobKey.jobKey("cronJob1", timerId)
-            def jobDetail = timerProtocol.cronScheduler.scheduler.getJobDetail(jobKey)
-            def triggers = timerProtocol.cronScheduler.scheduler.getTriggersOfJob(jobKey)
-            assert jobDetail == null
-            assert triggers.isEmpty()
+            assert timerProtocol.cronScheduler.getCronExpression(timerId) == null
+            assert !timerProtocol.cronScheduler.getJobIds().contains(timerId)
         }
 
         cleanup: "the server should be stopped"
         stopContainer(container)
     }
-}
\ No newline at end of file
+
+    def "Cron jobs are executed when due"() {
+
+        given: "a cron scheduler with a controlled clock and executor"
+        long now = 1600000000000L // 40 seconds past a minute
+        def timerService = Stub(TimerService) {
+            getClock() >> TimerService.Clock.REAL
+            getCurrentTimeMillis() >> { now }
+        }
+        List<Runnable> wakeups = []
+        List<Long> wakeupDelays = []
+        def executorService = Stub(ProtocolExecutorService) {
+            schedule(_ as Runnable, _ as Long) >> { Runnable runnable, long delay ->
+                wakeups.add(runnable)
+                wakeupDelays.add(delay)
+                Stub(ScheduledFuture)
+            }
+        }
+        def cronScheduler = new CronScheduler(executorService, timerService)
+        def executions = [:].withDefault { 0 }
+
+        when: "a job every minute and a job every hour are added"
+        cronScheduler.addOrReplaceJob("minute", new CronExpression("0 * * * * ?"), { executions["minute"]++ })
+        cronScheduler.addOrReplaceJob("hour", new CronExpression("0 0 * * * ?"), { executions["hour"]++ })
+
+        then: "a single wakeup should be scheduled when the first job is due"
+        wakeups.size() == 1
+        wakeupDelays[0] == 20000L
+        cronScheduler.getNextFireMillis("minute") == now + 20000
+
+        when: "the first job is due"
+        now += 20000
+        wakeups[0].run()
+
+        then: "only that job should be executed and rescheduled"
+        executions["minute"] == 1
+        executions["hour"] == 0
+        cronScheduler.getNextFireMillis("minute") == now + 60000
+        wakeups.size() == 2
+        wakeupDelays[1] == 60000L
+
+        when: "the scheduler wakes up late"
+        now += 10 * 60000
+        wakeups[1].run()
+
+        then: "missed executions should be skipped"
+        executions["minute"] == 2
+        cronScheduler.getNextFireMillis("minute") == now + 60000
+
+        when: "a job is removed"
+        cronScheduler.removeJob("minute")
+
+        then: "it should no longer be scheduled"
+        cronScheduler.getJobIds() == ["hour"] as Set
+        cronScheduler.getCronExpression("minute") == null
+
+        cleanup: "the scheduler should be stopped"
+        cronScheduler?.shutdown()
+    }
+}
@@ -0,0 +1,72 @@
+package org.openremote.test.rules
+
+import org.openremote.manager.rules.AssetStateIndex
+import org.openremote.model.asset.Asset
+import org.openremote.model.asset.AssetAttribute
+import org.openremote.model.asset.AssetType
+import org.openremote.model.attribute.AttributeEvent
+import org.openremote.model.attribute.AttributeValueType
+import org.openremote.model.rules.AssetState
+import org.openremote.model.value.Values
+import spock.lang.Specification
+
+class AssetStateIndexTest extends Specification {
+
+    static AssetState createAssetState(String realm, List<String> path, String attributeName, double value) {
+        def asset = new Asset("Thing", AssetType.THING)
+        asset.setId(path[0])
+        asset.setRealm(realm)
+        asset.setPath(path as String[])
+        new AssetState(asset, new AssetAttribute(attributeName, AttributeValueType.NUMBER, Values.create(value)), AttributeEvent.Source.SENSOR)
+    }
+
+    def "Asset states are indexed by realm and subtree"() {
+
+        given: "an index with states of a small asset tree"
+        def index = new AssetStateIndex()
+        def building = createAssetState("master", ["building"], "temperature", 20)
+        def room1 = createAssetState("master", ["room1", "building"], "temperature", 21)
+        def room2 = createAssetState("master", ["room2", "building"], "temperature", 22)
+        def sensor = createAssetState("master", ["sensor", "room1", "building"], "humidity", 50)
+        def other = createAssetState("customerA", ["other"], "temperature", 18)
+
+        expect: "new states to be inserted"
+        [building, room1, room2, sensor, other].every { index.put(it) == null }
+        index.size() == 5
+
+        and: "the states in scope of an asset to include its descendants"
+        index.getSubtreeStates("building") == [building, room1, room2, sensor] as Set
+        index.getSubtreeStates("room1") == [room1, sensor] as Set
+        index.getSubtreeStates("sensor") == [sensor] as Set
+        index.getSubtreeStates("unknown").isEmpty()
+        index.getRealmStates("customerA") == [other] as Set
+
+        when: "the state of an attribute is replaced"
+        def updatedSensor = createAssetState("master", ["sensor", "room1", "building"], "humidity", 55)
+        def replaced = index.put(updatedSensor)
+
+        then: "the previous state should be returned and replaced in the subtrees"
+        replaced.is(sensor)
+        index.size() == 5
+        index.getSubtreeStates("room1").find { it.id == "sensor" }.is(updatedSensor)
+
+        when: "the sensor is moved to the other room"
+        index.put(new AssetState(updatedSensor, ["sensor", "room2", "building"] as String[]))
+
+        then: "it should only be in scope of its new ancestors"
+        index.getSubtreeStates("room1") == [room1] as Set
+        index.getSubtreeStates("room2") == [room2, updatedSensor] as Set
+        index.getSubtreeStates("building").size() == 4
+
+        when: "states are removed"
+        index.remove(updatedSensor)
+        index.remove(other)
+
+        then: "they should no longer be in any scope"
+        index.size() == 3
+        index.getSubtreeStates("room2") == [room2] as Set
+        index.getSubtreeStates("sensor").isEmpty()
+        index.getRealmStates("customerA").isEmpty()
+        index.remove(other) == null
+    }
+}
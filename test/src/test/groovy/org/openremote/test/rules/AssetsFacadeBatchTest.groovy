@@ -0,0 +1,72 @@
+package org.openremote.test.rules
+
+import org.openremote.manager.asset.AssetStorageService
+import org.openremote.manager.rules.RulesEngineId
+import org.openremote.manager.rules.facade.AssetsFacade
+import org.openremote.model.asset.Asset
+import org.openremote.model.asset.AssetType
+import org.openremote.model.attribute.AttributeEvent
+import org.openremote.model.notification.EmailNotificationMessage
+import org.openremote.model.query.AssetQuery
+import org.openremote.model.value.Values
+import spock.lang.Specification
+
+class AssetsFacadeBatchTest extends Specification {
+
+    static List<Asset> createAssets(List<String> ids) {
+        ids.collect {
+            def asset = new Asset("Streetlight " + it, AssetType.THING)
+            asset.setId(it)
+            asset
+        }
+    }
+
+    def "Attribute events of a dispatch are checked and sent as one batch"() {
+
+        given: "an assets facade of the global rules engine with many assets"
+        def assetIds = (0..<5000).collect { "light" + it }
+        def existingIds = assetIds as Set
+        def assetStorageService = Stub(AssetStorageService) {
+            findAll(_ as AssetQuery) >> { AssetQuery query -> createAssets(query.ids.findAll { existingIds.contains(it) }) }
+        }
+        List<List<AttributeEvent>> batches = []
+        def assetsFacade = new AssetsFacade(new RulesEngineId(), assetStorageService, { batches.add(it) })
+
+        when: "an attribute of all assets is written, with a duplicate target"
+        def events = (assetIds + ["light0"]).collect { new AttributeEvent(it, "brightness", Values.create(50)) }
+        assetsFacade.dispatch(events as AttributeEvent[])
+
+        then: "the events should be sent as a single batch"
+        batches.size() == 1
+        batches[0].size() == 5001
+        batches[0][0].entityId == "light0"
+
+        when: "one of the assets is not accessible by the rules engine"
+        assetsFacade.dispatch(new AttributeEvent("light1", "brightness", Values.create(10)), new AttributeEvent("unknown", "brightness", Values.create(10)))
+
+        then: "no events should be sent"
+        batches.size() == 1
+    }
+
+    def "Email notification messages are copied"() {
+
+        given: "an email message"
+        def email = new EmailNotificationMessage()
+            .setFrom("rules@example.com")
+            .setSubject("Lights")
+            .setText("Triggered: %TRIGGER_ASSETS%")
+            .setTo("one@example.com", "two@example.com")
+
+        when: "the message is copied and changed"
+        def copy = new EmailNotificationMessage(email)
+        copy.setText("Triggered: light0")
+        copy.addTo("three@example.com")
+
+        then: "the original message should be unchanged"
+        copy.subject == "Lights"
+        copy.from.address == "rules@example.com"
+        copy.to.size() == 3
+        email.to.size() == 2
+        email.text == "Triggered: %TRIGGER_ASSETS%"
+    }
+}
@@ -9,6 +9,14 @@ import org.openremote.manager.rules.RulesClock
 import org.openremote.manager.rules.RulesEngine
 import org.openremote.manager.rules.RulesFacts
 import org.openremote.manager.rules.facade.AssetsFacade
+import org.openremote.model.asset.Asset
+import org.openremote.model.asset.AssetAttribute
+import org.openremote.model.asset.AssetType
+import org.openremote.model.attribute.AttributeEvent
+import org.openremote.model.attribute.AttributeValueType
+import org.openremote.model.rules.AssetState
+import org.openremote.model.rules.TemporaryFact
+import org.openremote.model.value.Values
 import spock.lang.Specification
 
 import java.util.stream.Collectors
@@ -398,4 +406,68 @@ class BasicRulesFactsTest extends Specification {
         assert !rulesFacts.hasTemporaryFacts()
         assert rulesFacts.match(AnonFact).count() == 0
     }
+
+    def "Expire temporary facts in order of expiration"() {
+
+        when: "many asset events and temporary facts with different expiration times are added"
+        def asset = new Asset("Thing", AssetType.THING)
+        asset.setId("thing")
+        def assetState = new AssetState(asset, new AssetAttribute("temperature", AttributeValueType.NUMBER, Values.create(20)), AttributeEvent.Source.SENSOR)
+        def assetStateTimestamp = assetState.timestamp
+        (1..10000).each { rulesFacts.insertAssetEvent(3600000 + it, assetState) }
+        rulesFacts.putTemporary("foo", 60000, "FOO")
+        rulesFacts.putTemporary(30000, new AnonFact("FOO1", 123, true))
+
+        then: "the next expiration should be the earliest"
+        assert rulesFacts.hasTemporaryFacts()
+        assert rulesFacts.getNextExpirationTimestamp() == 30000
+        assert rulesFacts.getTemporaryFacts().count() == 10002
+
+        when: "the clock is advanced past the expiration of the temporary facts"
+        rulesFacts.setClock(new RulesClock(60001))
+        rulesFacts.removeExpiredTemporaryFacts()
+
+        then: "only the asset events should be present"
+        assert rulesFacts.assetEvents.size() == 10000
+        assert !rulesFacts.matchFirst("foo").isPresent()
+        assert rulesFacts.match(AnonFact).count() == 0
+        assert rulesFacts.getNextExpirationTimestamp() == assetStateTimestamp + 3600001
+
+        when: "the clock is advanced past the expiration of half the asset events"
+        rulesFacts.setClock(new RulesClock(assetStateTimestamp + 3605001))
+        rulesFacts.removeExpiredTemporaryFacts()
+
+        then: "the other half should be present"
+        assert rulesFacts.assetEvents.size() == 5000
+        assert rulesFacts.getTemporaryFacts().count() == 5000
+        assert rulesFacts.getNextExpirationTimestamp() == assetStateTimestamp + 3605001
+
+        when: "a named temporary fact is replaced by a permanent fact"
+        rulesFacts.putTemporary("bar", 1000, "BAR")
+        rulesFacts.put("bar", "BAR")
+
+        then: "it should no longer expire"
+        assert rulesFacts.getTemporaryFacts().count() == 5000
+    }
+
+    def "Expire temporary facts put as anonymous facts"() {
+
+        when: "a temporary fact is put twice as an anonymous fact"
+        def fact = new TemporaryFact<>(0L, 1000L, new AnonFact("FOO1", 123, true))
+        rulesFacts.put(fact)
+        rulesFacts.put(fact)
+
+        then: "it should be present once and expire"
+        assert rulesFacts.anonymousFacts.size() == 1
+        assert rulesFacts.getTemporaryFacts().count() == 1
+        assert rulesFacts.getNextExpirationTimestamp() == 1000
+
+        when: "the clock is advanced past the expiration of the fact"
+        rulesFacts.setClock(new RulesClock(1001))
+        rulesFacts.removeExpiredTemporaryFacts()
+
+        then: "the fact should be removed"
+        assert rulesFacts.anonymousFacts.isEmpty()
+        assert !rulesFacts.hasTemporaryFacts()
+    }
 }
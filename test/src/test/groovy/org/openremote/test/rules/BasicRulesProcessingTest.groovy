@@ -401,4 +401,81 @@ class BasicRulesProcessingTest extends Specification implements ManagerContainer
         cleanup: "the server should be stopped"
         stopContainer(container)
     }
+
+    def "Move asset states when an asset is moved to another parent"() {
+        given: "expected conditions"
+        def conditions = new PollingConditions(timeout: 15, initialDelay: 0.5, delay: 0.5)
+
+        and: "the container is started"
+        def serverPort = findEphemeralPort()
+        def container = startContainer(defaultConfig(serverPort), defaultServices())
+        def managerDemoSetup = container.getService(SetupService.class).getTaskOfType(ManagerDemoSetup.class)
+        def keycloakDemoSetup = container.getService(SetupService.class).getTaskOfType(KeycloakDemoSetup.class)
+        def rulesService = container.getService(RulesService.class)
+        def rulesetStorageService = container.getService(RulesetStorageService.class)
+        def assetStorageService = container.getService(AssetStorageService.class)
+
+        and: "some test rulesets have been imported"
+        def rulesImport = new BasicRulesImport(rulesetStorageService, keycloakDemoSetup, managerDemoSetup)
+
+        expect: "the rules engines to be ready"
+        conditions.eventually {
+            rulesImport.assertEnginesReady(rulesService, keycloakDemoSetup, managerDemoSetup)
+        }
+
+        when: "a room with a child asset, both with a RULE_STATE attribute, is inserted into apartment 2"
+        def createRuleStateAttribute = {
+            new AssetAttribute("testString", AttributeValueType.STRING, Values.create("test"))
+                .setMeta(new Meta(new MetaItem(MetaItemType.RULE_STATE, Values.create(true))))
+        }
+        def room = new Asset("Storage", AssetType.ROOM, assetStorageService.find(managerDemoSetup.apartment2Id))
+        room.setRealm(keycloakDemoSetup.tenantBuilding.getRealm())
+        room.setAttributes([createRuleStateAttribute()])
+        room = assetStorageService.merge(room)
+        def thing = new Asset("Shelf", AssetType.THING, room)
+        thing.setRealm(keycloakDemoSetup.tenantBuilding.getRealm())
+        thing.setAttributes([createRuleStateAttribute()])
+        thing = assetStorageService.merge(thing)
+
+        then: "their states should be in the engines in scope of apartment 2"
+        conditions.eventually {
+            assert rulesImport.globalEngine.assetStates.size() == DEMO_RULE_STATES_GLOBAL + 2
+            assert rulesImport.tenantBuildingEngine.assetStates.size() == DEMO_RULE_STATES_CUSTOMER_A + 2
+            assert rulesImport.apartment2Engine.assetStates.size() == DEMO_RULE_STATES_APARTMENT_2 + 2
+            assert rulesImport.apartment3Engine.assetStates.size() == DEMO_RULE_STATES_APARTMENT_3
+            assert rulesService.assetEngineChains[thing.id].rulesEngines.contains(rulesImport.apartment2Engine)
+        }
+
+        when: "the room is moved to apartment 3"
+        room = assetStorageService.find(room.id, true)
+        room.setParent(assetStorageService.find(managerDemoSetup.apartment3Id))
+        room = assetStorageService.merge(room)
+
+        then: "the states of the room and its child should have left apartment 2 and be in apartment 3"
+        conditions.eventually {
+            assert rulesService.assetStates.size() == DEMO_RULE_STATES_GLOBAL + 2
+            assert rulesImport.globalEngine.assetStates.size() == DEMO_RULE_STATES_GLOBAL + 2
+            assert rulesImport.tenantBuildingEngine.assetStates.size() == DEMO_RULE_STATES_CUSTOMER_A + 2
+            assert rulesImport.apartment2Engine.assetStates.size() == DEMO_RULE_STATES_APARTMENT_2
+            assert rulesImport.apartment3Engine.assetStates.size() == DEMO_RULE_STATES_APARTMENT_3 + 2
+            assert rulesImport.apartment2Engine.assetStates.every { it.id != room.id && it.id != thing.id }
+            def thingState = rulesImport.apartment3Engine.assetStates.find { it.id == thing.id }
+            assert thingState != null
+            assert thingState.path.contains(managerDemoSetup.apartment3Id)
+            assert !thingState.path.contains(managerDemoSetup.apartment2Id)
+        }
+
+        and: "the cached engine chains should have been replaced"
+        conditions.eventually {
+            [room.id, thing.id].each { assetId ->
+                def engineChain = rulesService.assetEngineChains[assetId]
+                assert engineChain != null
+                assert engineChain.rulesEngines.contains(rulesImport.apartment3Engine)
+                assert !engineChain.rulesEngines.contains(rulesImport.apartment2Engine)
+            }
+        }
+
+        cleanup: "the server should be stopped"
+        stopContainer(container)
+    }
 }
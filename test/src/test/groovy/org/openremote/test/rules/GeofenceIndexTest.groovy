@@ -0,0 +1,80 @@
+package org.openremote.test.rules
+
+import com.vividsolutions.jts.geom.Coordinate
+import org.openremote.manager.rules.AssetQueryPredicate
+import org.openremote.manager.rules.RulesEngine
+import org.openremote.manager.rules.geofence.GeofenceIndex
+import org.openremote.model.query.filter.GeofencePredicate
+import org.openremote.model.query.filter.RadialGeofencePredicate
+import org.openremote.model.query.filter.RectangularGeofencePredicate
+import spock.lang.Specification
+
+class GeofenceIndexTest extends Specification {
+
+    static List<GeofencePredicate> createGeofences(Random random, int count) {
+        (0..<count).collect {
+            double lat = 51 + random.nextDouble()
+            double lng = 4 + random.nextDouble() * 2
+            it % 2 == 0
+                ? new RadialGeofencePredicate(100 + random.nextInt(2000), lat, lng)
+                : new RectangularGeofencePredicate(lat, lng, lat + random.nextDouble() * 0.02, lng + random.nextDouble() * 0.02)
+        } as List<GeofencePredicate>
+    }
+
+    static List<Coordinate> createFleet(Random random, int count) {
+        (0..<count).collect { new Coordinate(4 + random.nextDouble() * 2, 51 + random.nextDouble()) }
+    }
+
+    def "Geofences of assets are tracked per engine"() {
+
+        given: "an index with geofences of two engines"
+        def engine1 = Stub(RulesEngine)
+        def engine2 = Stub(RulesEngine)
+        def radial = new RadialGeofencePredicate(100, 51.44, 5.46)
+        def rectangular = new RectangularGeofencePredicate(51.43, 5.45, 51.45, 5.47)
+        def distant = new RadialGeofencePredicate(100, 52.37, 4.89)
+        def index = new GeofenceIndex()
+        index.setEngineGeofences(engine1, [new RulesEngine.AssetStateLocationPredicates("asset1", [radial, distant] as Set)])
+        index.setEngineGeofences(engine2, [
+            new RulesEngine.AssetStateLocationPredicates("asset1", [radial, rectangular] as Set),
+            new RulesEngine.AssetStateLocationPredicates("asset2", [rectangular] as Set)
+        ])
+
+        expect: "the geofences of an asset to be merged across engines"
+        index.getAssetGeofences("asset1") == [radial, rectangular, distant] as Set
+        index.getAssetGeofences("asset2") == [rectangular] as Set
+        index.getEngineGeofences(engine1) == [asset1: [radial, distant] as Set]
+
+        when: "the geofences of the second engine are removed"
+        index.setEngineGeofences(engine2, null)
+
+        then: "only the geofences of the first engine should remain"
+        index.getAssetGeofences("asset1") == [radial, distant] as Set
+        index.getAssetGeofences("asset2").isEmpty()
+        index.getEngineGeofences(engine2).isEmpty()
+    }
+
+    def "Geofence envelopes contain every location inside the geofence"() {
+
+        given: "thousands of geofences and a fleet of vehicles"
+        def random = new Random(1234)
+        def geofences = createGeofences(random, 5000)
+        def fleet = createFleet(random, 100)
+
+        when: "every geofence is tested against every vehicle location"
+        def inside = fleet.collect { coordinate ->
+            geofences.findAll { GeofenceIndex.contains(it, coordinate) } as Set
+        }
+
+        then: "the envelope pre-filter should never reject a location inside a geofence"
+        inside.any { !it.isEmpty() }
+        fleet.withIndex().every { coordinate, i ->
+            inside[i].every { GeofenceIndex.getEnvelope(it).contains(coordinate) }
+        }
+
+        and: "the rule predicates should match the containment test"
+        fleet.withIndex().every { coordinate, i ->
+            (geofences.findAll { AssetQueryPredicate.asPredicate(it).test(coordinate) } as Set) == inside[i]
+        }
+    }
+}
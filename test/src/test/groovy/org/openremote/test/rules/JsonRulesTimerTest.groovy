@@ -0,0 +1,74 @@
+package org.openremote.test.rules
+
+import org.jeasy.rules.api.Rules
+import org.jeasy.rules.core.InferenceRulesEngine
+import org.openremote.container.timer.TimerService
+import org.openremote.manager.rules.JsonRulesBuilder
+import org.openremote.manager.rules.RulesEngine
+import org.openremote.manager.rules.RulesFacts
+import org.openremote.model.rules.GlobalRuleset
+import spock.lang.Specification
+
+import static org.openremote.model.rules.Ruleset.Lang.JSON
+
+class JsonRulesTimerTest extends Specification {
+
+    static String timerRule(String name, String timer) {
+        """{
+            "name": "$name",
+            "when": {"items": [{"timer": "$timer"}]},
+            "then": [{"action": "wait", "millis": 1000}]
+        }"""
+    }
+
+    def "Timer conditions compute their next execution only when due"() {
+
+        given: "a controlled clock"
+        long now = 1600000000000L // 40 seconds past a minute
+        def timerService = Stub(TimerService) {
+            getClock() >> TimerService.Clock.REAL
+            getCurrentTimeMillis() >> { now }
+        }
+
+        and: "JSON rules with a cron and a duration timer condition"
+        def ruleset = new GlobalRuleset("Timer rules", JSON, """{"rules": [
+            ${timerRule("Every minute", "0 * * * * ?")},
+            ${timerRule("Every hour", "1h")}
+        ]}""").setId(1L)
+        def builder = new JsonRulesBuilder(ruleset, timerService, null, null, null, null, null, null, null, { action, delay -> })
+        def rules = new Rules(builder.build())
+        def facts = new RulesFacts(timerService, null, null, this, RulesEngine.RULES_LOG)
+        def engine = new InferenceRulesEngine()
+
+        expect: "the duration timer to be due immediately"
+        builder.getNextTimerMillis() == now
+
+        when: "the rules are fired"
+        engine.fire(rules, facts)
+
+        then: "the cron timer should be due next"
+        builder.getNextTimerMillis() == now + 20000
+
+        when: "the rules are fired again before the cron timer is due"
+        now += 10000
+        engine.fire(rules, facts)
+
+        then: "the next timer should not change"
+        builder.getNextTimerMillis() == now + 10000
+
+        when: "the cron timer is due"
+        now += 10000
+        engine.fire(rules, facts)
+
+        then: "it should be due again in a minute"
+        builder.getNextTimerMillis() == now + 60000
+
+        when: "the rules are fired late"
+        now += 2 * 60 * 60000 + 30000
+        engine.fire(rules, facts)
+
+        then: "missed executions should be skipped"
+        builder.getNextTimerMillis() == now + 30000
+        builder.ruleStateMap["Every hour"].getNextTimerMillis() == now + 60 * 60000 - 50000
+    }
+}
@@ -0,0 +1,102 @@
+package org.openremote.test.rules
+
+import org.jeasy.rules.api.Rules
+import org.jeasy.rules.core.InferenceRulesEngine
+import org.jeasy.rules.core.RuleBuilder
+import org.openremote.manager.rules.ProfiledRule
+import org.openremote.manager.rules.RulesEngine
+import org.openremote.manager.rules.RulesFacts
+import org.openremote.model.asset.Asset
+import org.openremote.model.asset.AssetAttribute
+import org.openremote.model.asset.AssetType
+import org.openremote.model.attribute.AttributeEvent
+import org.openremote.model.attribute.AttributeValueType
+import org.openremote.model.rules.AssetState
+import org.openremote.model.rules.GlobalRuleset
+import org.openremote.model.value.Values
+import spock.lang.Specification
+
+import static org.openremote.model.rules.RuleStatistics.HISTOGRAM_BUCKETS
+import static org.openremote.model.rules.Ruleset.Lang.GROOVY
+
+class RuleProfilingTest extends Specification {
+
+    def "Evaluations and executions of rules are counted and timed"() {
+
+        given: "facts with some asset states"
+        def facts = new RulesFacts(null, null, null, this, RulesEngine.RULES_LOG)
+        (0..<5).each {
+            def asset = new Asset("Thing " + it, AssetType.THING)
+            asset.setId("asset" + it)
+            facts.putAssetState(new AssetState(asset, new AssetAttribute("temperature", AttributeValueType.NUMBER, Values.create(it * 10)), AttributeEvent.Source.SENSOR))
+        }
+
+        and: "a slow rule matching asset states, triggering once, and a fast rule never triggering"
+        def slowRule = new ProfiledRule(new RuleBuilder().name("Slow rule").priority(1)
+            .when({ RulesFacts f ->
+                Thread.sleep(2)
+                f.matchAssetState({ it.value.flatMap(Values.&getNumber).orElse(0) > 15 }).count() > 0 && !f.get("done")
+            })
+            .then({ RulesFacts f ->
+                Thread.sleep(5)
+                f.put("done", true)
+            })
+            .build())
+        def fastRule = new ProfiledRule(new RuleBuilder().name("Fast rule").priority(2)
+            .when({ RulesFacts f -> false })
+            .then({ RulesFacts f -> })
+            .build())
+        def rules = new Rules(slowRule, fastRule)
+
+        when: "the rules are fired"
+        def engine = new InferenceRulesEngine()
+        engine.registerRuleListener(facts)
+        engine.fire(rules, facts)
+        def ruleset = new GlobalRuleset("Profiled rules", GROOVY, "").setId(123L)
+        def slowStatistics = slowRule.getStatistics(ruleset)
+        def fastStatistics = fastRule.getStatistics(ruleset)
+
+        then: "the slow rule should have been evaluated until its condition was false and executed once"
+        slowStatistics.rulesetId == 123L
+        slowStatistics.rulesetName == "Profiled rules"
+        slowStatistics.ruleName == "Slow rule"
+        slowStatistics.evaluationCount >= 2
+        slowStatistics.triggerCount >= 1
+        slowStatistics.executionCount == 1
+        slowStatistics.failureCount == 0
+        slowStatistics.evaluationMicros >= slowStatistics.evaluationCount * 2000
+        slowStatistics.maxExecutionMicros >= 5000
+        slowStatistics.evaluationHistogram.length == HISTOGRAM_BUCKETS
+        slowStatistics.evaluationHistogram.sum() == slowStatistics.evaluationCount
+        slowStatistics.executionHistogram.sum() == 1
+
+        and: "the facts matched by the condition should be counted"
+        slowStatistics.matchedFactCount == slowStatistics.evaluationCount * 3
+        slowStatistics.maxMatchedFactCount == 3
+        slowStatistics.matchedFactsHistogram[ProfiledRule.getBucket(3)] == slowStatistics.evaluationCount
+
+        and: "the fast rule should only have been evaluated"
+        fastStatistics.evaluationCount >= 2
+        fastStatistics.triggerCount == 0
+        fastStatistics.executionCount == 0
+        fastStatistics.matchedFactCount == 0
+        fastStatistics.totalMicros < slowStatistics.totalMicros
+    }
+
+    def "Values are counted in power of two histogram buckets"() {
+
+        expect: "the bucket of each value to be its bit length"
+        ProfiledRule.getBucket(value) == bucket
+
+        where:
+        value          | bucket
+        0              | 0
+        1              | 1
+        2              | 2
+        3              | 2
+        4              | 3
+        1023           | 10
+        1024           | 11
+        Long.MAX_VALUE | HISTOGRAM_BUCKETS - 1
+    }
+}
@@ -0,0 +1,68 @@
+package org.openremote.test.rules
+
+import org.openremote.container.concurrent.ContainerScheduledExecutor
+import org.openremote.manager.asset.AssetProcessingService
+import org.openremote.manager.rules.RulesEngine
+import org.openremote.manager.rules.RulesEngineId
+import org.openremote.model.asset.Asset
+import org.openremote.model.asset.AssetAttribute
+import org.openremote.model.asset.AssetType
+import org.openremote.model.attribute.AttributeEvent
+import org.openremote.model.attribute.AttributeValueType
+import org.openremote.model.rules.AssetState
+import org.openremote.model.value.Values
+import spock.lang.Specification
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+class RulesEngineConcurrencyTest extends Specification {
+
+    static AssetState createAssetState(String assetId, double value) {
+        def asset = new Asset("Thing", AssetType.THING)
+        asset.setId(assetId)
+        new AssetState(asset, new AssetAttribute("temperature", AttributeValueType.NUMBER, Values.create(value)), AttributeEvent.Source.SENSOR)
+    }
+
+    def "Asset state changes are queued while the engine is locked"() {
+
+        given: "a rules engine"
+        def rulesExecutor = new ContainerScheduledExecutor("Rules", 2)
+        def engine = new RulesEngine(
+            null, null, null, rulesExecutor, null, Stub(AssetProcessingService), null, null, null, null,
+            new RulesEngineId(), null, null
+        )
+
+        and: "another thread holding the engine lock"
+        def locked = new CountDownLatch(1)
+        def release = new CountDownLatch(1)
+        def holder = Thread.start {
+            engine.withEngineLock("test", {
+                locked.countDown()
+                release.await(10, TimeUnit.SECONDS)
+            })
+        }
+        locked.await(10, TimeUnit.SECONDS)
+
+        when: "asset states are pushed into the engine"
+        engine.updateOrInsertAssetState(createAssetState("asset1", 1), true)
+        engine.updateOrInsertAssetState(createAssetState("asset1", 2), false)
+        engine.updateOrInsertAssetState(createAssetState("asset2", 3), true)
+
+        then: "the caller should not wait for the lock and the facts should be unchanged"
+        holder.isAlive()
+        engine.facts.assetStates.isEmpty()
+
+        when: "the lock is released"
+        release.countDown()
+        holder.join(10000)
+
+        then: "the queued changes should be applied in order"
+        engine.assetStates.size() == 2
+        engine.assetStates.find { it.id == "asset1" }.value.get() == Values.create(2d)
+        engine.assetStates.find { it.id == "asset2" }.value.get() == Values.create(3d)
+
+        cleanup: "the executor should be stopped"
+        rulesExecutor.shutdownNow()
+    }
+}
@@ -0,0 +1,163 @@
+package org.openremote.test.rules
+
+import org.codehaus.groovy.runtime.InvokerHelper
+import org.openremote.container.concurrent.ContainerScheduledExecutor
+import org.openremote.manager.rules.RulesEngine
+import org.openremote.manager.rules.RulesetCompiler
+import org.openremote.manager.rules.RulesetDeployment
+import org.openremote.model.rules.AssetRuleset
+import org.openremote.model.rules.GlobalRuleset
+import org.openremote.model.rules.Ruleset
+import spock.lang.Specification
+
+import javax.script.ScriptEngineManager
+import java.util.logging.Handler
+import java.util.logging.LogRecord
+
+import static org.openremote.model.rules.Ruleset.Lang.GROOVY
+import static org.openremote.model.rules.Ruleset.Lang.JAVASCRIPT
+
+class RulesetCompilerTest extends Specification {
+
+    static final String GROOVY_LOOP = """
+        def sum = 0
+        for (int i = 0; i < 200000; i++) {
+            sum += Math.abs(i % 7)
+        }
+        return sum
+    """
+
+    def "Rulesets are compiled once"() {
+
+        given: "a ruleset compiler"
+        def compiler = new RulesetCompiler(new ScriptEngineManager(), 500, true)
+
+        and: "many stored asset rulesets with the same rules and some different ones"
+        List<Ruleset> rulesets = (0..<200).collect {
+            new AssetRuleset("asset" + it, "Ruleset " + it, it % 2 == 0 ? GROOVY : JAVASCRIPT,
+                it % 2 == 0 ? "def value = ${it % 10}" : "var rules = [];").setId(it as Long)
+        }
+
+        when: "the rulesets are compiled in parallel"
+        def executor = new ContainerScheduledExecutor("Rules", 4)
+        compiler.compileAll(rulesets, executor)
+
+        then: "each groovy ruleset should be compiled and each distinct javascript should only be compiled once"
+        compiler.groovyStats.loadCount() == 100
+        compiler.javascriptStats.loadCount() == 1
+
+        when: "a ruleset is compiled again"
+        def scriptClass = compiler.compileGroovy(rulesets[0])
+
+        then: "the compiled script should come from the cache"
+        scriptClass.is(compiler.compileGroovy(rulesets[0]))
+        compiler.groovyStats.loadCount() == 100
+
+        and: "another ruleset with the same rules should have its own script class"
+        !scriptClass.is(compiler.compileGroovy(rulesets[10]))
+
+        when: "the rules of a ruleset are changed"
+        rulesets[0].setRules("def value = 42")
+
+        then: "it should be compiled again"
+        !scriptClass.is(compiler.compileGroovy(rulesets[0]))
+        compiler.groovyStats.loadCount() == 101
+
+        when: "a ruleset with a syntax error is compiled"
+        compiler.compileGroovy(new AssetRuleset("asset", "Broken", GROOVY, "def {"))
+
+        then: "the compilation error should be reported"
+        thrown(Exception)
+
+        cleanup: "the executor should be stopped"
+        executor?.shutdownNow()
+    }
+
+    def "Static state of groovy rulesets is not shared by rulesets with the same rules"() {
+
+        given: "two stored rulesets with the same rules declaring a class with static state"
+        def compiler = new RulesetCompiler(new ScriptEngineManager(), 100, false)
+        def rules = """
+            class Counter {
+                static int count = 0
+            }
+            Counter.count++
+            return Counter.count
+        """
+        def ruleset1 = new GlobalRuleset("Counter 1", GROOVY, rules).setId(1L)
+        def ruleset2 = new GlobalRuleset("Counter 2", GROOVY, rules).setId(2L)
+
+        when: "both rulesets are run"
+        def count1 = InvokerHelper.createScript(compiler.compileGroovy(ruleset1), new Binding()).run()
+        def count2 = InvokerHelper.createScript(compiler.compileGroovy(ruleset2), new Binding()).run()
+
+        then: "each should have its own static state"
+        count1 == 1
+        count2 == 1
+    }
+
+    def "Trusted global rulesets are compiled without the sandbox"() {
+
+        given: "ruleset compilers with and without sandboxed global rulesets"
+        def sandboxedCompiler = new RulesetCompiler(new ScriptEngineManager(), 100, true)
+        def trustingCompiler = new RulesetCompiler(new ScriptEngineManager(), 100, false)
+        def globalRuleset = new GlobalRuleset("Global", GROOVY, GROOVY_LOOP)
+        def assetRuleset = new AssetRuleset("asset", "Asset", GROOVY, GROOVY_LOOP)
+
+        expect: "only trusted global rulesets to be compiled without the sandbox"
+        sandboxedCompiler.isSandboxed(globalRuleset)
+        !trustingCompiler.isSandboxed(globalRuleset)
+        trustingCompiler.isSandboxed(assetRuleset)
+
+        when: "the same script is executed with and without the sandbox"
+        def sandboxedClass = sandboxedCompiler.compileGroovy(globalRuleset)
+        def trustedClass = trustingCompiler.compileGroovy(globalRuleset)
+        def sandboxedResult = InvokerHelper.createScript(sandboxedClass, new Binding()).run()
+        def trustedResult = InvokerHelper.createScript(trustedClass, new Binding()).run()
+
+        then: "both should return the same result"
+        sandboxedResult == trustedResult
+        !sandboxedClass.is(trustedClass)
+    }
+
+    def "JavaScript rulesets can use the global LOG and console bindings"() {
+
+        given: "a handler recording the rules log"
+        List<String> messages = []
+        def handler = new Handler() {
+            @Override
+            void publish(LogRecord record) {
+                messages.add(record.message)
+            }
+
+            @Override
+            void flush() {
+            }
+
+            @Override
+            void close() {
+            }
+        }
+        RulesEngine.RULES_LOG.addHandler(handler)
+
+        and: "a deployment of a JavaScript ruleset logging at top level"
+        def compiler = new RulesetCompiler(RulesetDeployment.scriptEngineManager, 100, true)
+        def ruleset = new GlobalRuleset("Logging", JAVASCRIPT, """
+            LOG.info("Logged with LOG");
+            console.log("Logged with console");
+            var rules = [];
+        """).setId(1L)
+        def deployment = new RulesetDeployment(ruleset, null, null, null, null, null, null, null, null, null, compiler)
+
+        when: "the ruleset is compiled"
+        def compiled = deployment.compile()
+
+        then: "the script should have logged without errors"
+        compiled
+        deployment.error == null
+        messages.containsAll(["Logged with LOG", "Logged with console"])
+
+        cleanup: "the handler should be removed"
+        RulesEngine.RULES_LOG.removeHandler(handler)
+    }
+}
@@ -0,0 +1,162 @@
+package org.openremote.test.syslog
+
+import org.openremote.manager.event.ClientEventService
+import org.openremote.manager.syslog.SyslogService
+import org.openremote.model.syslog.SyslogCategory
+import org.openremote.model.syslog.SyslogEvent
+import org.openremote.model.syslog.SyslogLevel
+import org.openremote.test.ManagerContainerTrait
+import spock.lang.Specification
+import spock.util.concurrent.PollingConditions
+
+import javax.persistence.Column
+import javax.persistence.EnumType
+import javax.persistence.Enumerated
+import java.lang.reflect.Field
+import java.time.Instant
+
+class SyslogServiceTest extends Specification implements ManagerContainerTrait {
+
+    static SyslogEvent createEvent(SyslogLevel level, String message) {
+        new SyslogEvent(System.currentTimeMillis(), level, SyslogCategory.PROTOCOL, null, message)
+    }
+
+    static Map<String, Field> getMappedColumns(Class<?> entityClass) {
+        Map<String, Field> columns = [:]
+        for (Class<?> c = entityClass; c != Object; c = c.superclass) {
+            c.declaredFields.findAll { it.isAnnotationPresent(Column) }.each {
+                columns.put(it.getAnnotation(Column).name().toUpperCase(Locale.ROOT), it)
+            }
+        }
+        columns
+    }
+
+    static List<String> getColumns(String columnList) {
+        columnList.split(",").collect { it.trim() - "e." }
+    }
+
+    def "Queue is bounded and keeps warnings and errors when full"() {
+
+        given: "a syslog service with a small queue"
+        def syslogService = new SyslogService()
+        syslogService.queueCapacity = 3
+
+        when: "more events than the capacity are queued"
+        (1..5).each { syslogService.enqueue(createEvent(SyslogLevel.INFO, "info" + it)) }
+
+        then: "the new events should be dropped"
+        syslogService.queue.collect { it.message } == ["info1", "info2", "info3"]
+        syslogService.droppedCount == 2
+
+        when: "an error is queued while the queue is full"
+        syslogService.enqueue(createEvent(SyslogLevel.ERROR, "error"))
+
+        then: "the error should replace the oldest event"
+        syslogService.queue.collect { it.message } == ["info2", "info3", "error"]
+        syslogService.queueSize.get() == 3
+        syslogService.droppedCount == 3
+
+        when: "the queue is flushed"
+        syslogService.flushBatch()
+
+        then: "the queue should be empty"
+        syslogService.queue.isEmpty()
+        syslogService.queueSize.get() == 0
+    }
+
+    def "Publication to clients is rate limited"() {
+
+        given: "a syslog service with a publish rate limit"
+        def clientEventService = Mock(ClientEventService)
+        def syslogService = new SyslogService()
+        syslogService.clientEventService = clientEventService
+        syslogService.maxPublishRate = 10
+
+        when: "a burst of events is flushed"
+        (1..25).each { syslogService.enqueue(createEvent(SyslogLevel.INFO, "info" + it)) }
+        syslogService.flushBatch()
+
+        then: "only the rate limit should have been published"
+        10 * clientEventService.publishEvent(_ as SyslogEvent)
+        syslogService.droppedPublishCount == 15
+    }
+
+    def "Stored events can be paged by number and cursor"() {
+
+        given: "the container is started"
+        def serverPort = findEphemeralPort()
+        def syslogService = new SyslogService()
+        def container = startContainer(defaultConfig(serverPort), defaultServices(syslogService))
+        def conditions = new PollingConditions(timeout: 10, delay: 0.2)
+        def now = System.currentTimeMillis()
+
+        when: "events are stored"
+        (1..25).each {
+            syslogService.enqueue(new SyslogEvent(now - it * 1000, SyslogLevel.INFO, SyslogCategory.PROTOCOL, "SyslogServiceTest", "event" + it))
+        }
+        syslogService.flushBatch()
+
+        then: "the events should be counted"
+        conditions.eventually {
+            def result = syslogService.getEvents(null, 10, 1, Instant.ofEpochMilli(now - 60000), Instant.ofEpochMilli(now), null, ["SyslogServiceTest"])
+            assert result.key == 25
+            assert result.value.collect { it.message } == (1..10).collect { "event" + it }
+        }
+
+        when: "the events are paged by number and by cursor"
+        def byNumber = (1..3).collectMany {
+            syslogService.getEvents(null, 10, it, Instant.ofEpochMilli(now - 60000), Instant.ofEpochMilli(now), null, ["SyslogServiceTest"]).value
+        }
+        def byCursor = []
+        def firstPage = syslogService.getEvents(null, 10, 1, Instant.ofEpochMilli(now - 60000), Instant.ofEpochMilli(now), null, ["SyslogServiceTest"], null, null, false)
+        def page = firstPage
+        List<Long> cursorPageCounts = []
+        while (!page.value.isEmpty()) {
+            byCursor.addAll(page.value)
+            def last = page.value.last()
+            page = syslogService.getEvents(null, 10, 1, Instant.ofEpochMilli(now - 60000), Instant.ofEpochMilli(now), null, ["SyslogServiceTest"], last.timestamp, last.id, false)
+            cursorPageCounts.add(page.key)
+        }
+
+        then: "the first page should be counted, pages fetched with a cursor should not"
+        firstPage.key == 25
+        cursorPageCounts.size() == 3
+        cursorPageCounts.every { it == null }
+
+        and: "both should return all events newest first"
+        byNumber.collect { it.message } == (1..25).collect { "event" + it }
+        byCursor.collect { it.id } == byNumber.collect { it.id }
+
+        and: "an approximate count should be available"
+        syslogService.getEvents(null, 10, 1, Instant.ofEpochMilli(now - 60000), Instant.ofEpochMilli(now), null, ["SyslogServiceTest"], null, null, true).key >= 0
+
+        when: "the stored events are cleared"
+        syslogService.clearStoredEvents()
+
+        then: "no events should be found"
+        syslogService.getEvents(null, 10, 1, Instant.ofEpochMilli(now - 60000), Instant.ofEpochMilli(now), null, ["SyslogServiceTest"]).key == 0
+
+        cleanup: "the server should be stopped"
+        stopContainer(container)
+    }
+
+    def "Stored events are written and read with the mapped columns"() {
+
+        given: "the columns mapped by the syslog event entity"
+        def mappedColumns = getMappedColumns(SyslogEvent)
+
+        when: "the columns of the insert and select statements are parsed"
+        def insertSql = SyslogService.INSERT_EVENT_SQL
+        def insertColumns = getColumns(insertSql.substring(insertSql.indexOf("(") + 1, insertSql.indexOf(")")))
+        def selectColumns = getColumns(SyslogService.SELECT_EVENT_SQL - "select ")
+
+        then: "they should be the mapped columns"
+        insertColumns as Set == mappedColumns.keySet()
+        insertColumns.size() == mappedColumns.size()
+        selectColumns as Set == mappedColumns.keySet()
+
+        and: "the enums should be bound the way they are mapped"
+        mappedColumns["LEVEL"].getAnnotation(Enumerated).value() == EnumType.ORDINAL
+        mappedColumns["CATEGORY"].getAnnotation(Enumerated).value() == EnumType.STRING
+    }
+}